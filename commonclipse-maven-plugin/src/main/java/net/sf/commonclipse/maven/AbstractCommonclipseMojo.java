@@ -0,0 +1,452 @@
+/* ====================================================================
+ *   Copyright 2003-2005 Fabrizio Giustina.
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ * ====================================================================
+ */
+package net.sf.commonclipse.maven;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.text.MessageFormat;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import net.sf.commonclipse.CCPluginPreferences;
+import net.sf.commonclipse.Generator;
+import net.sf.commonclipse.cli.CommandLineGenerator;
+import net.sf.commonclipse.cli.FileResult;
+import net.sf.commonclipse.cli.GenerationCache;
+import net.sf.commonclipse.cli.SourceGenerator;
+
+import org.apache.maven.plugin.AbstractMojo;
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.MojoFailureException;
+import org.apache.maven.project.MavenProject;
+import org.eclipse.jdt.core.JavaCore;
+
+
+/**
+ * Base class of the commonclipse goals: runs the headless generator on the compile source roots of the project. The
+ * files which were up to date in the previous build and haven't changed since, nor have their superclasses, are
+ * skipped without being parsed, using a cache in the build directory. Every module of a multi-module build has its
+ * own sources, classpath and cache.
+ * @author fgiust
+ * @version $Revision$ ($Author$)
+ */
+public abstract class AbstractCommonclipseMojo extends AbstractMojo
+{
+
+    /**
+     * prefix of the Java compiler and formatter options.
+     */
+    private static final String JDT_OPTIONS = JavaCore.PLUGIN_ID + '.';
+
+    /**
+     * the project being built.
+     * @parameter expression="${project}"
+     * @required
+     * @readonly
+     */
+    private MavenProject project;
+
+    /**
+     * source folders of the project, generated sources in the build directory are skipped.
+     * @parameter expression="${project.compileSourceRoots}"
+     * @required
+     * @readonly
+     */
+    private List<String> compileSourceRoots;
+
+    /**
+     * compile classpath of the project, used to find superclasses and the types of fields.
+     * @parameter expression="${project.compileClasspathElements}"
+     * @required
+     * @readonly
+     */
+    private List<String> classpathElements;
+
+    /**
+     * cache of the files which were up to date in the previous build.
+     * @parameter expression="${commonclipse.cache}" default-value="${project.build.directory}/commonclipse.cache"
+     */
+    private File cacheFile;
+
+    /**
+     * encoding of the source files, the platform encoding if not set.
+     * @parameter expression="${commonclipse.encoding}" default-value="${project.build.sourceEncoding}"
+     */
+    private String encoding;
+
+    /**
+     * Java source level.
+     * @parameter expression="${commonclipse.source}" default-value="1.6"
+     */
+    private String source;
+
+    /**
+     * generated methods, separated by commas: toString, equals, hashCode and compareTo.
+     * @parameter expression="${commonclipse.methods}" default-value="toString,equals,hashCode,compareTo"
+     */
+    private String methods;
+
+    /**
+     * also add the methods to the classes which don't declare them? Otherwise only existing methods which look
+     * generated are checked.
+     * @parameter expression="${commonclipse.add}" default-value="false"
+     */
+    private boolean addMissing;
+
+    /**
+     * formatter settings, e.g. the <code>.settings/org.eclipse.jdt.core.prefs</code> file of the Eclipse project.
+     * @parameter expression="${commonclipse.formatter}"
+     */
+    private File formatter;
+
+    /**
+     * commonclipse preferences, a properties file with the keys of the plugin preference store.
+     * @parameter expression="${commonclipse.preferences}"
+     */
+    private File preferences;
+
+    /**
+     * skip the goal.
+     * @parameter expression="${commonclipse.skip}" default-value="false"
+     */
+    private boolean skip;
+
+    /**
+     * @see org.apache.maven.plugin.Mojo#execute()
+     */
+    @Override
+    public void execute() throws MojoExecutionException, MojoFailureException
+    {
+        if (this.skip)
+        {
+            getLog().info("Skipping commonclipse"); //$NON-NLS-1$
+            return;
+        }
+
+        List<String> sourceRoots = getSourceRoots();
+        if (sourceRoots.isEmpty())
+        {
+            return;
+        }
+
+        Generator[] generators = getGenerators();
+        Map<String, String> options = getOptions();
+        Properties values = new Properties();
+        if (this.preferences != null)
+        {
+            values.putAll(loadProperties(this.preferences));
+        }
+        String sourceEncoding = this.encoding != null ? this.encoding : System.getProperty("file.encoding"); //$NON-NLS-1$
+        List<String> classpath = getClasspath();
+
+        SourceGenerator sourceGenerator = new SourceGenerator(
+            sourceRoots.toArray(new String[sourceRoots.size()]),
+            classpath.toArray(new String[classpath.size()]),
+            sourceEncoding,
+            options,
+            generators,
+            new CCPluginPreferences(values),
+            this.addMissing);
+
+        GenerationCache cache = new GenerationCache(this.cacheFile, GenerationCache.getConfiguration(
+            generators,
+            this.addMissing,
+            sourceEncoding,
+            options,
+            values,
+            classpath));
+        try
+        {
+            cache.load();
+        }
+        catch (IOException e)
+        {
+            // start from scratch
+            getLog().warn(this.cacheFile + ": " + e.getMessage()); //$NON-NLS-1$
+        }
+
+        List<String> allPaths = sourceGenerator.findSourceFiles();
+        List<String> paths = cache.findStale(allPaths);
+
+        Results results = new Results(cache, sourceEncoding);
+        ExecutorService executor = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
+        try
+        {
+            sourceGenerator.process(paths, executor, results);
+        }
+        finally
+        {
+            executor.shutdown();
+        }
+
+        try
+        {
+            cache.save();
+        }
+        catch (IOException e)
+        {
+            // only slows down the next build
+            getLog().warn(this.cacheFile + ": " + e.getMessage()); //$NON-NLS-1$
+        }
+
+        getLog().info(MessageFormat.format(
+            "{0} files, {1} up to date since the previous build, {2} need changes", //$NON-NLS-1$
+            new Object[]{
+                Integer.toString(allPaths.size()),
+                Integer.toString(allPaths.size() - paths.size()),
+                Integer.toString(results.changed.size())}));
+
+        if (results.failed > 0)
+        {
+            throw new MojoFailureException(MessageFormat.format(
+                "commonclipse could not process {0} files", //$NON-NLS-1$
+                new Object[]{Integer.toString(results.failed)}));
+        }
+        processed(results.changed);
+    }
+
+    /**
+     * Handles a file whose methods need changes.
+     * @param result result of the generation, with the new source
+     * @param sourceEncoding encoding of the source files
+     * @return <code>true</code> if the file has been written
+     * @throws IOException exception in writing the file
+     */
+    protected abstract boolean fileChanged(FileResult result, String sourceEncoding) throws IOException;
+
+    /**
+     * Called once all the files have been processed without problems.
+     * @param changed paths of the files whose methods need changes
+     * @throws MojoFailureException to fail the build
+     */
+    protected abstract void processed(List<String> changed) throws MojoFailureException;
+
+    /**
+     * Returns the existing source folders, without the generated sources in the build directory.
+     * @return paths of the source folders
+     */
+    private List<String> getSourceRoots()
+    {
+        String buildDirectory = new File(this.project.getBuild().getDirectory()).getAbsolutePath() + File.separator;
+
+        List<String> sourceRoots = new ArrayList<String>();
+        Iterator<String> iterator = this.compileSourceRoots.iterator();
+        while (iterator.hasNext())
+        {
+            File root = new File(iterator.next());
+            if (root.isDirectory() && !root.getAbsolutePath().startsWith(buildDirectory))
+            {
+                sourceRoots.add(root.getPath());
+            }
+        }
+        return sourceRoots;
+    }
+
+    /**
+     * Returns the classpath entries, without the output folder of the project: its classes are compiled from the
+     * source folders, and its modification time would invalidate the cache in every build.
+     * @return classpath entries
+     */
+    private List<String> getClasspath()
+    {
+        File outputDirectory = new File(this.project.getBuild().getOutputDirectory()).getAbsoluteFile();
+
+        List<String> classpath = new ArrayList<String>();
+        Iterator<String> iterator = this.classpathElements.iterator();
+        while (iterator.hasNext())
+        {
+            String entry = iterator.next();
+            if (!new File(entry).getAbsoluteFile().equals(outputDirectory))
+            {
+                classpath.add(entry);
+            }
+        }
+        return classpath;
+    }
+
+    /**
+     * Selects the generators.
+     * @return generators, in the given order
+     * @throws MojoExecutionException if a method is unknown
+     */
+    private Generator[] getGenerators() throws MojoExecutionException
+    {
+        Generator[] available = CommandLineGenerator.getAvailableGenerators();
+        List<Generator> generators = new ArrayList<Generator>();
+
+        String[] names = this.methods.split(","); //$NON-NLS-1$
+        for (int j = 0; j < names.length; j++)
+        {
+            String name = names[j].trim();
+            Generator selected = null;
+            for (int k = 0; k < available.length; k++)
+            {
+                if (available[k].getMethodName().equals(name))
+                {
+                    selected = available[k];
+                }
+            }
+
+            if (selected == null)
+            {
+                throw new MojoExecutionException(MessageFormat.format(
+                    "Unknown method {0}, use toString, equals, hashCode or compareTo", //$NON-NLS-1$
+                    new Object[]{name}));
+            }
+            if (!generators.contains(selected))
+            {
+                generators.add(selected);
+            }
+        }
+        return generators.toArray(new Generator[generators.size()]);
+    }
+
+    /**
+     * Returns the compiler and formatter options.
+     * @return options for the source level, with the formatter settings
+     * @throws MojoExecutionException exception in reading the formatter settings
+     */
+    @SuppressWarnings("unchecked")
+    private Map<String, String> getOptions() throws MojoExecutionException
+    {
+        Map<String, String> options = new HashMap<String, String>(JavaCore.getOptions());
+        JavaCore.setComplianceOptions(this.source, options);
+
+        if (this.formatter != null)
+        {
+            Properties settings = loadProperties(this.formatter);
+            Iterator<String> iterator = settings.stringPropertyNames().iterator();
+            while (iterator.hasNext())
+            {
+                String key = iterator.next();
+                if (key.startsWith(JDT_OPTIONS))
+                {
+                    options.put(key, settings.getProperty(key));
+                }
+            }
+        }
+        return options;
+    }
+
+    /**
+     * Loads a properties file.
+     * @param file properties file
+     * @return Properties
+     * @throws MojoExecutionException exception in reading the file
+     */
+    private static Properties loadProperties(File file) throws MojoExecutionException
+    {
+        Properties properties = new Properties();
+        try
+        {
+            InputStream stream = new FileInputStream(file);
+            try
+            {
+                properties.load(stream);
+            }
+            finally
+            {
+                stream.close();
+            }
+        }
+        catch (IOException e)
+        {
+            throw new MojoExecutionException(file + ": " + e.getMessage(), e); //$NON-NLS-1$
+        }
+        return properties;
+    }
+
+    /**
+     * Logs the problems, hands the changed files to the goal and updates the cache.
+     */
+    private class Results implements SourceGenerator.Listener
+    {
+
+        /**
+         * cache to update.
+         */
+        private final GenerationCache cache;
+
+        /**
+         * encoding of the source files.
+         */
+        private final String sourceEncoding;
+
+        /**
+         * files which need changes.
+         */
+        final List<String> changed = new ArrayList<String>();
+
+        /**
+         * files with problems.
+         */
+        int failed;
+
+        /**
+         * Creates a new Results.
+         * @param cache cache to update
+         * @param sourceEncoding encoding of the source files
+         */
+        Results(GenerationCache cache, String sourceEncoding)
+        {
+            this.cache = cache;
+            this.sourceEncoding = sourceEncoding;
+        }
+
+        /**
+         * @see net.sf.commonclipse.cli.SourceGenerator.Listener#fileProcessed(net.sf.commonclipse.cli.FileResult)
+         */
+        @Override
+        public void fileProcessed(FileResult result)
+        {
+            Iterator<String> problems = result.getProblems().iterator();
+            while (problems.hasNext())
+            {
+                getLog().error(result.getPath() + ": " + problems.next()); //$NON-NLS-1$
+            }
+            if (!result.getProblems().isEmpty())
+            {
+                this.failed++;
+            }
+
+            boolean written = false;
+            if (result.hasChanges())
+            {
+                this.changed.add(result.getPath());
+                try
+                {
+                    written = fileChanged(result, this.sourceEncoding);
+                }
+                catch (IOException e)
+                {
+                    getLog().error(result.getPath() + ": " + e.getMessage()); //$NON-NLS-1$
+                    this.failed++;
+                }
+            }
+            this.cache.update(result, written);
+        }
+    }
+
+}
@@ -0,0 +1,66 @@
+/* ====================================================================
+ *   Copyright 2003-2005 Fabrizio Giustina.
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ * ====================================================================
+ */
+package net.sf.commonclipse.maven;
+
+import java.text.MessageFormat;
+import java.util.List;
+
+import net.sf.commonclipse.cli.FileResult;
+
+import org.apache.maven.plugin.MojoFailureException;
+
+
+/**
+ * Verifies that the generated methods of the project are up to date: the build fails if any toString(), hashCode(),
+ * equals(Object) or compareTo(Object) method would change when regenerated. The needed changes are logged as a
+ * unified diff, <code>commonclipse:generate</code> writes them.
+ * @goal check
+ * @phase verify
+ * @requiresDependencyResolution compile
+ * @threadSafe
+ * @author fgiust
+ * @version $Revision$ ($Author$)
+ */
+public class CheckMojo extends AbstractCommonclipseMojo
+{
+
+    /**
+     * @see net.sf.commonclipse.maven.AbstractCommonclipseMojo#fileChanged(net.sf.commonclipse.cli.FileResult,
+     * java.lang.String)
+     */
+    @Override
+    protected boolean fileChanged(FileResult result, String sourceEncoding)
+    {
+        getLog().info(result.getDiff());
+        return false;
+    }
+
+    /**
+     * @see net.sf.commonclipse.maven.AbstractCommonclipseMojo#processed(java.util.List)
+     */
+    @Override
+    protected void processed(List<String> changed) throws MojoFailureException
+    {
+        if (!changed.isEmpty())
+        {
+            throw new MojoFailureException(MessageFormat.format(
+                "Generated methods are out of date in {0} files, run mvn commonclipse:generate to update them", //$NON-NLS-1$
+                new Object[]{Integer.toString(changed.size())}));
+        }
+    }
+
+}
@@ -0,0 +1,74 @@
+/* ====================================================================
+ *   Copyright 2003-2005 Fabrizio Giustina.
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ * ====================================================================
+ */
+package net.sf.commonclipse.maven;
+
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.text.MessageFormat;
+import java.util.List;
+
+import net.sf.commonclipse.cli.FileResult;
+
+
+/**
+ * Regenerates the generated methods of the project: toString(), hashCode(), equals(Object) and compareTo(Object)
+ * methods which are out of date are rewritten in the source files.
+ * @goal generate
+ * @requiresDependencyResolution compile
+ * @threadSafe
+ * @author fgiust
+ * @version $Revision$ ($Author$)
+ */
+public class GenerateMojo extends AbstractCommonclipseMojo
+{
+
+    /**
+     * @see net.sf.commonclipse.maven.AbstractCommonclipseMojo#fileChanged(net.sf.commonclipse.cli.FileResult,
+     * java.lang.String)
+     */
+    @Override
+    protected boolean fileChanged(FileResult result, String sourceEncoding) throws IOException
+    {
+        Writer writer = new OutputStreamWriter(new FileOutputStream(result.getPath()), sourceEncoding);
+        try
+        {
+            writer.write(result.getNewSource());
+        }
+        finally
+        {
+            writer.close();
+        }
+        return true;
+    }
+
+    /**
+     * @see net.sf.commonclipse.maven.AbstractCommonclipseMojo#processed(java.util.List)
+     */
+    @Override
+    protected void processed(List<String> changed)
+    {
+        if (!changed.isEmpty())
+        {
+            getLog().info(MessageFormat.format(
+                "Regenerated the methods of {0} files", //$NON-NLS-1$
+                new Object[]{Integer.toString(changed.size())}));
+        }
+    }
+
+}
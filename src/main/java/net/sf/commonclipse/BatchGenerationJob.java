@@ -0,0 +1,708 @@
+/* ====================================================================
+ *   Copyright 2003-2005 Fabrizio Giustina.
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ * ====================================================================
+ */
+package net.sf.commonclipse;
+
+import java.text.MessageFormat;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.eclipse.core.resources.IResource;
+import org.eclipse.core.resources.IResourceRuleFactory;
+import org.eclipse.core.resources.IWorkspaceRunnable;
+import org.eclipse.core.resources.ResourceAttributes;
+import org.eclipse.core.resources.ResourcesPlugin;
+import org.eclipse.core.resources.WorkspaceJob;
+import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.MultiStatus;
+import org.eclipse.core.runtime.NullProgressMonitor;
+import org.eclipse.core.runtime.OperationCanceledException;
+import org.eclipse.core.runtime.Status;
+import org.eclipse.core.runtime.SubMonitor;
+import org.eclipse.core.runtime.jobs.ISchedulingRule;
+import org.eclipse.core.runtime.jobs.MultiRule;
+import org.eclipse.jdt.core.ICompilationUnit;
+import org.eclipse.jdt.core.IJavaElement;
+import org.eclipse.jdt.core.IJavaModelStatusConstants;
+import org.eclipse.jdt.core.IJavaProject;
+import org.eclipse.jdt.core.IRegion;
+import org.eclipse.jdt.core.IType;
+import org.eclipse.jdt.core.ITypeHierarchy;
+import org.eclipse.jdt.core.JavaCore;
+import org.eclipse.jdt.core.JavaModelException;
+import org.eclipse.text.edits.TextEdit;
+
+
+/**
+ * Background job generating methods for one or more types. The changes for each compilation unit are computed in
+ * parallel on private working copies, then committed by the job itself inside a single Java model operation, so
+ * listeners and the builder see one delta for the whole batch and every file is written only once. A unit changed by
+ * someone else in the meantime is left untouched, and a unit open in an editor is only changed in the editor buffer,
+ * without saving. The job holds the scheduling rule of the selected files only, and a single summary of the errors is
+ * reported at the end.
+ * @author fgiust
+ * @version $Revision$ ($Author$)
+ */
+public class BatchGenerationJob extends WorkspaceJob
+{
+
+    /**
+     * interval, in milliseconds, for checking the progress monitor for cancellation.
+     */
+    private static final long CANCEL_POLL_INTERVAL = 100;
+
+    /**
+     * types to process.
+     */
+    private final List<IType> types;
+
+    /**
+     * generates the methods for every unit, shared by all the workers.
+     */
+    private final UnitGenerator unitGenerator;
+
+    /**
+     * set when the job is canceled, checked by workers before starting a new compilation unit.
+     */
+    private final AtomicBoolean canceled = new AtomicBoolean();
+
+    /**
+     * files excluded from the batch before starting the job, reported in the summary.
+     */
+    private final List<IStatus> skipped;
+
+    /**
+     * a single hierarchy for all the selected types in a project, built before starting the workers and only read by
+     * them.
+     */
+    private final Map<IJavaProject, ITypeHierarchy> regionHierarchies = new HashMap<IJavaProject, ITypeHierarchy>();
+
+    /**
+     * Creates a new batch generation job.
+     * @param types types to process
+     * @param generators generators to run on every type
+     * @param overwrite if <code>false</code> methods which already exist are left untouched
+     */
+    public BatchGenerationJob(List<IType> types, Generator[] generators, boolean overwrite)
+    {
+        this(types, generators, overwrite, new ArrayList<IStatus>());
+    }
+
+    /**
+     * Creates a new batch generation job.
+     * @param types types to process
+     * @param generators generators to run on every type
+     * @param overwrite if <code>false</code> methods which already exist are left untouched
+     * @param skipped status of the selected files which have been excluded from the batch, e.g. by
+     * JavaTypeAction.validateEdit(), added to the summary
+     */
+    public BatchGenerationJob(List<IType> types, Generator[] generators, boolean overwrite, List<IStatus> skipped)
+    {
+        super(CCMessages.getString("BatchGenerationJob.name")); //$NON-NLS-1$
+        this.types = types;
+        this.skipped = skipped;
+
+        // a single snapshot of the preferences, workers see consistent values even if they are changed meanwhile
+        CCPluginPreferences preferences = CCPluginPreferences.getPreferences();
+        this.unitGenerator = new UnitGenerator(generators, preferences, overwrite);
+        setRule(createRule(types));
+        setUser(true);
+    }
+
+    /**
+     * Creates a rule for modifying the files containing the given types.
+     * @param types types to process
+     * @return scheduling rule, <code>null</code> if none of the types is in a workspace file
+     */
+    private static ISchedulingRule createRule(List<IType> types)
+    {
+        IResourceRuleFactory factory = ResourcesPlugin.getWorkspace().getRuleFactory();
+        List<ISchedulingRule> rules = new ArrayList<ISchedulingRule>();
+
+        Iterator<IType> iterator = types.iterator();
+        while (iterator.hasNext())
+        {
+            IResource resource = iterator.next().getResource();
+            if (resource != null)
+            {
+                rules.add(factory.modifyRule(resource));
+            }
+        }
+
+        if (rules.isEmpty())
+        {
+            return null;
+        }
+        return MultiRule.combine(rules.toArray(new ISchedulingRule[rules.size()]));
+    }
+
+    /**
+     * @see org.eclipse.core.resources.WorkspaceJob#runInWorkspace(org.eclipse.core.runtime.IProgressMonitor)
+     */
+    @Override
+    public IStatus runInWorkspace(IProgressMonitor monitor) throws CoreException
+    {
+        Map<ICompilationUnit, List<IType>> units = groupByCompilationUnit();
+
+        MultiStatus result = new MultiStatus(CCPlugin.PLUGIN_ID, IStatus.OK, CCMessages
+            .getString("BatchGenerationJob.errors"), null); //$NON-NLS-1$
+
+        Iterator<IStatus> skippedIterator = this.skipped.iterator();
+        while (skippedIterator.hasNext())
+        {
+            result.add(skippedIterator.next());
+        }
+
+        SubMonitor progress = SubMonitor.convert(monitor, getName(), 100);
+
+        // resolve the supertypes of all the selected types at once, instead of one hierarchy per type
+        buildRegionHierarchies(progress.newChild(20));
+        if (progress.isCanceled())
+        {
+            monitor.done();
+            return Status.CANCEL_STATUS;
+        }
+
+        SubMonitor generation = progress.newChild(60).setWorkRemaining(units.size());
+        List<UnitResult> ready = new ArrayList<UnitResult>();
+
+        int threads = Math.max(1, Math.min(Runtime.getRuntime().availableProcessors(), units.size()));
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        CompletionService<UnitResult> completion = new ExecutorCompletionService<UnitResult>(executor);
+
+        Iterator<Entry<ICompilationUnit, List<IType>>> iterator = units.entrySet().iterator();
+        while (iterator.hasNext())
+        {
+            Entry<ICompilationUnit, List<IType>> entry = iterator.next();
+            completion.submit(new UnitTask(entry.getKey(), entry.getValue()));
+        }
+
+        try
+        {
+            int pending = units.size();
+            while (pending > 0)
+            {
+                if (generation.isCanceled())
+                {
+                    this.canceled.set(true);
+                }
+
+                Future<UnitResult> done = completion.poll(CANCEL_POLL_INTERVAL, TimeUnit.MILLISECONDS);
+                if (done != null)
+                {
+                    pending--;
+                    UnitResult unitResult = getResult(done);
+                    addStatus(result, unitResult.status);
+                    if (unitResult.cu != null)
+                    {
+                        generation.subTask(unitResult.cu.getElementName());
+                    }
+
+                    if (unitResult.workingCopy != null)
+                    {
+                        ready.add(unitResult);
+                    }
+                    generation.worked(1);
+                }
+            }
+        }
+        catch (InterruptedException e)
+        {
+            this.canceled.set(true);
+            Thread.currentThread().interrupt();
+        }
+        finally
+        {
+            executor.shutdown();
+        }
+
+        if (this.canceled.get())
+        {
+            // units are committed only when the whole batch is complete, nothing has been modified yet
+            discard(ready);
+            monitor.done();
+            return Status.CANCEL_STATUS;
+        }
+
+        if (!ready.isEmpty())
+        {
+            commit(ready, result, progress.newChild(20));
+        }
+        monitor.done();
+
+        return result;
+    }
+
+    /**
+     * Commits the working copies of some compilation units in a single Java model operation: resource and Java element
+     * deltas are fired, and an auto build is triggered, only once at the end. Working copies are always discarded.
+     * @param results working copies to commit
+     * @param status errors are added to this status
+     * @param monitor progress monitor
+     * @throws CoreException exception in running the operation
+     */
+    private void commit(final List<UnitResult> results, final MultiStatus status, IProgressMonitor monitor)
+        throws CoreException
+    {
+        IWorkspaceRunnable runnable = new IWorkspaceRunnable()
+        {
+
+            /**
+             * @see org.eclipse.core.resources.IWorkspaceRunnable#run(org.eclipse.core.runtime.IProgressMonitor)
+             */
+            @Override
+            public void run(IProgressMonitor runMonitor) throws JavaModelException
+            {
+                SubMonitor progress = SubMonitor.convert(runMonitor, results.size());
+
+                Iterator<UnitResult> iterator = results.iterator();
+                while (iterator.hasNext())
+                {
+                    UnitResult unitResult = iterator.next();
+                    try
+                    {
+                        commit(unitResult, status);
+                    }
+                    finally
+                    {
+                        unitResult.workingCopy.discardWorkingCopy();
+                    }
+                    progress.worked(1);
+                }
+            }
+        };
+
+        try
+        {
+            // the job rule already contains the rules of all the modified files
+            JavaCore.run(runnable, getRule(), monitor);
+        }
+        finally
+        {
+            // if the operation failed before reaching some of the working copies
+            discard(results);
+        }
+    }
+
+    /**
+     * Commits the working copy of a single compilation unit, unless the unit has been modified since the working copy
+     * was created. A unit open in an editor is not saved: the changes are applied to the editor buffer instead, so the
+     * document is not replaced and the user decides when to save.
+     * @param unitResult working copy to commit
+     * @param status errors are added to this status
+     */
+    private void commit(UnitResult unitResult, MultiStatus status)
+    {
+        String elementName = unitResult.cu.getElementName();
+        try
+        {
+            // an editor buffer changed after the working copy was created
+            if (!unitResult.snapshot.equals(unitResult.cu.getSource()))
+            {
+                status.add(createStatus(IStatus.WARNING, elementName, CCMessages
+                    .getString("BatchGenerationJob.conflict"), null)); //$NON-NLS-1$
+                return;
+            }
+
+            if (unitResult.cu.isWorkingCopy())
+            {
+                // the snapshot matches the editor buffer, offsets of the edit are still valid
+                UnitRewrite.applyEdit(unitResult.cu, unitResult.edit, null);
+                return;
+            }
+
+            // fails if the file changed on disk after the working copy was created
+            unitResult.workingCopy.commitWorkingCopy(false, null);
+        }
+        catch (JavaModelException e)
+        {
+            if (e.getJavaModelStatus().getCode() == IJavaModelStatusConstants.UPDATE_CONFLICT)
+            {
+                status.add(createStatus(IStatus.WARNING, elementName, CCMessages
+                    .getString("BatchGenerationJob.conflict"), null)); //$NON-NLS-1$
+            }
+            else
+            {
+                status.add(createStatus(IStatus.ERROR, elementName, e.getMessage(), e));
+            }
+        }
+    }
+
+    /**
+     * Discards working copies which have not been committed.
+     * @param results computed working copies
+     */
+    private void discard(List<UnitResult> results)
+    {
+        Iterator<UnitResult> iterator = results.iterator();
+        while (iterator.hasNext())
+        {
+            ICompilationUnit workingCopy = iterator.next().workingCopy;
+            if (workingCopy.isWorkingCopy())
+            {
+                try
+                {
+                    workingCopy.discardWorkingCopy();
+                }
+                catch (JavaModelException e)
+                {
+                    // nothing to do, the working copy has never been committed
+                }
+            }
+        }
+    }
+
+    /**
+     * Adds a status to the summary, if it's a warning or an error.
+     * @param result summary
+     * @param status status of a single compilation unit
+     */
+    private void addStatus(MultiStatus result, IStatus status)
+    {
+        if (status.matches(IStatus.WARNING | IStatus.ERROR))
+        {
+            result.add(status);
+        }
+    }
+
+    /**
+     * Builds a region hierarchy for every project with more than one selected type. Supertypes shared by the selected
+     * types, like common base classes, are resolved only once.
+     * @param monitor progress monitor
+     * @throws JavaModelException exception in building the hierarchies
+     */
+    private void buildRegionHierarchies(IProgressMonitor monitor) throws JavaModelException
+    {
+        Map<IJavaProject, IRegion> regions = new LinkedHashMap<IJavaProject, IRegion>();
+        Map<IJavaProject, Integer> sizes = new HashMap<IJavaProject, Integer>();
+
+        Iterator<IType> iterator = this.types.iterator();
+        while (iterator.hasNext())
+        {
+            IType type = iterator.next();
+            IJavaProject project = type.getJavaProject();
+
+            IRegion region = regions.get(project);
+            if (region == null)
+            {
+                region = JavaCore.newRegion();
+                regions.put(project, region);
+                sizes.put(project, Integer.valueOf(0));
+            }
+            region.add(type);
+            sizes.put(project, Integer.valueOf(sizes.get(project).intValue() + 1));
+        }
+
+        SubMonitor progress = SubMonitor.convert(monitor, regions.size());
+
+        Iterator<Entry<IJavaProject, IRegion>> regionIterator = regions.entrySet().iterator();
+        while (regionIterator.hasNext())
+        {
+            Entry<IJavaProject, IRegion> entry = regionIterator.next();
+            IJavaProject project = entry.getKey();
+
+            // a single type is better served by the shared hierarchy cache
+            if (sizes.get(project).intValue() > 1)
+            {
+                this.regionHierarchies.put(project, project.newTypeHierarchy(entry.getValue(), progress.newChild(1)));
+            }
+            else
+            {
+                progress.worked(1);
+            }
+        }
+    }
+
+    /**
+     * Groups types by compilation unit, keeping the selection order. Types in the same unit are processed sequentially
+     * by the same worker.
+     * @return Map compilation unit - types
+     */
+    private Map<ICompilationUnit, List<IType>> groupByCompilationUnit()
+    {
+        Map<ICompilationUnit, List<IType>> units = new LinkedHashMap<ICompilationUnit, List<IType>>();
+
+        Iterator<IType> iterator = this.types.iterator();
+        while (iterator.hasNext())
+        {
+            IType type = iterator.next();
+            ICompilationUnit cu = (ICompilationUnit) type.getAncestor(IJavaElement.COMPILATION_UNIT);
+            if (cu == null)
+            {
+                continue;
+            }
+
+            List<IType> unitTypes = units.get(cu);
+            if (unitTypes == null)
+            {
+                unitTypes = new ArrayList<IType>();
+                units.put(cu, unitTypes);
+            }
+            unitTypes.add(type);
+        }
+        return units;
+    }
+
+    /**
+     * Returns the result of a completed task.
+     * @param future completed task
+     * @return result of the task
+     * @throws InterruptedException if the current thread was interrupted
+     */
+    private UnitResult getResult(Future<UnitResult> future) throws InterruptedException
+    {
+        try
+        {
+            return future.get();
+        }
+        catch (ExecutionException e)
+        {
+            return new UnitResult(null, null, null, null, new Status(
+                IStatus.ERROR,
+                CCPlugin.PLUGIN_ID,
+                e.getCause().getMessage(),
+                e.getCause()));
+        }
+    }
+
+    /**
+     * Creates a status for an element of the batch.
+     * @param severity status severity
+     * @param elementName name of the type or compilation unit
+     * @param message error message
+     * @param exception exception, can be null
+     * @return IStatus
+     */
+    private IStatus createStatus(int severity, String elementName, String message, Throwable exception)
+    {
+        return new Status(severity, CCPlugin.PLUGIN_ID, MessageFormat.format(CCMessages
+            .getString("BatchGenerationJob.failed"), //$NON-NLS-1$
+            new Object[]{elementName, message}), exception);
+    }
+
+    /**
+     * Changes computed for a single compilation unit.
+     */
+    private static class UnitResult
+    {
+
+        /**
+         * compilation unit.
+         */
+        final ICompilationUnit cu;
+
+        /**
+         * private working copy containing the changes, <code>null</code> if nothing has to be changed.
+         */
+        final ICompilationUnit workingCopy;
+
+        /**
+         * source of the unit when the working copy was created.
+         */
+        final String snapshot;
+
+        /**
+         * changes applied to the working copy, relative to snapshot.
+         */
+        final TextEdit edit;
+
+        /**
+         * outcome of the generation.
+         */
+        final IStatus status;
+
+        /**
+         * Creates a new UnitResult.
+         * @param cu compilation unit
+         * @param workingCopy working copy containing the changes, can be null
+         * @param snapshot source of the unit when the working copy was created, can be null
+         * @param edit changes applied to the working copy, can be null
+         * @param status outcome of the generation
+         */
+        UnitResult(ICompilationUnit cu, ICompilationUnit workingCopy, String snapshot, TextEdit edit, IStatus status)
+        {
+            this.cu = cu;
+            this.workingCopy = workingCopy;
+            this.snapshot = snapshot;
+            this.edit = edit;
+            this.status = status;
+        }
+    }
+
+    /**
+     * Progress monitor for workers, canceled together with the job. Progress is only reported by the job itself.
+     */
+    private class CancelMonitor extends NullProgressMonitor
+    {
+
+        /**
+         * @see org.eclipse.core.runtime.NullProgressMonitor#isCanceled()
+         */
+        @Override
+        public boolean isCanceled()
+        {
+            return BatchGenerationJob.this.canceled.get();
+        }
+    }
+
+    /**
+     * Computes the changes for all the types of a single compilation unit and applies them to a private working copy.
+     * The unit itself is not modified.
+     */
+    private class UnitTask implements Callable<UnitResult>
+    {
+
+        /**
+         * compilation unit.
+         */
+        private final ICompilationUnit cu;
+
+        /**
+         * types to process in cu.
+         */
+        private final List<IType> unitTypes;
+
+        /**
+         * Creates a new task.
+         * @param cu compilation unit
+         * @param unitTypes types to process in cu
+         */
+        UnitTask(ICompilationUnit cu, List<IType> unitTypes)
+        {
+            this.cu = cu;
+            this.unitTypes = unitTypes;
+        }
+
+        /**
+         * @see java.util.concurrent.Callable#call()
+         */
+        @Override
+        public UnitResult call()
+        {
+            if (BatchGenerationJob.this.canceled.get())
+            {
+                return new UnitResult(this.cu, null, null, null, Status.CANCEL_STATUS);
+            }
+
+            MultiStatus status = new MultiStatus(CCPlugin.PLUGIN_ID, IStatus.OK, this.cu.getElementName(), null);
+
+            IResource resource = this.cu.getResource();
+            if (resource != null)
+            {
+                // no attributes if the file has been deleted or is not local
+                ResourceAttributes attributes = resource.getResourceAttributes();
+                String problem = null;
+                if (attributes == null)
+                {
+                    problem = CCMessages.getString("Generator.notlocal"); //$NON-NLS-1$
+                }
+                else if (attributes.isReadOnly())
+                {
+                    problem = CCMessages.getString("Generator.readonly"); //$NON-NLS-1$
+                }
+
+                if (problem != null)
+                {
+                    status.add(createStatus(IStatus.ERROR, this.cu.getElementName(), problem, null));
+                    return new UnitResult(this.cu, null, null, null, status);
+                }
+            }
+
+            // the job monitor can't be used by workers, this one only reports cancellation
+            IProgressMonitor monitor = new CancelMonitor();
+
+            ICompilationUnit workingCopy = null;
+            boolean changed = false;
+            try
+            {
+                // source ranges of types and methods are read from the unit and must match the working copy
+                if (!this.cu.isConsistent())
+                {
+                    this.cu.makeConsistent(monitor);
+                }
+
+                workingCopy = this.cu.getWorkingCopy(monitor);
+                String snapshot = workingCopy.getSource();
+
+                // region hierarchies are built per project
+                ITypeHierarchy hierarchy = BatchGenerationJob.this.regionHierarchies.get(this.cu.getJavaProject());
+
+                GenerationResult generated = BatchGenerationJob.this.unitGenerator.generate(
+                    workingCopy,
+                    this.unitTypes,
+                    hierarchy,
+                    monitor);
+                status.addAll(generated.getStatus());
+
+                // the file is not touched at all if the regenerated methods are identical to the existing ones
+                changed = generated.hasChanges();
+                if (changed)
+                {
+                    UnitRewrite.checkCanceled(monitor);
+
+                    // applying an edit updates its regions, units open in an editor need the original one
+                    TextEdit edit = generated.getEdit().copy();
+                    workingCopy.applyTextEdit(generated.getEdit(), null);
+                    return new UnitResult(this.cu, workingCopy, snapshot, edit, status);
+                }
+            }
+            catch (JavaModelException e)
+            {
+                changed = false;
+                status.add(createStatus(IStatus.ERROR, this.cu.getElementName(), e.getMessage(), e));
+            }
+            catch (OperationCanceledException e)
+            {
+                // the unit is left untouched, together with the types already processed
+                changed = false;
+                return new UnitResult(this.cu, null, null, null, Status.CANCEL_STATUS);
+            }
+            finally
+            {
+                if (workingCopy != null && !changed)
+                {
+                    try
+                    {
+                        workingCopy.discardWorkingCopy();
+                    }
+                    catch (JavaModelException e)
+                    {
+                        // nothing to do, the working copy has never been committed
+                    }
+                }
+            }
+
+            return new UnitResult(this.cu, null, null, null, status);
+        }
+    }
+
+}
@@ -0,0 +1,491 @@
+/* ====================================================================
+ *   Copyright 2003-2005 Fabrizio Giustina.
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ * ====================================================================
+ */
+package net.sf.commonclipse;
+
+import java.text.MessageFormat;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.Status;
+import org.eclipse.jdt.core.JavaModelException;
+import org.eclipse.jdt.core.Signature;
+import org.eclipse.jdt.core.dom.AbstractTypeDeclaration;
+import org.eclipse.jdt.core.dom.CompilationUnit;
+import org.eclipse.jdt.core.dom.FieldDeclaration;
+import org.eclipse.jdt.core.dom.IMethodBinding;
+import org.eclipse.jdt.core.dom.ITypeBinding;
+import org.eclipse.jdt.core.dom.IVariableBinding;
+import org.eclipse.jdt.core.dom.MethodDeclaration;
+import org.eclipse.jdt.core.dom.Modifier;
+import org.eclipse.jdt.core.dom.TypeDeclaration;
+import org.eclipse.jdt.core.dom.VariableDeclarationFragment;
+
+
+/**
+ * Type model built from the bindings of an AST, for types which are not part of a Java model, e.g. files parsed from
+ * disk by a command line tool. All the answers are computed from the bindings when the model is created, so the model
+ * doesn't keep any binding and can be used from another thread once the parser is done.
+ * @author fgiust
+ * @version $Revision$ ($Author$)
+ */
+public class BindingTypeModel extends TypeModel
+{
+
+    /**
+     * declaration of the type in the AST.
+     */
+    private final AbstractTypeDeclaration declaration;
+
+    /**
+     * source the AST was parsed from.
+     */
+    private final String source;
+
+    /**
+     * fully qualified name.
+     */
+    private final String qualifiedName;
+
+    /**
+     * qualified names of the superclasses, nearest first.
+     */
+    private final List<String> superclassNames;
+
+    /**
+     * visible fields by name.
+     */
+    private final Map<String, FieldDescriptor> fieldMap;
+
+    /**
+     * javabean getters of the type and its superclasses.
+     */
+    private final List<String> getters;
+
+    /**
+     * does the type implement Comparable?
+     */
+    private final boolean comparable;
+
+    /**
+     * does the superclass directly implement Comparable?
+     */
+    private final boolean superclassComparable;
+
+    /**
+     * Creates a new model for a type declared in an AST with resolved bindings.
+     * @param declaration type declaration
+     * @param source source the AST was parsed from
+     * @throws JavaModelException if the binding of the type can't be resolved
+     */
+    public BindingTypeModel(AbstractTypeDeclaration declaration, String source) throws JavaModelException
+    {
+        super(null, null, null);
+        this.declaration = declaration;
+        this.source = source;
+
+        ITypeBinding binding = declaration.resolveBinding();
+        if (binding == null)
+        {
+            throw new JavaModelException(new CoreException(new Status(
+                IStatus.ERROR,
+                CCPlugin.PLUGIN_ID,
+                MessageFormat.format(CCMessages.getString("BindingTypeModel.unresolved"), //$NON-NLS-1$
+                    new Object[]{declaration.getName().getIdentifier()}))));
+        }
+
+        String binaryName = binding.getBinaryName();
+        this.qualifiedName = binaryName != null ? binaryName : binding.getQualifiedName();
+
+        List<ITypeBinding> superclasses = collectSuperclasses(binding);
+        List<String> names = new ArrayList<String>(superclasses.size());
+        for (int j = 0; j < superclasses.size(); j++)
+        {
+            names.add(superclasses.get(j).getQualifiedName());
+        }
+        this.superclassNames = Collections.unmodifiableList(names);
+        this.fieldMap = Collections.unmodifiableMap(collectFields(superclasses));
+        this.getters = Collections.unmodifiableList(collectGetters(superclasses));
+
+        this.comparable = isComparable(binding, new HashSet<String>());
+        ITypeBinding superclass = binding.getSuperclass();
+        this.superclassComparable = superclass != null && containsComparable(superclass.getInterfaces());
+    }
+
+    /**
+     * Collects the classes declared in a compilation unit, including member classes.
+     * @param astRoot AST of the compilation unit
+     * @return class declarations, interfaces and enums excluded
+     */
+    public static List<TypeDeclaration> findClasses(CompilationUnit astRoot)
+    {
+        List<TypeDeclaration> classes = new ArrayList<TypeDeclaration>();
+        collectClasses(astRoot.types(), classes);
+        return classes;
+    }
+
+    /**
+     * Selects the generators to run on this type: the ones whose method exists and looks generated by commonclipse,
+     * and optionally the ones whose method is missing. Methods which don't create the builder are never selected; the
+     * others must be added with UnitRewrite.setReplaceGeneratedOnly() enabled, to also skip methods changed by hand.
+     * @param generators candidate generators
+     * @param addMissing select the generators whose method doesn't exist?
+     * @return selected generators, possibly empty
+     */
+    public Generator[] selectGenerators(Generator[] generators, boolean addMissing)
+    {
+        List<Generator> selected = new ArrayList<Generator>(generators.length);
+        for (int j = 0; j < generators.length; j++)
+        {
+            String existing = getExistingSource(generators[j]);
+            if (existing != null ? generators[j].isGenerated(existing) : addMissing)
+            {
+                selected.add(generators[j]);
+            }
+        }
+        return selected.toArray(new Generator[selected.size()]);
+    }
+
+    /**
+     * @see net.sf.commonclipse.TypeModel#getTypeName()
+     */
+    @Override
+    public String getTypeName()
+    {
+        return this.declaration.getName().getIdentifier();
+    }
+
+    /**
+     * @see net.sf.commonclipse.TypeModel#getQualifiedName()
+     */
+    @Override
+    public String getQualifiedName()
+    {
+        return this.qualifiedName;
+    }
+
+    /**
+     * Returns the superclasses the model depends on: fields and getters are collected from them, so the generated
+     * methods become stale when any of them changes.
+     * @return read only List of qualified names, nearest superclass first and ending with
+     * <code>java.lang.Object</code>
+     */
+    public List<String> getSuperclassNames()
+    {
+        return this.superclassNames;
+    }
+
+    /**
+     * @see net.sf.commonclipse.TypeModel#isComparable()
+     */
+    @Override
+    public boolean isComparable()
+    {
+        return this.comparable;
+    }
+
+    /**
+     * @see net.sf.commonclipse.TypeModel#isSuperclassComparable()
+     */
+    @Override
+    public boolean isSuperclassComparable()
+    {
+        return this.superclassComparable;
+    }
+
+    /**
+     * @see net.sf.commonclipse.TypeModel#getJavabeanGetters()
+     */
+    @Override
+    public List<String> getJavabeanGetters()
+    {
+        return this.getters;
+    }
+
+    /**
+     * @see net.sf.commonclipse.TypeModel#getExistingSource(net.sf.commonclipse.Generator)
+     */
+    @Override
+    public String getExistingSource(Generator generator)
+    {
+        MethodDeclaration existing = generator.findExistingMethod(this.declaration);
+        if (existing == null)
+        {
+            return null;
+        }
+        return this.source.substring(existing.getStartPosition(), existing.getStartPosition() + existing.getLength());
+    }
+
+    /**
+     * @see net.sf.commonclipse.TypeModel#findDeclaration(org.eclipse.jdt.core.dom.CompilationUnit)
+     */
+    @Override
+    protected AbstractTypeDeclaration findDeclaration(CompilationUnit astRoot)
+    {
+        return this.declaration.getRoot() == astRoot ? this.declaration : null;
+    }
+
+    /**
+     * @see net.sf.commonclipse.TypeModel#buildFieldMap()
+     */
+    @Override
+    protected Map<String, FieldDescriptor> buildFieldMap()
+    {
+        return this.fieldMap;
+    }
+
+    /**
+     * Collects class declarations, recursively.
+     * @param types list of BodyDeclaration
+     * @param classes found classes
+     */
+    private static void collectClasses(List< ? > types, List<TypeDeclaration> classes)
+    {
+        Iterator< ? > iterator = types.iterator();
+        while (iterator.hasNext())
+        {
+            Object type = iterator.next();
+            if (type instanceof TypeDeclaration)
+            {
+                TypeDeclaration declaration = (TypeDeclaration) type;
+                if (!declaration.isInterface())
+                {
+                    classes.add(declaration);
+                }
+                collectClasses(declaration.bodyDeclarations(), classes);
+            }
+        }
+    }
+
+    /**
+     * Collects the superclasses of a type.
+     * @param binding type binding
+     * @return erasures of the superclasses, nearest first
+     */
+    private static List<ITypeBinding> collectSuperclasses(ITypeBinding binding)
+    {
+        List<ITypeBinding> superclasses = new ArrayList<ITypeBinding>();
+
+        // guard against cycles in broken code
+        Set<String> visited = new HashSet<String>();
+        ITypeBinding current = binding.getSuperclass();
+        while (current != null && visited.add(current.getErasure().getKey()))
+        {
+            // declared members of the generic class, not of the parameterized superclass
+            superclasses.add(current.getErasure());
+            current = current.getSuperclass();
+        }
+        return superclasses;
+    }
+
+    /**
+     * Collects the fields visible by the type, like TypeModel does with the Java model. Fields of the type are taken
+     * from the AST to keep the declaration order.
+     * @param superclasses superclasses of the type
+     * @return Map containing field names - FieldDescriptor objects
+     */
+    private Map<String, FieldDescriptor> collectFields(List<ITypeBinding> superclasses)
+    {
+        Map<String, FieldDescriptor> fieldNames = new LinkedHashMap<String, FieldDescriptor>();
+
+        Iterator< ? > members = this.declaration.bodyDeclarations().iterator();
+        while (members.hasNext())
+        {
+            Object member = members.next();
+            if (member instanceof FieldDeclaration)
+            {
+                Iterator< ? > fragments = ((FieldDeclaration) member).fragments().iterator();
+                while (fragments.hasNext())
+                {
+                    IVariableBinding field = ((VariableDeclarationFragment) fragments.next()).resolveBinding();
+                    if (field != null)
+                    {
+                        addField(field, fieldNames, true);
+                    }
+                }
+            }
+        }
+
+        Iterator<ITypeBinding> iterator = superclasses.iterator();
+        while (iterator.hasNext())
+        {
+            ITypeBinding superclass = iterator.next();
+            if (OBJECT.equals(superclass.getQualifiedName()))
+            {
+                break;
+            }
+
+            IVariableBinding[] declaredFields = superclass.getDeclaredFields();
+            for (int j = 0; j < declaredFields.length; j++)
+            {
+                addField(declaredFields[j], fieldNames, false);
+            }
+        }
+        return fieldNames;
+    }
+
+    /**
+     * Adds a field to fieldNames if it's a visible instance field not hidden by a subclass.
+     * @param field field binding
+     * @param fieldNames Map containing field names - FieldDescriptor objects
+     * @param includePrivate include private fields?
+     */
+    private void addField(IVariableBinding field, Map<String, FieldDescriptor> fieldNames, boolean includePrivate)
+    {
+        int flags = field.getModifiers();
+        if (Modifier.isStatic(flags) || !includePrivate && Modifier.isPrivate(flags)
+            || fieldNames.containsKey(field.getName()))
+        {
+            return;
+        }
+
+        ITypeBinding fieldType = field.getType().getErasure();
+        ITypeBinding elementType = fieldType.isArray() ? fieldType.getElementType().getErasure() : fieldType;
+
+        // dom modifiers use the same values as the Java model flags
+        fieldNames.put(field.getName(), new FieldDescriptor(
+            field.getName(),
+            field.getDeclaringClass().getErasure().getQualifiedName(),
+            getSignature(fieldType),
+            flags,
+            elementType.isEnum()));
+    }
+
+    /**
+     * Collects the javabean getters of the type and its superclasses. Methods of the type are taken from the AST to
+     * keep the declaration order.
+     * @param superclasses superclasses of the type
+     * @return method names, without duplicates
+     */
+    private List<String> collectGetters(List<ITypeBinding> superclasses)
+    {
+        Set<String> getterNames = new LinkedHashSet<String>();
+
+        Iterator< ? > members = this.declaration.bodyDeclarations().iterator();
+        while (members.hasNext())
+        {
+            Object member = members.next();
+            if (member instanceof MethodDeclaration)
+            {
+                IMethodBinding method = ((MethodDeclaration) member).resolveBinding();
+                if (method != null)
+                {
+                    addGetter(method, getterNames);
+                }
+            }
+        }
+
+        Iterator<ITypeBinding> iterator = superclasses.iterator();
+        while (iterator.hasNext())
+        {
+            IMethodBinding[] methods = iterator.next().getDeclaredMethods();
+            for (int j = 0; j < methods.length; j++)
+            {
+                addGetter(methods[j], getterNames);
+            }
+        }
+        return new ArrayList<String>(getterNames);
+    }
+
+    /**
+     * Adds a method to getterNames if it's a javabean getter.
+     * @param method method binding
+     * @param getterNames names of the getters
+     */
+    private void addGetter(IMethodBinding method, Set<String> getterNames)
+    {
+        if (!method.isConstructor() && method.getParameterTypes().length == 0
+            && Modifier.isPublic(method.getModifiers())
+            && isJavabeanGetter(method.getName(), getSignature(method.getReturnType().getErasure())))
+        {
+            getterNames.add(method.getName());
+        }
+    }
+
+    /**
+     * Returns the resolved signature of a type.
+     * @param type type binding, already erased
+     * @return type signature, e.g. <code>I</code>, <code>[D</code> or <code>Ljava.util.List;</code>
+     */
+    private static String getSignature(ITypeBinding type)
+    {
+        if (type.isArray())
+        {
+            return Signature.createArraySignature(getSignature(type.getElementType().getErasure()), type
+                .getDimensions());
+        }
+
+        // local and anonymous types have no qualified name
+        String name = type.getQualifiedName();
+        return Signature.createTypeSignature(name.length() > 0 ? name : type.getName(), true);
+    }
+
+    /**
+     * Does a type implement <code>java.lang.Comparable</code>, through its interfaces or superclasses?
+     * @param type type binding
+     * @param visited keys of the types already checked
+     * @return <code>true</code> if Comparable is found
+     */
+    private static boolean isComparable(ITypeBinding type, Set<String> visited)
+    {
+        if (type == null || !visited.add(type.getErasure().getKey()))
+        {
+            return false;
+        }
+
+        ITypeBinding[] interfaces = type.getInterfaces();
+        if (containsComparable(interfaces))
+        {
+            return true;
+        }
+
+        for (int j = 0; j < interfaces.length; j++)
+        {
+            if (isComparable(interfaces[j], visited))
+            {
+                return true;
+            }
+        }
+        return isComparable(type.getSuperclass(), visited);
+    }
+
+    /**
+     * Checks if any of the given types is <code>java.lang.Comparable</code>.
+     * @param interfaces type bindings
+     * @return <code>true</code> if Comparable is found
+     */
+    private static boolean containsComparable(ITypeBinding[] interfaces)
+    {
+        for (int j = 0; j < interfaces.length; j++)
+        {
+            if (COMPARABLE.equals(interfaces[j].getErasure().getQualifiedName()))
+            {
+                return true;
+            }
+        }
+        return false;
+    }
+
+}
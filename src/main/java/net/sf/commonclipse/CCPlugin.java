@@ -18,7 +18,10 @@ package net.sf.commonclipse;
 
 import org.eclipse.core.resources.IWorkspace;
 import org.eclipse.core.resources.ResourcesPlugin;
+import org.eclipse.jdt.core.ElementChangedEvent;
+import org.eclipse.jdt.core.JavaCore;
 import org.eclipse.ui.plugin.AbstractUIPlugin;
+import org.osgi.framework.BundleContext;
 
 
 /**
@@ -34,6 +37,11 @@ public class CCPlugin extends AbstractUIPlugin
      */
     public static final String PLUGIN_NAME = "commonclipse"; //$NON-NLS-1$
 
+    /**
+     * plugin id, used in status objects.
+     */
+    public static final String PLUGIN_ID = "net.sf.commonclipse"; //$NON-NLS-1$
+
     /**
      * key for ToStringStyle name.
      */
@@ -59,6 +67,11 @@ public class CCPlugin extends AbstractUIPlugin
      */
     public static final String P_HASHCODE_SUPER = "hashcode_super"; //$NON-NLS-1$
 
+    /**
+     * keep the constants of an existing hashCode() method.
+     */
+    public static final String P_HASHCODE_REUSE = "hashcode_reuse"; //$NON-NLS-1$
+
     /**
      * add appendSuper() in toString.
      */
@@ -99,6 +112,11 @@ public class CCPlugin extends AbstractUIPlugin
      */
     public static final String P_OVERRIDE_ANNOTATION = "override_annotation"; //$NON-NLS-1$
 
+    /**
+     * regenerate generated methods in the background when instance fields change in an editor.
+     */
+    public static final String P_AUTOREGENERATE = "auto_regenerate"; //$NON-NLS-1$
+
     /**
      * Shared instance.
      */
@@ -112,6 +130,33 @@ public class CCPlugin extends AbstractUIPlugin
         plugin = this;
     }
 
+    /**
+     * @see org.eclipse.ui.plugin.AbstractUIPlugin#start(org.osgi.framework.BundleContext)
+     */
+    @Override
+    public void start(BundleContext context) throws Exception
+    {
+        super.start(context);
+        JavaCore.addElementChangedListener(HierarchyCache.getDefault(), ElementChangedEvent.POST_CHANGE
+            | ElementChangedEvent.POST_RECONCILE);
+        FormatterCache.getDefault().start();
+        JavaCore.addElementChangedListener(FieldChangeListener.getDefault(), ElementChangedEvent.POST_RECONCILE);
+    }
+
+    /**
+     * @see org.eclipse.ui.plugin.AbstractUIPlugin#stop(org.osgi.framework.BundleContext)
+     */
+    @Override
+    public void stop(BundleContext context) throws Exception
+    {
+        JavaCore.removeElementChangedListener(FieldChangeListener.getDefault());
+        FieldChangeListener.getDefault().stop();
+        JavaCore.removeElementChangedListener(HierarchyCache.getDefault());
+        HierarchyCache.getDefault().clear();
+        FormatterCache.getDefault().stop();
+        super.stop(context);
+    }
+
     /**
      * Returns the shared instance.
      * @return shared instance
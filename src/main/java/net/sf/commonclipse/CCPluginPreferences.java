@@ -16,16 +16,20 @@
  */
 package net.sf.commonclipse;
 
-import java.util.StringTokenizer;
+import java.util.Iterator;
+import java.util.Properties;
 import java.util.regex.Pattern;
-import java.util.regex.PatternSyntaxException;
 
+import org.eclipse.jface.preference.IPreferenceStore;
 import org.eclipse.jface.util.IPropertyChangeListener;
 import org.eclipse.jface.util.PropertyChangeEvent;
 
 
 /**
- * Provide access to parsed plugin preferences.
+ * Provide access to parsed plugin preferences. An instance is an immutable snapshot of the preference store: a
+ * generation run takes it once and passes it to all the generators, so values are not looked up for every method or
+ * field, and a parallel batch sees consistent values even if preferences are changed while it is running. The shared
+ * snapshot is replaced when any preference changes.
  * @author fgiust
  * @version $Revision$ ($Author$)
  */
@@ -33,97 +37,149 @@ public final class CCPluginPreferences
 {
 
     /**
-     * the single instance of CCPluginPreferences.
+     * the current snapshot, rebuilt when preferences change.
      */
-    private static CCPluginPreferences instance;
+    private static volatile CCPluginPreferences instance;
+
+    /**
+     * Preference listener, replaces the current snapshot when preferences change.
+     */
+    private static final IPropertyChangeListener PREFERENCE_LISTENER = new IPropertyChangeListener()
+    {
+
+        /**
+         * @see IPropertyChangeListener.propertyChange()
+         */
+        @Override
+        public void propertyChange(PropertyChangeEvent event)
+        {
+            synchronized (CCPluginPreferences.class)
+            {
+                instance = new CCPluginPreferences(CCPlugin.getDefault().getPreferenceStore());
+            }
+        }
+    };
 
     /**
      * custom toStringStyle - fully qualified class name.
      */
-    private String toStringFQCN;
+    private final String toStringFQCN;
 
     /**
      * custom toStringStyle - use.
      */
-    private boolean toStringUseCustom;
+    private final boolean toStringUseCustom;
 
     /**
      * custom toStringStyle - class and constant only.
      */
-    private String toStringClassAndConstant;
+    private final String toStringClassAndConstant;
 
     /**
      * Regular expression which will match all the excluded field names.
      */
-    private Pattern excludePattern;
+    private final Pattern excludePattern;
 
     /**
-     * Preference listener. This is needed to process changes to ToStringStyle and excluded fields list avoiding to
-     * parse values at each run
+     * append super to hashCode()?
      */
-    private IPropertyChangeListener preferenceListener = new IPropertyChangeListener()
-    {
+    private final boolean hashcodeSuper;
 
-        /**
-         * @see IPropertyChangeListener.propertyChange()
-         */
-        @Override
-        public void propertyChange(PropertyChangeEvent event)
-        {
+    /**
+     * keep the constants of an existing hashCode()?
+     */
+    private final boolean hashcodeReuse;
 
-            if (event.getProperty().equals(CCPlugin.P_TOSTRING_STYLE))
-            {
-                evaluateToStringStyle();
-            }
-            else if (event.getProperty().equals(CCPlugin.P_EXCLUDE))
-            {
-                evaluateExclusionList();
-            }
+    /**
+     * append super to toString()?
+     */
+    private final boolean toStringSuper;
 
-        }
-    };
+    /**
+     * append super to equals()?
+     */
+    private final boolean equalsSuper;
 
     /**
-     * private constructor. Initialize plugin preferences and set up preference listener
+     * append super to compareTo()?
      */
-    private CCPluginPreferences()
-    {
-        CCPlugin.getDefault().getPreferenceStore().addPropertyChangeListener(this.preferenceListener);
-        evaluateToStringStyle();
-        evaluateExclusionList();
-    }
+    private final boolean compareToSuper;
 
     /**
-     * returns the instance of plugin preferences.
-     * @return single instance of CCPluginPreferences
+     * add an instance check to equals()?
      */
-    public static CCPluginPreferences getPreferences()
+    private final boolean equalsInstanceCheck;
+
+    /**
+     * use javabean properties in toString()?
+     */
+    private final boolean javabeanToString;
+
+    /**
+     * overwrite existing methods without confirmation?
+     */
+    private final boolean dontAskOnOverwrite;
+
+    /**
+     * use final parameters?
+     */
+    private final boolean finalParameters;
+
+    /**
+     * add an @Override annotation?
+     */
+    private final boolean overrideAnnotation;
+
+    /**
+     * regenerate methods when fields change?
+     */
+    private final boolean autoRegenerate;
+
+    /**
+     * Reads and parses all the values in a preference store.
+     * @param store preference store containing the plugin preferences
+     */
+    public CCPluginPreferences(IPreferenceStore store)
     {
-        if (instance == null)
-        {
-            instance = new CCPluginPreferences();
-        }
-        return instance;
+        this(toProperties(store));
     }
 
     /**
-     * Gets the CCPlugin.P_TOSTRING_STYLE preference from the preference store and parse it.
+     * Parses the given preference values, without the need of a running workbench. Values which are not given take
+     * the default.
+     * @param values preference values by key (CCPlugin.P_*), booleans as <code>true</code> or <code>false</code>
      */
-    protected void evaluateToStringStyle()
+    public CCPluginPreferences(Properties values)
     {
+        Properties store = new Properties(getDefaultValues());
+        store.putAll(values);
+
+        this.hashcodeSuper = getBoolean(store, CCPlugin.P_HASHCODE_SUPER);
+        this.hashcodeReuse = getBoolean(store, CCPlugin.P_HASHCODE_REUSE);
+        this.toStringSuper = getBoolean(store, CCPlugin.P_TOSTRING_SUPER);
+        this.equalsSuper = getBoolean(store, CCPlugin.P_EQUALS_SUPER);
+        this.compareToSuper = getBoolean(store, CCPlugin.P_COMPARETO_SUPER);
+        this.equalsInstanceCheck = getBoolean(store, CCPlugin.P_EQUALS_INSTANCECHECK);
+        this.javabeanToString = CCPlugin.TOSTRINGSTYLE_BEAN.equals(store.getProperty(CCPlugin.P_TOSTRING_BEAN));
+        this.dontAskOnOverwrite = getBoolean(store, CCPlugin.P_DONTASKONOVERWRITE);
+        this.finalParameters = getBoolean(store, CCPlugin.P_FINALPARAMETERS);
+        this.overrideAnnotation = getBoolean(store, CCPlugin.P_OVERRIDE_ANNOTATION);
+        this.autoRegenerate = getBoolean(store, CCPlugin.P_AUTOREGENERATE);
+        this.excludePattern = generateRegExp(store.getProperty(CCPlugin.P_EXCLUDE));
+
         // custom toString style
-        String toStringfullStyle = CCPlugin.getDefault().getPreferenceStore().getString(CCPlugin.P_TOSTRING_STYLE);
+        String toStringfullStyle = store.getProperty(CCPlugin.P_TOSTRING_STYLE);
 
         if (toStringfullStyle == null || toStringfullStyle.equals("")) //$NON-NLS-1$
         {
-            // not using a custom toStringStyle, set flag to false and clean up
+            // not using a custom toStringStyle
             this.toStringUseCustom = false;
             this.toStringFQCN = null;
             this.toStringClassAndConstant = null;
         }
         else
         {
-            // use a custom toStringStyle, set flag to true and parse needed parts
+            // use a custom toStringStyle, parse needed parts
             this.toStringUseCustom = true;
 
             int constantPos = toStringfullStyle.lastIndexOf("."); //$NON-NLS-1$
@@ -134,13 +190,96 @@ public final class CCPluginPreferences
         }
     }
 
+    /**
+     * Returns the default value of all the plugin preferences.
+     * @return default values by key (CCPlugin.P_*)
+     */
+    public static Properties getDefaultValues()
+    {
+        Properties defaults = new Properties();
+        defaults.setProperty(CCPlugin.P_TOSTRING_BEAN, CCPlugin.TOSTRINGSTYLE_BEAN);
+        defaults.setProperty(CCPlugin.P_TOSTRING_STYLE, ""); //$NON-NLS-1$
+        defaults.setProperty(CCPlugin.P_TOSTRING_SUPER, Boolean.FALSE.toString());
+        defaults.setProperty(CCPlugin.P_HASHCODE_SUPER, Boolean.TRUE.toString());
+        defaults.setProperty(CCPlugin.P_HASHCODE_REUSE, Boolean.TRUE.toString());
+        defaults.setProperty(CCPlugin.P_EQUALS_SUPER, Boolean.TRUE.toString());
+        defaults.setProperty(CCPlugin.P_COMPARETO_SUPER, Boolean.TRUE.toString());
+        defaults.setProperty(CCPlugin.P_EQUALS_INSTANCECHECK, Boolean.FALSE.toString());
+        defaults.setProperty(CCPlugin.P_EXCLUDE, ExcludedFields.DEFAULT);
+        defaults.setProperty(CCPlugin.P_FINALPARAMETERS, Boolean.FALSE.toString());
+        defaults.setProperty(CCPlugin.P_DONTASKONOVERWRITE, Boolean.FALSE.toString());
+        defaults.setProperty(CCPlugin.P_OVERRIDE_ANNOTATION, Boolean.TRUE.toString());
+        defaults.setProperty(CCPlugin.P_AUTOREGENERATE, Boolean.FALSE.toString());
+        return defaults;
+    }
+
+    /**
+     * Copies the values of all the plugin preferences from a preference store.
+     * @param store preference store
+     * @return values by key
+     */
+    private static Properties toProperties(IPreferenceStore store)
+    {
+        Properties values = new Properties();
+        Iterator<Object> iterator = getDefaultValues().keySet().iterator();
+        while (iterator.hasNext())
+        {
+            String key = (String) iterator.next();
+            values.setProperty(key, store.getString(key));
+        }
+        return values;
+    }
+
+    /**
+     * Reads a boolean value.
+     * @param values preference values
+     * @param key preference key
+     * @return <code>true</code> if the value is "true"
+     */
+    private static boolean getBoolean(Properties values, String key)
+    {
+        return Boolean.valueOf(values.getProperty(key)).booleanValue();
+    }
+
+    /**
+     * returns the current snapshot of plugin preferences. Only the first call takes a lock.
+     * @return current CCPluginPreferences
+     */
+    public static CCPluginPreferences getPreferences()
+    {
+        CCPluginPreferences preferences = instance;
+        if (preferences == null)
+        {
+            synchronized (CCPluginPreferences.class)
+            {
+                if (instance == null)
+                {
+                    IPreferenceStore store = CCPlugin.getDefault().getPreferenceStore();
+                    store.addPropertyChangeListener(PREFERENCE_LISTENER);
+                    instance = new CCPluginPreferences(store);
+                }
+                preferences = instance;
+            }
+        }
+        return preferences;
+    }
+
     /**
      * Append super to hashcode method?
      * @return <code>true</code> if appendSuper should be used
      */
     public boolean appendSuperToHashcode()
     {
-        return CCPlugin.getDefault().getPreferenceStore().getBoolean(CCPlugin.P_HASHCODE_SUPER);
+        return this.hashcodeSuper;
+    }
+
+    /**
+     * Keep the HashCodeBuilder constants of an existing hashCode() method when regenerating it?
+     * @return <code>true</code> if existing constants should be reused
+     */
+    public boolean reuseHashcodeConstants()
+    {
+        return this.hashcodeReuse;
     }
 
     /**
@@ -149,7 +288,7 @@ public final class CCPluginPreferences
      */
     public boolean appendSuperToToString()
     {
-        return CCPlugin.getDefault().getPreferenceStore().getBoolean(CCPlugin.P_TOSTRING_SUPER);
+        return this.toStringSuper;
     }
 
     /**
@@ -158,7 +297,7 @@ public final class CCPluginPreferences
      */
     public boolean appendSuperToEquals()
     {
-        return CCPlugin.getDefault().getPreferenceStore().getBoolean(CCPlugin.P_EQUALS_SUPER);
+        return this.equalsSuper;
     }
 
     /**
@@ -167,7 +306,7 @@ public final class CCPluginPreferences
      */
     public boolean appendSuperToCompareTo()
     {
-        return CCPlugin.getDefault().getPreferenceStore().getBoolean(CCPlugin.P_COMPARETO_SUPER);
+        return this.compareToSuper;
     }
 
     /**
@@ -176,7 +315,7 @@ public final class CCPluginPreferences
      */
     public boolean addInstanceCheckToEquals()
     {
-        return CCPlugin.getDefault().getPreferenceStore().getBoolean(CCPlugin.P_EQUALS_INSTANCECHECK);
+        return this.equalsInstanceCheck;
     }
 
     /**
@@ -185,8 +324,7 @@ public final class CCPluginPreferences
      */
     public boolean useJavabeanToString()
     {
-        return CCPlugin.TOSTRINGSTYLE_BEAN.equals(CCPlugin.getDefault().getPreferenceStore().getString(
-            CCPlugin.P_TOSTRING_BEAN));
+        return this.javabeanToString;
     }
 
     /**
@@ -195,7 +333,7 @@ public final class CCPluginPreferences
      */
     public boolean dontAskOnOverwrite()
     {
-        return CCPlugin.getDefault().getPreferenceStore().getBoolean(CCPlugin.P_DONTASKONOVERWRITE);
+        return this.dontAskOnOverwrite;
     }
 
     /**
@@ -204,7 +342,7 @@ public final class CCPluginPreferences
      */
     public boolean useFinalParameters()
     {
-        return CCPlugin.getDefault().getPreferenceStore().getBoolean(CCPlugin.P_FINALPARAMETERS);
+        return this.finalParameters;
     }
 
     /**
@@ -231,7 +369,16 @@ public final class CCPluginPreferences
      */
     public boolean addOverrideAnnotation()
     {
-        return CCPlugin.getDefault().getPreferenceStore().getBoolean(CCPlugin.P_OVERRIDE_ANNOTATION);
+        return this.overrideAnnotation;
+    }
+
+    /**
+     * Regenerate the generated methods of a type in the background when its instance fields change in an editor?
+     * @return <code>true</code> if methods should be regenerated automatically
+     */
+    public boolean autoRegenerate()
+    {
+        return this.autoRegenerate;
     }
 
     /**
@@ -252,15 +399,6 @@ public final class CCPluginPreferences
         return this.toStringClassAndConstant;
     }
 
-    /**
-     * Gets the CCPlugin.P_EXCLUDE preference from the preference store and generates a Pattern from it.
-     */
-    protected void evaluateExclusionList()
-    {
-        String excludedString = CCPlugin.getDefault().getPreferenceStore().getString(CCPlugin.P_EXCLUDE);
-        this.excludePattern = generateRegExp(excludedString);
-    }
-
     /**
      * Generate a single regular expression used to match excluded fields.
      * @param stringList list of fields separate by ";"
@@ -268,34 +406,7 @@ public final class CCPluginPreferences
      */
     public static Pattern generateRegExp(String stringList)
     {
-        if (stringList == null || stringList.length() == 0)
-        {
-            // this pattern shouldn't mach any field name
-            return Pattern.compile("^[0]$"); //$NON-NLS-1$
-        }
-        StringTokenizer st = new StringTokenizer(stringList, ";"); //$NON-NLS-1$
-        StringBuffer buffer = new StringBuffer();
-
-        while (st.hasMoreElements())
-        {
-            buffer.append("(^"); //$NON-NLS-1$
-            buffer.append(st.nextToken().replace('?', '.'));
-            buffer.append("$)"); //$NON-NLS-1$
-
-            if (st.hasMoreElements())
-            {
-                buffer.append('|');
-            }
-        }
-        try
-        {
-            return Pattern.compile(buffer.toString());
-        }
-        catch (PatternSyntaxException e)
-        {
-            // just to avoid any possible error
-            return Pattern.compile("^[0]$"); //$NON-NLS-1$
-        }
+        return ExcludedFields.compile(stringList);
     }
 
 }
@@ -16,12 +16,15 @@
  */
 package net.sf.commonclipse;
 
-import org.eclipse.jdt.core.IBuffer;
-import org.eclipse.jdt.core.IMethod;
-import org.eclipse.jdt.core.ISourceRange;
-import org.eclipse.jdt.core.IType;
-import org.eclipse.jdt.core.ITypeHierarchy;
+import java.util.ArrayList;
+import java.util.List;
+
 import org.eclipse.jdt.core.JavaModelException;
+import org.eclipse.jdt.core.dom.AST;
+import org.eclipse.jdt.core.dom.AbstractTypeDeclaration;
+import org.eclipse.jdt.core.dom.TypeDeclaration;
+import org.eclipse.jdt.core.dom.rewrite.ASTRewrite;
+import org.eclipse.jdt.core.dom.rewrite.ListRewrite;
 
 
 /**
@@ -62,32 +65,33 @@ public final class CompareToGenerator extends Generator
      * @see net.sf.commonclipse.Generator#getMethodName()
      */
     @Override
-    protected String getMethodName()
+    public String getMethodName()
     {
         return "compareTo"; //$NON-NLS-1$
     }
 
     /**
-     * @see net.sf.commonclipse.Generator#createMethod(org.eclipse.jdt.core.IType)
+     * @see net.sf.commonclipse.Generator#createMethod(net.sf.commonclipse.TypeModel, net.sf.commonclipse.UnitImports, net.sf.commonclipse.CCPluginPreferences)
      */
     @Override
-    protected String createMethod(IType type) throws JavaModelException
+    protected String createMethod(TypeModel model, UnitImports imports, CCPluginPreferences preferences)
+        throws JavaModelException
     {
 
         StringBuffer buffer = new StringBuffer();
 
         buffer.append(getJavadoc());
 
-        String className = type.getElementName();
+        String className = model.getTypeName();
 
-        if (CCPluginPreferences.getPreferences().addOverrideAnnotation())
+        if (preferences.addOverrideAnnotation())
         {
             buffer.append("@Override\n"); //$NON-NLS-1$
         }
 
         buffer.append("public int compareTo("); //$NON-NLS-1$
 
-        if (CCPluginPreferences.getPreferences().useFinalParameters())
+        if (preferences.useFinalParameters())
         {
             buffer.append("final "); //$NON-NLS-1$
         }
@@ -97,50 +101,32 @@ public final class CompareToGenerator extends Generator
         buffer.append(className);
         buffer.append(" myClass = ("); //$NON-NLS-1$
         buffer.append(className);
-        buffer.append(") object;\nreturn new CompareToBuilder()\n"); //$NON-NLS-1$
+        buffer.append(") object;\nreturn new "); //$NON-NLS-1$
+        buffer.append(imports.addImport(BUILDER_CLASS));
+        buffer.append("()\n"); //$NON-NLS-1$
 
-        if (CCPluginPreferences.getPreferences().appendSuperToCompareTo())
+        if (preferences.appendSuperToCompareTo())
         {
             // add only if superclass implements the Comparable interface
-            if (doesSuperImplementsComparable(type))
+            if (model.isSuperclassComparable())
             {
                 buffer.append(".appendSuper(super.compareTo(object))\n"); //$NON-NLS-1$
             }
         }
 
-        buffer.append(buildAppenderList(type));
+        buffer.append(buildAppenderList(model, preferences));
 
         buffer.append(".toComparison();\n}\n"); //$NON-NLS-1$
         return buffer.toString();
     }
 
     /**
-     * Checks if superclass implements comparable.
-     * @param type IType
-     * @return <code>true</code> if superclass implements comparable
-     * @throws JavaModelException exception thrown when analyzing type hierarchy
+     * @see net.sf.commonclipse.Generator#getBuilderClass()
      */
-    private boolean doesSuperImplementsComparable(IType type) throws JavaModelException
+    @Override
+    protected String getBuilderClass()
     {
-        // get hierarchy
-        ITypeHierarchy hierarchy = type.newSupertypeHierarchy(null);
-
-        // get superclass
-        IType superTypes = hierarchy.getSuperclass(type);
-
-        // get interfaces starting from superclass
-        IType[] interfaces = hierarchy.getSuperInterfaces(superTypes);
-
-        // does superclass implements comparable?
-        for (int j = 0; j < interfaces.length; j++)
-        {
-            if (interfaces[j].getFullyQualifiedName().equals("java.lang.Comparable")) //$NON-NLS-1$
-            {
-                return true;
-            }
-        }
-
-        return false;
+        return BUILDER_CLASS;
     }
 
     /**
@@ -153,78 +139,70 @@ public final class CompareToGenerator extends Generator
     }
 
     /**
-     * @see net.sf.commonclipse.Generator#getExistingMethod(org.eclipse.jdt.core.IType)
+     * Leaves out collections and maps: they are not Comparable and CompareToBuilder would throw a
+     * ClassCastException when comparing them.
+     * @see net.sf.commonclipse.Generator#getAppendedFields(net.sf.commonclipse.TypeModel)
      */
     @Override
-    protected IMethod getExistingMethod(IType type)
+    protected List<FieldDescriptor> getAppendedFields(TypeModel model) throws JavaModelException
     {
-        return type.getMethod(getMethodName(), new String[]{"QObject;"}); //$NON-NLS-1$
+        return removeCollections(model.getFields());
     }
 
     /**
-     * @see net.sf.commonclipse.Generator#addImports(org.eclipse.jdt.core.IType)
+     * Removes collections and maps from a list of fields.
+     * @param fields fields in declaration order
+     * @return List of FieldDescriptor, in declaration order
      */
-    @Override
-    protected void addImports(IType type) throws JavaModelException
+    static List<FieldDescriptor> removeCollections(List<FieldDescriptor> fields)
     {
-        type.getCompilationUnit().createImport(BUILDER_CLASS, null, null);
-
-        addImplementsComparable(type);
+        List<FieldDescriptor> comparable = new ArrayList<FieldDescriptor>(fields.size());
+        for (int j = 0, size = fields.size(); j < size; j++)
+        {
+            FieldDescriptor field = fields.get(j);
+            if (!field.isCollection())
+            {
+                comparable.add(field);
+            }
+        }
+        return comparable;
+    }
 
+    /**
+     * @see net.sf.commonclipse.Generator#getParameterSignatures()
+     */
+    @Override
+    protected String[] getParameterSignatures()
+    {
+        return new String[]{"QObject;"}; //$NON-NLS-1$
     }
 
     /**
      * Adds "implements Comparable" to class declaration.
-     * @param type IType
-     * @throws JavaModelException model exception
+     * @see net.sf.commonclipse.Generator#rewriteDeclaration(net.sf.commonclipse.TypeModel,
+     * org.eclipse.jdt.core.dom.AbstractTypeDeclaration, org.eclipse.jdt.core.dom.rewrite.ASTRewrite)
      */
-    private void addImplementsComparable(IType type) throws JavaModelException
+    @Override
+    protected void rewriteDeclaration(TypeModel model, AbstractTypeDeclaration declaration, ASTRewrite rewrite)
+        throws JavaModelException
     {
-
-        // does class already implements comparable?
-        IType[] interfaces = type.newSupertypeHierarchy(null).getAllInterfaces();
-        for (int j = 0, size = interfaces.length; j < size; j++)
-        {
-            if (interfaces[j].getFullyQualifiedName().equals("java.lang.Comparable")) //$NON-NLS-1$
-            {
-                return;
-            }
-        }
-
-        // find class declaration
-        ISourceRange nameRange = type.getNameRange();
-
-        // no declaration??
-        if (nameRange == null)
+        if (!(declaration instanceof TypeDeclaration))
         {
             return;
         }
 
-        // offset for END of class name
-        int offset = nameRange.getOffset() + nameRange.getLength();
-
-        IBuffer buffer = type.getCompilationUnit().getBuffer();
-        String contents = buffer.getText(offset, buffer.getLength() - offset);
-
-        // warning, this doesn't handle "implements" and "{" contained in comments in the middle of the declaration!
-        int indexOfPar = contents.indexOf("{"); //$NON-NLS-1$
-
-        contents = contents.substring(0, indexOfPar);
-
-        int indexOfImplements = contents.indexOf("implements"); //$NON-NLS-1$
-        if (indexOfImplements > -1)
-        {
-            buffer.replace(offset + indexOfImplements + "implements".length()//$NON-NLS-1$
-            , 0, " Comparable,"); //$NON-NLS-1$
-        }
-        else
+        // does class already implements comparable?
+        if (model.isComparable())
         {
-            buffer.replace(offset, 0, " implements Comparable"); //$NON-NLS-1$
+            return;
         }
 
-        buffer.save(null, false);
-        buffer.close();
-
+        // the rewrite adds the "implements" keyword if needed, comments in the declaration are preserved
+        AST ast = declaration.getAST();
+        ListRewrite superInterfaces = rewrite.getListRewrite(
+            declaration,
+            TypeDeclaration.SUPER_INTERFACE_TYPES_PROPERTY);
+        superInterfaces.insertFirst(ast.newSimpleType(ast.newSimpleName("Comparable")), null); //$NON-NLS-1$
     }
 
     /**
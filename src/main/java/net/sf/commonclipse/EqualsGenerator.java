@@ -16,8 +16,9 @@
  */
 package net.sf.commonclipse;
 
-import org.eclipse.jdt.core.IMethod;
-import org.eclipse.jdt.core.IType;
+import java.util.ArrayList;
+import java.util.List;
+
 import org.eclipse.jdt.core.JavaModelException;
 
 
@@ -29,6 +30,11 @@ import org.eclipse.jdt.core.JavaModelException;
 public final class EqualsGenerator extends Generator
 {
 
+    /**
+     * number of cost classes used in sorting fields.
+     */
+    private static final int COST_CLASSES = 4;
+
     /**
      * class name for the Equals builder.
      */
@@ -59,39 +65,40 @@ public final class EqualsGenerator extends Generator
      * @see net.sf.commonclipse.Generator#getMethodName()
      */
     @Override
-    protected String getMethodName()
+    public String getMethodName()
     {
         return "equals"; //$NON-NLS-1$
     }
 
     /**
-     * @see net.sf.commonclipse.Generator#createMethod(org.eclipse.jdt.core.IType)
+     * @see net.sf.commonclipse.Generator#createMethod(net.sf.commonclipse.TypeModel, net.sf.commonclipse.UnitImports, net.sf.commonclipse.CCPluginPreferences)
      */
     @Override
-    protected String createMethod(IType type) throws JavaModelException
+    protected String createMethod(TypeModel model, UnitImports imports, CCPluginPreferences preferences)
+        throws JavaModelException
     {
 
         StringBuffer buffer = new StringBuffer();
 
         buffer.append(getJavadoc());
 
-        String className = type.getElementName();
+        String className = model.getTypeName();
 
-        if (CCPluginPreferences.getPreferences().addOverrideAnnotation())
+        if (preferences.addOverrideAnnotation())
         {
             buffer.append("@Override\n"); //$NON-NLS-1$
         }
 
         buffer.append("public boolean equals("); //$NON-NLS-1$
 
-        if (CCPluginPreferences.getPreferences().useFinalParameters())
+        if (preferences.useFinalParameters())
         {
             buffer.append("final "); //$NON-NLS-1$
         }
 
         buffer.append("Object object) {\n"); //$NON-NLS-1$
 
-        if (CCPluginPreferences.getPreferences().addInstanceCheckToEquals())
+        if (preferences.addInstanceCheckToEquals())
         {
             buffer.append("if (object == this) {\nreturn true;\n}\n"); //$NON-NLS-1$
         }
@@ -102,19 +109,30 @@ public final class EqualsGenerator extends Generator
         buffer.append(className);
         buffer.append(" rhs = ("); //$NON-NLS-1$
         buffer.append(className);
-        buffer.append(") object;\nreturn new EqualsBuilder()\n"); //$NON-NLS-1$
+        buffer.append(") object;\nreturn new "); //$NON-NLS-1$
+        buffer.append(imports.addImport(BUILDER_CLASS));
+        buffer.append("()\n"); //$NON-NLS-1$
 
-        if (CCPluginPreferences.getPreferences().appendSuperToEquals())
+        if (preferences.appendSuperToEquals())
         {
             buffer.append(".appendSuper(super.equals(object))\n"); //$NON-NLS-1$
         }
 
-        buffer.append(buildAppenderList(type));
+        buffer.append(buildAppenderList(model, preferences));
 
         buffer.append(".isEquals();\n}\n"); //$NON-NLS-1$
         return buffer.toString();
     }
 
+    /**
+     * @see net.sf.commonclipse.Generator#getBuilderClass()
+     */
+    @Override
+    protected String getBuilderClass()
+    {
+        return BUILDER_CLASS;
+    }
+
     /**
      * @see net.sf.commonclipse.Generator#getFieldAppender(java.lang.String, java.lang.String)
      */
@@ -125,21 +143,68 @@ public final class EqualsGenerator extends Generator
     }
 
     /**
-     * @see net.sf.commonclipse.Generator#getExistingMethod(org.eclipse.jdt.core.IType)
+     * @see net.sf.commonclipse.Generator#getAppendedFields(net.sf.commonclipse.TypeModel)
      */
     @Override
-    protected IMethod getExistingMethod(IType type)
+    protected List<FieldDescriptor> getAppendedFields(TypeModel model) throws JavaModelException
+    {
+        return sortByCost(model.getFields());
+    }
+
+    /**
+     * Sorts fields so that the cheapest comparisons come first: EqualsBuilder skips all the following appends once a
+     * difference is found. Primitives and enums are compared with ==, boxed types and strings with a simple
+     * equals(), arrays and collections element by element. The declaration order is kept within each group.
+     * @param fields fields in declaration order
+     * @return sorted List of FieldDescriptor
+     */
+    static List<FieldDescriptor> sortByCost(List<FieldDescriptor> fields)
+    {
+        List<FieldDescriptor> sorted = new ArrayList<FieldDescriptor>(fields.size());
+        for (int cost = 0; cost < COST_CLASSES; cost++)
+        {
+            for (int j = 0, size = fields.size(); j < size; j++)
+            {
+                FieldDescriptor field = fields.get(j);
+                if (getCost(field) == cost)
+                {
+                    sorted.add(field);
+                }
+            }
+        }
+        return sorted;
+    }
+
+    /**
+     * Returns the cost class of comparing a field.
+     * @param field field descriptor
+     * @return 0 for primitives and enums, 1 for boxed types and strings, 2 for other objects, 3 for arrays and
+     * collections
+     */
+    private static int getCost(FieldDescriptor field)
     {
-        return type.getMethod(getMethodName(), new String[]{"QObject;"}); //$NON-NLS-1$
+        if (field.isArray() || field.isCollection())
+        {
+            return 3;
+        }
+        if (field.isPrimitive() || field.isEnum())
+        {
+            return 0;
+        }
+        if (field.isBoxed() || "java.lang.String".equals(field.getElementTypeName())) //$NON-NLS-1$
+        {
+            return 1;
+        }
+        return 2;
     }
 
     /**
-     * @see net.sf.commonclipse.Generator#addImports(org.eclipse.jdt.core.IType)
+     * @see net.sf.commonclipse.Generator#getParameterSignatures()
      */
     @Override
-    protected void addImports(IType type) throws JavaModelException
+    protected String[] getParameterSignatures()
     {
-        type.getCompilationUnit().createImport(BUILDER_CLASS, null, null);
+        return new String[]{"QObject;"}; //$NON-NLS-1$
     }
 
     /**
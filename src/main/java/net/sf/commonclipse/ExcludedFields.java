@@ -0,0 +1,87 @@
+/* ====================================================================
+ *   Copyright 2003-2005 Fabrizio Giustina.
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ * ====================================================================
+ */
+package net.sf.commonclipse;
+
+import java.util.StringTokenizer;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+
+/**
+ * Parses the list of fields and properties excluded from the generated methods. It doesn't depend on Eclipse, so the
+ * annotation processor applies the same exclusions as the plugin.
+ * @author fgiust
+ * @version $Revision$ ($Author$)
+ */
+public final class ExcludedFields
+{
+
+    /**
+     * excluded fields by default.
+     */
+    public static final String DEFAULT = "class;log"; //$NON-NLS-1$
+
+    /**
+     * pattern used when nothing is excluded, doesn't match any field name.
+     */
+    private static final String NONE = "^[0]$"; //$NON-NLS-1$
+
+    /**
+     * don't instantiate.
+     */
+    private ExcludedFields()
+    {
+    }
+
+    /**
+     * Generate a single regular expression used to match excluded fields.
+     * @param stringList list of fields separate by ";"
+     * @return regular expression that matches all the given Strings
+     */
+    public static Pattern compile(String stringList)
+    {
+        if (stringList == null || stringList.length() == 0)
+        {
+            // this pattern shouldn't mach any field name
+            return Pattern.compile(NONE);
+        }
+        StringTokenizer st = new StringTokenizer(stringList, ";"); //$NON-NLS-1$
+        StringBuffer buffer = new StringBuffer();
+
+        while (st.hasMoreElements())
+        {
+            buffer.append("(^"); //$NON-NLS-1$
+            buffer.append(st.nextToken().replace('?', '.'));
+            buffer.append("$)"); //$NON-NLS-1$
+
+            if (st.hasMoreElements())
+            {
+                buffer.append('|');
+            }
+        }
+        try
+        {
+            return Pattern.compile(buffer.toString());
+        }
+        catch (PatternSyntaxException e)
+        {
+            // just to avoid any possible error
+            return Pattern.compile(NONE);
+        }
+    }
+
+}
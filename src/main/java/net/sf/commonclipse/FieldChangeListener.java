@@ -0,0 +1,463 @@
+/* ====================================================================
+ *   Copyright 2003-2005 Fabrizio Giustina.
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ * ====================================================================
+ */
+package net.sf.commonclipse;
+
+import java.text.MessageFormat;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.eclipse.core.resources.IWorkspaceRunnable;
+import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.OperationCanceledException;
+import org.eclipse.core.runtime.Platform;
+import org.eclipse.core.runtime.Status;
+import org.eclipse.core.runtime.jobs.Job;
+import org.eclipse.jdt.core.ElementChangedEvent;
+import org.eclipse.jdt.core.ICompilationUnit;
+import org.eclipse.jdt.core.Flags;
+import org.eclipse.jdt.core.IElementChangedListener;
+import org.eclipse.jdt.core.IField;
+import org.eclipse.jdt.core.IJavaElement;
+import org.eclipse.jdt.core.IJavaElementDelta;
+import org.eclipse.jdt.core.IMethod;
+import org.eclipse.jdt.core.IType;
+import org.eclipse.jdt.core.JavaCore;
+import org.eclipse.jdt.core.JavaModelException;
+
+
+/**
+ * Regenerates the methods of a type in the background when instance fields are added, removed or renamed in an
+ * editor, if enabled in the preferences. Only methods previously generated by commonclipse, and not changed by hand
+ * since, are regenerated. The changes go to the editor buffer and are never saved.
+ * <p>
+ * The listener runs on every reconcile, so it only walks the field deltas and records the changed types: reading the
+ * existing methods, building hierarchies and formatting are left to a job which starts once no field has changed for
+ * a while. The time spent in the listener is counted, and logged with the <code>debug/autoregenerate</code> option.
+ * </p>
+ * @author fgiust
+ * @version $Revision$ ($Author$)
+ */
+public final class FieldChangeListener implements IElementChangedListener
+{
+
+    /**
+     * milliseconds without field changes before methods are regenerated.
+     */
+    private static final long DELAY = 1500;
+
+    /**
+     * generators checked on every changed type.
+     */
+    private static final Generator[] GENERATORS = new Generator[]{
+        ToStringGenerator.getInstance(),
+        HashcodeGenerator.getInstance(),
+        EqualsGenerator.getInstance(),
+        CompareToGenerator.getInstance()};
+
+    /**
+     * the single instance of FieldChangeListener.
+     */
+    private static FieldChangeListener instance = new FieldChangeListener();
+
+    /**
+     * types with changed fields, waiting for the job. All access must be synchronized on the set.
+     */
+    private final Set<IType> pending = new LinkedHashSet<IType>();
+
+    /**
+     * debounced job regenerating the pending types.
+     */
+    private final Job job;
+
+    /**
+     * number of reconcile deltas received while enabled.
+     */
+    private final AtomicLong reconciles = new AtomicLong();
+
+    /**
+     * nanoseconds spent in the listener.
+     */
+    private final AtomicLong listenerTime = new AtomicLong();
+
+    /**
+     * number of times a type has been recorded as changed.
+     */
+    private final AtomicLong changedTypes = new AtomicLong();
+
+    /**
+     * number of types whose methods have been regenerated.
+     */
+    private final AtomicLong regeneratedTypes = new AtomicLong();
+
+    /**
+     * use getDefault() to obtain the FieldChangeListener instance.
+     */
+    private FieldChangeListener()
+    {
+        this.job = new Job(CCMessages.getString("FieldChangeListener.name")) //$NON-NLS-1$
+        {
+
+            /**
+             * @see org.eclipse.core.runtime.jobs.Job#run(org.eclipse.core.runtime.IProgressMonitor)
+             */
+            @Override
+            protected IStatus run(IProgressMonitor monitor)
+            {
+                regenerate(monitor);
+                return Status.OK_STATUS;
+            }
+        };
+        this.job.setSystem(true);
+    }
+
+    /**
+     * Returns the FieldChangeListener instance.
+     * @return instance of FieldChangeListener
+     */
+    public static FieldChangeListener getDefault()
+    {
+        return instance;
+    }
+
+    /**
+     * Forgets the pending changes and cancels the job if it's waiting.
+     */
+    public void stop()
+    {
+        this.job.cancel();
+        synchronized (this.pending)
+        {
+            this.pending.clear();
+        }
+    }
+
+    /**
+     * Returns the number of reconcile deltas processed while the listener was enabled.
+     * @return number of reconciles
+     */
+    public long getReconcileCount()
+    {
+        return this.reconciles.get();
+    }
+
+    /**
+     * Returns the total time spent in the listener.
+     * @return nanoseconds
+     */
+    public long getListenerTime()
+    {
+        return this.listenerTime.get();
+    }
+
+    /**
+     * Returns the number of times a type has been recorded as changed, a type changed by a burst of edits is counted
+     * once for every reconcile.
+     * @return number of changed types
+     */
+    public long getChangedTypeCount()
+    {
+        return this.changedTypes.get();
+    }
+
+    /**
+     * Returns the number of types whose methods have been regenerated.
+     * @return number of regenerated types
+     */
+    public long getRegeneratedTypeCount()
+    {
+        return this.regeneratedTypes.get();
+    }
+
+    /**
+     * @see org.eclipse.jdt.core.IElementChangedListener#elementChanged(org.eclipse.jdt.core.ElementChangedEvent)
+     */
+    @Override
+    public void elementChanged(ElementChangedEvent event)
+    {
+        if (!CCPluginPreferences.getPreferences().autoRegenerate())
+        {
+            return;
+        }
+
+        long start = System.nanoTime();
+        try
+        {
+            this.reconciles.incrementAndGet();
+            if (processDelta(event.getDelta()))
+            {
+                // a burst of edits keeps postponing the job
+                this.job.cancel();
+                this.job.schedule(DELAY);
+            }
+        }
+        finally
+        {
+            this.listenerTime.addAndGet(System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * Walks a delta down to fields, recording the types whose instance fields changed.
+     * @param delta IJavaElementDelta
+     * @return <code>true</code> if any type has been recorded
+     */
+    private boolean processDelta(IJavaElementDelta delta)
+    {
+        IJavaElement element = delta.getElement();
+        switch (element.getElementType())
+        {
+        case IJavaElement.COMPILATION_UNIT:
+            break;
+
+        case IJavaElement.TYPE:
+            if (delta.getKind() != IJavaElementDelta.CHANGED)
+            {
+                // a new type has no generated methods yet
+                return false;
+            }
+            break;
+
+        default:
+            // methods, imports, initializers... don't change the generated methods
+            return false;
+        }
+
+        boolean recorded = false;
+        boolean fieldsChanged = false;
+
+        IJavaElementDelta[] children = delta.getAffectedChildren();
+        for (int j = 0; j < children.length; j++)
+        {
+            if (children[j].getElement().getElementType() == IJavaElement.FIELD)
+            {
+                fieldsChanged = fieldsChanged || isInstanceFieldChange(children[j]);
+            }
+            else
+            {
+                recorded = processDelta(children[j]) || recorded;
+            }
+        }
+
+        if (fieldsChanged)
+        {
+            synchronized (this.pending)
+            {
+                this.pending.add((IType) element.getPrimaryElement());
+            }
+            this.changedTypes.incrementAndGet();
+            recorded = true;
+        }
+        return recorded;
+    }
+
+    /**
+     * Can a field delta change the generated methods? A renamed field is reported as removed and added.
+     * @param delta delta of a field
+     * @return <code>true</code> for added or removed instance fields, and for changed modifiers
+     */
+    private static boolean isInstanceFieldChange(IJavaElementDelta delta)
+    {
+        switch (delta.getKind())
+        {
+        case IJavaElementDelta.ADDED:
+            try
+            {
+                return !Flags.isStatic(((IField) delta.getElement()).getFlags());
+            }
+            catch (JavaModelException e)
+            {
+                // already removed by a later reconcile
+                return false;
+            }
+
+        case IJavaElementDelta.REMOVED:
+            // the modifiers of a removed field can't be read anymore
+            return true;
+
+        default:
+            // e.g. a field made static or transient
+            return (delta.getFlags() & IJavaElementDelta.F_MODIFIERS) != 0;
+        }
+    }
+
+    /**
+     * Regenerates the generated methods of the pending types. Only units open in an editor are changed, in the editor
+     * buffer: the user decides when to save, and can undo the change.
+     * @param monitor progress monitor of the job
+     */
+    private void regenerate(IProgressMonitor monitor)
+    {
+        List<IType> types;
+        synchronized (this.pending)
+        {
+            types = new ArrayList<IType>(this.pending);
+            this.pending.clear();
+        }
+
+        CCPluginPreferences preferences = CCPluginPreferences.getPreferences();
+        if (!preferences.autoRegenerate())
+        {
+            return;
+        }
+
+        Iterator<IType> iterator = types.iterator();
+        while (iterator.hasNext() && !monitor.isCanceled())
+        {
+            if (regenerate(iterator.next(), preferences, monitor))
+            {
+                this.regeneratedTypes.incrementAndGet();
+            }
+        }
+
+        trace();
+    }
+
+    /**
+     * Regenerates the generated methods of a single type in the working copy of its editor. Methods changed by hand
+     * since they have been generated are left untouched.
+     * @param type IType
+     * @param preferences configuration
+     * @param monitor progress monitor
+     * @return <code>true</code> if the editor buffer has been changed
+     */
+    private static boolean regenerate(IType type, CCPluginPreferences preferences, IProgressMonitor monitor)
+    {
+        final ICompilationUnit cu = type.getCompilationUnit();
+        if (cu == null || !cu.isWorkingCopy())
+        {
+            // the editor has been closed meanwhile, never change and save the file behind the user's back
+            return false;
+        }
+
+        List<Generator> generators = findGeneratedMethods(type);
+        if (generators.isEmpty())
+        {
+            return false;
+        }
+
+        UnitGenerator unitGenerator = new UnitGenerator(
+            generators.toArray(new Generator[generators.size()]),
+            preferences,
+            true,
+            true);
+        try
+        {
+            final String snapshot = cu.getSource();
+            final GenerationResult result = unitGenerator.generate(cu, Collections.singletonList(type), null, monitor);
+            if (!result.hasChanges())
+            {
+                return false;
+            }
+
+            final boolean[] applied = new boolean[1];
+            IWorkspaceRunnable runnable = new IWorkspaceRunnable()
+            {
+
+                /**
+                 * @see org.eclipse.core.resources.IWorkspaceRunnable#run(org.eclipse.core.runtime.IProgressMonitor)
+                 */
+                @Override
+                public void run(IProgressMonitor runMonitor) throws JavaModelException
+                {
+                    // the user kept typing, the next reconcile schedules the job again
+                    if (snapshot.equals(cu.getSource()))
+                    {
+                        // a working copy is not saved
+                        UnitRewrite.applyEdit(cu, result.getEdit(), null);
+                        applied[0] = true;
+                    }
+                }
+            };
+
+            // the unit rule keeps other operations on the unit out between the check and the edit
+            JavaCore.run(runnable, cu.getSchedulingRule(), monitor);
+            return applied[0];
+        }
+        catch (CoreException e)
+        {
+            // changed again meanwhile, the next reconcile records it again
+            return false;
+        }
+        catch (OperationCanceledException e)
+        {
+            return false;
+        }
+    }
+
+    /**
+     * Finds the methods of a type generated by commonclipse.
+     * @param type IType
+     * @return generators of the methods, in the order of GENERATORS; empty if the type doesn't exist anymore
+     */
+    private static List<Generator> findGeneratedMethods(IType type)
+    {
+        List<Generator> generators = new ArrayList<Generator>(GENERATORS.length);
+        try
+        {
+            if (!type.exists() || type.isInterface())
+            {
+                return generators;
+            }
+
+            for (int j = 0; j < GENERATORS.length; j++)
+            {
+                IMethod method = GENERATORS[j].getExistingMethod(type);
+                if (method.exists() && GENERATORS[j].isGenerated(method.getSource()))
+                {
+                    generators.add(GENERATORS[j]);
+                }
+            }
+        }
+        catch (JavaModelException e)
+        {
+            // changed again meanwhile, the next reconcile records it again
+            generators.clear();
+        }
+        return generators;
+    }
+
+    /**
+     * Logs the cost of the listener, if tracing is enabled.
+     */
+    private void trace()
+    {
+        if (!CCPlugin.getDefault().isDebugging()
+            || !Boolean.valueOf(Platform.getDebugOption(CCPlugin.PLUGIN_ID + "/debug/autoregenerate")).booleanValue()) //$NON-NLS-1$
+        {
+            return;
+        }
+
+        long count = Math.max(1, getReconcileCount());
+        String message = MessageFormat.format(
+            "{0} reconciles, {1} us in the listener ({2} us each), {3} changed types, {4} regenerated", //$NON-NLS-1$
+            new Object[]{
+                Long.toString(getReconcileCount()),
+                Long.toString(getListenerTime() / 1000),
+                Long.toString(getListenerTime() / 1000 / count),
+                Long.toString(getChangedTypeCount()),
+                Long.toString(getRegeneratedTypeCount())});
+        CCPlugin.getDefault().getLog().log(new Status(IStatus.INFO, CCPlugin.PLUGIN_ID, message));
+    }
+
+}
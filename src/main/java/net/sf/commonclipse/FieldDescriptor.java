@@ -0,0 +1,297 @@
+/* ====================================================================
+ *   Copyright 2003-2005 Fabrizio Giustina.
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ * ====================================================================
+ */
+package net.sf.commonclipse;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.eclipse.jdt.core.Flags;
+import org.eclipse.jdt.core.Signature;
+
+
+/**
+ * Immutable description of a field included in generated methods: name, resolved type and modifiers. Built once per
+ * type by TypeModel and shared by all the generators.
+ * @author fgiust
+ * @version $Revision$ ($Author$)
+ */
+public final class FieldDescriptor
+{
+
+    /**
+     * value returned by getPrimitiveKind() for reference types.
+     */
+    public static final char NOT_PRIMITIVE = 0;
+
+    /**
+     * wrapper classes of primitive types.
+     */
+    private static final Set<String> BOXED_TYPES = new HashSet<String>(Arrays.asList(new String[]{
+        "java.lang.Boolean", //$NON-NLS-1$
+        "java.lang.Byte", //$NON-NLS-1$
+        "java.lang.Character", //$NON-NLS-1$
+        "java.lang.Short", //$NON-NLS-1$
+        "java.lang.Integer", //$NON-NLS-1$
+        "java.lang.Long", //$NON-NLS-1$
+        "java.lang.Float", //$NON-NLS-1$
+        "java.lang.Double"})); //$NON-NLS-1$
+
+    /**
+     * well known collection and map types.
+     */
+    private static final Set<String> COLLECTION_TYPES = new HashSet<String>(Arrays.asList(new String[]{
+        "java.util.Collection", //$NON-NLS-1$
+        "java.util.List", //$NON-NLS-1$
+        "java.util.Set", //$NON-NLS-1$
+        "java.util.SortedSet", //$NON-NLS-1$
+        "java.util.NavigableSet", //$NON-NLS-1$
+        "java.util.Queue", //$NON-NLS-1$
+        "java.util.Deque", //$NON-NLS-1$
+        "java.util.Map", //$NON-NLS-1$
+        "java.util.SortedMap", //$NON-NLS-1$
+        "java.util.NavigableMap", //$NON-NLS-1$
+        "java.util.ArrayList", //$NON-NLS-1$
+        "java.util.LinkedList", //$NON-NLS-1$
+        "java.util.Vector", //$NON-NLS-1$
+        "java.util.HashSet", //$NON-NLS-1$
+        "java.util.LinkedHashSet", //$NON-NLS-1$
+        "java.util.TreeSet", //$NON-NLS-1$
+        "java.util.ArrayDeque", //$NON-NLS-1$
+        "java.util.PriorityQueue", //$NON-NLS-1$
+        "java.util.HashMap", //$NON-NLS-1$
+        "java.util.LinkedHashMap", //$NON-NLS-1$
+        "java.util.TreeMap", //$NON-NLS-1$
+        "java.util.Hashtable", //$NON-NLS-1$
+        "java.util.EnumMap", //$NON-NLS-1$
+        "java.util.EnumSet"})); //$NON-NLS-1$
+
+    /**
+     * field name.
+     */
+    private final String name;
+
+    /**
+     * fully qualified name of the type declaring the field.
+     */
+    private final String declaringType;
+
+    /**
+     * resolved type signature (erasure), e.g. <code>I</code>, <code>[D</code> or <code>Ljava.util.List;</code>.
+     */
+    private final String typeSignature;
+
+    /**
+     * field modifiers, as defined in org.eclipse.jdt.core.Flags.
+     */
+    private final int flags;
+
+    /**
+     * primitive kind of the element type or NOT_PRIMITIVE.
+     */
+    private final char primitiveKind;
+
+    /**
+     * number of array dimensions, 0 if not an array.
+     */
+    private final int arrayDimensions;
+
+    /**
+     * fully qualified name of the element type, or the primitive type keyword.
+     */
+    private final String elementTypeName;
+
+    /**
+     * is the element type an enum?
+     */
+    private final boolean enumType;
+
+    /**
+     * Creates a new field descriptor.
+     * @param name field name
+     * @param declaringType fully qualified name of the type declaring the field
+     * @param typeSignature resolved type signature, using fully qualified names (<code>L</code> form)
+     * @param flags field modifiers, as defined in org.eclipse.jdt.core.Flags
+     * @param enumType <code>true</code> if the element type is an enum
+     */
+    public FieldDescriptor(String name, String declaringType, String typeSignature, int flags, boolean enumType)
+    {
+        this.name = name;
+        this.declaringType = declaringType;
+        this.typeSignature = typeSignature;
+        this.flags = flags;
+        this.enumType = enumType;
+
+        this.arrayDimensions = Signature.getArrayCount(typeSignature);
+        String elementSignature = Signature.getElementType(typeSignature);
+
+        if (Signature.getTypeSignatureKind(elementSignature) == Signature.BASE_TYPE_SIGNATURE)
+        {
+            this.primitiveKind = elementSignature.charAt(0);
+        }
+        else
+        {
+            this.primitiveKind = NOT_PRIMITIVE;
+        }
+        this.elementTypeName = Signature.toString(elementSignature);
+    }
+
+    /**
+     * Returns the field name.
+     * @return field name
+     */
+    public String getName()
+    {
+        return this.name;
+    }
+
+    /**
+     * Returns the fully qualified name of the type declaring the field.
+     * @return declaring type name
+     */
+    public String getDeclaringType()
+    {
+        return this.declaringType;
+    }
+
+    /**
+     * Returns the resolved type signature (erasure) of the field.
+     * @return type signature, e.g. <code>I</code>, <code>[D</code> or <code>Ljava.util.List;</code>
+     */
+    public String getTypeSignature()
+    {
+        return this.typeSignature;
+    }
+
+    /**
+     * Returns the fully qualified name of the element type (the component type for arrays), or the primitive keyword.
+     * @return element type name
+     */
+    public String getElementTypeName()
+    {
+        return this.elementTypeName;
+    }
+
+    /**
+     * Returns the field modifiers.
+     * @return modifiers as defined in org.eclipse.jdt.core.Flags
+     */
+    public int getFlags()
+    {
+        return this.flags;
+    }
+
+    /**
+     * Returns the primitive kind of the element type.
+     * @return one of the Signature.C_* primitive chars (e.g. Signature.C_INT), or NOT_PRIMITIVE
+     */
+    public char getPrimitiveKind()
+    {
+        return this.primitiveKind;
+    }
+
+    /**
+     * Returns the number of array dimensions.
+     * @return array dimensions, 0 if the field is not an array
+     */
+    public int getArrayDimensions()
+    {
+        return this.arrayDimensions;
+    }
+
+    /**
+     * Is this field an array?
+     * @return <code>true</code> if the field is an array
+     */
+    public boolean isArray()
+    {
+        return this.arrayDimensions > 0;
+    }
+
+    /**
+     * Is this field of a primitive type (not an array of primitives)?
+     * @return <code>true</code> if the field is a primitive
+     */
+    public boolean isPrimitive()
+    {
+        return this.arrayDimensions == 0 && this.primitiveKind != NOT_PRIMITIVE;
+    }
+
+    /**
+     * Is the element type an enum?
+     * @return <code>true</code> if the element type is an enum
+     */
+    public boolean isEnum()
+    {
+        return this.enumType;
+    }
+
+    /**
+     * Is the element type a primitive wrapper (Integer, Long...)?
+     * @return <code>true</code> if the element type is a primitive wrapper
+     */
+    public boolean isBoxed()
+    {
+        return BOXED_TYPES.contains(this.elementTypeName);
+    }
+
+    /**
+     * Is the field a well known collection or map type (not an array of them)?
+     * @return <code>true</code> if the field is a collection or a map
+     */
+    public boolean isCollection()
+    {
+        return this.arrayDimensions == 0 && COLLECTION_TYPES.contains(this.elementTypeName);
+    }
+
+    /**
+     * Is the field transient?
+     * @return <code>true</code> if the field is transient
+     */
+    public boolean isTransient()
+    {
+        return Flags.isTransient(this.flags);
+    }
+
+    /**
+     * Is the field volatile?
+     * @return <code>true</code> if the field is volatile
+     */
+    public boolean isVolatile()
+    {
+        return Flags.isVolatile(this.flags);
+    }
+
+    /**
+     * Is the field final?
+     * @return <code>true</code> if the field is final
+     */
+    public boolean isFinal()
+    {
+        return Flags.isFinal(this.flags);
+    }
+
+    /**
+     * @see java.lang.Object#toString()
+     */
+    @Override
+    public String toString()
+    {
+        return this.declaringType + '.' + this.name + ' ' + this.typeSignature;
+    }
+
+}
@@ -0,0 +1,257 @@
+/* ====================================================================
+ *   Copyright 2003-2005 Fabrizio Giustina.
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ * ====================================================================
+ */
+package net.sf.commonclipse;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.eclipse.core.resources.IProject;
+import org.eclipse.core.resources.ProjectScope;
+import org.eclipse.core.runtime.preferences.IEclipsePreferences;
+import org.eclipse.core.runtime.preferences.IEclipsePreferences.IPreferenceChangeListener;
+import org.eclipse.core.runtime.preferences.IEclipsePreferences.PreferenceChangeEvent;
+import org.eclipse.core.runtime.preferences.InstanceScope;
+import org.eclipse.jdt.core.IJavaProject;
+import org.eclipse.jdt.core.JavaCore;
+import org.eclipse.jdt.core.ToolFactory;
+import org.eclipse.jdt.core.formatter.CodeFormatter;
+
+
+/**
+ * Cache of code formatters configured with the options of each Java project. Creating a formatter and its options is
+ * expensive compared to formatting a few methods, so formatters are reused. A formatter is not thread safe: it is
+ * checked out with acquire() and returned with release(), and can then be reused by any thread, also by the next
+ * generation job. Formatters are discarded when the workspace or project Java options change.
+ * @author fgiust
+ * @version $Revision$ ($Author$)
+ */
+public final class FormatterCache implements IPreferenceChangeListener
+{
+
+    /**
+     * the single instance of FormatterCache.
+     */
+    private static FormatterCache instance = new FormatterCache();
+
+    /**
+     * incremented any time the Java options change, formatters created with an older stamp are not reused.
+     */
+    private final AtomicInteger stamp = new AtomicInteger();
+
+    /**
+     * formatters not in use, by project. All access must be synchronized on the map.
+     */
+    private final Map<IJavaProject, List<CachedFormatter>> idleFormatters =
+        new HashMap<IJavaProject, List<CachedFormatter>>();
+
+    /**
+     * formatters checked out by acquire(). All access must be synchronized on idleFormatters.
+     */
+    private final Map<CodeFormatter, CachedFormatter> usedFormatters =
+        new IdentityHashMap<CodeFormatter, CachedFormatter>();
+
+    /**
+     * projects whose preference node is observed. All access must be synchronized on the set.
+     */
+    private final Set<IProject> observedProjects = new HashSet<IProject>();
+
+    /**
+     * use getDefault() to obtain the FormatterCache instance.
+     */
+    private FormatterCache()
+    {
+    }
+
+    /**
+     * Returns the FormatterCache instance.
+     * @return instance of FormatterCache
+     */
+    public static FormatterCache getDefault()
+    {
+        return instance;
+    }
+
+    /**
+     * Starts listening to changes in the workspace Java options.
+     */
+    public void start()
+    {
+        InstanceScope.INSTANCE.getNode(JavaCore.PLUGIN_ID).addPreferenceChangeListener(this);
+    }
+
+    /**
+     * Stops listening to changes in the Java options and discards all the formatters.
+     */
+    public void stop()
+    {
+        InstanceScope.INSTANCE.getNode(JavaCore.PLUGIN_ID).removePreferenceChangeListener(this);
+
+        synchronized (this.observedProjects)
+        {
+            Iterator<IProject> iterator = this.observedProjects.iterator();
+            while (iterator.hasNext())
+            {
+                IProject project = iterator.next();
+                if (project.isAccessible())
+                {
+                    new ProjectScope(project).getNode(JavaCore.PLUGIN_ID).removePreferenceChangeListener(this);
+                }
+            }
+            this.observedProjects.clear();
+        }
+        clear();
+    }
+
+    /**
+     * Discards all the formatters. Formatters in use are not reused when released.
+     */
+    public void clear()
+    {
+        this.stamp.incrementAndGet();
+
+        synchronized (this.idleFormatters)
+        {
+            this.idleFormatters.clear();
+            this.usedFormatters.clear();
+        }
+    }
+
+    /**
+     * Checks out a formatter configured with the options of the given project. The formatter must be used by one
+     * thread at a time, and given back with release() when done.
+     * @param project Java project
+     * @return CodeFormatter
+     */
+    public CodeFormatter acquire(IJavaProject project)
+    {
+        int current = this.stamp.get();
+
+        synchronized (this.idleFormatters)
+        {
+            List<CachedFormatter> idle = this.idleFormatters.get(project);
+            while (idle != null && !idle.isEmpty())
+            {
+                CachedFormatter cached = idle.remove(idle.size() - 1);
+                if (cached.stamp == current)
+                {
+                    this.usedFormatters.put(cached.formatter, cached);
+                    return cached.formatter;
+                }
+            }
+        }
+
+        // created outside of the lock, the options of a project are read from its preference nodes
+        observe(project.getProject());
+        CodeFormatter formatter = ToolFactory.createCodeFormatter(project.getOptions(true));
+        CachedFormatter cached = new CachedFormatter(formatter, current);
+        synchronized (this.idleFormatters)
+        {
+            this.usedFormatters.put(cached.formatter, cached);
+        }
+        return cached.formatter;
+    }
+
+    /**
+     * Gives back a formatter obtained from acquire(). It will be reused unless the Java options changed meanwhile.
+     * @param project Java project the formatter was acquired for
+     * @param formatter CodeFormatter
+     */
+    public void release(IJavaProject project, CodeFormatter formatter)
+    {
+        synchronized (this.idleFormatters)
+        {
+            CachedFormatter cached = this.usedFormatters.remove(formatter);
+            if (cached != null && cached.stamp == this.stamp.get())
+            {
+                List<CachedFormatter> idle = this.idleFormatters.get(project);
+                if (idle == null)
+                {
+                    idle = new ArrayList<CachedFormatter>();
+                    this.idleFormatters.put(project, idle);
+                }
+                idle.add(cached);
+            }
+        }
+    }
+
+    /**
+     * @see org.eclipse.core.runtime.preferences.IEclipsePreferences.IPreferenceChangeListener#preferenceChange(org.eclipse.core.runtime.preferences.IEclipsePreferences.PreferenceChangeEvent)
+     */
+    @Override
+    public void preferenceChange(PreferenceChangeEvent event)
+    {
+        this.stamp.incrementAndGet();
+
+        // formatters in use are dropped when released
+        synchronized (this.idleFormatters)
+        {
+            this.idleFormatters.clear();
+        }
+    }
+
+    /**
+     * Starts listening to changes in the project specific Java options.
+     * @param project project
+     */
+    private void observe(IProject project)
+    {
+        synchronized (this.observedProjects)
+        {
+            if (project.isAccessible() && this.observedProjects.add(project))
+            {
+                IEclipsePreferences node = new ProjectScope(project).getNode(JavaCore.PLUGIN_ID);
+                node.addPreferenceChangeListener(this);
+            }
+        }
+    }
+
+    /**
+     * A formatter together with the stamp of the options it was created with.
+     */
+    private static class CachedFormatter
+    {
+
+        /**
+         * formatter.
+         */
+        final CodeFormatter formatter;
+
+        /**
+         * options stamp.
+         */
+        final int stamp;
+
+        /**
+         * Creates a new CachedFormatter.
+         * @param formatter formatter
+         * @param stamp options stamp
+         */
+        CachedFormatter(CodeFormatter formatter, int stamp)
+        {
+            this.formatter = formatter;
+            this.stamp = stamp;
+        }
+    }
+
+}
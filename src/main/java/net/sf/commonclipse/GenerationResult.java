@@ -0,0 +1,128 @@
+/* ====================================================================
+ *   Copyright 2003-2005 Fabrizio Giustina.
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ * ====================================================================
+ */
+package net.sf.commonclipse;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.jdt.core.ICompilationUnit;
+import org.eclipse.text.edits.TextEdit;
+
+
+/**
+ * Outcome of the generation for a single compilation unit: the edit to apply, the methods it contains and any problem
+ * found. The compilation unit itself is never modified by the generation.
+ * @author fgiust
+ * @version $Revision$ ($Author$)
+ */
+public final class GenerationResult
+{
+
+    /**
+     * compilation unit.
+     */
+    private final ICompilationUnit unit;
+
+    /**
+     * edit to apply, <code>null</code> if the unit doesn't need any change.
+     */
+    private final TextEdit edit;
+
+    /**
+     * generated methods, by fully qualified type name.
+     */
+    private final Map<String, List<String>> methods;
+
+    /**
+     * diagnostics.
+     */
+    private final IStatus status;
+
+    /**
+     * Creates a new GenerationResult.
+     * @param unit compilation unit
+     * @param edit edit to apply, <code>null</code> if the unit doesn't need any change
+     * @param methods names of the generated methods, by fully qualified type name
+     * @param status diagnostics
+     */
+    public GenerationResult(ICompilationUnit unit, TextEdit edit, Map<String, List<String>> methods, IStatus status)
+    {
+        this.unit = unit;
+        this.edit = edit;
+        this.methods = Collections.unmodifiableMap(methods);
+        this.status = status;
+    }
+
+    /**
+     * Returns the compilation unit.
+     * @return ICompilationUnit
+     */
+    public ICompilationUnit getCompilationUnit()
+    {
+        return this.unit;
+    }
+
+    /**
+     * Returns the edit containing all the changes to the unit, with offsets relative to the source it was generated
+     * from.
+     * @return TextEdit or <code>null</code> if the unit doesn't need any change
+     */
+    public TextEdit getEdit()
+    {
+        return this.edit;
+    }
+
+    /**
+     * Does the unit need any change? Methods regenerated identical to the existing ones don't count as changes.
+     * @return <code>true</code> if getEdit() contains any change
+     */
+    public boolean hasChanges()
+    {
+        return this.edit != null;
+    }
+
+    /**
+     * Returns the methods generated for every type, including the ones identical to the existing methods. Types
+     * without any generated method are not included.
+     * @return read only Map fully qualified type name - List of method names
+     */
+    public Map<String, List<String>> getMethods()
+    {
+        return this.methods;
+    }
+
+    /**
+     * Returns the problems found in generating the methods. Types which failed are not included in the edit.
+     * @return status, with a child for every problem
+     */
+    public IStatus getStatus()
+    {
+        return this.status;
+    }
+
+    /**
+     * @see java.lang.Object#toString()
+     */
+    @Override
+    public String toString()
+    {
+        return this.unit.getElementName() + ' ' + this.methods;
+    }
+
+}
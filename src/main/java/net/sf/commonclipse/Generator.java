@@ -16,38 +16,18 @@
  */
 package net.sf.commonclipse;
 
-import java.text.MessageFormat;
-import java.util.HashMap;
 import java.util.Iterator;
-import java.util.Map;
+import java.util.List;
 import java.util.regex.Pattern;
 
-import org.eclipse.core.resources.IFile;
-import org.eclipse.core.resources.IResource;
-import org.eclipse.core.resources.ResourcesPlugin;
-import org.eclipse.core.runtime.IProgressMonitor;
-import org.eclipse.core.runtime.IStatus;
-import org.eclipse.jdt.core.Flags;
-import org.eclipse.jdt.core.IBuffer;
-import org.eclipse.jdt.core.ICompilationUnit;
-import org.eclipse.jdt.core.IField;
-import org.eclipse.jdt.core.IJavaElement;
 import org.eclipse.jdt.core.IMethod;
-import org.eclipse.jdt.core.ISourceReference;
 import org.eclipse.jdt.core.IType;
-import org.eclipse.jdt.core.ITypeHierarchy;
 import org.eclipse.jdt.core.JavaModelException;
-import org.eclipse.jdt.core.ToolFactory;
-import org.eclipse.jdt.core.formatter.CodeFormatter;
-import org.eclipse.jdt.core.formatter.DefaultCodeFormatterConstants;
-import org.eclipse.jface.dialogs.MessageDialog;
-import org.eclipse.jface.dialogs.ProgressMonitorDialog;
-import org.eclipse.jface.preference.IPreferenceStore;
-import org.eclipse.jface.text.BadLocationException;
-import org.eclipse.jface.text.Document;
-import org.eclipse.swt.widgets.Shell;
-import org.eclipse.text.edits.MalformedTreeException;
-import org.eclipse.text.edits.TextEdit;
+import org.eclipse.jdt.core.Signature;
+import org.eclipse.jdt.core.dom.AbstractTypeDeclaration;
+import org.eclipse.jdt.core.dom.MethodDeclaration;
+import org.eclipse.jdt.core.dom.SingleVariableDeclaration;
+import org.eclipse.jdt.core.dom.rewrite.ASTRewrite;
 
 
 /**
@@ -58,298 +38,145 @@ public abstract class Generator
 {
 
     /**
-     * line separator.
+     * Returns the generated method name.
+     * @return String method name
      */
-    private static final String LINE_SEPARATOR = System.getProperty("line.separator"); //$NON-NLS-1$
+    public abstract String getMethodName();
 
     /**
-     * Generates the appropriate method in <code>type</code>.
-     * @param type IType
-     * @param shell Shell
+     * Creates the method for the type described by model.
+     * @param model type model
+     * @param imports imports of the compilation unit, types used in the method must be added here and referenced with
+     * the returned name
+     * @param preferences plugin preferences for this run
+     * @return Method String
+     * @throws JavaModelException exception in creating method
      */
-    public void generate(IType type, Shell shell)
-    {
-
-        ICompilationUnit cu = (ICompilationUnit) type.getAncestor(IJavaElement.COMPILATION_UNIT);
-
-        // first check if file is writable
-        IResource resource;
-        try
-        {
-            resource = cu.getCorrespondingResource();
-        }
-        catch (JavaModelException e)
-        {
-            MessageDialog.openError(shell, CCMessages.getString("Generator.errortitle"), e.getMessage()); //$NON-NLS-1$
-            return;
-        }
-        if (resource != null && resource.getResourceAttributes().isReadOnly())
-        {
-            IStatus status = ResourcesPlugin.getWorkspace().validateEdit(new IFile[]{(IFile) resource}, shell);
-
-            if (!status.isOK())
-            {
-                MessageDialog.openError(shell, CCMessages.getString("Generator.errortitle"), CCMessages //$NON-NLS-1$
-                    .getString("Generator.readonly")); //$NON-NLS-1$
-                return;
-            }
-        }
-
-        resource = null;
-
-        if (!validate(type, shell))
-        {
-            return;
-        }
-
-        ProgressMonitorDialog progressDialog = new ProgressMonitorDialog(shell);
-        progressDialog.open();
-        try
-        {
-
-            IProgressMonitor monitor = progressDialog.getProgressMonitor();
-            generateMethod(type, cu, shell, monitor);
-        }
-        catch (JavaModelException ex)
-        {
-            MessageDialog.openError(shell, CCMessages.getString("Generator.errortitle"), ex.getMessage()); //$NON-NLS-1$
-        }
-
-        progressDialog.close();
-    }
+    protected abstract String createMethod(TypeModel model, UnitImports imports, CCPluginPreferences preferences)
+        throws JavaModelException;
 
     /**
-     * Checks if a corresponding method already exists and prompt the user for replacing it.
-     * @param type IType
-     * @param shell Shell
-     * @return <code>true</code> if the method doesn't exists or the user has choosen to overwrite it
+     * Returns the fully qualified name of the builder class used by the generated method.
+     * @return builder class name
      */
-    protected boolean validate(IType type, Shell shell)
-    {
-
-        IMethod method = getExistingMethod(type);
-
-        if (method != null && method.exists())
-        {
-            boolean dontAsk = CCPluginPreferences.getPreferences().dontAskOnOverwrite();
-
-            if (dontAsk
-                || MessageDialog.openConfirm(shell, CCPlugin.PLUGIN_NAME, MessageFormat.format(CCMessages
-                    .getString("Generator.methodexists"), //$NON-NLS-1$
-                    new Object[]{getMethodName(), type.getElementName()})))
-            {
-                try
-                {
-                    method.delete(true, null);
-                    return true;
-                }
-                catch (JavaModelException e)
-                {
-                    MessageDialog.openError(shell, CCMessages.getString("Generator.errortitle"), //$NON-NLS-1$
-                        MessageFormat.format(CCMessages.getString("Generator.unabletodelete"), //$NON-NLS-1$
-                            new Object[]{getMethodName(), e.getMessage()}));
-                }
-            }
-            return false;
-        }
-
-        return true;
-    }
+    protected abstract String getBuilderClass();
 
     /**
-     * Generates the method by:
-     * <ul>
-     * <li>call createMethod</li>
-     * <li>format the given method</li>
-     * <li>add it to type</li>
-     * <li>call addImports</li>
-     * </ul>.
-     * @param type IType
-     * @param cu compilation unit
-     * @param shell Shell for messages
-     * @param monitor progress monitor, updated during processing
-     * @throws JavaModelException any exception in method generation
+     * Guesses if an existing method has been generated, checking if it creates an instance of the builder class. Only
+     * a first check for tools working on many files at once: before replacing, UnitRewrite also compares the existing
+     * method with the generated one when setReplaceGeneratedOnly() is enabled.
+     * @param methodSource source of the existing method
+     * @return <code>true</code> if the method calls a constructor of the builder
      */
-    public void generateMethod(IType type, ICompilationUnit cu, Shell shell, IProgressMonitor monitor)
-        throws JavaModelException
+    public boolean isGenerated(String methodSource)
     {
-        String className = type.getElementName();
-
-        String title = MessageFormat.format(CCMessages.getString("Generator.generating"), //$NON-NLS-1$
-            new Object[]{className});
-        monitor.beginTask(title, 100);
-        monitor.worked(10);
-
-        monitor.setTaskName(title + CCMessages.getString("Generator.parsing")); //$NON-NLS-1$
-        String src = createMethod(type);
-        monitor.worked(30);
-
-        monitor.setTaskName(title + CCMessages.getString("Generator.formatting")); //$NON-NLS-1$
-        Document document = new Document(src);
-
-        TextEdit text = ToolFactory.createCodeFormatter(null).format(
-            CodeFormatter.K_UNKNOWN,
-            src,
-            0,
-            src.length(),
-            getIndentUsed(type, cu) + 1,
-            null);
-
-        try
-        {
-            text.apply(document);
-        }
-        catch (MalformedTreeException ex)
-        {
-            MessageDialog.openError(shell, CCMessages.getString("Generator.errortitle"), ex.getMessage()); //$NON-NLS-1$
-        }
-        catch (BadLocationException ex)
-        {
-            MessageDialog.openError(shell, CCMessages.getString("Generator.errortitle"), ex.getMessage()); //$NON-NLS-1$
-        }
-
-        monitor.worked(20);
-
-        monitor.setTaskName(title + CCMessages.getString("Generator.adding")); //$NON-NLS-1$
-        type.createMethod(document.get() + LINE_SEPARATOR, null, false, null);
-
-        monitor.worked(20);
-
-        monitor.setTaskName(title + CCMessages.getString("Generator.imports")); //$NON-NLS-1$
-        addImports(type);
-        monitor.worked(20);
-
-        monitor.done();
+        Pattern builderConstructor = Pattern.compile("\\bnew\\s+(?:[\\w$]+\\s*\\.\\s*)*" //$NON-NLS-1$
+            + Pattern.quote(Signature.getSimpleName(getBuilderClass()))
+            + "\\s*\\("); //$NON-NLS-1$
+        return builderConstructor.matcher(methodSource).find();
     }
 
     /**
-     * Evaluates the indention used by a Java element.
-     * @param elem Java element
-     * @param cu compilation unit
-     * @return indentation level
-     * @throws JavaModelException model exception when trying to access source
+     * Returns the type signatures of the method parameters, as written in source. No parameters by default.
+     * @return unresolved parameter type signatures, e.g. <code>QObject;</code>
      */
-    public int getIndentUsed(IJavaElement elem, ICompilationUnit cu) throws JavaModelException
+    protected String[] getParameterSignatures()
     {
-        if (elem instanceof ISourceReference)
-        {
-
-            if (cu != null)
-            {
-                IBuffer buf = cu.getBuffer();
-                int offset = ((ISourceReference) elem).getSourceRange().getOffset();
-                int i = offset;
-                // find beginning of line
-                while (i > 0 && !isLineDelimiterChar(buf.getChar(i - 1)))
-                {
-                    i--;
-                }
-
-                return computeIndent(buf.getText(i, offset - i));
-            }
-        }
-        return 0;
+        return new String[0];
     }
 
     /**
-     * Line delimiter chars are '\n' and '\r'.
-     * @param ch char
-     * @return <code>true</code> if ch is '\n' or '\r'
+     * Returns the existing method.
+     * @param type IType
+     * @return IMethod, which may not exist
      */
-    private boolean isLineDelimiterChar(char ch)
+    public IMethod getExistingMethod(IType type)
     {
-        return ch == '\n' || ch == '\r';
+        return type.getMethod(getMethodName(), getParameterSignatures());
     }
 
     /**
-     * Returns the indent of the given string.
-     * @param line the text line
-     * @return indent level
+     * Finds the existing method in the AST of a type. Parameter types are compared as written in source, like in
+     * getExistingMethod().
+     * @param declaration type declaration
+     * @return MethodDeclaration or <code>null</code> if the type doesn't declare the method
      */
-    public int computeIndent(String line)
+    public MethodDeclaration findExistingMethod(AbstractTypeDeclaration declaration)
     {
-        IPreferenceStore preferences = CCPlugin.getDefault().getPreferenceStore();
-        int tabWidth = preferences.getInt(DefaultCodeFormatterConstants.FORMATTER_TAB_SIZE);
+        String[] parameters = getParameterSignatures();
 
-        int result = 0;
-        int blanks = 0;
-        int size = line.length();
-        for (int i = 0; i < size; i++)
+        Iterator< ? > iterator = declaration.bodyDeclarations().iterator();
+        while (iterator.hasNext())
         {
-            char c = line.charAt(i);
-            if (c == '\t')
+            Object member = iterator.next();
+            if (!(member instanceof MethodDeclaration))
+            {
+                continue;
+            }
+
+            MethodDeclaration method = (MethodDeclaration) member;
+            List< ? > methodParameters = method.parameters();
+            if (method.isConstructor() || !getMethodName().equals(method.getName().getIdentifier())
+                || methodParameters.size() != parameters.length)
             {
-                result++;
-                blanks = 0;
+                continue;
             }
-            else if (Character.isWhitespace(c) && !(c == '\n' || c == '\r'))
+
+            boolean matching = true;
+            for (int j = 0; j < parameters.length && matching; j++)
             {
-                blanks++;
-                if (blanks == tabWidth)
-                {
-                    result++;
-                    blanks = 0;
-                }
+                SingleVariableDeclaration parameter = (SingleVariableDeclaration) methodParameters.get(j);
+                matching = !parameter.isVarargs() && parameter.getExtraDimensions() == 0
+                    && Signature.toString(parameters[j]).equals(parameter.getType().toString());
             }
-            else
+
+            if (matching)
             {
-                return result;
+                return method;
             }
         }
-        return result;
+        return null;
     }
 
     /**
-     * Returns the generated method name.
-     * @return String method name
-     */
-    protected abstract String getMethodName();
-
-    /**
-     * Creates the method for the ITYPE type.
-     * @param type Itype
-     * @return Method String
-     * @throws JavaModelException exception in creating method
-     */
-    protected abstract String createMethod(IType type) throws JavaModelException;
-
-    /**
-     * Returns the existing method.
-     * @param type IType
-     * @return IMethod
-     */
-    protected abstract IMethod getExistingMethod(IType type);
-
-    /**
-     * Adds required imports to type.
-     * @param type IType
-     * @throws JavaModelException exception in adding imports
+     * Records additional changes to the type declaration needed by the generated method. Called only when all the
+     * methods for the type have been created, and applied together with all the other changes to the compilation unit.
+     * Anything which can fail must be checked before recording changes: an exception discards the other changes for
+     * the type, but not what has already been recorded in the rewrite.
+     * @param model type model
+     * @param declaration declaration of the type in the AST of the compilation unit
+     * @param rewrite rewrite recording the changes
+     * @throws JavaModelException exception in analyzing type
      */
-    protected abstract void addImports(IType type) throws JavaModelException;
+    protected void rewriteDeclaration(TypeModel model, AbstractTypeDeclaration declaration, ASTRewrite rewrite)
+        throws JavaModelException
+    {
+        // no changes by default
+    }
 
     /**
      * Iterates on fields and call getFieldString() on any match not in the configurable excluded list.
-     * @param type IType
+     * @param model type model
+     * @param preferences plugin preferences for this run
      * @return String
      * @throws JavaModelException exception in analyzing fields
      */
-    protected String buildAppenderList(IType type) throws JavaModelException
+    protected String buildAppenderList(TypeModel model, CCPluginPreferences preferences) throws JavaModelException
     {
-        // temporary map for caching type and supertypes fields and avoid duplicated fields
-        Map<String, IField> fields = buildFieldMap(type);
+        // type and supertypes fields, cached in model and without duplicates
+        List<FieldDescriptor> fields = getAppendedFields(model);
 
         // start building method body
         StringBuffer buffer = new StringBuffer();
-        Iterator<String> fieldsIterator = fields.keySet().iterator();
 
-        while (fieldsIterator.hasNext())
+        for (int j = 0, size = fields.size(); j < size; j++)
         {
-            String fieldName = fieldsIterator.next();
+            FieldDescriptor field = fields.get(j);
 
             // only add field if not excluded by user preferences
-            if (!isExcluded(fieldName))
+            if (!isExcluded(field.getName(), preferences))
             {
-                buffer.append(getFieldAppender(fieldName, fieldName));
+                buffer.append(getFieldAppender(field.getName(), field.getName()));
             }
         }
 
@@ -358,60 +185,26 @@ public abstract class Generator
     }
 
     /**
-     * Returns a Set containing all the names of fields visible by this type.
-     * @param type IType
-     * @return Map containing field names - IField objects
-     * @throws JavaModelException exception in analyzing type
+     * Returns the fields to append, in order. Generators can override this to pick or sort fields by type, the
+     * default implementation keeps all the fields in declaration order.
+     * @param model type model
+     * @return List of FieldDescriptor
+     * @throws JavaModelException exception in analyzing fields
      */
-    protected Map<String, IField> buildFieldMap(IType type) throws JavaModelException
+    protected List<FieldDescriptor> getAppendedFields(TypeModel model) throws JavaModelException
     {
-        Map<String, IField> fieldNames = new HashMap<String, IField>();
-
-        IField[] fields = type.getFields();
-
-        for (int j = 0; j < fields.length; j++)
-        {
-            IField field = fields[j];
-            int flags = field.getFlags();
-
-            if (!Flags.isStatic(flags))
-            {
-                fieldNames.put(field.getElementName(), field);
-            }
-        }
-
-        // get all the supertypes to look for public and protected fields
-        ITypeHierarchy hierarchy = type.newSupertypeHierarchy(null);
-        IType[] types = hierarchy.getSupertypes(type);
-
-        for (int j = 0; j < types.length; j++)
-        {
-            IField[] superFields = types[j].getFields();
-
-            for (int x = 0; x < superFields.length; x++)
-            {
-                IField field = superFields[x];
-                int flags = field.getFlags();
-
-                // no static and private
-                if (!Flags.isStatic(flags) && !Flags.isPrivate(flags))
-                {
-                    fieldNames.put(field.getElementName(), field);
-                }
-            }
-        }
-        return fieldNames;
+        return model.getFields();
     }
 
     /**
      * Checks if a given field should be excluded from generated method.
      * @param fieldName field/property name
+     * @param preferences plugin preferences for this run
      * @return <code>true</code> if the field should not be included in generated method
      */
-    protected boolean isExcluded(String fieldName)
+    protected boolean isExcluded(String fieldName, CCPluginPreferences preferences)
     {
-        Pattern exclusion = CCPluginPreferences.getPreferences().getExcludedFielsPattern();
-        return exclusion.matcher(fieldName).matches();
+        return preferences.getExcludedFielsPattern().matcher(fieldName).matches();
     }
 
     /**
@@ -16,10 +16,9 @@
  */
 package net.sf.commonclipse;
 
-import java.util.Random;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
-import org.eclipse.jdt.core.IMethod;
-import org.eclipse.jdt.core.IType;
 import org.eclipse.jdt.core.JavaModelException;
 
 
@@ -37,14 +36,31 @@ public final class HashcodeGenerator extends Generator
     private static final String BUILDER_CLASS = "org.apache.commons.lang.builder.HashCodeBuilder"; //$NON-NLS-1$
 
     /**
-     * singleton for HashcodeGenerator.
+     * odd multipliers with a good bit spread, taken from well known 32 bit hash functions (MurmurHash, xxHash and
+     * integer hash finalizers). Both the constants of a generated hashCode() are picked from this table.
      */
-    private static Generator instance = new HashcodeGenerator();
+    private static final int[] CONSTANTS = new int[]{
+        0x1B873593,
+        0x27D4EB2F,
+        0x165667B1,
+        0x5BD1E995,
+        0x61C88647,
+        0x7FEB352D,
+        0x119DE1F3,
+        0x31848BAB,
+        0x2C1B3C6D,
+        0x297A2D39};
 
     /**
-     * Random used for hashCode.
+     * the constructor arguments of a HashCodeBuilder in an existing method: decimal, octal or hex int literals.
      */
-    private Random random = new Random();
+    private static final Pattern BUILDER_CONSTANTS = Pattern.compile("new\\s+(?:[\\w.]+\\.)?HashCodeBuilder\\s*\\(" //$NON-NLS-1$
+        + "\\s*(-?(?:0[xX]\\p{XDigit}+|\\d+))\\s*,\\s*(-?(?:0[xX]\\p{XDigit}+|\\d+))\\s*\\)"); //$NON-NLS-1$
+
+    /**
+     * singleton for HashcodeGenerator.
+     */
+    private static Generator instance = new HashcodeGenerator();
 
     /**
      * use getInstance() to obtain an instance of HashcodeGenerator.
@@ -66,56 +82,65 @@ public final class HashcodeGenerator extends Generator
      * @see net.sf.commonclipse.Generator#getMethodName()
      */
     @Override
-    protected String getMethodName()
+    public String getMethodName()
     {
         return "hashCode"; //$NON-NLS-1$
     }
 
     /**
-     * @see net.sf.commonclipse.Generator#createMethod(org.eclipse.jdt.core.IType)
+     * @see net.sf.commonclipse.Generator#createMethod(net.sf.commonclipse.TypeModel, net.sf.commonclipse.UnitImports, net.sf.commonclipse.CCPluginPreferences)
      */
     @Override
-    protected String createMethod(IType type) throws JavaModelException
+    protected String createMethod(TypeModel model, UnitImports imports, CCPluginPreferences preferences)
+        throws JavaModelException
     {
-        int initial = this.random.nextInt();
-        int multiplier = this.random.nextInt();
-
-        // be sure they are odd numbers
-        if (initial % 2 == 0)
+        int[] constants = null;
+        if (preferences.reuseHashcodeConstants())
         {
-            initial++;
+            constants = getExistingConstants(model);
         }
-        if (multiplier % 2 == 0)
+        if (constants == null)
         {
-            multiplier++;
+            constants = getConstants(model.getQualifiedName());
         }
 
         StringBuffer buffer = new StringBuffer();
 
         buffer.append(getJavadoc());
         
-        if (CCPluginPreferences.getPreferences().addOverrideAnnotation())
+        if (preferences.addOverrideAnnotation())
         {
             buffer.append("@Override\n"); //$NON-NLS-1$
         }
 
-        buffer.append("public int hashCode()\n{\nreturn new HashCodeBuilder("); //$NON-NLS-1$
-        buffer.append(initial);
+        buffer.append("public int hashCode()\n{\nreturn new "); //$NON-NLS-1$
+        buffer.append(imports.addImport(BUILDER_CLASS));
+        buffer.append('(');
+        buffer.append(constants[0]);
         buffer.append(", "); //$NON-NLS-1$
-        buffer.append(multiplier);
+        buffer.append(constants[1]);
         buffer.append(")\n"); //$NON-NLS-1$
 
-        if (CCPluginPreferences.getPreferences().appendSuperToHashcode())
+        if (preferences.appendSuperToHashcode())
         {
             buffer.append(".appendSuper(super.hashCode())\n"); //$NON-NLS-1$
         }
 
-        buffer.append(buildAppenderList(type));
+        buffer.append(buildAppenderList(model, preferences));
 
         buffer.append(".toHashCode();\n}\n"); //$NON-NLS-1$
         return buffer.toString();
     }
 
+    /**
+     * @see net.sf.commonclipse.Generator#getBuilderClass()
+     */
+    @Override
+    protected String getBuilderClass()
+    {
+        return BUILDER_CLASS;
+    }
+
     /**
      * @see net.sf.commonclipse.Generator#getFieldAppender(java.lang.String, java.lang.String)
      */
@@ -126,21 +151,93 @@ public final class HashcodeGenerator extends Generator
     }
 
     /**
-     * @see net.sf.commonclipse.Generator#getExistingMethod(org.eclipse.jdt.core.IType)
+     * Picks the HashCodeBuilder constants for a type. They only depend on the type name, so regenerating the method
+     * always gives the same constants, and two different constants are always used.
+     * @param typeName fully qualified type name
+     * @return initial value and multiplier
      */
-    @Override
-    protected IMethod getExistingMethod(IType type)
+    static int[] getConstants(String typeName)
     {
-        return type.getMethod(getMethodName(), new String[0]);
+        // spread the bits of the name hash before reducing it to table indexes
+        int seed = typeName.hashCode();
+        seed ^= seed >>> 16;
+        seed *= 0x85EBCA6B;
+        seed ^= seed >>> 13;
+
+        int initial = (seed & 0x7FFFFFFF) % CONSTANTS.length;
+        int multiplier = (seed >>> 8) % (CONSTANTS.length - 1);
+        if (multiplier >= initial)
+        {
+            multiplier++;
+        }
+        return new int[]{CONSTANTS[initial], CONSTANTS[multiplier]};
     }
 
     /**
-     * @see net.sf.commonclipse.Generator#addImports(org.eclipse.jdt.core.IType)
+     * Reads the HashCodeBuilder constants of an existing hashCode() method.
+     * @param model type model
+     * @return initial value and multiplier, <code>null</code> if the method doesn't exist or doesn't contain valid
+     * constants
+     * @throws JavaModelException exception in reading the method source
      */
-    @Override
-    protected void addImports(IType type) throws JavaModelException
+    private int[] getExistingConstants(TypeModel model) throws JavaModelException
+    {
+        String source = model.getExistingSource(this);
+        return source != null ? parseConstants(source) : null;
+    }
+
+    /**
+     * Reads the HashCodeBuilder constants from the source of a hashCode() method.
+     * @param source method source
+     * @return initial value and multiplier, <code>null</code> if the source doesn't contain valid constants
+     */
+    static int[] parseConstants(String source)
     {
-        type.getCompilationUnit().createImport(BUILDER_CLASS, null, null);
+        Matcher matcher = BUILDER_CONSTANTS.matcher(source);
+        if (!matcher.find())
+        {
+            return null;
+        }
+
+        try
+        {
+            int initial = parseIntLiteral(matcher.group(1));
+            int multiplier = parseIntLiteral(matcher.group(2));
+
+            // HashCodeBuilder only accepts odd numbers
+            if (initial % 2 == 0 || multiplier % 2 == 0)
+            {
+                return null;
+            }
+            return new int[]{initial, multiplier};
+        }
+        catch (NumberFormatException e)
+        {
+            return null;
+        }
+    }
+
+    /**
+     * Parses an int literal, optionally negated. As in Java source, hex and octal literals can set all the 32 bits
+     * (<code>0x85EBCA6B</code> is negative), while decimal literals must be in the int range.
+     * @param literal decimal, octal or hex literal
+     * @return int value
+     * @throws NumberFormatException if the literal is not a valid int
+     */
+    private static int parseIntLiteral(String literal)
+    {
+        String digits = literal.startsWith("-") ? literal.substring(1) : literal; //$NON-NLS-1$
+        if (digits.length() < 2 || digits.charAt(0) != '0')
+        {
+            return Integer.parseInt(literal);
+        }
+
+        long value = Long.decode(literal).longValue();
+        if (Math.abs(value) > 0xFFFFFFFFL)
+        {
+            throw new NumberFormatException(literal);
+        }
+        return (int) value;
     }
 
     /**
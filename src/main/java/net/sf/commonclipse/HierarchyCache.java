@@ -0,0 +1,398 @@
+/* ====================================================================
+ *   Copyright 2003-2005 Fabrizio Giustina.
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ * ====================================================================
+ */
+package net.sf.commonclipse;
+
+import java.lang.ref.SoftReference;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.jdt.core.ElementChangedEvent;
+import org.eclipse.jdt.core.ICompilationUnit;
+import org.eclipse.jdt.core.IElementChangedListener;
+import org.eclipse.jdt.core.IJavaElement;
+import org.eclipse.jdt.core.IJavaElementDelta;
+import org.eclipse.jdt.core.IType;
+import org.eclipse.jdt.core.ITypeHierarchy;
+import org.eclipse.jdt.core.JavaModelException;
+
+
+/**
+ * Bounded cache of supertype hierarchies, shared by all the generators. Building a hierarchy is the most expensive
+ * operation in the plugin, so hierarchies are kept until a Java element delta shows that the supertypes of one of the
+ * types they contain have changed, or that a type which may have been unresolved has been added. The least recently
+ * used hierarchy is evicted when the cache is full. Hierarchies of large projects can take a lot of memory, so they
+ * are only softly referenced and the garbage collector reclaims them before running out of memory.
+ * @author fgiust
+ * @version $Revision$ ($Author$)
+ */
+public final class HierarchyCache implements IElementChangedListener
+{
+
+    /**
+     * max number of cached hierarchies.
+     */
+    private static final int MAX_SIZE = 64;
+
+    /**
+     * the single instance of HierarchyCache.
+     */
+    private static HierarchyCache instance = new HierarchyCache();
+
+    /**
+     * cached hierarchies in access order. All access must be synchronized on the map.
+     */
+    private final Map<IType, SoftReference<ITypeHierarchy>> hierarchies;
+
+    /**
+     * number of requests answered from the cache.
+     */
+    private final AtomicLong hits = new AtomicLong();
+
+    /**
+     * number of hierarchies built.
+     */
+    private final AtomicLong misses = new AtomicLong();
+
+    /**
+     * number of hierarchies removed because the cache was full.
+     */
+    private final AtomicLong evictions = new AtomicLong();
+
+    /**
+     * number of hierarchies removed because of changes in the java model.
+     */
+    private final AtomicLong invalidations = new AtomicLong();
+
+    /**
+     * use getDefault() to obtain the HierarchyCache instance.
+     */
+    private HierarchyCache()
+    {
+        this.hierarchies = new LinkedHashMap<IType, SoftReference<ITypeHierarchy>>(MAX_SIZE, 0.75f, true)
+        {
+
+            /**
+             * serial version uid.
+             */
+            private static final long serialVersionUID = 1L;
+
+            /**
+             * @see java.util.LinkedHashMap#removeEldestEntry(java.util.Map.Entry)
+             */
+            @Override
+            protected boolean removeEldestEntry(Entry<IType, SoftReference<ITypeHierarchy>> eldest)
+            {
+                if (size() > MAX_SIZE)
+                {
+                    HierarchyCache.this.evictions.incrementAndGet();
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    /**
+     * Returns the HierarchyCache instance.
+     * @return instance of HierarchyCache
+     */
+    public static HierarchyCache getDefault()
+    {
+        return instance;
+    }
+
+    /**
+     * Returns the supertype hierarchy of type, building it only if it's not already cached.
+     * @param type IType
+     * @param monitor progress monitor used when the hierarchy has to be built
+     * @return ITypeHierarchy
+     * @throws JavaModelException exception in building the hierarchy
+     */
+    public ITypeHierarchy getSupertypeHierarchy(IType type, IProgressMonitor monitor) throws JavaModelException
+    {
+        ITypeHierarchy cached = getCachedHierarchy(type);
+        if (cached != null)
+        {
+            return cached;
+        }
+
+        // built outside the lock, parallel batches should not wait for each other
+        this.misses.incrementAndGet();
+        ITypeHierarchy hierarchy = type.newSupertypeHierarchy(monitor);
+
+        synchronized (this.hierarchies)
+        {
+            this.hierarchies.put(type, new SoftReference<ITypeHierarchy>(hierarchy));
+        }
+        return hierarchy;
+    }
+
+    /**
+     * Returns the supertype hierarchy of type only if it's already cached, without building it.
+     * @param type IType
+     * @return ITypeHierarchy or <code>null</code> if not cached
+     */
+    public ITypeHierarchy getCachedHierarchy(IType type)
+    {
+        synchronized (this.hierarchies)
+        {
+            SoftReference<ITypeHierarchy> reference = this.hierarchies.get(type);
+            ITypeHierarchy hierarchy = reference != null ? reference.get() : null;
+            if (hierarchy != null && hierarchy.exists())
+            {
+                this.hits.incrementAndGet();
+                return hierarchy;
+            }
+            if (reference != null)
+            {
+                // reclaimed by the garbage collector, or stale
+                this.hierarchies.remove(type);
+            }
+            return null;
+        }
+    }
+
+    /**
+     * Removes all the cached hierarchies.
+     */
+    public void clear()
+    {
+        synchronized (this.hierarchies)
+        {
+            this.invalidations.addAndGet(this.hierarchies.size());
+            this.hierarchies.clear();
+        }
+    }
+
+    /**
+     * Returns the number of cached hierarchies.
+     * @return number of cached hierarchies
+     */
+    public int size()
+    {
+        synchronized (this.hierarchies)
+        {
+            return this.hierarchies.size();
+        }
+    }
+
+    /**
+     * Returns the number of requests answered from the cache.
+     * @return number of cache hits
+     */
+    public long getHits()
+    {
+        return this.hits.get();
+    }
+
+    /**
+     * Returns the number of hierarchies built because they were not in the cache.
+     * @return number of cache misses
+     */
+    public long getMisses()
+    {
+        return this.misses.get();
+    }
+
+    /**
+     * Returns the number of hierarchies removed because the cache was full.
+     * @return number of evictions
+     */
+    public long getEvictions()
+    {
+        return this.evictions.get();
+    }
+
+    /**
+     * Returns the number of hierarchies removed because of changes in the java model.
+     * @return number of invalidations
+     */
+    public long getInvalidations()
+    {
+        return this.invalidations.get();
+    }
+
+    /**
+     * @see org.eclipse.jdt.core.IElementChangedListener#elementChanged(org.eclipse.jdt.core.ElementChangedEvent)
+     */
+    @Override
+    public void elementChanged(ElementChangedEvent event)
+    {
+        if (size() > 0)
+        {
+            processDelta(event.getDelta());
+        }
+    }
+
+    /**
+     * Walks a delta down to types, invalidating hierarchies affected by the changes.
+     * @param delta IJavaElementDelta
+     */
+    private void processDelta(IJavaElementDelta delta)
+    {
+        IJavaElement element = delta.getElement();
+        int kind = delta.getKind();
+        int flags = delta.getFlags();
+
+        switch (element.getElementType())
+        {
+        case IJavaElement.JAVA_MODEL:
+            break;
+
+        case IJavaElement.PACKAGE_FRAGMENT:
+            if (kind == IJavaElementDelta.ADDED)
+            {
+                // may contain supertypes which could not be resolved before
+                clear();
+                return;
+            }
+            break;
+
+        case IJavaElement.JAVA_PROJECT:
+            if (kind != IJavaElementDelta.CHANGED
+                || (flags & (IJavaElementDelta.F_CLOSED
+                    | IJavaElementDelta.F_CLASSPATH_CHANGED | IJavaElementDelta.F_RESOLVED_CLASSPATH_CHANGED)) != 0)
+            {
+                // any supertype may now resolve differently
+                clear();
+                return;
+            }
+            break;
+
+        case IJavaElement.PACKAGE_FRAGMENT_ROOT:
+            if (kind != IJavaElementDelta.CHANGED
+                || (flags & (IJavaElementDelta.F_ARCHIVE_CONTENT_CHANGED | IJavaElementDelta.F_REMOVED_FROM_CLASSPATH
+                    | IJavaElementDelta.F_ADDED_TO_CLASSPATH | IJavaElementDelta.F_REORDER)) != 0)
+            {
+                clear();
+                return;
+            }
+            break;
+
+        case IJavaElement.COMPILATION_UNIT:
+            if (!((ICompilationUnit) element).isPrimary())
+            {
+                // private working copies, e.g. of a generation job, are not seen by hierarchies; their changes are
+                // reported again on the primary unit when committed
+                return;
+            }
+            if (kind == IJavaElementDelta.ADDED)
+            {
+                // a hierarchy built while one of its types was missing doesn't contain it
+                clear();
+                return;
+            }
+            if (kind == IJavaElementDelta.REMOVED
+                || (flags & IJavaElementDelta.F_CONTENT) != 0 && (flags & IJavaElementDelta.F_FINE_GRAINED) == 0)
+            {
+                // no details about the changes, assume that all the types in the unit changed
+                invalidate((ICompilationUnit) element);
+                return;
+            }
+            break;
+
+        case IJavaElement.TYPE:
+            if (kind == IJavaElementDelta.ADDED)
+            {
+                clear();
+                return;
+            }
+            if (kind == IJavaElementDelta.REMOVED || (flags & IJavaElementDelta.F_SUPER_TYPES) != 0)
+            {
+                invalidate((IType) element);
+            }
+            break;
+
+        default:
+            // fields, methods, imports... don't affect hierarchies
+            return;
+        }
+
+        IJavaElementDelta[] children = delta.getAffectedChildren();
+        for (int j = 0; j < children.length; j++)
+        {
+            processDelta(children[j]);
+        }
+    }
+
+    /**
+     * Removes the hierarchies containing the given type.
+     * @param type changed type
+     */
+    private void invalidate(IType type)
+    {
+        IType primary = (IType) type.getPrimaryElement();
+
+        synchronized (this.hierarchies)
+        {
+            Iterator<SoftReference<ITypeHierarchy>> iterator = this.hierarchies.values().iterator();
+            while (iterator.hasNext())
+            {
+                ITypeHierarchy hierarchy = iterator.next().get();
+                if (hierarchy == null)
+                {
+                    iterator.remove();
+                }
+                else if (hierarchy.contains(type) || hierarchy.contains(primary))
+                {
+                    iterator.remove();
+                    this.invalidations.incrementAndGet();
+                }
+            }
+        }
+    }
+
+    /**
+     * Removes the hierarchies containing any type declared in the given compilation unit.
+     * @param cu changed compilation unit
+     */
+    private void invalidate(ICompilationUnit cu)
+    {
+        IJavaElement primary = cu.getPrimaryElement();
+
+        synchronized (this.hierarchies)
+        {
+            Iterator<SoftReference<ITypeHierarchy>> iterator = this.hierarchies.values().iterator();
+            while (iterator.hasNext())
+            {
+                ITypeHierarchy hierarchy = iterator.next().get();
+                if (hierarchy == null)
+                {
+                    iterator.remove();
+                    continue;
+                }
+
+                IType[] types = hierarchy.getAllTypes();
+                for (int j = 0; j < types.length; j++)
+                {
+                    ICompilationUnit typeUnit = types[j].getCompilationUnit();
+                    if (typeUnit != null && primary.equals(typeUnit.getPrimaryElement()))
+                    {
+                        iterator.remove();
+                        this.invalidations.incrementAndGet();
+                        break;
+                    }
+                }
+            }
+        }
+    }
+
+}
@@ -0,0 +1,227 @@
+/* ====================================================================
+ *   Copyright 2003-2005 Fabrizio Giustina.
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ * ====================================================================
+ */
+package net.sf.commonclipse;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Pattern;
+
+import org.eclipse.jdt.core.JavaCore;
+import org.eclipse.jdt.core.ToolFactory;
+import org.eclipse.jdt.core.compiler.IScanner;
+import org.eclipse.jdt.core.compiler.ITerminalSymbols;
+import org.eclipse.jdt.core.compiler.InvalidInputException;
+
+
+/**
+ * Compares Java source on a token basis, ignoring the layout chosen by a formatter: whitespace between tokens, line
+ * wrapping and the indentation of comments. The shape of a method also ignores what changes from one generation to
+ * the next, so a method can be recognized as generated.
+ * @author fgiust
+ * @version $Revision$ ($Author$)
+ */
+public final class SourceTokens
+{
+
+    /**
+     * line breaks followed by the leading '*' of a javadoc or block comment line.
+     */
+    private static final Pattern COMMENT_LINE_START = Pattern.compile("[\\r\\n]+[ \\t]*\\*(?!/)"); //$NON-NLS-1$
+
+    /**
+     * any sequence of whitespace.
+     */
+    private static final Pattern WHITESPACE = Pattern.compile("\\s+"); //$NON-NLS-1$
+
+    /**
+     * Utility class, don't instantiate.
+     */
+    private SourceTokens()
+    {
+        // unused
+    }
+
+    /**
+     * Splits source into tokens. Comments are kept as tokens, with whitespace and the leading '*' of each line
+     * collapsed to a single space.
+     * @param source Java source
+     * @return List of tokens, <code>null</code> if the source can't be scanned
+     */
+    public static List<String> tokenize(String source)
+    {
+        IScanner scanner = ToolFactory.createScanner(true, false, false, JavaCore.VERSION_1_5);
+        scanner.setSource(source.toCharArray());
+
+        List<String> tokens = new ArrayList<String>();
+        try
+        {
+            int token = scanner.getNextToken();
+            while (token != ITerminalSymbols.TokenNameEOF)
+            {
+                String text = new String(scanner.getCurrentTokenSource());
+                if (token == ITerminalSymbols.TokenNameCOMMENT_BLOCK
+                    || token == ITerminalSymbols.TokenNameCOMMENT_JAVADOC)
+                {
+                    text = WHITESPACE.matcher(COMMENT_LINE_START.matcher(text).replaceAll(" ")) //$NON-NLS-1$
+                        .replaceAll(" "); //$NON-NLS-1$
+                }
+                else if (token == ITerminalSymbols.TokenNameCOMMENT_LINE)
+                {
+                    text = text.trim();
+                }
+                tokens.add(text);
+                token = scanner.getNextToken();
+            }
+        }
+        catch (InvalidInputException e)
+        {
+            return null;
+        }
+        return tokens;
+    }
+
+    /**
+     * Do two sources only differ in layout? <code>a+b</code> and <code>a + b</code> are the same code, while a change
+     * inside a string literal is not.
+     * @param source1 Java source
+     * @param source2 Java source
+     * @return <code>true</code> if both sources contain the same tokens. Sources which can't be scanned are only equal
+     * to themselves
+     */
+    public static boolean sameCode(String source1, String source2)
+    {
+        if (source1.equals(source2))
+        {
+            return true;
+        }
+        List<String> tokens1 = tokenize(source1);
+        return tokens1 != null && tokens1.equals(tokenize(source2));
+    }
+
+    /**
+     * Does an existing method have the same shape as a newly generated one? Besides the layout, comments, integer
+     * literals and their sign (the HashCodeBuilder constants), <code>final</code> modifiers, <code>@Override</code>
+     * and the <code>.append...(...)</code> calls are ignored: they depend on the fields and on the preferences.
+     * Anything else added or changed by hand makes the shapes differ.
+     * @param existing source of the existing method
+     * @param generated source of the generated method
+     * @return <code>true</code> if the existing method looks like a previous version of the generated one
+     */
+    public static boolean sameShape(String existing, String generated)
+    {
+        List<String> shape = getShape(existing);
+        return shape != null && shape.equals(getShape(generated));
+    }
+
+    /**
+     * Splits source into the tokens compared by sameShape().
+     * @param source Java source
+     * @return List of tokens, <code>null</code> if the source can't be scanned
+     */
+    private static List<String> getShape(String source)
+    {
+        IScanner scanner = ToolFactory.createScanner(false, false, false, JavaCore.VERSION_1_5);
+        scanner.setSource(source.toCharArray());
+
+        List<String> tokens = new ArrayList<String>();
+        try
+        {
+            int token = scanner.getNextToken();
+            while (token != ITerminalSymbols.TokenNameEOF)
+            {
+                if (token == ITerminalSymbols.TokenNameIntegerLiteral || token == ITerminalSymbols.TokenNameLongLiteral)
+                {
+                    // the sign of a constant argument is part of the literal
+                    int size = tokens.size();
+                    if (size > 1
+                        && "-".equals(tokens.get(size - 1)) //$NON-NLS-1$
+                        && ("(".equals(tokens.get(size - 2)) || ",".equals(tokens.get(size - 2)))) //$NON-NLS-1$ //$NON-NLS-2$
+                    {
+                        tokens.remove(size - 1);
+                    }
+                    tokens.add("0"); //$NON-NLS-1$
+                }
+                else
+                {
+                    tokens.add(new String(scanner.getCurrentTokenSource()));
+                }
+                token = scanner.getNextToken();
+            }
+        }
+        catch (InvalidInputException e)
+        {
+            return null;
+        }
+
+        List<String> shape = new ArrayList<String>(tokens.size());
+        int j = 0;
+        while (j < tokens.size())
+        {
+            String text = tokens.get(j);
+            String next = j + 1 < tokens.size() ? tokens.get(j + 1) : null;
+            if (".".equals(text) //$NON-NLS-1$
+                && next != null
+                && next.startsWith("append") //$NON-NLS-1$
+                && j + 2 < tokens.size()
+                && "(".equals(tokens.get(j + 2))) //$NON-NLS-1$
+            {
+                j = skipArguments(tokens, j + 2);
+            }
+            else if ("@".equals(text) && "Override".equals(next)) //$NON-NLS-1$ //$NON-NLS-2$
+            {
+                j += 2;
+            }
+            else
+            {
+                if (!"final".equals(text)) //$NON-NLS-1$
+                {
+                    shape.add(text);
+                }
+                j++;
+            }
+        }
+        return shape;
+    }
+
+    /**
+     * Skips the arguments of a method call.
+     * @param tokens tokens
+     * @param start index of the opening parenthesis
+     * @return index of the token after the closing parenthesis
+     */
+    private static int skipArguments(List<String> tokens, int start)
+    {
+        int depth = 0;
+        int j = start;
+        do
+        {
+            String text = tokens.get(j);
+            if ("(".equals(text)) //$NON-NLS-1$
+            {
+                depth++;
+            }
+            else if (")".equals(text)) //$NON-NLS-1$
+            {
+                depth--;
+            }
+            j++;
+        }
+        while (depth > 0 && j < tokens.size());
+        return j;
+    }
+
+}
@@ -16,16 +16,8 @@
  */
 package net.sf.commonclipse;
 
-import java.util.HashMap;
 import java.util.Iterator;
-import java.util.Map;
-import java.util.Map.Entry;
-
-import org.eclipse.jdt.core.Flags;
-import org.eclipse.jdt.core.IField;
-import org.eclipse.jdt.core.IMethod;
-import org.eclipse.jdt.core.IType;
-import org.eclipse.jdt.core.ITypeHierarchy;
+
 import org.eclipse.jdt.core.JavaModelException;
 
 
@@ -67,66 +59,57 @@ public final class ToStringGenerator extends Generator
      * @see net.sf.commonclipse.Generator#getMethodName()
      */
     @Override
-    protected String getMethodName()
+    public String getMethodName()
     {
         return "toString"; //$NON-NLS-1$
     }
 
     /**
-     * @see net.sf.commonclipse.Generator#addImports(org.eclipse.jdt.core.IType)
+     * @see net.sf.commonclipse.Generator#createMethod(net.sf.commonclipse.TypeModel, net.sf.commonclipse.UnitImports, net.sf.commonclipse.CCPluginPreferences)
      */
     @Override
-    protected void addImports(IType type) throws JavaModelException
-    {
-        type.getCompilationUnit().createImport(BUILDER_CLASS, null, null);
-
-        if (CCPluginPreferences.getPreferences().useCustomToStringStyle())
-        {
-            type.getCompilationUnit().createImport(
-                CCPluginPreferences.getPreferences().getToStringStyleQualifiedClass(),
-                null,
-                null);
-        }
-    }
-
-    /**
-     * @see net.sf.commonclipse.Generator#createMethod(org.eclipse.jdt.core.IType)
-     */
-    @Override
-    protected String createMethod(IType type) throws JavaModelException
+    protected String createMethod(TypeModel model, UnitImports imports, CCPluginPreferences preferences)
+        throws JavaModelException
     {
 
         StringBuffer buffer = new StringBuffer();
 
         buffer.append(getJavadoc());
 
-        if (CCPluginPreferences.getPreferences().addOverrideAnnotation())
+        if (preferences.addOverrideAnnotation())
         {
             buffer.append("@Override\n"); //$NON-NLS-1$
         }
 
-        buffer.append("    public String toString()\n    {\n        return new ToStringBuilder(this"); //$NON-NLS-1$
+        buffer.append("    public String toString()\n    {\n        return new "); //$NON-NLS-1$
+        buffer.append(imports.addImport(BUILDER_CLASS));
+        buffer.append("(this"); //$NON-NLS-1$
 
-        if (CCPluginPreferences.getPreferences().useCustomToStringStyle())
+        if (preferences.useCustomToStringStyle())
         {
+            // class name as imported, followed by the constant
+            String classAndConstant = preferences.getToStringStyleClassAndConstant();
+            String styleClass = preferences.getToStringStyleQualifiedClass();
+
             buffer.append(", "); //$NON-NLS-1$
-            buffer.append(CCPluginPreferences.getPreferences().getToStringStyleClassAndConstant());
+            buffer.append(imports.addImport(styleClass));
+            buffer.append(classAndConstant.substring(classAndConstant.lastIndexOf('.')));
         }
 
         buffer.append(")\n"); //$NON-NLS-1$
 
-        if (CCPluginPreferences.getPreferences().appendSuperToToString())
+        if (preferences.appendSuperToToString())
         {
             buffer.append(".appendSuper(super.toString())\n"); //$NON-NLS-1$
         }
 
-        if (CCPluginPreferences.getPreferences().useJavabeanToString())
+        if (preferences.useJavabeanToString())
         {
-            buffer.append(buildAppenderListFromBean(type));
+            buffer.append(buildAppenderListFromBean(model, preferences));
         }
         else
         {
-            buffer.append(buildAppenderList(type));
+            buffer.append(buildAppenderList(model, preferences));
         }
 
         buffer.append(".toString();\n}"); //$NON-NLS-1$
@@ -136,44 +119,35 @@ public final class ToStringGenerator extends Generator
 
     /**
      * Iterates on javabean properties and calls getFieldAppender for all of them.
-     * @param type IType
+     * @param model type model
+     * @param preferences plugin preferences for this run
      * @return String
      * @throws JavaModelException exception in analyzing properties
      */
-    private String buildAppenderListFromBean(IType type) throws JavaModelException
+    private String buildAppenderListFromBean(TypeModel model, CCPluginPreferences preferences) throws JavaModelException
     {
-        // temporary map of methods to avoid duplicated entry
-        Map<String, IMethod> getterMethods = buildMethodsMap(type);
-
-        // fields to match method names
-        Map<String, IField> fields = buildFieldMap(type);
-
-        // now iterates on generated method list and create the toString method body
-        Iterator<Entry<String, IMethod>> iterator = getterMethods.entrySet().iterator();
+        // getters of the type and its superclasses, without duplicates
+        Iterator<String> iterator = model.getJavabeanGetters().iterator();
 
         StringBuffer buffer = new StringBuffer();
 
         while (iterator.hasNext())
         {
-            IMethod method = iterator.next().getValue();
-            String methodName = method.getElementName();
+            String methodName = iterator.next();
             String propertyName = getJavabeanProperyName(methodName);
 
             // check if propertyName is excluded
-            if (!isExcluded(propertyName))
+            if (!isExcluded(propertyName, preferences))
             {
                 // does a field with the same name exist?
-                IField matchingField = fields.get(propertyName);
+                FieldDescriptor matchingField = model.getField(propertyName);
 
                 if (matchingField != null)
                 {
-                    if (propertyName.equals(matchingField.getElementName()))
-                    {
-                        // if we have a fields with the same name and type of the property, use it instead
-                        // of the getter method for the toString()
-                        buffer.append(getFieldAppender(propertyName, propertyName));
-                        continue;
-                    }
+                    // if we have a fields with the same name and type of the property, use it instead
+                    // of the getter method for the toString()
+                    buffer.append(getFieldAppender(propertyName, matchingField.getName()));
+                    continue;
                 }
 
                 // else add the getter method to the toString
@@ -183,38 +157,6 @@ public final class ToStringGenerator extends Generator
         return buffer.toString();
     }
 
-    /**
-     * Returns a Map containing all the javabean getter methods in this type and its supertypes.
-     * @param type IType
-     * @return Map containing method names - IMethod objects
-     * @throws JavaModelException exception in analyzing type
-     */
-    private Map<String, IMethod> buildMethodsMap(IType type) throws JavaModelException
-    {
-        Map<String, IMethod> getterMethods = new HashMap<String, IMethod>();
-
-        // iterates on hierarchy, looking for properties also if defined in superclasses
-        ITypeHierarchy hierarchy = type.newSupertypeHierarchy(null);
-        IType[] types = hierarchy.getAllClasses();
-
-        for (int j = 0; j < types.length; j++)
-        {
-            IMethod[] superMethods = types[j].getMethods();
-
-            for (int x = 0; x < superMethods.length; x++)
-            {
-                IMethod method = superMethods[x];
-
-                if (isJavabeanGetter(method))
-                {
-                    getterMethods.put(method.getElementName(), method);
-                }
-            }
-        }
-
-        return getterMethods;
-    }
-
     /**
      * Returns the javabean property name from the getter method name.
      * @param methodName getter method name
@@ -246,33 +188,6 @@ public final class ToStringGenerator extends Generator
         return propertyName;
     }
 
-    /**
-     * Checks if the given method is a javabean getter (start with get or is for boolean properties, no param).
-     * @param method IMethod
-     * @return <code>true</code> if the method is a javabean property accessor
-     * @throws JavaModelException exception thrown in analyzing method
-     */
-    private boolean isJavabeanGetter(IMethod method) throws JavaModelException
-    {
-
-        if (method.getNumberOfParameters() == 0 && Flags.isPublic(method.getFlags()))
-        {
-            String methodName = method.getElementName();
-
-            if (methodName.length() > 3 && methodName.startsWith("get")) //$NON-NLS-1$
-            {
-                return true;
-            }
-            else if (methodName.length() > 2 && methodName.startsWith("is") //$NON-NLS-1$
-                && ("Z".equals(method.getReturnType()) //$NON-NLS-1$
-                || "QBoolean;".equals(method.getReturnType()))) //$NON-NLS-1$
-            {
-                return true;
-            }
-        }
-        return false;
-    }
-
     /**
      * Generates the method javadoc.
      * @return String javadoc
@@ -283,12 +198,12 @@ public final class ToStringGenerator extends Generator
     }
 
     /**
-     * @see net.sf.commonclipse.Generator#getExistingMethod(org.eclipse.jdt.core.IType)
+     * @see net.sf.commonclipse.Generator#getBuilderClass()
      */
     @Override
-    protected IMethod getExistingMethod(IType type)
+    protected String getBuilderClass()
     {
-        return type.getMethod(getMethodName(), new String[0]);
+        return BUILDER_CLASS;
     }
 
     /**
@@ -0,0 +1,530 @@
+/* ====================================================================
+ *   Copyright 2003-2005 Fabrizio Giustina.
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ * ====================================================================
+ */
+package net.sf.commonclipse;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.jdt.core.Flags;
+import org.eclipse.jdt.core.IField;
+import org.eclipse.jdt.core.IJavaProject;
+import org.eclipse.jdt.core.IMethod;
+import org.eclipse.jdt.core.ISourceRange;
+import org.eclipse.jdt.core.IType;
+import org.eclipse.jdt.core.ITypeHierarchy;
+import org.eclipse.jdt.core.JavaModelException;
+import org.eclipse.jdt.core.Signature;
+import org.eclipse.jdt.core.dom.ASTNode;
+import org.eclipse.jdt.core.dom.AbstractTypeDeclaration;
+import org.eclipse.jdt.core.dom.CompilationUnit;
+import org.eclipse.jdt.core.dom.NodeFinder;
+
+
+/**
+ * Information about a type shared by all the generators working on it during a single run. The supertype hierarchy
+ * and the visible fields are resolved lazily and only once, no matter how many methods are generated. Generators only
+ * use the queries of this class and not the Java model directly, so subclasses can describe types known from other
+ * sources, such as the bindings of an AST.
+ * @author fgiust
+ * @version $Revision$ ($Author$)
+ */
+public class TypeModel
+{
+
+    /**
+     * root of the class hierarchy, never contributes fields.
+     */
+    protected static final String OBJECT = "java.lang.Object"; //$NON-NLS-1$
+
+    /**
+     * interface checked for compareTo().
+     */
+    protected static final String COMPARABLE = "java.lang.Comparable"; //$NON-NLS-1$
+
+    /**
+     * the type methods are generated for.
+     */
+    private final IType type;
+
+    /**
+     * supertype hierarchy, resolved on first access.
+     */
+    private ITypeHierarchy hierarchy;
+
+    /**
+     * monitor for building the hierarchy, only checked for cancellation.
+     */
+    private final IProgressMonitor monitor;
+
+    /**
+     * visible fields by name, in the order they are collected. Built on first access and never modified.
+     */
+    private Map<String, FieldDescriptor> fields;
+
+    /**
+     * read only list of the visible fields, built on first access.
+     */
+    private List<FieldDescriptor> fieldList;
+
+    /**
+     * enum check results, by fully qualified type name. Many fields usually share the same types.
+     */
+    private final Map<String, Boolean> enumTypes = new HashMap<String, Boolean>();
+
+    /**
+     * Creates a new model for the given type. The hierarchy will be taken from the shared hierarchy cache.
+     * @param type IType
+     */
+    public TypeModel(IType type)
+    {
+        this(type, null, null);
+    }
+
+    /**
+     * Creates a new model for the given type, using an already built hierarchy.
+     * @param type IType
+     * @param hierarchy hierarchy containing type and its supertypes, can cover other types too (e.g. a region
+     * hierarchy built for a batch run). If <code>null</code> the shared hierarchy cache is used.
+     * @param monitor progress monitor used if the hierarchy has to be built, can be null. When canceled, building the
+     * hierarchy is interrupted with an OperationCanceledException
+     */
+    public TypeModel(IType type, ITypeHierarchy hierarchy, IProgressMonitor monitor)
+    {
+        this.type = type;
+        this.hierarchy = hierarchy;
+        this.monitor = monitor;
+    }
+
+    /**
+     * Returns the type this model describes.
+     * @return IType, <code>null</code> if the model is not based on the Java model
+     */
+    public IType getType()
+    {
+        return this.type;
+    }
+
+    /**
+     * Returns the simple name of the type.
+     * @return type name
+     */
+    public String getTypeName()
+    {
+        return this.type.getElementName();
+    }
+
+    /**
+     * Returns the fully qualified name of the type, with <code>$</code> separating member types.
+     * @return qualified type name
+     */
+    public String getQualifiedName()
+    {
+        return this.type.getFullyQualifiedName();
+    }
+
+    /**
+     * Returns a hierarchy containing the type and all its supertypes. It may contain other types too, so it must always
+     * be queried relative to the type (<code>getAllSuperclasses(type)</code> and not <code>getAllClasses()</code>).
+     * @return ITypeHierarchy, <code>null</code> if the model is not based on the Java model
+     * @throws JavaModelException exception in building the hierarchy
+     */
+    public ITypeHierarchy getHierarchy() throws JavaModelException
+    {
+        if (this.hierarchy == null && this.type != null)
+        {
+            this.hierarchy = HierarchyCache.getDefault().getSupertypeHierarchy(this.type, this.monitor);
+        }
+        return this.hierarchy;
+    }
+
+    /**
+     * Returns all the non static fields visible by the type: fields declared in the type plus non private fields
+     * declared in superclasses. A field declared in a subclass hides superclass fields with the same name.
+     * @return read only List of FieldDescriptor
+     * @throws JavaModelException exception in analyzing type
+     */
+    public List<FieldDescriptor> getFields() throws JavaModelException
+    {
+        if (this.fieldList == null)
+        {
+            this.fields = buildFieldMap();
+            this.fieldList = Collections.unmodifiableList(new ArrayList<FieldDescriptor>(this.fields.values()));
+        }
+        return this.fieldList;
+    }
+
+    /**
+     * Returns a field visible by the type.
+     * @param name field name
+     * @return FieldDescriptor or <code>null</code> if no field with this name is visible
+     * @throws JavaModelException exception in analyzing type
+     */
+    public FieldDescriptor getField(String name) throws JavaModelException
+    {
+        getFields();
+        return this.fields.get(name);
+    }
+
+    /**
+     * Does the type implement <code>java.lang.Comparable</code>, directly or through its supertypes?
+     * @return <code>true</code> if the type is comparable
+     * @throws JavaModelException exception in building the hierarchy
+     */
+    public boolean isComparable() throws JavaModelException
+    {
+        return containsComparable(getHierarchy().getAllSuperInterfaces(this.type));
+    }
+
+    /**
+     * Does the superclass of the type directly implement <code>java.lang.Comparable</code>?
+     * @return <code>true</code> if <code>super.compareTo()</code> can be called
+     * @throws JavaModelException exception in building the hierarchy
+     */
+    public boolean isSuperclassComparable() throws JavaModelException
+    {
+        ITypeHierarchy typeHierarchy = getHierarchy();
+        IType superclass = typeHierarchy.getSuperclass(this.type);
+        return superclass != null && containsComparable(typeHierarchy.getSuperInterfaces(superclass));
+    }
+
+    /**
+     * Returns the javabean getters of the type and its superclasses: public methods without parameters, whose name
+     * starts with <code>get</code>, or with <code>is</code> for boolean properties.
+     * @return names of the getter methods, without duplicates. Methods declared in the type come first
+     * @throws JavaModelException exception in analyzing type
+     */
+    public List<String> getJavabeanGetters() throws JavaModelException
+    {
+        Set<String> getters = new LinkedHashSet<String>();
+
+        // iterates on hierarchy, looking for properties also if defined in superclasses
+        IType[] superclasses = getHierarchy().getAllSuperclasses(this.type);
+        IType[] types = new IType[superclasses.length + 1];
+        types[0] = this.type;
+        System.arraycopy(superclasses, 0, types, 1, superclasses.length);
+
+        for (int j = 0; j < types.length; j++)
+        {
+            IMethod[] methods = types[j].getMethods();
+
+            for (int x = 0; x < methods.length; x++)
+            {
+                IMethod method = methods[x];
+                if (method.getNumberOfParameters() == 0 && Flags.isPublic(method.getFlags())
+                    && isJavabeanGetter(method.getElementName(), method.getReturnType()))
+                {
+                    getters.add(method.getElementName());
+                }
+            }
+        }
+
+        return new ArrayList<String>(getters);
+    }
+
+    /**
+     * Returns the source of the method a generator would replace.
+     * @param generator generator
+     * @return method source, <code>null</code> if the type doesn't declare the method
+     * @throws JavaModelException exception in reading the source
+     */
+    public String getExistingSource(Generator generator) throws JavaModelException
+    {
+        IMethod existing = generator.getExistingMethod(this.type);
+        return existing != null && existing.exists() ? existing.getSource() : null;
+    }
+
+    /**
+     * Finds the declaration of the type in the AST of its compilation unit.
+     * @param astRoot AST of the compilation unit, reflecting the current source
+     * @return AbstractTypeDeclaration or <code>null</code> if not found
+     * @throws JavaModelException exception in reading the source range
+     */
+    protected AbstractTypeDeclaration findDeclaration(CompilationUnit astRoot) throws JavaModelException
+    {
+        ISourceRange nameRange = this.type.getNameRange();
+        if (nameRange == null || nameRange.getOffset() < 0)
+        {
+            return null;
+        }
+
+        ASTNode name = NodeFinder.perform(astRoot, nameRange);
+        ASTNode node = name != null ? name.getParent() : null;
+        return node instanceof AbstractTypeDeclaration ? (AbstractTypeDeclaration) node : null;
+    }
+
+    /**
+     * Checks the name of a method without parameters against the javabean naming rules.
+     * @param methodName method name
+     * @param returnType return type signature, resolved or as written in source
+     * @return <code>true</code> if the method is a javabean property accessor
+     */
+    protected static boolean isJavabeanGetter(String methodName, String returnType)
+    {
+        if (methodName.length() > 3 && methodName.startsWith("get")) //$NON-NLS-1$
+        {
+            return true;
+        }
+        if (methodName.length() > 2 && methodName.startsWith("is")) //$NON-NLS-1$
+        {
+            String typeName = Signature.toString(returnType);
+            return "boolean".equals(typeName) || "Boolean".equals(typeName) //$NON-NLS-1$ //$NON-NLS-2$
+                || "java.lang.Boolean".equals(typeName); //$NON-NLS-1$
+        }
+        return false;
+    }
+
+    /**
+     * Checks if any of the given types is <code>java.lang.Comparable</code>.
+     * @param interfaces types
+     * @return <code>true</code> if Comparable is found
+     */
+    private static boolean containsComparable(IType[] interfaces)
+    {
+        for (int j = 0; j < interfaces.length; j++)
+        {
+            if (COMPARABLE.equals(interfaces[j].getFullyQualifiedName()))
+            {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Collects the fields visible by this type. Only superclasses can contribute instance fields, so instead of
+     * building a full supertype hierarchy the superclass chain is followed by name, stopping at
+     * <code>java.lang.Object</code> or at the first binary class without visible instance fields. An hierarchy is
+     * used only if it's already available.
+     * @return Map containing field names - FieldDescriptor objects
+     * @throws JavaModelException exception in analyzing type
+     */
+    protected Map<String, FieldDescriptor> buildFieldMap() throws JavaModelException
+    {
+        Map<String, FieldDescriptor> fieldNames = new LinkedHashMap<String, FieldDescriptor>();
+
+        addFields(this.type, fieldNames, true);
+
+        ITypeHierarchy knownHierarchy = this.hierarchy;
+        if (knownHierarchy == null)
+        {
+            knownHierarchy = HierarchyCache.getDefault().getCachedHierarchy(this.type);
+        }
+
+        // guard against cycles in broken code
+        Set<String> visited = new HashSet<String>();
+        IType current = this.type;
+
+        while (true)
+        {
+            current = knownHierarchy != null ? knownHierarchy.getSuperclass(current) : resolveSuperclass(current);
+
+            if (current == null || OBJECT.equals(current.getFullyQualifiedName())
+                || !visited.add(current.getFullyQualifiedName()))
+            {
+                break;
+            }
+
+            // only non private instance fields are visible from subclasses
+            boolean visibleFields = addFields(current, fieldNames, false);
+
+            if (!visibleFields && current.isBinary())
+            {
+                break;
+            }
+        }
+        return fieldNames;
+    }
+
+    /**
+     * Adds the non static fields declared in a type to fieldNames. Fields already collected from a subclass hide the
+     * ones with the same name.
+     * @param declaring type declaring the fields
+     * @param fieldNames Map containing field names - FieldDescriptor objects
+     * @param includePrivate include private fields?
+     * @return <code>true</code> if the type declares any visible instance field
+     * @throws JavaModelException exception in analyzing type
+     */
+    private boolean addFields(IType declaring, Map<String, FieldDescriptor> fieldNames, boolean includePrivate)
+        throws JavaModelException
+    {
+        IField[] declaredFields = declaring.getFields();
+        boolean visible = false;
+
+        for (int j = 0; j < declaredFields.length; j++)
+        {
+            IField field = declaredFields[j];
+            int flags = field.getFlags();
+
+            if (!Flags.isStatic(flags) && (includePrivate || !Flags.isPrivate(flags)))
+            {
+                visible = true;
+                if (!fieldNames.containsKey(field.getElementName()))
+                {
+                    fieldNames.put(field.getElementName(), createDescriptor(field, flags));
+                }
+            }
+        }
+        return visible;
+    }
+
+    /**
+     * Creates the descriptor for a field.
+     * @param field IField
+     * @param flags field modifiers
+     * @return FieldDescriptor
+     * @throws JavaModelException exception in resolving the field type
+     */
+    private FieldDescriptor createDescriptor(IField field, int flags) throws JavaModelException
+    {
+        String signature = resolveTypeSignature(field);
+
+        boolean enumType = false;
+        if (Signature.getTypeSignatureKind(Signature.getElementType(signature)) != Signature.BASE_TYPE_SIGNATURE)
+        {
+            enumType = isEnum(Signature.toString(Signature.getElementType(signature)));
+        }
+
+        return new FieldDescriptor(field.getElementName(), field.getDeclaringType().getFullyQualifiedName('.'),
+            signature, flags, enumType);
+    }
+
+    /**
+     * Returns the type signature of a field, with fully qualified names and without type arguments. Source fields
+     * only know the type name as written, which is resolved in the context of the declaring type.
+     * @param field IField
+     * @return resolved type signature, e.g. <code>I</code>, <code>[D</code> or <code>Ljava.util.List;</code>
+     * @throws JavaModelException exception in resolving the field type
+     */
+    private String resolveTypeSignature(IField field) throws JavaModelException
+    {
+        String signature = field.getTypeSignature();
+        int dimensions = Signature.getArrayCount(signature);
+        String element = Signature.getTypeErasure(Signature.getElementType(signature));
+
+        int kind = Signature.getTypeSignatureKind(element);
+
+        if (kind == Signature.TYPE_VARIABLE_SIGNATURE)
+        {
+            element = Signature.createTypeSignature(OBJECT, true);
+        }
+        else if (kind == Signature.CLASS_TYPE_SIGNATURE && element.charAt(0) == Signature.C_UNRESOLVED)
+        {
+            IType declaring = field.getDeclaringType();
+            String simpleName = Signature.toString(element);
+            String[][] resolved = declaring.resolveType(simpleName);
+
+            if (resolved != null && resolved.length == 1)
+            {
+                String packageName = resolved[0][0];
+                String qualifiedName = packageName.length() > 0 ? packageName + '.' + resolved[0][1] : resolved[0][1];
+                element = Signature.createTypeSignature(qualifiedName, true);
+            }
+            else if (declaring.getTypeParameter(simpleName).exists())
+            {
+                element = Signature.createTypeSignature(OBJECT, true);
+            }
+            else
+            {
+                // unresolved, keep the name as written
+                element = Signature.createTypeSignature(simpleName, true);
+            }
+        }
+
+        return dimensions > 0 ? Signature.createArraySignature(element, dimensions) : element;
+    }
+
+    /**
+     * Checks if the given type is an enum. Results are cached for the lifetime of this model.
+     * @param qualifiedName fully qualified type name
+     * @return <code>true</code> if the type is an enum
+     * @throws JavaModelException exception in looking up the type
+     */
+    private boolean isEnum(String qualifiedName) throws JavaModelException
+    {
+        Boolean cached = this.enumTypes.get(qualifiedName);
+        if (cached == null)
+        {
+            // no need to look up jdk classes
+            boolean enumType = false;
+            if (!qualifiedName.startsWith("java.")) //$NON-NLS-1$
+            {
+                IType fieldType = this.type.getJavaProject().findType(qualifiedName);
+                enumType = fieldType != null && fieldType.isEnum();
+            }
+            cached = Boolean.valueOf(enumType);
+            this.enumTypes.put(qualifiedName, cached);
+        }
+        return cached.booleanValue();
+    }
+
+    /**
+     * Finds the superclass of a type by resolving its name, without building a type hierarchy.
+     * @param current IType
+     * @return superclass, or <code>null</code> for <code>java.lang.Object</code>, interfaces and superclasses which
+     * can't be resolved
+     * @throws JavaModelException exception in resolving the name
+     */
+    private IType resolveSuperclass(IType current) throws JavaModelException
+    {
+        String superclassName = current.getSuperclassName();
+        if (superclassName == null)
+        {
+            return null;
+        }
+
+        // type arguments of a generic superclass
+        int typeArguments = superclassName.indexOf('<');
+        if (typeArguments > -1)
+        {
+            superclassName = superclassName.substring(0, typeArguments);
+        }
+
+        IJavaProject project = current.getJavaProject();
+
+        if (current.isBinary())
+        {
+            // already fully qualified, with '$' for member types
+            String qualifiedName = superclassName.replace('$', '.');
+            return OBJECT.equals(qualifiedName) ? null : project.findType(qualifiedName);
+        }
+
+        String[][] resolved = current.resolveType(superclassName);
+
+        // unresolved or ambiguous
+        if (resolved == null || resolved.length != 1)
+        {
+            return null;
+        }
+
+        String packageName = resolved[0][0];
+        String typeName = resolved[0][1];
+        if (OBJECT.equals(packageName + '.' + typeName))
+        {
+            return null;
+        }
+        return project.findType(packageName, typeName);
+    }
+
+}
@@ -0,0 +1,214 @@
+/* ====================================================================
+ *   Copyright 2003-2005 Fabrizio Giustina.
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ * ====================================================================
+ */
+package net.sf.commonclipse;
+
+import java.text.MessageFormat;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.MultiStatus;
+import org.eclipse.core.runtime.OperationCanceledException;
+import org.eclipse.core.runtime.Status;
+import org.eclipse.core.runtime.SubMonitor;
+import org.eclipse.jdt.core.ICompilationUnit;
+import org.eclipse.jdt.core.IMethod;
+import org.eclipse.jdt.core.IType;
+import org.eclipse.jdt.core.ITypeHierarchy;
+import org.eclipse.jdt.core.JavaModelException;
+import org.eclipse.text.edits.TextEdit;
+
+
+/**
+ * Generates methods for the types of a compilation unit without any user interface: no dialogs, no workbench and no
+ * changes to the unit. The caller gets back a single edit and decides how to apply it, e.g. on a working copy, on a
+ * document or not at all for a check. Instances are immutable and can be shared by parallel workers.
+ * @author fgiust
+ * @version $Revision$ ($Author$)
+ */
+public final class UnitGenerator
+{
+
+    /**
+     * generators to run on every type.
+     */
+    private final Generator[] generators;
+
+    /**
+     * configuration.
+     */
+    private final CCPluginPreferences preferences;
+
+    /**
+     * replace methods which already exist?
+     */
+    private final boolean overwrite;
+
+    /**
+     * replace only the existing methods which still look generated?
+     */
+    private final boolean replaceGeneratedOnly;
+
+    /**
+     * Creates a new UnitGenerator.
+     * @param generators generators to run on every type
+     * @param preferences configuration, e.g. <code>new CCPluginPreferences(new Properties())</code> for the defaults
+     * @param overwrite if <code>false</code> methods which already exist are left untouched
+     */
+    public UnitGenerator(Generator[] generators, CCPluginPreferences preferences, boolean overwrite)
+    {
+        this(generators, preferences, overwrite, false);
+    }
+
+    /**
+     * Creates a new UnitGenerator.
+     * @param generators generators to run on every type
+     * @param preferences configuration, e.g. <code>new CCPluginPreferences(new Properties())</code> for the defaults
+     * @param overwrite if <code>false</code> methods which already exist are left untouched
+     * @param replaceGeneratedOnly if <code>true</code> existing methods changed by hand are left untouched even if
+     * overwrite is enabled, see UnitRewrite.setReplaceGeneratedOnly()
+     */
+    public UnitGenerator(Generator[] generators, CCPluginPreferences preferences, boolean overwrite,
+        boolean replaceGeneratedOnly)
+    {
+        this.generators = generators;
+        this.preferences = preferences;
+        this.overwrite = overwrite;
+        this.replaceGeneratedOnly = replaceGeneratedOnly;
+    }
+
+    /**
+     * Generates the methods for the given types. A type which fails is reported in the result status and left out of
+     * the edit, the other types are still processed.
+     * @param cu compilation unit, read but not modified
+     * @param types types of cu to process, anything but classes is skipped
+     * @param hierarchy an hierarchy containing the types and their supertypes, e.g. a region hierarchy shared by many
+     * units. Can be <code>null</code>, or not contain some of the types: the shared hierarchy cache is used for them
+     * @param monitor progress monitor, can be null
+     * @return GenerationResult
+     * @throws JavaModelException exception in reading the compilation unit
+     * @throws OperationCanceledException if the monitor has been canceled
+     */
+    public GenerationResult generate(ICompilationUnit cu, List<IType> types, ITypeHierarchy hierarchy,
+        IProgressMonitor monitor) throws JavaModelException
+    {
+        SubMonitor progress = SubMonitor.convert(monitor, cu.getElementName(), types.size() + 2);
+        MultiStatus status = new MultiStatus(CCPlugin.PLUGIN_ID, IStatus.OK, cu.getElementName(), null);
+        Map<String, List<String>> methods = new LinkedHashMap<String, List<String>>();
+
+        // all the types of the unit are changed with a single edit
+        UnitRewrite rewrite = new UnitRewrite(cu, this.preferences, progress.newChild(1));
+        rewrite.setReplaceGeneratedOnly(this.replaceGeneratedOnly);
+
+        Iterator<IType> iterator = types.iterator();
+        while (iterator.hasNext())
+        {
+            IType type = iterator.next();
+            UnitRewrite.checkCanceled(progress);
+            try
+            {
+                List<String> generated = generate(type, rewrite, hierarchy, progress.newChild(1));
+                if (!generated.isEmpty())
+                {
+                    methods.put(type.getFullyQualifiedName('.'), generated);
+                }
+            }
+            catch (JavaModelException e)
+            {
+                status.add(createStatus(type.getElementName(), e));
+            }
+        }
+
+        TextEdit edit = null;
+        if (!methods.isEmpty())
+        {
+            UnitRewrite.checkCanceled(progress);
+            edit = rewrite.createEdit();
+
+            // regenerated methods identical to the existing ones
+            if (!edit.hasChildren())
+            {
+                edit = null;
+            }
+        }
+        progress.worked(1);
+
+        return new GenerationResult(cu, edit, methods, status);
+    }
+
+    /**
+     * Records the methods for a single type, skipping existing methods unless overwrite is enabled.
+     * @param type IType
+     * @param rewrite changes to the compilation unit
+     * @param hierarchy hierarchy which may contain type, can be null
+     * @param monitor progress monitor
+     * @return names of the recorded methods
+     * @throws JavaModelException any exception in method generation
+     */
+    private List<String> generate(IType type, UnitRewrite rewrite, ITypeHierarchy hierarchy, IProgressMonitor monitor)
+        throws JavaModelException
+    {
+        List<String> names = new ArrayList<String>(this.generators.length);
+        if (!type.isClass())
+        {
+            return names;
+        }
+
+        List<Generator> selected = new ArrayList<Generator>(this.generators.length);
+        for (int j = 0; j < this.generators.length; j++)
+        {
+            Generator generator = this.generators[j];
+            IMethod existing = generator.getExistingMethod(type);
+            if (this.overwrite || existing == null || !existing.exists())
+            {
+                selected.add(generator);
+                names.add(generator.getMethodName());
+            }
+        }
+
+        if (selected.isEmpty())
+        {
+            return names;
+        }
+
+        ITypeHierarchy typeHierarchy = hierarchy != null && hierarchy.contains(type) ? hierarchy : null;
+
+        rewrite.addMethods(
+            new TypeModel(type, typeHierarchy, monitor),
+            selected.toArray(new Generator[selected.size()]),
+            monitor);
+        return names;
+    }
+
+    /**
+     * Creates a status for a type which failed.
+     * @param elementName name of the type
+     * @param exception exception
+     * @return IStatus
+     */
+    private IStatus createStatus(String elementName, JavaModelException exception)
+    {
+        return new Status(IStatus.ERROR, CCPlugin.PLUGIN_ID, MessageFormat.format(CCMessages
+            .getString("BatchGenerationJob.failed"), //$NON-NLS-1$
+            new Object[]{elementName, exception.getMessage()}), exception);
+    }
+
+}
@@ -0,0 +1,341 @@
+/* ====================================================================
+ *   Copyright 2003-2005 Fabrizio Giustina.
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ * ====================================================================
+ */
+package net.sf.commonclipse;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.eclipse.core.runtime.CoreException;
+import org.eclipse.jdt.core.Signature;
+import org.eclipse.jdt.core.dom.ASTNode;
+import org.eclipse.jdt.core.dom.AbstractTypeDeclaration;
+import org.eclipse.jdt.core.dom.BodyDeclaration;
+import org.eclipse.jdt.core.dom.CompilationUnit;
+import org.eclipse.jdt.core.dom.ImportDeclaration;
+import org.eclipse.jdt.core.dom.rewrite.ImportRewrite;
+import org.eclipse.text.edits.InsertEdit;
+import org.eclipse.text.edits.TextEdit;
+
+
+/**
+ * Imports required by all the methods generated in a compilation unit. Imports are collected in a single ImportRewrite
+ * (or tracked directly for ASTs parsed outside of the Java model) and written with one edit. Types which don't need an
+ * import (same package, <code>java.lang</code>) or which are already imported are skipped, and if a simple name is
+ * already taken by another type the generators get the fully qualified name to use instead.
+ * @author fgiust
+ * @version $Revision$ ($Author$)
+ */
+public final class UnitImports
+{
+
+    /**
+     * package implicitly imported by every compilation unit.
+     */
+    private static final String JAVA_LANG = "java.lang"; //$NON-NLS-1$
+
+    /**
+     * imports of the unit, including the existing ones. <code>null</code> for an AST not created from the Java model,
+     * existing imports are then tracked by this object.
+     */
+    private final ImportRewrite imports;
+
+    /**
+     * AST of the compilation unit.
+     */
+    private final CompilationUnit astRoot;
+
+    /**
+     * line separator, only used without an ImportRewrite.
+     */
+    private final String lineSeparator;
+
+    /**
+     * existing single type imports by simple name, only used without an ImportRewrite.
+     */
+    private final Map<String, String> singleImports = new HashMap<String, String>();
+
+    /**
+     * packages imported on demand, only used without an ImportRewrite.
+     */
+    private final Set<String> onDemandImports = new HashSet<String>();
+
+    /**
+     * package of the compilation unit, empty for the default package.
+     */
+    private final String packageName;
+
+    /**
+     * simple names of the types declared in the compilation unit, these hide imported types.
+     */
+    private final Set<String> declaredTypes = new HashSet<String>();
+
+    /**
+     * imports added by this object, in order.
+     */
+    private final List<String> added = new ArrayList<String>();
+
+    /**
+     * Creates a new UnitImports for the given compilation unit.
+     * @param astRoot AST of the compilation unit, with the existing imports
+     */
+    public UnitImports(CompilationUnit astRoot)
+    {
+        this(astRoot, ImportRewrite.create(astRoot, true), null);
+    }
+
+    /**
+     * Creates a new UnitImports for an AST parsed outside of the Java model, e.g. from a file on disk. Imports are
+     * added after the existing ones, sorted by name.
+     * @param astRoot AST of the compilation unit, with the existing imports
+     * @param lineSeparator line separator used in the compilation unit
+     */
+    public UnitImports(CompilationUnit astRoot, String lineSeparator)
+    {
+        this(astRoot, null, lineSeparator);
+
+        Iterator< ? > iterator = astRoot.imports().iterator();
+        while (iterator.hasNext())
+        {
+            ImportDeclaration declaration = (ImportDeclaration) iterator.next();
+            if (declaration.isStatic())
+            {
+                continue;
+            }
+
+            String name = declaration.getName().getFullyQualifiedName();
+            if (declaration.isOnDemand())
+            {
+                this.onDemandImports.add(name);
+            }
+            else
+            {
+                this.singleImports.put(Signature.getSimpleName(name), name);
+            }
+        }
+    }
+
+    /**
+     * Creates a new UnitImports.
+     * @param astRoot AST of the compilation unit
+     * @param imports ImportRewrite, can be null
+     * @param lineSeparator line separator, only used without an ImportRewrite
+     */
+    private UnitImports(CompilationUnit astRoot, ImportRewrite imports, String lineSeparator)
+    {
+        this.astRoot = astRoot;
+        this.imports = imports;
+        this.lineSeparator = lineSeparator;
+        this.packageName = astRoot.getPackage() != null
+            ? astRoot.getPackage().getName().getFullyQualifiedName()
+            : ""; //$NON-NLS-1$
+        addDeclaredTypes(astRoot.types());
+    }
+
+    /**
+     * Requires a type in generated code.
+     * @param qualifiedName fully qualified name of the type
+     * @return the name to use in generated code: the simple name if it's visible after the import, the fully qualified
+     * name if the simple name refers to another type
+     */
+    public String addImport(String qualifiedName)
+    {
+        String qualifier = Signature.getQualifier(qualifiedName);
+        String simpleName = Signature.getSimpleName(qualifiedName);
+
+        if (qualifier.equals(this.packageName) && this.declaredTypes.contains(simpleName))
+        {
+            // declared right here
+            return simpleName;
+        }
+
+        if (this.declaredTypes.contains(simpleName))
+        {
+            return qualifiedName;
+        }
+
+        if (qualifier.equals(this.packageName) || JAVA_LANG.equals(qualifier))
+        {
+            return simpleName;
+        }
+
+        if (this.imports == null)
+        {
+            return addSourceImport(qualifiedName, qualifier, simpleName);
+        }
+
+        int addedBefore = this.imports.getAddedImports().length;
+        String name = this.imports.addImport(qualifiedName);
+        if (this.imports.getAddedImports().length > addedBefore)
+        {
+            this.added.add(qualifiedName);
+        }
+        return name;
+    }
+
+    /**
+     * Returns the number of imports added by this object. Used together with rollback() to discard the imports
+     * required by a failed generation.
+     * @return number of added imports
+     */
+    public int getAddedCount()
+    {
+        return this.added.size();
+    }
+
+    /**
+     * Discards the imports added after the given count.
+     * @param count value returned by getAddedCount()
+     */
+    public void rollback(int count)
+    {
+        while (this.added.size() > count)
+        {
+            String removed = this.added.remove(this.added.size() - 1);
+            if (this.imports != null)
+            {
+                this.imports.removeImport(removed);
+            }
+        }
+    }
+
+    /**
+     * Are there any imports to add?
+     * @return <code>true</code> if any import has been added
+     */
+    public boolean hasChanges()
+    {
+        return this.imports != null ? this.imports.hasRecordedChanges() : !this.added.isEmpty();
+    }
+
+    /**
+     * Creates the edit adding the imports.
+     * @return TextEdit
+     * @throws CoreException exception in computing the edit
+     */
+    public TextEdit createEdit() throws CoreException
+    {
+        if (this.imports != null)
+        {
+            return this.imports.rewriteImports(null);
+        }
+
+        List<String> sorted = new ArrayList<String>(this.added);
+        Collections.sort(sorted);
+
+        StringBuffer buffer = new StringBuffer();
+        Iterator<String> iterator = sorted.iterator();
+        while (iterator.hasNext())
+        {
+            buffer.append(this.lineSeparator);
+            buffer.append("import "); //$NON-NLS-1$
+            buffer.append(iterator.next());
+            buffer.append(';');
+        }
+
+        List< ? > existing = this.astRoot.imports();
+        if (!existing.isEmpty())
+        {
+            // right after the last import
+            return new InsertEdit(getEnd((ASTNode) existing.get(existing.size() - 1)), buffer.toString());
+        }
+
+        if (this.astRoot.getPackage() != null)
+        {
+            // a blank line after the package declaration
+            buffer.insert(0, this.lineSeparator);
+            return new InsertEdit(getEnd(this.astRoot.getPackage()), buffer.toString());
+        }
+
+        // before the first type, after any comment at the start of the file
+        List< ? > types = this.astRoot.types();
+        int offset = types.isEmpty() ? 0 : ((ASTNode) types.get(0)).getStartPosition();
+        buffer.delete(0, this.lineSeparator.length());
+        buffer.append(this.lineSeparator);
+        buffer.append(this.lineSeparator);
+        return new InsertEdit(offset, buffer.toString());
+    }
+
+    /**
+     * Adds an import without an ImportRewrite, checking the existing imports and the ones already added.
+     * @param qualifiedName fully qualified name of the type
+     * @param qualifier package of the type
+     * @param simpleName simple name of the type
+     * @return the name to use in generated code
+     */
+    private String addSourceImport(String qualifiedName, String qualifier, String simpleName)
+    {
+        String imported = this.singleImports.get(simpleName);
+        if (imported != null)
+        {
+            return imported.equals(qualifiedName) ? simpleName : qualifiedName;
+        }
+
+        if (this.onDemandImports.contains(qualifier))
+        {
+            return simpleName;
+        }
+
+        Iterator<String> iterator = this.added.iterator();
+        while (iterator.hasNext())
+        {
+            String name = iterator.next();
+            if (Signature.getSimpleName(name).equals(simpleName))
+            {
+                return name.equals(qualifiedName) ? simpleName : qualifiedName;
+            }
+        }
+
+        this.added.add(qualifiedName);
+        return simpleName;
+    }
+
+    /**
+     * Returns the offset right after a node.
+     * @param node AST node
+     * @return end offset
+     */
+    private static int getEnd(ASTNode node)
+    {
+        return node.getStartPosition() + node.getLength();
+    }
+
+    /**
+     * Collects the simple names of the given types and of their member types.
+     * @param types list of AbstractTypeDeclaration or BodyDeclaration
+     */
+    private void addDeclaredTypes(List< ? > types)
+    {
+        Iterator< ? > iterator = types.iterator();
+        while (iterator.hasNext())
+        {
+            BodyDeclaration declaration = (BodyDeclaration) iterator.next();
+            if (declaration instanceof AbstractTypeDeclaration)
+            {
+                AbstractTypeDeclaration type = (AbstractTypeDeclaration) declaration;
+                this.declaredTypes.add(type.getName().getIdentifier());
+                addDeclaredTypes(type.bodyDeclarations());
+            }
+        }
+    }
+
+}
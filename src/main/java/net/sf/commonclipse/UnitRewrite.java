@@ -0,0 +1,570 @@
+/* ====================================================================
+ *   Copyright 2003-2005 Fabrizio Giustina.
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ * ====================================================================
+ */
+package net.sf.commonclipse;
+
+import java.text.MessageFormat;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.OperationCanceledException;
+import org.eclipse.core.runtime.Status;
+import org.eclipse.core.runtime.SubMonitor;
+import org.eclipse.jdt.core.ICompilationUnit;
+import org.eclipse.jdt.core.IJavaProject;
+import org.eclipse.jdt.core.JavaModelException;
+import org.eclipse.jdt.core.dom.AST;
+import org.eclipse.jdt.core.dom.ASTNode;
+import org.eclipse.jdt.core.dom.ASTParser;
+import org.eclipse.jdt.core.dom.AbstractTypeDeclaration;
+import org.eclipse.jdt.core.dom.CompilationUnit;
+import org.eclipse.jdt.core.dom.MethodDeclaration;
+import org.eclipse.jdt.core.dom.rewrite.ASTRewrite;
+import org.eclipse.jdt.core.dom.rewrite.ListRewrite;
+import org.eclipse.jdt.core.formatter.CodeFormatter;
+import org.eclipse.jface.text.BadLocationException;
+import org.eclipse.jface.text.Document;
+import org.eclipse.jface.text.Position;
+import org.eclipse.jface.text.TextUtilities;
+import org.eclipse.text.edits.MalformedTreeException;
+import org.eclipse.text.edits.ReplaceEdit;
+import org.eclipse.text.edits.TextEdit;
+
+
+/**
+ * Collects all the changes generated for the types of a single compilation unit: removed and added methods, changes to
+ * type declarations and imports. The changes are recorded on an AST of the unit and applied together as a single text
+ * edit, so a compilation unit is changed, reconciled and saved only once, no matter how many methods are generated.
+ * @author fgiust
+ * @version $Revision$ ($Author$)
+ */
+public class UnitRewrite
+{
+
+    /**
+     * compilation unit, <code>null</code> for an AST not created from the Java model.
+     */
+    private final ICompilationUnit cu;
+
+    /**
+     * AST of the unit, reflecting the source before any change.
+     */
+    private final CompilationUnit astRoot;
+
+    /**
+     * source the AST was created from.
+     */
+    private final String source;
+
+    /**
+     * line separator used in the source.
+     */
+    private final String lineSeparator;
+
+    /**
+     * formatter, <code>null</code> to use the one configured for the project of the compilation unit.
+     */
+    private final CodeFormatter formatter;
+
+    /**
+     * Java options used for rewriting an AST not created from the Java model.
+     */
+    private final Map<String, String> options;
+
+    /**
+     * changes to methods.
+     */
+    private final ASTRewrite rewrite;
+
+    /**
+     * imports required by the generated methods.
+     */
+    private final UnitImports imports;
+
+    /**
+     * plugin preferences, the same for all the generated methods.
+     */
+    private final CCPluginPreferences preferences;
+
+    /**
+     * edits to replaced methods, offsets refer to the unmodified source.
+     */
+    private final List<TextEdit> edits = new ArrayList<TextEdit>();
+
+    /**
+     * leave existing methods which don't look generated untouched?
+     */
+    private boolean replaceGeneratedOnly;
+
+    /**
+     * Parses the compilation unit. Method bodies are not needed to add or remove members and are skipped.
+     * @param cu compilation unit
+     * @param preferences plugin preferences used by the generators
+     * @param monitor progress monitor, can be null
+     * @throws JavaModelException exception in reading the compilation unit
+     */
+    public UnitRewrite(ICompilationUnit cu, CCPluginPreferences preferences, IProgressMonitor monitor)
+        throws JavaModelException
+    {
+        this.cu = cu;
+        this.preferences = preferences;
+        SubMonitor progress = SubMonitor.convert(monitor, 2);
+
+        // a previous run on the same unit may have left the model out of date
+        if (!cu.isConsistent())
+        {
+            cu.makeConsistent(progress.newChild(1));
+        }
+
+        this.source = cu.getSource();
+        this.lineSeparator = cu.findRecommendedLineSeparator();
+        this.formatter = null;
+        this.options = null;
+
+        ASTParser parser = ASTParser.newParser(AST.JLS3);
+        parser.setKind(ASTParser.K_COMPILATION_UNIT);
+        parser.setSource(cu);
+        parser.setResolveBindings(false);
+        parser.setIgnoreMethodBodies(true);
+        this.astRoot = (CompilationUnit) parser.createAST(progress.newChild(1));
+
+        this.rewrite = ASTRewrite.create(this.astRoot.getAST());
+        this.imports = new UnitImports(this.astRoot);
+    }
+
+    /**
+     * Creates a rewrite for an AST parsed outside of the Java model, e.g. from a file on disk. The changes can only be
+     * collected with createEdit(), and applied by the caller to the source.
+     * @param astRoot AST parsed from source, not modified
+     * @param source source of the compilation unit
+     * @param formatter formatter for the generated methods, used only by the calling thread
+     * @param options Java options, for the indentation of new members
+     * @param preferences plugin preferences used by the generators
+     */
+    public UnitRewrite(CompilationUnit astRoot, String source, CodeFormatter formatter, Map<String, String> options,
+        CCPluginPreferences preferences)
+    {
+        this.cu = null;
+        this.astRoot = astRoot;
+        this.source = source;
+        this.lineSeparator = TextUtilities.getDefaultLineDelimiter(new Document(source));
+        this.formatter = formatter;
+        this.options = options;
+        this.preferences = preferences;
+
+        this.rewrite = ASTRewrite.create(astRoot.getAST());
+        this.imports = new UnitImports(astRoot, this.lineSeparator);
+    }
+
+    /**
+     * Returns the compilation unit.
+     * @return ICompilationUnit, <code>null</code> for an AST not created from the Java model
+     */
+    public ICompilationUnit getCompilationUnit()
+    {
+        return this.cu;
+    }
+
+    /**
+     * Makes addMethods() leave alone the existing methods which have been changed by hand, so they can be regenerated
+     * without asking: an existing method is only replaced if it has the same shape as the new one, see
+     * SourceTokens.sameShape(). Disabled by default, when replacing has been confirmed by the user.
+     * @param replaceGeneratedOnly <code>true</code> to skip existing methods which don't look generated
+     */
+    public void setReplaceGeneratedOnly(boolean replaceGeneratedOnly)
+    {
+        this.replaceGeneratedOnly = replaceGeneratedOnly;
+    }
+
+    /**
+     * Records the methods of all the given generators for the type described by model. All the methods are formatted
+     * together; existing methods are replaced in place, new methods are added at the end of the type.
+     * @param model type model shared by the generators
+     * @param generators generators to run
+     * @param monitor progress monitor, can be null. If canceled nothing is recorded for the type
+     * @throws JavaModelException any exception in method generation
+     * @throws OperationCanceledException if the monitor has been canceled
+     */
+    public void addMethods(TypeModel model, Generator[] generators, IProgressMonitor monitor)
+        throws JavaModelException
+    {
+        SubMonitor progress = SubMonitor.convert(monitor, generators.length + 1);
+
+        AbstractTypeDeclaration declaration = model.findDeclaration(this.astRoot);
+        if (declaration == null)
+        {
+            throw new JavaModelException(new CoreException(new Status(
+                IStatus.ERROR,
+                CCPlugin.PLUGIN_ID,
+                MessageFormat.format(CCMessages.getString("UnitRewrite.notfound"), //$NON-NLS-1$
+                    new Object[]{model.getTypeName()}))));
+        }
+
+        MethodDeclaration[] replaced = new MethodDeclaration[generators.length];
+        String[] sources = new String[generators.length];
+        String[] methods;
+        List<TextEdit> edits = new ArrayList<TextEdit>();
+
+        // nothing is recorded until all the generators have completed, a failure leaves the type untouched
+        int importCount = this.imports.getAddedCount();
+        boolean completed = false;
+        try
+        {
+            for (int j = 0; j < generators.length; j++)
+            {
+                checkCanceled(progress);
+                Generator generator = generators[j];
+
+                // replacing the existing method has already been confirmed, or is checked below
+                replaced[j] = generator.findExistingMethod(declaration);
+
+                int generatorImports = this.imports.getAddedCount();
+                sources[j] = generator.createMethod(model, this.imports, this.preferences);
+                if (this.replaceGeneratedOnly
+                    && replaced[j] != null
+                    && !SourceTokens.sameShape(getSource(replaced[j]), sources[j]))
+                {
+                    // changed by hand since it has been generated
+                    this.imports.rollback(generatorImports);
+                    sources[j] = null;
+                }
+                progress.worked(1);
+            }
+
+            checkCanceled(progress);
+
+            methods = format(sources);
+            progress.worked(1);
+
+            for (int j = 0; j < methods.length; j++)
+            {
+                if (replaced[j] != null && methods[j] != null)
+                {
+                    // existing methods keep their position
+                    TextEdit replaceEdit = createReplaceEdit(
+                        replaced[j].getStartPosition(),
+                        replaced[j].getLength(),
+                        methods[j]);
+                    if (replaceEdit != null)
+                    {
+                        edits.add(replaceEdit);
+                    }
+                }
+            }
+
+            // last step which can fail: generators check the type before recording anything in the rewrite
+            for (int j = 0; j < generators.length; j++)
+            {
+                if (sources[j] != null)
+                {
+                    generators[j].rewriteDeclaration(model, declaration, this.rewrite);
+                }
+            }
+            completed = true;
+        }
+        finally
+        {
+            if (!completed)
+            {
+                this.imports.rollback(importCount);
+            }
+        }
+
+        ListRewrite members = null;
+        for (int j = 0; j < methods.length; j++)
+        {
+            if (replaced[j] == null)
+            {
+                if (members == null)
+                {
+                    members = this.rewrite.getListRewrite(declaration, declaration.getBodyDeclarationsProperty());
+                }
+
+                // indentation is adjusted to the insertion point by the rewrite
+                members.insertLast(this.rewrite.createStringPlaceholder(methods[j], ASTNode.METHOD_DECLARATION), null);
+            }
+        }
+
+        this.edits.addAll(edits);
+    }
+
+    /**
+     * Applies all the recorded changes to the compilation unit as a single edit, and saves it if it's not open in an
+     * editor. Only available if the rewrite was created for a compilation unit.
+     * @param monitor progress monitor, can be null
+     * @throws JavaModelException exception in applying changes
+     */
+    public void apply(IProgressMonitor monitor) throws JavaModelException
+    {
+        TextEdit edit = createEdit();
+
+        // regenerated methods identical to the existing ones, nothing to save
+        if (edit.hasChildren())
+        {
+            applyEdit(this.cu, edit, monitor);
+        }
+    }
+
+    /**
+     * Creates a single edit containing all the recorded changes. The AST is not needed anymore once the edit has been
+     * created, so it can be kept instead of this object when changes are applied later.
+     * @return TextEdit, offsets refer to the source the unit was parsed from. The edit has no children if the unit
+     * doesn't need any change
+     * @throws JavaModelException exception in computing changes
+     */
+    public TextEdit createEdit() throws JavaModelException
+    {
+        TextEdit edit = this.cu != null ? this.rewrite.rewriteAST() : this.rewrite.rewriteAST(
+            new Document(this.source),
+            this.options);
+
+        // edits don't overlap: imports come before the types, replaced methods don't contain the insertion point of
+        // new members
+        Iterator<TextEdit> iterator = this.edits.iterator();
+        while (iterator.hasNext())
+        {
+            edit.addChild(iterator.next());
+        }
+
+        if (this.imports.hasChanges())
+        {
+            try
+            {
+                edit.addChild(this.imports.createEdit());
+            }
+            catch (CoreException e)
+            {
+                throw new JavaModelException(e);
+            }
+        }
+        return edit;
+    }
+
+    /**
+     * Applies an edit to a compilation unit, and saves it if it's not open in an editor.
+     * @param unit compilation unit
+     * @param edit edit created by createEdit()
+     * @param monitor progress monitor, can be null
+     * @throws JavaModelException exception in applying changes
+     */
+    public static void applyEdit(ICompilationUnit unit, TextEdit edit, IProgressMonitor monitor)
+        throws JavaModelException
+    {
+        SubMonitor progress = SubMonitor.convert(monitor, 2);
+        unit.applyTextEdit(edit, progress.newChild(1));
+
+        if (!unit.isWorkingCopy() && unit.hasUnsavedChanges())
+        {
+            unit.save(progress.newChild(1), false);
+        }
+    }
+
+    /**
+     * Stops generation if the monitor has been canceled.
+     * @param monitor progress monitor
+     * @throws OperationCanceledException if the monitor has been canceled
+     */
+    public static void checkCanceled(IProgressMonitor monitor)
+    {
+        if (monitor.isCanceled())
+        {
+            throw new OperationCanceledException();
+        }
+    }
+
+    /**
+     * Returns the source of an existing method.
+     * @param method method declaration
+     * @return source, including javadoc and annotations
+     */
+    private String getSource(MethodDeclaration method)
+    {
+        return this.source.substring(method.getStartPosition(), method.getStartPosition() + method.getLength());
+    }
+
+    /**
+     * Creates the edit replacing an existing method. The new source is indented like the existing method and only the
+     * part between the unchanged prefix and suffix is replaced, so the edit is usually limited to the appenders. A
+     * method which only differs in layout (same tokens) is left untouched.
+     * @param offset start of the existing method
+     * @param length length of the existing method
+     * @param method formatted source of the new method, at indentation level 0
+     * @return ReplaceEdit or <code>null</code> if the existing method is equivalent
+     */
+    private TextEdit createReplaceEdit(int offset, int length, String method)
+    {
+        // indentation of the first line of the existing method
+        int lineStart = offset;
+        while (lineStart > 0 && isIndentChar(this.source.charAt(lineStart - 1)))
+        {
+            lineStart--;
+        }
+        String indent = this.source.substring(lineStart, offset);
+
+        String newText = indent.length() > 0 ? method.replaceAll(
+            Pattern.quote(this.lineSeparator) + "(?=[^\\r\\n])", //$NON-NLS-1$
+            Matcher.quoteReplacement(this.lineSeparator + indent)) : method;
+        String oldText = this.source.substring(offset, offset + length);
+
+        if (SourceTokens.sameCode(oldText, newText))
+        {
+            return null;
+        }
+
+        int maxLength = Math.min(oldText.length(), newText.length());
+
+        int prefix = 0;
+        while (prefix < maxLength && oldText.charAt(prefix) == newText.charAt(prefix))
+        {
+            prefix++;
+        }
+
+        int suffix = 0;
+        while (suffix < maxLength - prefix
+            && oldText.charAt(oldText.length() - 1 - suffix) == newText.charAt(newText.length() - 1 - suffix))
+        {
+            suffix++;
+        }
+
+        return new ReplaceEdit(offset + prefix, oldText.length() - prefix - suffix, newText.substring(
+            prefix,
+            newText.length() - suffix));
+    }
+
+    /**
+     * Indentation chars are ' ' and '\t'.
+     * @param ch char
+     * @return <code>true</code> if ch is ' ' or '\t'
+     */
+    private static boolean isIndentChar(char ch)
+    {
+        return ch == ' ' || ch == '\t';
+    }
+
+    /**
+     * Formats the given methods at indentation level 0 with the project formatter, with a single call to the formatter.
+     * @param methods source of the methods, <code>null</code> elements are skipped
+     * @return formatted source of every method, without leading and trailing whitespace; <code>null</code> for skipped
+     * methods
+     */
+    private String[] format(String[] methods)
+    {
+        StringBuffer src = new StringBuffer();
+
+        // positions are moved by the formatter edits, and mark every method in the formatted source
+        Position[] positions = new Position[methods.length];
+        for (int j = 0; j < methods.length; j++)
+        {
+            if (methods[j] != null)
+            {
+                positions[j] = new Position(src.length(), methods[j].length());
+                src.append(methods[j]);
+                src.append('\n');
+            }
+        }
+
+        String unformatted = src.toString();
+        Document document = new Document(unformatted);
+
+        try
+        {
+            for (int j = 0; j < positions.length; j++)
+            {
+                if (positions[j] != null)
+                {
+                    document.addPosition(positions[j]);
+                }
+            }
+        }
+        catch (BadLocationException ex)
+        {
+            // can't happen, positions are inside the document
+        }
+
+        TextEdit text;
+        if (this.formatter != null)
+        {
+            text = format(this.formatter, unformatted);
+        }
+        else
+        {
+            IJavaProject project = this.cu.getJavaProject();
+            CodeFormatter codeFormatter = FormatterCache.getDefault().acquire(project);
+            try
+            {
+                text = format(codeFormatter, unformatted);
+            }
+            finally
+            {
+                FormatterCache.getDefault().release(project, codeFormatter);
+            }
+        }
+
+        // null if the source could not be parsed, leave it unformatted
+        if (text != null)
+        {
+            try
+            {
+                text.apply(document);
+            }
+            catch (MalformedTreeException ex)
+            {
+                // can't happen, the edit was computed on the same source: leave it unformatted
+            }
+            catch (BadLocationException ex)
+            {
+                // can't happen, the edit was computed on the same source: leave it unformatted
+            }
+        }
+
+        String formatted = document.get();
+        String[] result = new String[methods.length];
+        for (int j = 0; j < positions.length; j++)
+        {
+            if (positions[j] != null)
+            {
+                result[j] = formatted.substring(positions[j].getOffset(), positions[j].getOffset()
+                    + positions[j].getLength()).trim();
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Formats class body declarations at indentation level 0.
+     * @param codeFormatter formatter
+     * @param unformatted class body declarations
+     * @return formatting edit, <code>null</code> if the source could not be parsed
+     */
+    private TextEdit format(CodeFormatter codeFormatter, String unformatted)
+    {
+        return codeFormatter.format(
+            CodeFormatter.K_CLASS_BODY_DECLARATIONS,
+            unformatted,
+            0,
+            unformatted.length(),
+            0,
+            this.lineSeparator);
+    }
+
+}
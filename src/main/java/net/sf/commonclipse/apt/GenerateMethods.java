@@ -0,0 +1,53 @@
+/* ====================================================================
+ *   Copyright 2003-2005 Fabrizio Giustina.
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ * ====================================================================
+ */
+package net.sf.commonclipse.apt;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+
+/**
+ * Generates a <code>FooMethods</code> helper class for the annotated class <code>Foo</code> during compilation, with
+ * static <code>equals</code>, <code>hashCode</code>, <code>toString</code> and, for comparable classes,
+ * <code>compareTo</code> methods. The class delegates to them:
+ *
+ * <pre>
+ * &#064;GenerateMethods
+ * public class Foo
+ * {
+ *     public boolean equals(Object object)
+ *     {
+ *         return FooMethods.equals(this, object);
+ *     }
+ *     ...
+ * }
+ * </pre>
+ *
+ * Fields are selected as in the plugin. The helper lives in the same package, so private fields are read through
+ * their getter; a private field without a getter is reported as an error.
+ * @author fgiust
+ * @version $Revision$ ($Author$)
+ */
+@Documented
+@Retention(RetentionPolicy.CLASS)
+@Target(ElementType.TYPE)
+public @interface GenerateMethods
+{
+}
@@ -0,0 +1,537 @@
+/* ====================================================================
+ *   Copyright 2003-2005 Fabrizio Giustina.
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ * ====================================================================
+ */
+package net.sf.commonclipse.apt;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+
+/**
+ * The helper class generated for an annotated class, and its source. Generated methods don't use the commons-lang
+ * builders: values are compared, hashed and printed by a few private methods of the helper, with the same semantics as
+ * <code>EqualsBuilder</code>, <code>HashCodeBuilder</code>, <code>CompareToBuilder</code> and the default
+ * <code>ToStringStyle</code>, arrays included.
+ * @author fgiust
+ * @version $Revision$ ($Author$)
+ */
+final class HelperClass
+{
+
+    /**
+     * method name of equals().
+     */
+    static final String EQUALS = "equals"; //$NON-NLS-1$
+
+    /**
+     * method name of hashCode().
+     */
+    static final String HASHCODE = "hashCode"; //$NON-NLS-1$
+
+    /**
+     * method name of toString().
+     */
+    static final String TOSTRING = "toString"; //$NON-NLS-1$
+
+    /**
+     * method name of compareTo().
+     */
+    static final String COMPARETO = "compareTo"; //$NON-NLS-1$
+
+    /**
+     * package of the annotated class and of the helper, empty for the default package.
+     */
+    private final String packageName;
+
+    /**
+     * simple name of the helper.
+     */
+    private final String name;
+
+    /**
+     * is the helper public?
+     */
+    private final boolean publicClass;
+
+    /**
+     * annotated class, as used in the helper method parameters.
+     */
+    private final String typeReference;
+
+    /**
+     * annotated class, as used in instanceof checks.
+     */
+    private final String rawType;
+
+    /**
+     * fields used in equals, hashCode and compareTo.
+     */
+    private final List<Member> fields = new ArrayList<Member>();
+
+    /**
+     * fields or javabean properties used in toString.
+     */
+    private final List<Member> properties = new ArrayList<Member>();
+
+    /**
+     * helpers of the superclass which are called first, by method name.
+     */
+    private final Map<String, String> superHelpers = new HashMap<String, String>();
+
+    /**
+     * generate compareTo?
+     */
+    private boolean comparable;
+
+    /**
+     * source being written.
+     */
+    private StringBuffer buffer;
+
+    /**
+     * Creates a new HelperClass.
+     * @param packageName package of the annotated class, empty for the default package
+     * @param name simple name of the helper
+     * @param publicClass is the helper public?
+     * @param typeReference annotated class with wildcards for its type parameters, e.g. <code>a.Foo&lt;?&gt;</code>
+     * @param rawType qualified name of the annotated class
+     */
+    HelperClass(String packageName, String name, boolean publicClass, String typeReference, String rawType)
+    {
+        this.packageName = packageName;
+        this.name = name;
+        this.publicClass = publicClass;
+        this.typeReference = typeReference;
+        this.rawType = rawType;
+    }
+
+    /**
+     * Returns the qualified name of the helper.
+     * @return qualified name
+     */
+    String getQualifiedName()
+    {
+        return this.packageName.length() == 0 ? this.name : this.packageName + '.' + this.name;
+    }
+
+    /**
+     * Adds a field used in equals, hashCode and compareTo.
+     * @param label field name
+     * @param accessor field name or getter call, without the instance
+     * @param primitive is the value primitive?
+     */
+    void addField(String label, String accessor, boolean primitive)
+    {
+        this.fields.add(new Member(label, accessor, primitive));
+    }
+
+    /**
+     * Adds a value printed by toString.
+     * @param label field or property name
+     * @param accessor field name or getter call, without the instance
+     * @param primitive is the value primitive?
+     */
+    void addProperty(String label, String accessor, boolean primitive)
+    {
+        this.properties.add(new Member(label, accessor, primitive));
+    }
+
+    /**
+     * Generates compareTo too.
+     * @param value <code>true</code> if the annotated class is comparable
+     */
+    void setComparable(boolean value)
+    {
+        this.comparable = value;
+    }
+
+    /**
+     * Calls the helper of the superclass before comparing the fields, as <code>appendSuper()</code> does.
+     * @param method method name
+     * @param helper qualified name of the helper of the superclass
+     */
+    void chainSuper(String method, String helper)
+    {
+        this.superHelpers.put(method, helper);
+    }
+
+    /**
+     * Writes the source of the helper.
+     * @return compilation unit source
+     */
+    String toSource()
+    {
+        this.buffer = new StringBuffer();
+
+        if (this.packageName.length() > 0)
+        {
+            line(0, "package " + this.packageName + ';'); //$NON-NLS-1$
+            line(0, ""); //$NON-NLS-1$
+        }
+        line(0, "/**"); //$NON-NLS-1$
+        line(0, " * Methods of {@link " + this.rawType + "}, generated by commonclipse from its fields."); //$NON-NLS-1$ //$NON-NLS-2$
+        line(0, " */"); //$NON-NLS-1$
+        line(0, (this.publicClass ? "public " : "") + "final class " + this.name); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+        line(0, "{"); //$NON-NLS-1$
+        line(0, ""); //$NON-NLS-1$
+        line(1, "private " + this.name + "()"); //$NON-NLS-1$ //$NON-NLS-2$
+        line(1, "{"); //$NON-NLS-1$
+        line(1, "}"); //$NON-NLS-1$
+
+        appendEquals();
+        appendHashCode();
+        appendToString();
+        if (this.comparable)
+        {
+            appendCompareTo();
+        }
+        appendValueMethods();
+
+        line(0, ""); //$NON-NLS-1$
+        line(0, "}"); //$NON-NLS-1$
+
+        String source = this.buffer.toString();
+        this.buffer = null;
+        return source;
+    }
+
+    /**
+     * Writes equals().
+     */
+    private void appendEquals()
+    {
+        line(0, ""); //$NON-NLS-1$
+        line(1, "public static boolean equals(" + this.typeReference + " self, Object object)"); //$NON-NLS-1$ //$NON-NLS-2$
+        line(1, "{"); //$NON-NLS-1$
+        line(2, "if (object == self)"); //$NON-NLS-1$
+        line(2, "{"); //$NON-NLS-1$
+        line(3, "return true;"); //$NON-NLS-1$
+        line(2, "}"); //$NON-NLS-1$
+        line(2, "if (!(object instanceof " + this.rawType + "))"); //$NON-NLS-1$ //$NON-NLS-2$
+        line(2, "{"); //$NON-NLS-1$
+        line(3, "return false;"); //$NON-NLS-1$
+        line(2, "}"); //$NON-NLS-1$
+        line(2, this.typeReference + " rhs = (" + this.typeReference + ") object;"); //$NON-NLS-1$ //$NON-NLS-2$
+
+        List<String> conditions = new ArrayList<String>();
+        String superHelper = this.superHelpers.get(EQUALS);
+        if (superHelper != null)
+        {
+            conditions.add(superHelper + ".equals(self, object)"); //$NON-NLS-1$
+        }
+        for (int j = 0; j < this.fields.size(); j++)
+        {
+            String accessor = this.fields.get(j).accessor;
+            conditions.add("equal(self." + accessor + ", rhs." + accessor + ')'); //$NON-NLS-1$ //$NON-NLS-2$
+        }
+
+        if (conditions.isEmpty())
+        {
+            line(2, "return true;"); //$NON-NLS-1$
+        }
+        for (int j = 0; j < conditions.size(); j++)
+        {
+            String prefix = j == 0 ? "return " : "    && "; //$NON-NLS-1$ //$NON-NLS-2$
+            String suffix = j == conditions.size() - 1 ? ";" : ""; //$NON-NLS-1$ //$NON-NLS-2$
+            line(2, prefix + conditions.get(j) + suffix);
+        }
+        line(1, "}"); //$NON-NLS-1$
+    }
+
+    /**
+     * Writes hashCode().
+     */
+    private void appendHashCode()
+    {
+        line(0, ""); //$NON-NLS-1$
+        line(1, "public static int hashCode(" + this.typeReference + " self)"); //$NON-NLS-1$ //$NON-NLS-2$
+        line(1, "{"); //$NON-NLS-1$
+
+        // HashCodeBuilder defaults
+        line(2, "int result = 17;"); //$NON-NLS-1$
+        String superHelper = this.superHelpers.get(HASHCODE);
+        if (superHelper != null)
+        {
+            line(2, "result = result * 37 + " + superHelper + ".hashCode(self);"); //$NON-NLS-1$ //$NON-NLS-2$
+        }
+        for (int j = 0; j < this.fields.size(); j++)
+        {
+            line(2, "result = result * 37 + hash(self." + this.fields.get(j).accessor + ");"); //$NON-NLS-1$ //$NON-NLS-2$
+        }
+        line(2, "return result;"); //$NON-NLS-1$
+        line(1, "}"); //$NON-NLS-1$
+    }
+
+    /**
+     * Writes toString().
+     */
+    private void appendToString()
+    {
+        line(0, ""); //$NON-NLS-1$
+        line(1, "public static String toString(" + this.typeReference + " self)"); //$NON-NLS-1$ //$NON-NLS-2$
+        line(1, "{"); //$NON-NLS-1$
+        line(2, "StringBuilder buffer = new StringBuilder();"); //$NON-NLS-1$
+        line(2, "buffer.append(self.getClass().getName()).append('@');"); //$NON-NLS-1$
+        line(2, "buffer.append(Integer.toHexString(System.identityHashCode(self))).append('[');"); //$NON-NLS-1$
+
+        String superHelper = this.superHelpers.get(TOSTRING);
+        if (superHelper != null)
+        {
+            line(2, "appendContent(buffer, " + superHelper + ".toString(self));"); //$NON-NLS-1$ //$NON-NLS-2$
+        }
+        for (int j = 0; j < this.properties.size(); j++)
+        {
+            Member property = this.properties.get(j);
+            String value = property.primitive ? "self." + property.accessor //$NON-NLS-1$
+                : "text(self." + property.accessor + ')'; //$NON-NLS-1$
+            line(2, "buffer.append(\"" + property.label + "=\").append(" + value + ").append(',');"); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+        }
+
+        line(2, "if (buffer.charAt(buffer.length() - 1) == ',')"); //$NON-NLS-1$
+        line(2, "{"); //$NON-NLS-1$
+        line(3, "buffer.setLength(buffer.length() - 1);"); //$NON-NLS-1$
+        line(2, "}"); //$NON-NLS-1$
+        line(2, "return buffer.append(']').toString();"); //$NON-NLS-1$
+        line(1, "}"); //$NON-NLS-1$
+    }
+
+    /**
+     * Writes compareTo().
+     */
+    private void appendCompareTo()
+    {
+        line(0, ""); //$NON-NLS-1$
+        line(1, "public static int compareTo(" + this.typeReference + " self, " //$NON-NLS-1$ //$NON-NLS-2$
+            + this.typeReference + " other)"); //$NON-NLS-1$
+        line(1, "{"); //$NON-NLS-1$
+
+        List<String> comparisons = new ArrayList<String>();
+        String superHelper = this.superHelpers.get(COMPARETO);
+        if (superHelper != null)
+        {
+            comparisons.add(superHelper + ".compareTo(self, other)"); //$NON-NLS-1$
+        }
+        for (int j = 0; j < this.fields.size(); j++)
+        {
+            String accessor = this.fields.get(j).accessor;
+            comparisons.add("compare(self." + accessor + ", other." + accessor + ')'); //$NON-NLS-1$ //$NON-NLS-2$
+        }
+
+        if (!comparisons.isEmpty())
+        {
+            line(2, "int result;"); //$NON-NLS-1$
+        }
+        for (int j = 0; j < comparisons.size(); j++)
+        {
+            line(2, "result = " + comparisons.get(j) + ';'); //$NON-NLS-1$
+            line(2, "if (result != 0)"); //$NON-NLS-1$
+            line(2, "{"); //$NON-NLS-1$
+            line(3, "return result;"); //$NON-NLS-1$
+            line(2, "}"); //$NON-NLS-1$
+        }
+        line(2, "return 0;"); //$NON-NLS-1$
+        line(1, "}"); //$NON-NLS-1$
+    }
+
+    /**
+     * Writes the private methods comparing, hashing and printing single values. Overloads for primitives are picked by
+     * the compiler; arrays are handled when the value is an Object, as the builders do.
+     */
+    private void appendValueMethods()
+    {
+        appendValueMethod("boolean equal(boolean lhs, boolean rhs)", "return lhs == rhs;"); //$NON-NLS-1$ //$NON-NLS-2$
+        appendValueMethod("boolean equal(long lhs, long rhs)", "return lhs == rhs;"); //$NON-NLS-1$ //$NON-NLS-2$
+        appendValueMethod("boolean equal(float lhs, float rhs)", //$NON-NLS-1$
+            "return Float.floatToIntBits(lhs) == Float.floatToIntBits(rhs);"); //$NON-NLS-1$
+        appendValueMethod("boolean equal(double lhs, double rhs)", //$NON-NLS-1$
+            "return Double.doubleToLongBits(lhs) == Double.doubleToLongBits(rhs);"); //$NON-NLS-1$
+        appendValueMethod("boolean equal(Object lhs, Object rhs)", //$NON-NLS-1$
+            "if (lhs == rhs || lhs == null || rhs == null)", //$NON-NLS-1$
+            "{", //$NON-NLS-1$
+            "    return lhs == rhs;", //$NON-NLS-1$
+            "}", //$NON-NLS-1$
+            "if (lhs.getClass().isArray())", //$NON-NLS-1$
+            "{", //$NON-NLS-1$
+            "    return java.util.Arrays.deepEquals(new Object[]{lhs}, new Object[]{rhs});", //$NON-NLS-1$
+            "}", //$NON-NLS-1$
+            "return lhs.equals(rhs);"); //$NON-NLS-1$
+
+        appendValueMethod("int hash(boolean value)", "return value ? 0 : 1;"); //$NON-NLS-1$ //$NON-NLS-2$
+        appendValueMethod("int hash(int value)", "return value;"); //$NON-NLS-1$ //$NON-NLS-2$
+        appendValueMethod("int hash(long value)", "return (int) (value ^ (value >>> 32));"); //$NON-NLS-1$ //$NON-NLS-2$
+        appendValueMethod("int hash(float value)", "return Float.floatToIntBits(value);"); //$NON-NLS-1$ //$NON-NLS-2$
+        appendValueMethod("int hash(double value)", //$NON-NLS-1$
+            "return hash(Double.doubleToLongBits(value));"); //$NON-NLS-1$
+        appendValueMethod("int hash(Object value)", //$NON-NLS-1$
+            "if (value == null)", //$NON-NLS-1$
+            "{", //$NON-NLS-1$
+            "    return 0;", //$NON-NLS-1$
+            "}", //$NON-NLS-1$
+            "if (value.getClass().isArray())", //$NON-NLS-1$
+            "{", //$NON-NLS-1$
+            "    return java.util.Arrays.deepHashCode(new Object[]{value});", //$NON-NLS-1$
+            "}", //$NON-NLS-1$
+            "return value.hashCode();"); //$NON-NLS-1$
+
+        appendValueMethod("String text(Object value)", //$NON-NLS-1$
+            "if (value == null)", //$NON-NLS-1$
+            "{", //$NON-NLS-1$
+            "    return \"<null>\";", //$NON-NLS-1$
+            "}", //$NON-NLS-1$
+            "if (value.getClass().isArray())", //$NON-NLS-1$
+            "{", //$NON-NLS-1$
+            "    String string = java.util.Arrays.deepToString(new Object[]{value});", //$NON-NLS-1$
+            "    return string.substring(1, string.length() - 1);", //$NON-NLS-1$
+            "}", //$NON-NLS-1$
+            "return value.toString();"); //$NON-NLS-1$
+
+        if (this.superHelpers.containsKey(TOSTRING))
+        {
+            // content of the superclass string, between the brackets
+            appendValueMethod("void appendContent(StringBuilder buffer, String string)", //$NON-NLS-1$
+                "int start = string.indexOf('[') + 1;", //$NON-NLS-1$
+                "int end = string.lastIndexOf(']');", //$NON-NLS-1$
+                "if (start > 0 && end > start)", //$NON-NLS-1$
+                "{", //$NON-NLS-1$
+                "    buffer.append(string, start, end).append(',');", //$NON-NLS-1$
+                "}"); //$NON-NLS-1$
+        }
+
+        if (this.comparable)
+        {
+            appendValueMethod("int compare(boolean lhs, boolean rhs)", //$NON-NLS-1$
+                "return lhs == rhs ? 0 : lhs ? 1 : -1;"); //$NON-NLS-1$
+            appendValueMethod("int compare(long lhs, long rhs)", //$NON-NLS-1$
+                "return lhs < rhs ? -1 : lhs > rhs ? 1 : 0;"); //$NON-NLS-1$
+            appendValueMethod("int compare(float lhs, float rhs)", "return Float.compare(lhs, rhs);"); //$NON-NLS-1$ //$NON-NLS-2$
+            appendValueMethod("int compare(double lhs, double rhs)", "return Double.compare(lhs, rhs);"); //$NON-NLS-1$ //$NON-NLS-2$
+            line(0, ""); //$NON-NLS-1$
+            line(1, "@SuppressWarnings(\"unchecked\")"); //$NON-NLS-1$
+            appendValueMethodBody("int compare(Object lhs, Object rhs)", new String[]{ //$NON-NLS-1$
+                "if (lhs == rhs)", //$NON-NLS-1$
+                "{", //$NON-NLS-1$
+                "    return 0;", //$NON-NLS-1$
+                "}", //$NON-NLS-1$
+                "if (lhs == null || rhs == null)", //$NON-NLS-1$
+                "{", //$NON-NLS-1$
+                "    return lhs == null ? -1 : 1;", //$NON-NLS-1$
+                "}", //$NON-NLS-1$
+                "if (lhs.getClass().isArray())", //$NON-NLS-1$
+                "{", //$NON-NLS-1$
+                "    int length = java.lang.reflect.Array.getLength(lhs);", //$NON-NLS-1$
+                "    int otherLength = java.lang.reflect.Array.getLength(rhs);", //$NON-NLS-1$
+                "    if (length != otherLength)", //$NON-NLS-1$
+                "    {", //$NON-NLS-1$
+                "        return length < otherLength ? -1 : 1;", //$NON-NLS-1$
+                "    }", //$NON-NLS-1$
+                "    for (int j = 0; j < length; j++)", //$NON-NLS-1$
+                "    {", //$NON-NLS-1$
+                "        int result = compare(java.lang.reflect.Array.get(lhs, j), " //$NON-NLS-1$
+                    + "java.lang.reflect.Array.get(rhs, j));", //$NON-NLS-1$
+                "        if (result != 0)", //$NON-NLS-1$
+                "        {", //$NON-NLS-1$
+                "            return result;", //$NON-NLS-1$
+                "        }", //$NON-NLS-1$
+                "    }", //$NON-NLS-1$
+                "    return 0;", //$NON-NLS-1$
+                "}", //$NON-NLS-1$
+                "return ((Comparable<Object>) lhs).compareTo(rhs);"}); //$NON-NLS-1$
+        }
+    }
+
+    /**
+     * Writes a private static method, preceded by an empty line.
+     * @param signature return type, name and parameters
+     * @param body statements, indented relative to the method
+     */
+    private void appendValueMethod(String signature, String... body)
+    {
+        line(0, ""); //$NON-NLS-1$
+        appendValueMethodBody(signature, body);
+    }
+
+    /**
+     * Writes a private static method.
+     * @param signature return type, name and parameters
+     * @param body statements, indented relative to the method
+     */
+    private void appendValueMethodBody(String signature, String[] body)
+    {
+        line(1, "private static " + signature); //$NON-NLS-1$
+        line(1, "{"); //$NON-NLS-1$
+        for (int j = 0; j < body.length; j++)
+        {
+            line(2, body[j]);
+        }
+        line(1, "}"); //$NON-NLS-1$
+    }
+
+    /**
+     * Writes a line of source.
+     * @param level indentation level
+     * @param text line content, empty for a blank line
+     */
+    private void line(int level, String text)
+    {
+        if (text.length() > 0)
+        {
+            for (int j = 0; j < level; j++)
+            {
+                this.buffer.append("    "); //$NON-NLS-1$
+            }
+            this.buffer.append(text);
+        }
+        this.buffer.append('\n');
+    }
+
+    /**
+     * A value used in the generated methods.
+     */
+    private static class Member
+    {
+
+        /**
+         * field or property name.
+         */
+        final String label;
+
+        /**
+         * field name or getter call.
+         */
+        final String accessor;
+
+        /**
+         * is the value primitive?
+         */
+        final boolean primitive;
+
+        /**
+         * Creates a new Member.
+         * @param label field or property name
+         * @param accessor field name or getter call
+         * @param primitive is the value primitive?
+         */
+        Member(String label, String accessor, boolean primitive)
+        {
+            this.label = label;
+            this.accessor = accessor;
+            this.primitive = primitive;
+        }
+    }
+
+}
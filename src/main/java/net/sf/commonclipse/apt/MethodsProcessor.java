@@ -0,0 +1,630 @@
+/* ====================================================================
+ *   Copyright 2003-2005 Fabrizio Giustina.
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ * ====================================================================
+ */
+package net.sf.commonclipse.apt;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.text.MessageFormat;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.ProcessingEnvironment;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.annotation.processing.SupportedOptions;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.NestingKind;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.element.VariableElement;
+import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.util.ElementFilter;
+import javax.tools.Diagnostic;
+import javax.tools.JavaFileObject;
+
+import net.sf.commonclipse.CCMessages;
+import net.sf.commonclipse.CCPlugin;
+import net.sf.commonclipse.ExcludedFields;
+
+
+/**
+ * Annotation processor generating the helper classes of the classes annotated with {@link GenerateMethods}. Fields
+ * are selected as in the plugin: all the instance fields of the class, then the non private instance fields of its
+ * superclasses, skipping the excluded names. Options use the plugin preference keys with a
+ * <code>commonclipse.</code> prefix, e.g. <code>-Acommonclipse.exclude=class;log;id</code>, and have the same
+ * defaults. Each helper only depends on its class and the superclasses, so the processor is isolating for incremental
+ * builds.
+ * @author fgiust
+ * @version $Revision$ ($Author$)
+ */
+@SupportedAnnotationTypes("net.sf.commonclipse.apt.GenerateMethods")
+@SupportedOptions({
+    MethodsProcessor.OPTION_PREFIX + CCPlugin.P_EXCLUDE,
+    MethodsProcessor.OPTION_PREFIX + CCPlugin.P_TOSTRING_BEAN,
+    MethodsProcessor.OPTION_PREFIX + CCPlugin.P_EQUALS_SUPER,
+    MethodsProcessor.OPTION_PREFIX + CCPlugin.P_HASHCODE_SUPER,
+    MethodsProcessor.OPTION_PREFIX + CCPlugin.P_TOSTRING_SUPER,
+    MethodsProcessor.OPTION_PREFIX + CCPlugin.P_COMPARETO_SUPER})
+public class MethodsProcessor extends AbstractProcessor
+{
+
+    /**
+     * prefix of the processor options.
+     */
+    public static final String OPTION_PREFIX = "commonclipse."; //$NON-NLS-1$
+
+    /**
+     * suffix of the helper class names.
+     */
+    public static final String HELPER_SUFFIX = "Methods"; //$NON-NLS-1$
+
+    /**
+     * java.lang.Object.
+     */
+    private static final String OBJECT = "java.lang.Object"; //$NON-NLS-1$
+
+    /**
+     * excluded field and property names.
+     */
+    private Pattern excluded;
+
+    /**
+     * use javabean properties in toString() instead of fields?
+     */
+    private boolean javabeanToString;
+
+    /**
+     * methods calling the helper of an annotated superclass.
+     */
+    private final Set<String> superMethods = new HashSet<String>();
+
+    /**
+     * @see javax.annotation.processing.AbstractProcessor#init(javax.annotation.processing.ProcessingEnvironment)
+     */
+    @Override
+    public synchronized void init(ProcessingEnvironment environment)
+    {
+        super.init(environment);
+        Map<String, String> options = environment.getOptions();
+
+        this.excluded = ExcludedFields.compile(getOption(options, CCPlugin.P_EXCLUDE, ExcludedFields.DEFAULT));
+        this.javabeanToString = CCPlugin.TOSTRINGSTYLE_BEAN.equals(getOption(
+            options,
+            CCPlugin.P_TOSTRING_BEAN,
+            CCPlugin.TOSTRINGSTYLE_BEAN));
+
+        // same defaults as the plugin preferences
+        addSuperMethod(options, CCPlugin.P_EQUALS_SUPER, true, HelperClass.EQUALS);
+        addSuperMethod(options, CCPlugin.P_HASHCODE_SUPER, true, HelperClass.HASHCODE);
+        addSuperMethod(options, CCPlugin.P_TOSTRING_SUPER, false, HelperClass.TOSTRING);
+        addSuperMethod(options, CCPlugin.P_COMPARETO_SUPER, true, HelperClass.COMPARETO);
+    }
+
+    /**
+     * Reads a processor option.
+     * @param options processor options
+     * @param key plugin preference key
+     * @param defaultValue value if the option is not given
+     * @return option value
+     */
+    private static String getOption(Map<String, String> options, String key, String defaultValue)
+    {
+        String value = options.get(OPTION_PREFIX + key);
+        return value != null ? value : defaultValue;
+    }
+
+    /**
+     * Reads an "append super" option.
+     * @param options processor options
+     * @param key plugin preference key
+     * @param defaultValue value if the option is not given
+     * @param method method calling the superclass helper if the option is set
+     */
+    private void addSuperMethod(Map<String, String> options, String key, boolean defaultValue, String method)
+    {
+        if (Boolean.valueOf(getOption(options, key, Boolean.toString(defaultValue))).booleanValue())
+        {
+            this.superMethods.add(method);
+        }
+    }
+
+    /**
+     * @see javax.annotation.processing.AbstractProcessor#getSupportedSourceVersion()
+     */
+    @Override
+    public SourceVersion getSupportedSourceVersion()
+    {
+        return SourceVersion.latestSupported();
+    }
+
+    /**
+     * @see javax.annotation.processing.AbstractProcessor#process(java.util.Set,
+     * javax.annotation.processing.RoundEnvironment)
+     */
+    @Override
+    public boolean process(Set< ? extends TypeElement> annotations, RoundEnvironment roundEnv)
+    {
+        Iterator< ? extends Element> iterator = roundEnv.getElementsAnnotatedWith(GenerateMethods.class).iterator();
+        while (iterator.hasNext())
+        {
+            Element element = iterator.next();
+            if (element.getKind() != ElementKind.CLASS)
+            {
+                error(element, "MethodsProcessor.notaclass", new Object[0]); //$NON-NLS-1$
+                continue;
+            }
+
+            TypeElement type = (TypeElement) element;
+            if (!isReachable(type))
+            {
+                error(type, "MethodsProcessor.notreachable", new Object[]{type.getSimpleName()}); //$NON-NLS-1$
+                continue;
+            }
+
+            HelperClass helper = createHelper(type);
+            if (helper != null)
+            {
+                writeHelper(helper, type);
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Collects the fields and properties of a class.
+     * @param type annotated class
+     * @return helper, <code>null</code> if some field is not accessible
+     */
+    private HelperClass createHelper(TypeElement type)
+    {
+        String packageName = getPackageName(type);
+        HelperClass helper = new HelperClass(
+            packageName,
+            getHelperName(type),
+            type.getModifiers().contains(Modifier.PUBLIC),
+            getTypeReference(type),
+            type.getQualifiedName().toString());
+
+        boolean valid = true;
+        Map<String, VariableElement> fields = collectFields(type);
+        Iterator<VariableElement> iterator = fields.values().iterator();
+        while (iterator.hasNext())
+        {
+            VariableElement field = iterator.next();
+            String name = field.getSimpleName().toString();
+            if (this.excluded.matcher(name).matches())
+            {
+                continue;
+            }
+
+            String accessor = getAccessor(type, field, packageName);
+            if (accessor == null)
+            {
+                error(type, "MethodsProcessor.inaccessible", new Object[]{name, helper.getQualifiedName()}); //$NON-NLS-1$
+                valid = false;
+                continue;
+            }
+
+            boolean primitive = field.asType().getKind().isPrimitive();
+            helper.addField(name, accessor, primitive);
+            if (!this.javabeanToString)
+            {
+                helper.addProperty(name, accessor, primitive);
+            }
+        }
+
+        if (this.javabeanToString)
+        {
+            addProperties(type, fields, helper, packageName);
+        }
+
+        boolean comparable = isComparable(type);
+        helper.setComparable(comparable);
+
+        TypeElement superclass = getSuperclass(type);
+        if (superclass != null && superclass.getAnnotation(GenerateMethods.class) != null && isReachable(superclass))
+        {
+            String superHelper = getHelperQualifiedName(superclass);
+            Iterator<String> methods = this.superMethods.iterator();
+            while (methods.hasNext())
+            {
+                String method = methods.next();
+                if (!HelperClass.COMPARETO.equals(method) || comparable && isComparable(superclass))
+                {
+                    helper.chainSuper(method, superHelper);
+                }
+            }
+        }
+        return valid ? helper : null;
+    }
+
+    /**
+     * Adds the javabean properties of a class to toString(). A property is read from the field with the same name, if
+     * any, as the plugin does.
+     * @param type annotated class
+     * @param fields visible fields by name
+     * @param helper helper being built
+     * @param packageName package of the helper
+     */
+    private void addProperties(TypeElement type, Map<String, VariableElement> fields, HelperClass helper,
+        String packageName)
+    {
+        Iterator<ExecutableElement> getters = collectGetters(type).iterator();
+        while (getters.hasNext())
+        {
+            ExecutableElement getter = getters.next();
+            String property = getJavabeanPropertyName(getter.getSimpleName().toString());
+            if (this.excluded.matcher(property).matches())
+            {
+                continue;
+            }
+
+            VariableElement field = fields.get(property);
+            String accessor = field != null ? getAccessor(type, field, packageName) : null;
+            if (accessor != null)
+            {
+                helper.addProperty(property, accessor, field.asType().getKind().isPrimitive());
+            }
+            else
+            {
+                helper.addProperty(property, getter.getSimpleName() + "()", //$NON-NLS-1$
+                    getter.getReturnType().getKind().isPrimitive());
+            }
+        }
+    }
+
+    /**
+     * Collects the instance fields of a class and the non private instance fields of its superclasses. Fields of a
+     * subclass hide the ones with the same name.
+     * @param type class
+     * @return fields by name
+     */
+    private Map<String, VariableElement> collectFields(TypeElement type)
+    {
+        Map<String, VariableElement> fields = new LinkedHashMap<String, VariableElement>();
+        addFields(type, fields, true);
+
+        // guard against cycles in broken code
+        Set<String> visited = new HashSet<String>();
+        TypeElement current = getSuperclass(type);
+        while (current != null && !OBJECT.equals(current.getQualifiedName().toString())
+            && visited.add(current.getQualifiedName().toString()))
+        {
+            addFields(current, fields, false);
+            current = getSuperclass(current);
+        }
+        return fields;
+    }
+
+    /**
+     * Adds the instance fields declared in a class.
+     * @param declaring class declaring the fields
+     * @param fields fields by name
+     * @param includePrivate include private fields?
+     */
+    private static void addFields(TypeElement declaring, Map<String, VariableElement> fields, boolean includePrivate)
+    {
+        Iterator<VariableElement> iterator = ElementFilter.fieldsIn(declaring.getEnclosedElements()).iterator();
+        while (iterator.hasNext())
+        {
+            VariableElement field = iterator.next();
+            Set<Modifier> modifiers = field.getModifiers();
+            String name = field.getSimpleName().toString();
+            if (!modifiers.contains(Modifier.STATIC) && (includePrivate || !modifiers.contains(Modifier.PRIVATE))
+                && !fields.containsKey(name))
+            {
+                fields.put(name, field);
+            }
+        }
+    }
+
+    /**
+     * Collects the javabean getters of a class and its superclasses: public methods without parameters, whose name
+     * starts with <code>get</code>, or with <code>is</code> for boolean properties.
+     * @param type class
+     * @return getters without duplicates, the ones declared in the class first
+     */
+    private Iterable<ExecutableElement> collectGetters(TypeElement type)
+    {
+        Map<String, ExecutableElement> getters = new LinkedHashMap<String, ExecutableElement>();
+        Set<String> visited = new HashSet<String>();
+        TypeElement current = type;
+        while (current != null && visited.add(current.getQualifiedName().toString()))
+        {
+            Iterator<ExecutableElement> methods = ElementFilter.methodsIn(current.getEnclosedElements()).iterator();
+            while (methods.hasNext())
+            {
+                ExecutableElement method = methods.next();
+                String name = method.getSimpleName().toString();
+                if (method.getModifiers().contains(Modifier.PUBLIC) && method.getParameters().isEmpty()
+                    && isJavabeanGetter(name, method.getReturnType()) && !getters.containsKey(name))
+                {
+                    getters.put(name, method);
+                }
+            }
+            current = getSuperclass(current);
+        }
+        return getters.values();
+    }
+
+    /**
+     * Checks if a method is a javabean getter.
+     * @param methodName method name
+     * @param returnType return type
+     * @return <code>true</code> if the method is a javabean property accessor
+     */
+    private static boolean isJavabeanGetter(String methodName, TypeMirror returnType)
+    {
+        if (returnType.getKind() == TypeKind.VOID)
+        {
+            return false;
+        }
+        if (methodName.length() > 3 && methodName.startsWith("get")) //$NON-NLS-1$
+        {
+            return true;
+        }
+        if (methodName.length() > 2 && methodName.startsWith("is")) //$NON-NLS-1$
+        {
+            return returnType.getKind() == TypeKind.BOOLEAN || "java.lang.Boolean".equals(returnType.toString()); //$NON-NLS-1$
+        }
+        return false;
+    }
+
+    /**
+     * Returns the javabean property name from the getter method name.
+     * @param methodName getter method name
+     * @return javabean property name (ex. "test" for "getTest()")
+     */
+    private static String getJavabeanPropertyName(String methodName)
+    {
+        String propertyName = methodName.substring(methodName.startsWith("get") ? 3 : 2); //$NON-NLS-1$
+
+        if (propertyName.length() > 1 && Character.isLowerCase(propertyName.charAt(1)))
+        {
+            propertyName = Character.toLowerCase(propertyName.charAt(0)) + propertyName.substring(1);
+        }
+        else if (propertyName.length() == 1)
+        {
+            propertyName = propertyName.toLowerCase();
+        }
+        return propertyName;
+    }
+
+    /**
+     * Returns how the helper reads a field: directly if it is accessible from the package, else through its getter.
+     * @param type annotated class
+     * @param field field
+     * @param packageName package of the helper
+     * @return field name or getter call, <code>null</code> if the field can't be read
+     */
+    private String getAccessor(TypeElement type, VariableElement field, String packageName)
+    {
+        String name = field.getSimpleName().toString();
+        if (isAccessible(field, packageName))
+        {
+            return name;
+        }
+
+        String property = Character.toUpperCase(name.charAt(0)) + name.substring(1);
+        boolean booleanField = field.asType().getKind() == TypeKind.BOOLEAN;
+
+        Iterator<ExecutableElement> methods = ElementFilter.methodsIn(
+            this.processingEnv.getElementUtils().getAllMembers(type)).iterator();
+        while (methods.hasNext())
+        {
+            ExecutableElement method = methods.next();
+            String methodName = method.getSimpleName().toString();
+            if ((methodName.equals("get" + property) || booleanField && methodName.equals("is" + property)) //$NON-NLS-1$ //$NON-NLS-2$
+                && method.getParameters().isEmpty() && !method.getModifiers().contains(Modifier.STATIC)
+                && method.getReturnType().getKind() != TypeKind.VOID && isAccessible(method, packageName))
+            {
+                return methodName + "()"; //$NON-NLS-1$
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Can a member be accessed from a class in the given package, through a reference to a subclass in that package?
+     * @param member field or method
+     * @param packageName package of the accessing class
+     * @return <code>true</code> if the member is accessible
+     */
+    private boolean isAccessible(Element member, String packageName)
+    {
+        Set<Modifier> modifiers = member.getModifiers();
+        if (modifiers.contains(Modifier.PRIVATE))
+        {
+            return false;
+        }
+        return modifiers.contains(Modifier.PUBLIC) || getPackageName(member).equals(packageName);
+    }
+
+    /**
+     * Can a class be used by another class in its package? Private and local classes can't.
+     * @param type class
+     * @return <code>true</code> if the helper can refer to the class
+     */
+    private static boolean isReachable(TypeElement type)
+    {
+        Element current = type;
+        while (current instanceof TypeElement)
+        {
+            NestingKind nesting = ((TypeElement) current).getNestingKind();
+            if (current.getModifiers().contains(Modifier.PRIVATE) || nesting == NestingKind.LOCAL
+                || nesting == NestingKind.ANONYMOUS)
+            {
+                return false;
+            }
+            current = current.getEnclosingElement();
+        }
+        return true;
+    }
+
+    /**
+     * Does a class implement <code>java.lang.Comparable</code>?
+     * @param type class
+     * @return <code>true</code> if the class is comparable
+     */
+    private boolean isComparable(TypeElement type)
+    {
+        TypeElement comparable = this.processingEnv.getElementUtils().getTypeElement("java.lang.Comparable"); //$NON-NLS-1$
+        return this.processingEnv.getTypeUtils().isAssignable(
+            this.processingEnv.getTypeUtils().erasure(type.asType()),
+            this.processingEnv.getTypeUtils().erasure(comparable.asType()));
+    }
+
+    /**
+     * Returns the superclass of a class.
+     * @param type class
+     * @return superclass, <code>null</code> for <code>java.lang.Object</code>
+     */
+    private static TypeElement getSuperclass(TypeElement type)
+    {
+        TypeMirror superclass = type.getSuperclass();
+        if (superclass.getKind() != TypeKind.DECLARED)
+        {
+            return null;
+        }
+        return (TypeElement) ((DeclaredType) superclass).asElement();
+    }
+
+    /**
+     * Returns the package of an element.
+     * @param element element
+     * @return qualified package name, empty for the default package
+     */
+    private String getPackageName(Element element)
+    {
+        return this.processingEnv.getElementUtils().getPackageOf(element).getQualifiedName().toString();
+    }
+
+    /**
+     * Returns the simple name of the helper: <code>FooMethods</code> for <code>Foo</code>,
+     * <code>Foo_BarMethods</code> for the member class <code>Foo.Bar</code>.
+     * @param type annotated class
+     * @return helper name
+     */
+    private static String getHelperName(TypeElement type)
+    {
+        StringBuffer buffer = new StringBuffer(HELPER_SUFFIX);
+        Element current = type;
+        while (current instanceof TypeElement)
+        {
+            if (current != type)
+            {
+                buffer.insert(0, '_');
+            }
+            buffer.insert(0, current.getSimpleName());
+            current = current.getEnclosingElement();
+        }
+        return buffer.toString();
+    }
+
+    /**
+     * Returns the qualified name of the helper of a class.
+     * @param type annotated class
+     * @return qualified helper name
+     */
+    private String getHelperQualifiedName(TypeElement type)
+    {
+        String packageName = getPackageName(type);
+        return packageName.length() == 0 ? getHelperName(type) : packageName + '.' + getHelperName(type);
+    }
+
+    /**
+     * Returns the class as written in the helper method parameters, with a wildcard for each type parameter. Inner
+     * classes are qualified by their parameterized enclosing class.
+     * @param type class
+     * @return type reference, e.g. <code>a.Foo&lt;?, ?&gt;</code>
+     */
+    private static String getTypeReference(TypeElement type)
+    {
+        Element enclosing = type.getEnclosingElement();
+        StringBuffer buffer = new StringBuffer();
+        if (type.getNestingKind() == NestingKind.MEMBER && !type.getModifiers().contains(Modifier.STATIC)
+            && (enclosing.getKind() == ElementKind.CLASS || enclosing.getKind() == ElementKind.ENUM))
+        {
+            buffer.append(getTypeReference((TypeElement) enclosing)).append('.').append(type.getSimpleName());
+        }
+        else
+        {
+            buffer.append(type.getQualifiedName());
+        }
+
+        List< ? > parameters = type.getTypeParameters();
+        for (int j = 0; j < parameters.size(); j++)
+        {
+            buffer.append(j == 0 ? "<?" : ", ?"); //$NON-NLS-1$ //$NON-NLS-2$
+        }
+        if (!parameters.isEmpty())
+        {
+            buffer.append('>');
+        }
+        return buffer.toString();
+    }
+
+    /**
+     * Writes the source of a helper. The annotated class is the only originating element.
+     * @param helper helper
+     * @param type annotated class
+     */
+    private void writeHelper(HelperClass helper, TypeElement type)
+    {
+        try
+        {
+            JavaFileObject file = this.processingEnv.getFiler().createSourceFile(helper.getQualifiedName(), type);
+            Writer writer = file.openWriter();
+            try
+            {
+                writer.write(helper.toSource());
+            }
+            finally
+            {
+                writer.close();
+            }
+        }
+        catch (IOException e)
+        {
+            error(type, "MethodsProcessor.failed", new Object[]{helper.getQualifiedName(), e.getMessage()}); //$NON-NLS-1$
+        }
+    }
+
+    /**
+     * Reports an error on an element.
+     * @param element element
+     * @param key message key
+     * @param arguments message arguments
+     */
+    private void error(Element element, String key, Object[] arguments)
+    {
+        String message = MessageFormat.format(CCMessages.getString(key), arguments);
+        this.processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, message, element);
+    }
+
+}
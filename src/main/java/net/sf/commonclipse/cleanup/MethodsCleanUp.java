@@ -0,0 +1,314 @@
+/* ====================================================================
+ *   Copyright 2003-2005 Fabrizio Giustina.
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ * ====================================================================
+ */
+package net.sf.commonclipse.cleanup;
+
+import java.text.MessageFormat;
+import java.util.Iterator;
+import java.util.Map;
+
+import net.sf.commonclipse.BindingTypeModel;
+import net.sf.commonclipse.CCMessages;
+import net.sf.commonclipse.CCPluginPreferences;
+import net.sf.commonclipse.CompareToGenerator;
+import net.sf.commonclipse.EqualsGenerator;
+import net.sf.commonclipse.FormatterCache;
+import net.sf.commonclipse.Generator;
+import net.sf.commonclipse.HashcodeGenerator;
+import net.sf.commonclipse.ToStringGenerator;
+import net.sf.commonclipse.UnitRewrite;
+
+import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.jdt.core.ICompilationUnit;
+import org.eclipse.jdt.core.IJavaProject;
+import org.eclipse.jdt.core.JavaModelException;
+import org.eclipse.jdt.core.compiler.IProblem;
+import org.eclipse.jdt.core.dom.CompilationUnit;
+import org.eclipse.jdt.core.dom.TypeDeclaration;
+import org.eclipse.jdt.core.formatter.CodeFormatter;
+import org.eclipse.jdt.core.refactoring.CompilationUnitChange;
+import org.eclipse.jdt.ui.cleanup.CleanUpContext;
+import org.eclipse.jdt.ui.cleanup.CleanUpOptions;
+import org.eclipse.jdt.ui.cleanup.CleanUpRequirements;
+import org.eclipse.jdt.ui.cleanup.ICleanUp;
+import org.eclipse.jdt.ui.cleanup.ICleanUpFix;
+import org.eclipse.ltk.core.refactoring.RefactoringStatus;
+import org.eclipse.text.edits.MultiTextEdit;
+import org.eclipse.text.edits.TextEdit;
+import org.eclipse.text.edits.TextEditGroup;
+
+
+/**
+ * Clean up regenerating the toString(), hashCode(), equals() and compareTo() methods previously generated by
+ * commonclipse, available in "Source > Clean Up" and in the save actions. Methods written by hand and missing methods
+ * are left alone. The types are read from the AST which the clean up framework has already built with bindings for all
+ * the selected units, so no compilation unit is parsed again and no type hierarchy is built.
+ * @author fgiust
+ * @version $Revision$ ($Author$)
+ */
+public class MethodsCleanUp implements ICleanUp
+{
+
+    /**
+     * clean up option: regenerate the methods?
+     */
+    public static final String REGENERATE = "net.sf.commonclipse.cleanup.regenerate"; //$NON-NLS-1$
+
+    /**
+     * generators run on every class, in the same order as the "generate all" action.
+     */
+    private static final Generator[] GENERATORS = new Generator[]{
+        ToStringGenerator.getInstance(),
+        HashcodeGenerator.getInstance(),
+        EqualsGenerator.getInstance(),
+        CompareToGenerator.getInstance()};
+
+    /**
+     * clean up options.
+     */
+    private CleanUpOptions options;
+
+    /**
+     * snapshot of the preferences, taken when a clean up starts so that all the units see the same values.
+     */
+    private CCPluginPreferences preferences;
+
+    /**
+     * types which could not be regenerated, reported when the clean up ends.
+     */
+    private RefactoringStatus status = new RefactoringStatus();
+
+    /**
+     * @see org.eclipse.jdt.ui.cleanup.ICleanUp#setOptions(org.eclipse.jdt.ui.cleanup.CleanUpOptions)
+     */
+    @Override
+    public void setOptions(CleanUpOptions cleanUpOptions)
+    {
+        this.options = cleanUpOptions;
+    }
+
+    /**
+     * @see org.eclipse.jdt.ui.cleanup.ICleanUp#getStepDescriptions()
+     */
+    @Override
+    public String[] getStepDescriptions()
+    {
+        if (!isEnabled())
+        {
+            return new String[0];
+        }
+        return new String[]{CCMessages.getString("MethodsCleanUp.description")}; //$NON-NLS-1$
+    }
+
+    /**
+     * @see org.eclipse.jdt.ui.cleanup.ICleanUp#getRequirements()
+     */
+    @Override
+    public CleanUpRequirements getRequirements()
+    {
+        // the generated methods are already formatted, changes made by other clean ups don't matter
+        return new CleanUpRequirements(isEnabled(), false, false, null);
+    }
+
+    /**
+     * @see org.eclipse.jdt.ui.cleanup.ICleanUp#checkPreConditions(org.eclipse.jdt.core.IJavaProject,
+     * org.eclipse.jdt.core.ICompilationUnit[], org.eclipse.core.runtime.IProgressMonitor)
+     */
+    @Override
+    public RefactoringStatus checkPreConditions(IJavaProject project, ICompilationUnit[] compilationUnits,
+        IProgressMonitor monitor) throws CoreException
+    {
+        this.preferences = CCPluginPreferences.getPreferences();
+        this.status = new RefactoringStatus();
+        return new RefactoringStatus();
+    }
+
+    /**
+     * @see org.eclipse.jdt.ui.cleanup.ICleanUp#createFix(org.eclipse.jdt.ui.cleanup.CleanUpContext)
+     */
+    @Override
+    public ICleanUpFix createFix(CleanUpContext context) throws CoreException
+    {
+        CompilationUnit ast = context.getAST();
+        if (!isEnabled() || ast == null || hasSyntaxErrors(ast))
+        {
+            return null;
+        }
+
+        ICompilationUnit cu = context.getCompilationUnit();
+        IJavaProject project = cu.getJavaProject();
+        String source = cu.getSource();
+        CodeFormatter formatter = null;
+        UnitRewrite rewrite = null;
+
+        try
+        {
+            Iterator<TypeDeclaration> iterator = BindingTypeModel.findClasses(ast).iterator();
+            while (iterator.hasNext())
+            {
+                TypeDeclaration declaration = iterator.next();
+                try
+                {
+                    BindingTypeModel model = new BindingTypeModel(declaration, source);
+                    Generator[] selected = model.selectGenerators(GENERATORS, false);
+                    if (selected.length == 0)
+                    {
+                        continue;
+                    }
+                    if (rewrite == null)
+                    {
+                        formatter = FormatterCache.getDefault().acquire(project);
+                        rewrite = createRewrite(project, ast, source, formatter);
+                    }
+                    rewrite.addMethods(model, selected, null);
+                }
+                catch (JavaModelException e)
+                {
+                    // the other types and units are still cleaned up
+                    this.status.addWarning(MessageFormat.format(
+                        CCMessages.getString("MethodsCleanUp.failed"), //$NON-NLS-1$
+                        new Object[]{declaration.getName().getIdentifier(), e.getMessage()}));
+                }
+            }
+        }
+        finally
+        {
+            if (formatter != null)
+            {
+                FormatterCache.getDefault().release(project, formatter);
+            }
+        }
+
+        if (rewrite == null)
+        {
+            return null;
+        }
+
+        // the AST is released by the framework after this call, only the edit is kept
+        TextEdit edit = rewrite.createEdit();
+        return edit.hasChildren() ? new MethodsFix(cu, edit) : null;
+    }
+
+    /**
+     * @see org.eclipse.jdt.ui.cleanup.ICleanUp#checkPostConditions(org.eclipse.core.runtime.IProgressMonitor)
+     */
+    @Override
+    public RefactoringStatus checkPostConditions(IProgressMonitor monitor) throws CoreException
+    {
+        RefactoringStatus result = this.status;
+        this.status = new RefactoringStatus();
+        this.preferences = null;
+        return result;
+    }
+
+    /**
+     * Is this clean up selected?
+     * @return <code>true</code> if the methods must be regenerated
+     */
+    private boolean isEnabled()
+    {
+        return this.options != null && this.options.isEnabled(REGENERATE);
+    }
+
+    /**
+     * Creates a rewrite for the AST built by the clean up framework.
+     * @param project Java project of the compilation unit
+     * @param ast AST of the unit, with bindings
+     * @param source source the AST has been built from
+     * @param formatter formatter acquired for the project
+     * @return UnitRewrite
+     */
+    @SuppressWarnings("unchecked")
+    private UnitRewrite createRewrite(IJavaProject project, CompilationUnit ast, String source, CodeFormatter formatter)
+    {
+        Map<String, String> javaOptions = project.getOptions(true);
+
+        // checkPreConditions() has not been called
+        CCPluginPreferences currentPreferences = this.preferences;
+        if (currentPreferences == null)
+        {
+            currentPreferences = CCPluginPreferences.getPreferences();
+        }
+
+        UnitRewrite rewrite = new UnitRewrite(ast, source, formatter, javaOptions, currentPreferences);
+
+        // nobody confirms replacing the methods on save
+        rewrite.setReplaceGeneratedOnly(true);
+        return rewrite;
+    }
+
+    /**
+     * Does the unit contain syntax errors? Members can't be safely replaced in a recovered AST.
+     * @param ast AST
+     * @return <code>true</code> if the parser reported any syntax error
+     */
+    private static boolean hasSyntaxErrors(CompilationUnit ast)
+    {
+        IProblem[] problems = ast.getProblems();
+        for (int j = 0; j < problems.length; j++)
+        {
+            if (problems[j].isError() && (problems[j].getID() & IProblem.Syntax) != 0)
+            {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Changes to a single compilation unit, computed when the fix is created.
+     */
+    private static class MethodsFix implements ICleanUpFix
+    {
+
+        /**
+         * compilation unit.
+         */
+        private final ICompilationUnit cu;
+
+        /**
+         * changes, offsets refer to the source the AST has been built from.
+         */
+        private final TextEdit edit;
+
+        /**
+         * Creates a new MethodsFix.
+         * @param cu compilation unit
+         * @param edit changes
+         */
+        MethodsFix(ICompilationUnit cu, TextEdit edit)
+        {
+            this.cu = cu;
+            this.edit = edit;
+        }
+
+        /**
+         * @see org.eclipse.jdt.ui.cleanup.ICleanUpFix#createChange(org.eclipse.core.runtime.IProgressMonitor)
+         */
+        @Override
+        public CompilationUnitChange createChange(IProgressMonitor progressMonitor) throws CoreException
+        {
+            String name = CCMessages.getString("MethodsCleanUp.description"); //$NON-NLS-1$
+            CompilationUnitChange change = new CompilationUnitChange(name, this.cu);
+            change.setEdit(new MultiTextEdit());
+            change.getEdit().addChild(this.edit);
+            change.addTextEditGroup(new TextEditGroup(name, this.edit));
+            return change;
+        }
+    }
+
+}
@@ -0,0 +1,136 @@
+/* ====================================================================
+ *   Copyright 2003-2005 Fabrizio Giustina.
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ * ====================================================================
+ */
+package net.sf.commonclipse.cleanup;
+
+import net.sf.commonclipse.CCMessages;
+
+import org.eclipse.jdt.ui.cleanup.CleanUpOptions;
+import org.eclipse.jdt.ui.cleanup.ICleanUpConfigurationUI;
+import org.eclipse.swt.SWT;
+import org.eclipse.swt.events.SelectionAdapter;
+import org.eclipse.swt.events.SelectionEvent;
+import org.eclipse.swt.layout.GridLayout;
+import org.eclipse.swt.widgets.Button;
+import org.eclipse.swt.widgets.Composite;
+
+
+/**
+ * Commonclipse tab in the clean up profile and save actions dialogs.
+ * @author fgiust
+ * @version $Revision$ ($Author$)
+ */
+public class MethodsCleanUpConfigurationUI implements ICleanUpConfigurationUI
+{
+
+    /**
+     * preview, before the appenders: a class with a field added after its methods were generated.
+     */
+    private static final String PREVIEW_START = "public class Person\n" //$NON-NLS-1$
+        + "{\n" //$NON-NLS-1$
+        + "    private String name;\n" //$NON-NLS-1$
+        + "    private int age;\n" //$NON-NLS-1$
+        + "\n" //$NON-NLS-1$
+        + "    public boolean equals(Object object)\n" //$NON-NLS-1$
+        + "    {\n" //$NON-NLS-1$
+        + "        // ...\n" //$NON-NLS-1$
+        + "        return new EqualsBuilder()"; //$NON-NLS-1$
+
+    /**
+     * preview, after the appenders.
+     */
+    private static final String PREVIEW_END = ".isEquals();\n" //$NON-NLS-1$
+        + "    }\n" //$NON-NLS-1$
+        + "}\n"; //$NON-NLS-1$
+
+    /**
+     * options edited by this tab.
+     */
+    private CleanUpOptions options;
+
+    /**
+     * @see org.eclipse.jdt.ui.cleanup.ICleanUpConfigurationUI#setOptions(org.eclipse.jdt.ui.cleanup.CleanUpOptions)
+     */
+    @Override
+    public void setOptions(CleanUpOptions cleanUpOptions)
+    {
+        this.options = cleanUpOptions;
+    }
+
+    /**
+     * @see org.eclipse.jdt.ui.cleanup.ICleanUpConfigurationUI#createContents(org.eclipse.swt.widgets.Composite)
+     */
+    @Override
+    public Composite createContents(Composite parent)
+    {
+        Composite composite = new Composite(parent, SWT.NONE);
+        composite.setLayout(new GridLayout());
+
+        final Button regenerate = new Button(composite, SWT.CHECK);
+        regenerate.setText(CCMessages.getString("MethodsCleanUp.option")); //$NON-NLS-1$
+        regenerate.setSelection(this.options.isEnabled(MethodsCleanUp.REGENERATE));
+        regenerate.addSelectionListener(new SelectionAdapter()
+        {
+
+            /**
+             * @see org.eclipse.swt.events.SelectionAdapter#widgetSelected(org.eclipse.swt.events.SelectionEvent)
+             */
+            @Override
+            public void widgetSelected(SelectionEvent e)
+            {
+                MethodsCleanUpConfigurationUI.this.options.setOption(
+                    MethodsCleanUp.REGENERATE,
+                    regenerate.getSelection() ? CleanUpOptions.TRUE : CleanUpOptions.FALSE);
+            }
+        });
+        return composite;
+    }
+
+    /**
+     * @see org.eclipse.jdt.ui.cleanup.ICleanUpConfigurationUI#getCleanUpCount()
+     */
+    @Override
+    public int getCleanUpCount()
+    {
+        return 1;
+    }
+
+    /**
+     * @see org.eclipse.jdt.ui.cleanup.ICleanUpConfigurationUI#getSelectedCleanUpCount()
+     */
+    @Override
+    public int getSelectedCleanUpCount()
+    {
+        return this.options.isEnabled(MethodsCleanUp.REGENERATE) ? 1 : 0;
+    }
+
+    /**
+     * @see org.eclipse.jdt.ui.cleanup.ICleanUpConfigurationUI#getPreview()
+     */
+    @Override
+    public String getPreview()
+    {
+        StringBuffer preview = new StringBuffer(PREVIEW_START);
+        preview.append(".append(this.name, rhs.name)"); //$NON-NLS-1$
+        if (this.options.isEnabled(MethodsCleanUp.REGENERATE))
+        {
+            // the field added later is compared once the method is regenerated
+            preview.append(".append(this.age, rhs.age)"); //$NON-NLS-1$
+        }
+        return preview.append(PREVIEW_END).toString();
+    }
+
+}
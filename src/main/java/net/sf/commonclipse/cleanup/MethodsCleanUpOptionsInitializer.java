@@ -0,0 +1,42 @@
+/* ====================================================================
+ *   Copyright 2003-2005 Fabrizio Giustina.
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ * ====================================================================
+ */
+package net.sf.commonclipse.cleanup;
+
+import org.eclipse.jdt.ui.cleanup.CleanUpOptions;
+import org.eclipse.jdt.ui.cleanup.ICleanUpOptionsInitializer;
+
+
+/**
+ * Default options of the commonclipse clean up, for both the clean up profiles and the save actions: methods are not
+ * regenerated unless the user selects the clean up.
+ * @author fgiust
+ * @version $Revision$ ($Author$)
+ */
+public class MethodsCleanUpOptionsInitializer implements ICleanUpOptionsInitializer
+{
+
+    /**
+     * @see org.eclipse.jdt.ui.cleanup.ICleanUpOptionsInitializer#setDefaultOptions(
+     * org.eclipse.jdt.ui.cleanup.CleanUpOptions)
+     */
+    @Override
+    public void setDefaultOptions(CleanUpOptions options)
+    {
+        options.setOption(MethodsCleanUp.REGENERATE, CleanUpOptions.FALSE);
+    }
+
+}
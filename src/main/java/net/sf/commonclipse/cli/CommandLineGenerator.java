@@ -0,0 +1,635 @@
+/* ====================================================================
+ *   Copyright 2003-2005 Fabrizio Giustina.
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ * ====================================================================
+ */
+package net.sf.commonclipse.cli;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintStream;
+import java.io.Writer;
+import java.text.MessageFormat;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import net.sf.commonclipse.CCMessages;
+import net.sf.commonclipse.CCPluginPreferences;
+import net.sf.commonclipse.CompareToGenerator;
+import net.sf.commonclipse.EqualsGenerator;
+import net.sf.commonclipse.Generator;
+import net.sf.commonclipse.HashcodeGenerator;
+import net.sf.commonclipse.ToStringGenerator;
+
+import org.eclipse.jdt.core.JavaCore;
+
+
+/**
+ * Command line entry point: generates or verifies the methods of all the classes in one or more source folders,
+ * without starting Eclipse. Changes are printed as a unified diff, or written with <code>-write</code>. The exit code
+ * is 0 if no file needs any change, 1 if some file needs changes which have not been written, 2 for errors. With
+ * <code>-cache</code> the files which were up to date in the previous run and haven't changed since are skipped. With
+ * <code>-daemon</code> or <code>-port</code> it serves requests from other editors instead, see
+ * {@link GenerationDaemon}.
+ * @author fgiust
+ * @version $Revision$ ($Author$)
+ */
+public final class CommandLineGenerator
+{
+
+    /**
+     * no file needs changes, or changes have been written.
+     */
+    public static final int EXIT_OK = 0;
+
+    /**
+     * some file needs changes.
+     */
+    public static final int EXIT_CHANGES = 1;
+
+    /**
+     * invalid arguments or problems in some file.
+     */
+    public static final int EXIT_ERROR = 2;
+
+    /**
+     * prefix of the Java compiler and formatter options.
+     */
+    private static final String JDT_OPTIONS = JavaCore.PLUGIN_ID + '.';
+
+    /**
+     * source folders.
+     */
+    private final List<String> sourceRoots = new ArrayList<String>();
+
+    /**
+     * classpath entries.
+     */
+    private final List<String> classpath = new ArrayList<String>();
+
+    /**
+     * generators to run.
+     */
+    private final List<Generator> generators = new ArrayList<Generator>();
+
+    /**
+     * compiler and formatter options.
+     */
+    private final Map<String, String> options;
+
+    /**
+     * commonclipse configuration.
+     */
+    private final Properties preferences = new Properties();
+
+    /**
+     * encoding of the source files.
+     */
+    private String encoding = System.getProperty("file.encoding"); //$NON-NLS-1$
+
+    /**
+     * add missing methods?
+     */
+    private boolean addMissing;
+
+    /**
+     * write changed files?
+     */
+    private boolean write;
+
+    /**
+     * cache of the up to date files, <code>null</code> if not used.
+     */
+    private String cacheFile;
+
+    /**
+     * serve requests instead of processing the source folders?
+     */
+    private boolean daemon;
+
+    /**
+     * port of the daemon, 0 to serve standard input.
+     */
+    private int port;
+
+    /**
+     * number of worker threads.
+     */
+    private int threads = Runtime.getRuntime().availableProcessors();
+
+    /**
+     * output for diffs.
+     */
+    private final PrintStream out;
+
+    /**
+     * output for problems and statistics.
+     */
+    private final PrintStream err;
+
+    /**
+     * Creates a new CommandLineGenerator.
+     * @param out output for diffs
+     * @param err output for problems and statistics
+     */
+    @SuppressWarnings("unchecked")
+    public CommandLineGenerator(PrintStream out, PrintStream err)
+    {
+        this.out = out;
+        this.err = err;
+        this.options = new HashMap<String, String>(JavaCore.getOptions());
+        JavaCore.setComplianceOptions(JavaCore.VERSION_1_6, this.options);
+    }
+
+    /**
+     * Runs the generator and exits with the resulting code.
+     * @param args command line arguments
+     */
+    public static void main(String[] args)
+    {
+        System.exit(new CommandLineGenerator(System.out, System.err).run(args));
+    }
+
+    /**
+     * Runs the generator.
+     * @param args command line arguments
+     * @return exit code
+     */
+    public int run(String[] args)
+    {
+        try
+        {
+            if (!parseArguments(args))
+            {
+                this.err.println(CCMessages.getString("CommandLineGenerator.usage")); //$NON-NLS-1$
+                return EXIT_ERROR;
+            }
+        }
+        catch (IOException e)
+        {
+            this.err.println(e.getMessage());
+            return EXIT_ERROR;
+        }
+
+        if (this.daemon)
+        {
+            return runDaemon();
+        }
+
+        SourceGenerator sourceGenerator = new SourceGenerator(
+            this.sourceRoots.toArray(new String[this.sourceRoots.size()]),
+            this.classpath.toArray(new String[this.classpath.size()]),
+            this.encoding,
+            this.options,
+            this.generators.toArray(new Generator[this.generators.size()]),
+            new CCPluginPreferences(this.preferences),
+            this.addMissing);
+
+        long start = System.currentTimeMillis();
+        List<String> allPaths = sourceGenerator.findSourceFiles();
+        List<String> paths = allPaths;
+
+        GenerationCache cache = null;
+        if (this.cacheFile != null)
+        {
+            String configuration = GenerationCache.getConfiguration(
+                this.generators.toArray(new Generator[this.generators.size()]),
+                this.addMissing,
+                this.encoding,
+                this.options,
+                this.preferences,
+                this.classpath);
+            cache = new GenerationCache(new File(this.cacheFile), configuration);
+            try
+            {
+                cache.load();
+            }
+            catch (IOException e)
+            {
+                // start from scratch
+                this.err.println(this.cacheFile + ": " + e.getMessage()); //$NON-NLS-1$
+            }
+            paths = cache.findStale(allPaths);
+        }
+
+        Summary summary = new Summary(cache);
+        ExecutorService executor = Executors.newFixedThreadPool(this.threads);
+        try
+        {
+            sourceGenerator.process(paths, executor, summary);
+        }
+        finally
+        {
+            executor.shutdown();
+        }
+
+        if (cache != null)
+        {
+            try
+            {
+                cache.save();
+            }
+            catch (IOException e)
+            {
+                // only slows down the next run
+                this.err.println(this.cacheFile + ": " + e.getMessage()); //$NON-NLS-1$
+            }
+        }
+
+        long elapsed = Math.max(1, System.currentTimeMillis() - start);
+        this.err.println(MessageFormat.format(CCMessages.getString("CommandLineGenerator.summary"), //$NON-NLS-1$
+            new Object[]{
+                new Integer(allPaths.size()),
+                new Integer(allPaths.size() - paths.size()),
+                new Double(elapsed / 1000d),
+                new Double(paths.size() * 1000d / elapsed),
+                new Integer(summary.changed),
+                new Integer(summary.failed)}));
+
+        if (summary.failed > 0)
+        {
+            return EXIT_ERROR;
+        }
+        return summary.changed > 0 && !this.write ? EXIT_CHANGES : EXIT_OK;
+    }
+
+    /**
+     * Serves requests from standard input or from a local port, until a shutdown request.
+     * @return exit code
+     */
+    private int runDaemon()
+    {
+        GenerationDaemon generationDaemon = new GenerationDaemon(
+            this.sourceRoots.toArray(new String[this.sourceRoots.size()]),
+            this.classpath.toArray(new String[this.classpath.size()]),
+            this.encoding,
+            this.options,
+            new CCPluginPreferences(this.preferences),
+            this.generators.toArray(new Generator[this.generators.size()]),
+            this.addMissing);
+        try
+        {
+            if (this.port > 0)
+            {
+                this.err.println(MessageFormat.format(CCMessages.getString("CommandLineGenerator.listening"), //$NON-NLS-1$
+                    new Object[]{Integer.toString(this.port)}));
+                generationDaemon.listen(this.port);
+            }
+            else
+            {
+                generationDaemon.serve(System.in, this.out);
+            }
+        }
+        catch (IOException e)
+        {
+            this.err.println(e.getMessage());
+            return EXIT_ERROR;
+        }
+        return EXIT_OK;
+    }
+
+    /**
+     * Returns the generators which can be selected by method name.
+     * @return generators
+     */
+    public static Generator[] getAvailableGenerators()
+    {
+        return new Generator[]{
+            ToStringGenerator.getInstance(),
+            EqualsGenerator.getInstance(),
+            HashcodeGenerator.getInstance(),
+            CompareToGenerator.getInstance()};
+    }
+
+    /**
+     * Reads the command line arguments.
+     * @param args arguments
+     * @return <code>false</code> if the arguments are not valid
+     * @throws IOException exception in reading a configuration file
+     */
+    private boolean parseArguments(String[] args) throws IOException
+    {
+        for (int j = 0; j < args.length; j++)
+        {
+            String arg = args[j];
+            boolean hasValue = j + 1 < args.length;
+
+            if ("-add".equals(arg)) //$NON-NLS-1$
+            {
+                this.addMissing = true;
+            }
+            else if ("-write".equals(arg)) //$NON-NLS-1$
+            {
+                this.write = true;
+            }
+            else if ("-daemon".equals(arg)) //$NON-NLS-1$
+            {
+                this.daemon = true;
+            }
+            else if (!arg.startsWith("-")) //$NON-NLS-1$
+            {
+                this.sourceRoots.add(arg);
+            }
+            else if (!hasValue || !parseOption(arg, args[++j]))
+            {
+                return false;
+            }
+        }
+
+        if (this.generators.isEmpty())
+        {
+            parseOption("-methods", "toString,equals,hashCode,compareTo"); //$NON-NLS-1$ //$NON-NLS-2$
+        }
+        // the daemon can be asked for any file, source folders are only needed to find superclasses
+        return (this.daemon || !this.sourceRoots.isEmpty()) && this.threads > 0;
+    }
+
+    /**
+     * Reads an option with a value.
+     * @param name option name
+     * @param value option value
+     * @return <code>false</code> if the option is not valid
+     * @throws IOException exception in reading a configuration file
+     */
+    private boolean parseOption(String name, String value) throws IOException
+    {
+        if ("-classpath".equals(name) || "-cp".equals(name)) //$NON-NLS-1$ //$NON-NLS-2$
+        {
+            this.classpath.addAll(split(value, File.pathSeparator));
+        }
+        else if ("-encoding".equals(name)) //$NON-NLS-1$
+        {
+            this.encoding = value;
+        }
+        else if ("-source".equals(name)) //$NON-NLS-1$
+        {
+            JavaCore.setComplianceOptions(value, this.options);
+        }
+        else if ("-formatter".equals(name)) //$NON-NLS-1$
+        {
+            // e.g. the .settings/org.eclipse.jdt.core.prefs file of a project
+            Properties formatter = loadProperties(value);
+            Iterator<String> iterator = formatter.stringPropertyNames().iterator();
+            while (iterator.hasNext())
+            {
+                String key = iterator.next();
+                if (key.startsWith(JDT_OPTIONS))
+                {
+                    this.options.put(key, formatter.getProperty(key));
+                }
+            }
+        }
+        else if ("-preferences".equals(name)) //$NON-NLS-1$
+        {
+            this.preferences.putAll(loadProperties(value));
+        }
+        else if ("-methods".equals(name)) //$NON-NLS-1$
+        {
+            return parseMethods(value);
+        }
+        else if ("-cache".equals(name)) //$NON-NLS-1$
+        {
+            this.cacheFile = value;
+        }
+        else if ("-threads".equals(name)) //$NON-NLS-1$
+        {
+            try
+            {
+                this.threads = Integer.parseInt(value);
+            }
+            catch (NumberFormatException e)
+            {
+                return false;
+            }
+        }
+        else if ("-port".equals(name)) //$NON-NLS-1$
+        {
+            try
+            {
+                this.port = Integer.parseInt(value);
+            }
+            catch (NumberFormatException e)
+            {
+                return false;
+            }
+            this.daemon = true;
+            return this.port > 0 && this.port < 65536;
+        }
+        else
+        {
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Selects the generators.
+     * @param methods method names, separated by commas
+     * @return <code>false</code> if a method is unknown
+     */
+    private boolean parseMethods(String methods)
+    {
+        Generator[] available = getAvailableGenerators();
+
+        Iterator<String> iterator = split(methods, ",").iterator(); //$NON-NLS-1$
+        while (iterator.hasNext())
+        {
+            String method = iterator.next();
+            Generator selected = null;
+            for (int j = 0; j < available.length; j++)
+            {
+                if (available[j].getMethodName().equals(method))
+                {
+                    selected = available[j];
+                }
+            }
+
+            if (selected == null)
+            {
+                String message = CCMessages.getString("CommandLineGenerator.unknownmethod"); //$NON-NLS-1$
+                this.err.println(MessageFormat.format(message, new Object[]{method}));
+                return false;
+            }
+            if (!this.generators.contains(selected))
+            {
+                this.generators.add(selected);
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Splits a list, skipping empty elements.
+     * @param value list
+     * @param separator separator
+     * @return elements
+     */
+    private static List<String> split(String value, String separator)
+    {
+        List<String> elements = new ArrayList<String>();
+        int start = 0;
+        while (start <= value.length())
+        {
+            int end = value.indexOf(separator, start);
+            if (end == -1)
+            {
+                end = value.length();
+            }
+            String element = value.substring(start, end).trim();
+            if (element.length() > 0)
+            {
+                elements.add(element);
+            }
+            start = end + separator.length();
+        }
+        return elements;
+    }
+
+    /**
+     * Loads a properties file.
+     * @param path path of the file
+     * @return Properties
+     * @throws IOException exception in reading the file
+     */
+    private static Properties loadProperties(String path) throws IOException
+    {
+        Properties properties = new Properties();
+        InputStream stream = new FileInputStream(path);
+        try
+        {
+            properties.load(stream);
+        }
+        finally
+        {
+            stream.close();
+        }
+        return properties;
+    }
+
+    /**
+     * Prints the results and counts changed files and problems.
+     */
+    private class Summary implements SourceGenerator.Listener
+    {
+
+        /**
+         * cache to update, can be null.
+         */
+        private final GenerationCache cache;
+
+        /**
+         * files which need changes.
+         */
+        int changed;
+
+        /**
+         * files with problems.
+         */
+        int failed;
+
+        /**
+         * Creates a new Summary.
+         * @param cache cache to update with the results, can be null
+         */
+        Summary(GenerationCache cache)
+        {
+            this.cache = cache;
+        }
+
+        /**
+         * @see net.sf.commonclipse.cli.SourceGenerator.Listener#fileProcessed(net.sf.commonclipse.cli.FileResult)
+         */
+        @Override
+        public void fileProcessed(FileResult result)
+        {
+            boolean written = report(result);
+            if (this.cache != null)
+            {
+                this.cache.update(result, written);
+            }
+        }
+
+        /**
+         * Prints or writes a result.
+         * @param result result of the generation
+         * @return <code>true</code> if the file has been written
+         */
+        private boolean report(FileResult result)
+        {
+            Iterator<String> problems = result.getProblems().iterator();
+            while (problems.hasNext())
+            {
+                CommandLineGenerator.this.err.println(result.getPath() + ": " + problems.next()); //$NON-NLS-1$
+            }
+            if (!result.getProblems().isEmpty())
+            {
+                this.failed++;
+            }
+
+            if (!result.hasChanges())
+            {
+                return false;
+            }
+            this.changed++;
+
+            if (!CommandLineGenerator.this.write)
+            {
+                CommandLineGenerator.this.out.print(result.getDiff());
+                return false;
+            }
+
+            try
+            {
+                writeFile(result.getPath(), result.getNewSource());
+                return true;
+            }
+            catch (IOException e)
+            {
+                CommandLineGenerator.this.err.println(result.getPath() + ": " + e.getMessage()); //$NON-NLS-1$
+                this.failed++;
+                return false;
+            }
+        }
+
+        /**
+         * Writes a whole file.
+         * @param path path of the file
+         * @param content new content
+         * @throws IOException exception in writing the file
+         */
+        private void writeFile(String path, String content) throws IOException
+        {
+            Writer writer = new OutputStreamWriter(new FileOutputStream(path), CommandLineGenerator.this.encoding);
+            try
+            {
+                writer.write(content);
+            }
+            finally
+            {
+                writer.close();
+            }
+        }
+    }
+
+}
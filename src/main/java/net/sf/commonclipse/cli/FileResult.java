@@ -0,0 +1,167 @@
+/* ====================================================================
+ *   Copyright 2003-2005 Fabrizio Giustina.
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ * ====================================================================
+ */
+package net.sf.commonclipse.cli;
+
+import java.util.Collections;
+import java.util.List;
+
+
+/**
+ * Outcome of the generation for a single source file.
+ * @author fgiust
+ * @version $Revision$ ($Author$)
+ */
+public final class FileResult
+{
+
+    /**
+     * path of the file.
+     */
+    private final String path;
+
+    /**
+     * source before generation.
+     */
+    private final String source;
+
+    /**
+     * source after generation, <code>null</code> if the file doesn't need any change.
+     */
+    private final String newSource;
+
+    /**
+     * problems found, one message each.
+     */
+    private final List<String> problems;
+
+    /**
+     * qualified names of the types declared in the file.
+     */
+    private final List<String> declaredTypes;
+
+    /**
+     * qualified names of the superclasses of the classes in the file.
+     */
+    private final List<String> superclasses;
+
+    /**
+     * Creates a new FileResult.
+     * @param path path of the file
+     * @param source source before generation, can be null if the file could not be read
+     * @param newSource source after generation, <code>null</code> if the file doesn't need any change
+     * @param problems problems found
+     * @param declaredTypes qualified names of the types declared in the file
+     * @param superclasses qualified names of the superclasses of the classes in the file
+     */
+    public FileResult(String path, String source, String newSource, List<String> problems,
+        List<String> declaredTypes, List<String> superclasses)
+    {
+        this.path = path;
+        this.source = source;
+        this.newSource = newSource;
+        this.problems = Collections.unmodifiableList(problems);
+        this.declaredTypes = Collections.unmodifiableList(declaredTypes);
+        this.superclasses = Collections.unmodifiableList(superclasses);
+    }
+
+    /**
+     * Returns the path of the file.
+     * @return path
+     */
+    public String getPath()
+    {
+        return this.path;
+    }
+
+    /**
+     * Returns the source before generation.
+     * @return source, <code>null</code> if the file could not be read
+     */
+    public String getSource()
+    {
+        return this.source;
+    }
+
+    /**
+     * Returns the source after generation.
+     * @return source, <code>null</code> if the file doesn't need any change
+     */
+    public String getNewSource()
+    {
+        return this.newSource;
+    }
+
+    /**
+     * Does the file need any change?
+     * @return <code>true</code> if the generated methods differ from the existing ones
+     */
+    public boolean hasChanges()
+    {
+        return this.newSource != null;
+    }
+
+    /**
+     * Returns the problems found. Types with problems are left out of the new source.
+     * @return read only List of messages
+     */
+    public List<String> getProblems()
+    {
+        return this.problems;
+    }
+
+    /**
+     * Returns the types declared in the file, including member types.
+     * @return read only List of qualified names
+     */
+    public List<String> getDeclaredTypes()
+    {
+        return this.declaredTypes;
+    }
+
+    /**
+     * Returns the superclasses of the classes in the file. The generated methods depend on them, and become stale when
+     * any of them changes.
+     * @return read only List of qualified names
+     */
+    public List<String> getSuperclasses()
+    {
+        return this.superclasses;
+    }
+
+    /**
+     * Returns the changes as a unified diff.
+     * @return diff, empty if the file doesn't need any change
+     */
+    public String getDiff()
+    {
+        if (!hasChanges())
+        {
+            return ""; //$NON-NLS-1$
+        }
+        return UnifiedDiff.diff(this.path.replace('\\', '/'), this.source, this.newSource);
+    }
+
+    /**
+     * @see java.lang.Object#toString()
+     */
+    @Override
+    public String toString()
+    {
+        return this.path + (hasChanges() ? " (changed)" : "") + ' ' + this.problems; //$NON-NLS-1$ //$NON-NLS-2$
+    }
+
+}
@@ -0,0 +1,84 @@
+/* ====================================================================
+ *   Copyright 2003-2005 Fabrizio Giustina.
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ * ====================================================================
+ */
+package net.sf.commonclipse.cli;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import org.eclipse.jdt.core.ToolFactory;
+import org.eclipse.jdt.core.formatter.CodeFormatter;
+
+
+/**
+ * Code formatters sharing the same options. A formatter is not thread safe: it is checked out with acquire() and
+ * returned with release(), and can then be reused by any thread. Formatters are created only when all the existing
+ * ones are in use.
+ * @author fgiust
+ * @version $Revision$ ($Author$)
+ */
+final class FormatterPool
+{
+
+    /**
+     * compiler and formatter options.
+     */
+    private final Map<String, String> options;
+
+    /**
+     * formatters not in use. All access must be synchronized on the list.
+     */
+    private final List<CodeFormatter> idle = new ArrayList<CodeFormatter>();
+
+    /**
+     * Creates a new FormatterPool.
+     * @param options compiler and formatter options
+     */
+    FormatterPool(Map<String, String> options)
+    {
+        this.options = options;
+    }
+
+    /**
+     * Checks out a formatter, to be given back with release() when done.
+     * @return CodeFormatter
+     */
+    CodeFormatter acquire()
+    {
+        synchronized (this.idle)
+        {
+            if (!this.idle.isEmpty())
+            {
+                return this.idle.remove(this.idle.size() - 1);
+            }
+        }
+        return ToolFactory.createCodeFormatter(this.options);
+    }
+
+    /**
+     * Gives back a formatter obtained from acquire().
+     * @param formatter CodeFormatter
+     */
+    void release(CodeFormatter formatter)
+    {
+        synchronized (this.idle)
+        {
+            this.idle.add(formatter);
+        }
+    }
+
+}
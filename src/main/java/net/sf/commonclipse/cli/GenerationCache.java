@@ -0,0 +1,526 @@
+/* ====================================================================
+ *   Copyright 2003-2005 Fabrizio Giustina.
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ * ====================================================================
+ */
+package net.sf.commonclipse.cli;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.UnsupportedEncodingException;
+import java.io.Writer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import net.sf.commonclipse.Generator;
+
+
+/**
+ * Remembers the files which were up to date in a previous run, so that they are not parsed again. A file is skipped
+ * when its content hash is unchanged and so are the files declaring its superclasses, since inherited fields and
+ * getters end up in the generated methods. The whole cache is discarded when the configuration fingerprint changes.
+ * The cache is a text file with a header line followed by one line for every file:
+ *
+ * <pre>
+ * hash [tab] clean [tab] path [tab] declared types [tab] superclasses
+ * </pre>
+ *
+ * @author fgiust
+ * @version $Revision$ ($Author$)
+ */
+public final class GenerationCache
+{
+
+    /**
+     * header of the cache file, followed by the fingerprint.
+     */
+    private static final String HEADER = "commonclipse-cache 1 "; //$NON-NLS-1$
+
+    /**
+     * encoding of the cache file.
+     */
+    private static final String CACHE_ENCODING = "UTF-8"; //$NON-NLS-1$
+
+    /**
+     * separator of the columns.
+     */
+    private static final char COLUMN = '\t';
+
+    /**
+     * separator of the type names.
+     */
+    private static final String LIST = ","; //$NON-NLS-1$
+
+    /**
+     * cache file.
+     */
+    private final File file;
+
+    /**
+     * hash of the configuration.
+     */
+    private final String fingerprint;
+
+    /**
+     * entries of the previous run, by path.
+     */
+    private final Map<String, Entry> previous = new HashMap<String, Entry>();
+
+    /**
+     * entries of this run, by path.
+     */
+    private final Map<String, Entry> current = new TreeMap<String, Entry>();
+
+    /**
+     * content hashes of the files in this run, by path.
+     */
+    private final Map<String, String> hashes = new HashMap<String, String>();
+
+    /**
+     * Creates a new GenerationCache.
+     * @param file cache file, doesn't need to exist
+     * @param configuration anything which affects the generated methods: generators, preferences, options, classpath
+     */
+    public GenerationCache(File file, String configuration)
+    {
+        this.file = file;
+        this.fingerprint = hash(toBytes(configuration));
+    }
+
+    /**
+     * Describes everything which affects the generated methods besides the source files, so that the cache is discarded
+     * when any of it changes. Classpath entries are identified by size and modification time.
+     * @param generators selected generators
+     * @param addMissing add missing methods?
+     * @param encoding encoding of the source files
+     * @param options compiler and formatter options
+     * @param preferences commonclipse configuration
+     * @param classpath classpath entries
+     * @return configuration description
+     */
+    public static String getConfiguration(Generator[] generators, boolean addMissing, String encoding,
+        Map<String, String> options, Map<Object, Object> preferences, List<String> classpath)
+    {
+        StringBuffer buffer = new StringBuffer();
+        for (int j = 0; j < generators.length; j++)
+        {
+            buffer.append(generators[j].getMethodName()).append('\n');
+        }
+        buffer.append(addMissing).append('\n');
+        buffer.append(encoding).append('\n');
+        buffer.append(new TreeMap<String, String>(options)).append('\n');
+        buffer.append(new TreeMap<Object, Object>(preferences)).append('\n');
+
+        List<String> entries = new ArrayList<String>(classpath);
+        // the generator itself
+        entries.add(GenerationCache.class.getProtectionDomain().getCodeSource().getLocation().getPath());
+        Iterator<String> iterator = entries.iterator();
+        while (iterator.hasNext())
+        {
+            File entry = new File(iterator.next());
+            buffer.append(entry.getAbsolutePath()).append(' ');
+            buffer.append(entry.length()).append(' ');
+            buffer.append(entry.lastModified()).append('\n');
+        }
+        return buffer.toString();
+    }
+
+    /**
+     * Loads the entries of the previous run, if the cache file exists and has been written with the same configuration.
+     * @throws IOException exception in reading the cache file
+     */
+    public void load() throws IOException
+    {
+        if (!this.file.isFile())
+        {
+            return;
+        }
+
+        BufferedReader reader = new BufferedReader(new InputStreamReader(
+            new FileInputStream(this.file),
+            CACHE_ENCODING));
+        try
+        {
+            if (!(HEADER + this.fingerprint).equals(reader.readLine()))
+            {
+                return;
+            }
+
+            String line = reader.readLine();
+            while (line != null)
+            {
+                Entry entry = Entry.parse(line);
+                if (entry != null)
+                {
+                    this.previous.put(entry.path, entry);
+                }
+                line = reader.readLine();
+            }
+        }
+        finally
+        {
+            reader.close();
+        }
+    }
+
+    /**
+     * Returns the files which need to be processed, the others are kept in the cache as they are.
+     * @param paths all the files
+     * @return files changed since the previous run, not clean in the previous run, or depending on a changed superclass
+     */
+    public List<String> findStale(List<String> paths)
+    {
+        Iterator<String> iterator = paths.iterator();
+        while (iterator.hasNext())
+        {
+            String path = iterator.next();
+            this.hashes.put(path, hashFile(path));
+        }
+
+        // file declaring each type in the previous run
+        Map<String, Entry> declarations = new HashMap<String, Entry>();
+        Iterator<Entry> entries = this.previous.values().iterator();
+        while (entries.hasNext())
+        {
+            Entry entry = entries.next();
+            for (int j = 0; j < entry.declaredTypes.length; j++)
+            {
+                declarations.put(entry.declaredTypes[j], entry);
+            }
+        }
+
+        List<String> stale = new ArrayList<String>();
+        iterator = paths.iterator();
+        while (iterator.hasNext())
+        {
+            String path = iterator.next();
+            Entry entry = this.previous.get(path);
+            if (entry != null && entry.clean && isUnchanged(entry) && areSuperclassesUnchanged(entry, declarations))
+            {
+                this.current.put(path, entry);
+            }
+            else
+            {
+                stale.add(path);
+            }
+        }
+        return stale;
+    }
+
+    /**
+     * Is the file of an entry unchanged since the previous run?
+     * @param entry entry of the previous run
+     * @return <code>true</code> if the file has still the same content
+     */
+    private boolean isUnchanged(Entry entry)
+    {
+        return entry.hash.equals(this.hashes.get(entry.path));
+    }
+
+    /**
+     * Are the files declaring the superclasses of an entry unchanged since the previous run? Superclasses which were
+     * not declared in a source file come from the classpath, which is part of the fingerprint.
+     * @param entry entry of the previous run
+     * @param declarations entries by declared type
+     * @return <code>true</code> if no superclass has changed
+     */
+    private boolean areSuperclassesUnchanged(Entry entry, Map<String, Entry> declarations)
+    {
+        for (int j = 0; j < entry.superclasses.length; j++)
+        {
+            Entry declaration = declarations.get(entry.superclasses[j]);
+            if (declaration != null && !isUnchanged(declaration))
+            {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Records the result of a processed file.
+     * @param result result of the generation
+     * @param written <code>true</code> if the new source has been written to the file
+     */
+    public void update(FileResult result, boolean written)
+    {
+        String path = result.getPath();
+        String hash = written ? hashFile(path) : this.hashes.get(path);
+        if (hash == null)
+        {
+            this.current.remove(path);
+            return;
+        }
+
+        boolean clean = result.getProblems().isEmpty() && (written || !result.hasChanges());
+        this.current.put(path, new Entry(
+            hash,
+            clean,
+            path,
+            result.getDeclaredTypes().toArray(new String[0]),
+            result.getSuperclasses().toArray(new String[0])));
+    }
+
+    /**
+     * Writes the entries of this run. Files which don't exist anymore are dropped.
+     * @throws IOException exception in writing the cache file
+     */
+    public void save() throws IOException
+    {
+        File parent = this.file.getAbsoluteFile().getParentFile();
+        if (parent != null)
+        {
+            parent.mkdirs();
+        }
+
+        Writer writer = new OutputStreamWriter(new FileOutputStream(this.file), CACHE_ENCODING);
+        try
+        {
+            writer.write(HEADER + this.fingerprint + '\n');
+            Iterator<Entry> iterator = this.current.values().iterator();
+            while (iterator.hasNext())
+            {
+                writer.write(iterator.next().format());
+                writer.write('\n');
+            }
+        }
+        finally
+        {
+            writer.close();
+        }
+    }
+
+    /**
+     * Hashes the content of a file.
+     * @param path path of the file
+     * @return hash, <code>null</code> if the file can't be read
+     */
+    private static String hashFile(String path)
+    {
+        MessageDigest digest = createDigest();
+        byte[] buffer = new byte[8192];
+        try
+        {
+            InputStream stream = new FileInputStream(path);
+            try
+            {
+                int read = stream.read(buffer);
+                while (read != -1)
+                {
+                    digest.update(buffer, 0, read);
+                    read = stream.read(buffer);
+                }
+            }
+            finally
+            {
+                stream.close();
+            }
+        }
+        catch (IOException e)
+        {
+            // processed again, the generator will report the problem
+            return null;
+        }
+        return toHex(digest.digest());
+    }
+
+    /**
+     * Hashes some bytes.
+     * @param bytes content
+     * @return hash
+     */
+    private static String hash(byte[] bytes)
+    {
+        return toHex(createDigest().digest(bytes));
+    }
+
+    /**
+     * Creates the digest used for all the hashes.
+     * @return SHA-1 digest
+     */
+    private static MessageDigest createDigest()
+    {
+        try
+        {
+            return MessageDigest.getInstance("SHA-1"); //$NON-NLS-1$
+        }
+        catch (NoSuchAlgorithmException e)
+        {
+            // every java platform is required to support SHA-1
+            throw new IllegalStateException(e.getMessage());
+        }
+    }
+
+    /**
+     * Encodes a string with the cache encoding.
+     * @param string string
+     * @return bytes
+     */
+    private static byte[] toBytes(String string)
+    {
+        try
+        {
+            return string.getBytes(CACHE_ENCODING);
+        }
+        catch (UnsupportedEncodingException e)
+        {
+            // every java platform is required to support UTF-8
+            throw new IllegalStateException(e.getMessage());
+        }
+    }
+
+    /**
+     * Converts a hash to hexadecimal digits.
+     * @param bytes hash
+     * @return hexadecimal string
+     */
+    private static String toHex(byte[] bytes)
+    {
+        StringBuffer buffer = new StringBuffer(bytes.length * 2);
+        for (int j = 0; j < bytes.length; j++)
+        {
+            buffer.append(Character.forDigit((bytes[j] >> 4) & 0xf, 16));
+            buffer.append(Character.forDigit(bytes[j] & 0xf, 16));
+        }
+        return buffer.toString();
+    }
+
+    /**
+     * The state of a file at the end of a run.
+     */
+    private static class Entry
+    {
+
+        /**
+         * content hash.
+         */
+        final String hash;
+
+        /**
+         * no problems and no pending changes?
+         */
+        final boolean clean;
+
+        /**
+         * path of the file.
+         */
+        final String path;
+
+        /**
+         * qualified names of the declared types.
+         */
+        final String[] declaredTypes;
+
+        /**
+         * qualified names of the superclasses.
+         */
+        final String[] superclasses;
+
+        /**
+         * Creates a new Entry.
+         * @param hash content hash
+         * @param clean no problems and no pending changes?
+         * @param path path of the file
+         * @param declaredTypes qualified names of the declared types
+         * @param superclasses qualified names of the superclasses
+         */
+        Entry(String hash, boolean clean, String path, String[] declaredTypes, String[] superclasses)
+        {
+            this.hash = hash;
+            this.clean = clean;
+            this.path = path;
+            this.declaredTypes = declaredTypes;
+            this.superclasses = superclasses;
+        }
+
+        /**
+         * Reads an entry from a line of the cache file.
+         * @param line line
+         * @return Entry, <code>null</code> if the line is not valid
+         */
+        static Entry parse(String line)
+        {
+            String[] columns = new String[5];
+            int start = 0;
+            for (int j = 0; j < columns.length; j++)
+            {
+                int end = j + 1 < columns.length ? line.indexOf(COLUMN, start) : line.length();
+                if (end == -1)
+                {
+                    return null;
+                }
+                columns[j] = line.substring(start, end);
+                start = end + 1;
+            }
+            return new Entry(columns[0], "1".equals(columns[1]), columns[2], //$NON-NLS-1$
+                splitList(columns[3]), splitList(columns[4]));
+        }
+
+        /**
+         * Writes the entry as a line of the cache file.
+         * @return line, without terminator
+         */
+        String format()
+        {
+            StringBuffer buffer = new StringBuffer();
+            buffer.append(this.hash).append(COLUMN);
+            buffer.append(this.clean ? '1' : '0').append(COLUMN);
+            buffer.append(this.path).append(COLUMN);
+            appendList(buffer, this.declaredTypes);
+            buffer.append(COLUMN);
+            appendList(buffer, this.superclasses);
+            return buffer.toString();
+        }
+
+        /**
+         * Splits a list of type names.
+         * @param value names separated by commas
+         * @return names
+         */
+        private static String[] splitList(String value)
+        {
+            return value.length() == 0 ? new String[0] : value.split(LIST);
+        }
+
+        /**
+         * Appends a list of type names.
+         * @param buffer output
+         * @param names names
+         */
+        private static void appendList(StringBuffer buffer, String[] names)
+        {
+            for (int j = 0; j < names.length; j++)
+            {
+                if (j > 0)
+                {
+                    buffer.append(LIST);
+                }
+                buffer.append(names[j]);
+            }
+        }
+    }
+
+}
@@ -0,0 +1,727 @@
+/* ====================================================================
+ *   Copyright 2003-2005 Fabrizio Giustina.
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ * ====================================================================
+ */
+package net.sf.commonclipse.cli;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import net.sf.commonclipse.CCPluginPreferences;
+import net.sf.commonclipse.Generator;
+
+
+/**
+ * Long running generation service for editors and tools other than Eclipse. Requests are JSON-RPC 2.0 messages, one
+ * per line, read from a stream or from local socket connections; responses are written the same way. The JVM, the
+ * configuration, the formatters and the results of the most recently used unchanged files stay warm between requests.
+ * <p>
+ * Methods:
+ * </p>
+ * <ul>
+ * <li><code>generate</code>: <code>path</code>, optional <code>source</code> (unsaved content, the file is read
+ * otherwise), <code>methods</code> (array of method names) and <code>add</code> (add missing methods). Returns
+ * <code>path</code>, <code>changed</code>, <code>source</code> (new source, <code>null</code> if unchanged),
+ * <code>diff</code>, <code>problems</code> and <code>cached</code>.</li>
+ * <li><code>invalidate</code>: forgets the cached results, of <code>path</code> only if given.</li>
+ * <li><code>shutdown</code>: stops the daemon after the response.</li>
+ * </ul>
+ * @author fgiust
+ * @version $Revision$ ($Author$)
+ */
+public class GenerationDaemon
+{
+
+    /**
+     * JSON-RPC error: invalid JSON.
+     */
+    public static final int PARSE_ERROR = -32700;
+
+    /**
+     * JSON-RPC error: not a valid request.
+     */
+    public static final int INVALID_REQUEST = -32600;
+
+    /**
+     * JSON-RPC error: unknown method.
+     */
+    public static final int METHOD_NOT_FOUND = -32601;
+
+    /**
+     * JSON-RPC error: invalid parameters.
+     */
+    public static final int INVALID_PARAMS = -32602;
+
+    /**
+     * JSON-RPC error: unexpected failure.
+     */
+    public static final int INTERNAL_ERROR = -32603;
+
+    /**
+     * encoding of the protocol streams.
+     */
+    private static final String PROTOCOL_ENCODING = "UTF-8"; //$NON-NLS-1$
+
+    /**
+     * maximum number of cached results, the least recently used ones are dropped first.
+     */
+    private static final int MAX_RESULTS = 512;
+
+    /**
+     * source folders.
+     */
+    private final String[] sourceRoots;
+
+    /**
+     * classpath entries.
+     */
+    private final String[] classpath;
+
+    /**
+     * encoding of the source files.
+     */
+    private final String encoding;
+
+    /**
+     * compiler and formatter options.
+     */
+    private final Map<String, String> options;
+
+    /**
+     * configuration.
+     */
+    private final CCPluginPreferences preferences;
+
+    /**
+     * generators used when a request doesn't list the methods.
+     */
+    private final Generator[] defaultGenerators;
+
+    /**
+     * add missing methods when a request doesn't say?
+     */
+    private final boolean defaultAddMissing;
+
+    /**
+     * formatters shared by all the connections and source generators.
+     */
+    private final FormatterPool formatters;
+
+    /**
+     * source generators by selected methods.
+     */
+    private final Map<String, SourceGenerator> sourceGenerators = new HashMap<String, SourceGenerator>();
+
+    /**
+     * results of the previous requests, by selected methods and path.
+     */
+    private final Map<String, CachedResult> results = new ResultCache(MAX_RESULTS);
+
+    /**
+     * socket accepting connections, <code>null</code> when serving a single stream.
+     */
+    private ServerSocket server;
+
+    /**
+     * set by a shutdown request.
+     */
+    private volatile boolean stopped;
+
+    /**
+     * Creates a new GenerationDaemon.
+     * @param sourceRoots source folders
+     * @param classpath classpath entries
+     * @param encoding encoding of the source files
+     * @param options compiler and formatter options
+     * @param preferences configuration
+     * @param generators generators used when a request doesn't list the methods
+     * @param addMissing add missing methods when a request doesn't say?
+     */
+    public GenerationDaemon(String[] sourceRoots, String[] classpath, String encoding, Map<String, String> options,
+        CCPluginPreferences preferences, Generator[] generators, boolean addMissing)
+    {
+        this.sourceRoots = sourceRoots;
+        this.classpath = classpath;
+        this.encoding = encoding;
+        this.options = options;
+        this.preferences = preferences;
+        this.defaultGenerators = generators;
+        this.defaultAddMissing = addMissing;
+        this.formatters = new FormatterPool(options);
+    }
+
+    /**
+     * Serves the requests read from a stream, until the end of the stream or a shutdown request.
+     * @param in requests
+     * @param out responses
+     * @throws IOException exception in reading or writing
+     */
+    public void serve(InputStream in, OutputStream out) throws IOException
+    {
+        BufferedReader reader = new BufferedReader(new InputStreamReader(in, PROTOCOL_ENCODING));
+        Writer writer = new OutputStreamWriter(out, PROTOCOL_ENCODING);
+
+        String line = reader.readLine();
+        while (line != null)
+        {
+            if (line.trim().length() > 0)
+            {
+                String response = handle(line);
+                if (response != null)
+                {
+                    writer.write(response);
+                    writer.write('\n');
+                    writer.flush();
+                }
+            }
+            if (this.stopped)
+            {
+                return;
+            }
+            line = reader.readLine();
+        }
+    }
+
+    /**
+     * Accepts connections on a local port until a shutdown request, serving each connection in its own thread.
+     * @param port port number, on the loopback interface only
+     * @throws IOException exception in opening the port
+     */
+    public void listen(int port) throws IOException
+    {
+        synchronized (this)
+        {
+            this.server = new ServerSocket(port, 0, InetAddress.getByName(null));
+        }
+        try
+        {
+            while (!this.stopped)
+            {
+                final Socket socket;
+                try
+                {
+                    socket = this.server.accept();
+                }
+                catch (IOException e)
+                {
+                    if (this.stopped)
+                    {
+                        // closed by a shutdown request
+                        return;
+                    }
+                    throw e;
+                }
+
+                Thread connection = new Thread(new Runnable()
+                {
+
+                    /**
+                     * @see java.lang.Runnable#run()
+                     */
+                    @Override
+                    public void run()
+                    {
+                        serveConnection(socket);
+                    }
+                }, "commonclipse connection " + socket.getPort()); //$NON-NLS-1$
+                connection.setDaemon(true);
+                connection.start();
+            }
+        }
+        finally
+        {
+            this.server.close();
+        }
+    }
+
+    /**
+     * Serves a connection until it's closed.
+     * @param socket connection
+     */
+    private void serveConnection(Socket socket)
+    {
+        try
+        {
+            try
+            {
+                serve(socket.getInputStream(), socket.getOutputStream());
+            }
+            finally
+            {
+                socket.close();
+            }
+        }
+        catch (IOException e)
+        {
+            // the client went away
+        }
+    }
+
+    /**
+     * Handles a single request.
+     * @param line JSON-RPC request
+     * @return JSON-RPC response, <code>null</code> for notifications
+     */
+    public String handle(String line)
+    {
+        Map< ? , ? > request;
+        try
+        {
+            Object message = Json.parse(line);
+            if (!(message instanceof Map))
+            {
+                return createError(null, INVALID_REQUEST, "request must be an object"); //$NON-NLS-1$
+            }
+            request = (Map< ? , ? >) message;
+        }
+        catch (ParseException e)
+        {
+            return createError(null, PARSE_ERROR, e.getMessage());
+        }
+
+        Object id = request.get("id"); //$NON-NLS-1$
+        boolean notification = !request.containsKey("id"); //$NON-NLS-1$
+        try
+        {
+            Object method = request.get("method"); //$NON-NLS-1$
+            Object params = request.get("params"); //$NON-NLS-1$
+            if (!(method instanceof String))
+            {
+                throw new RequestException(INVALID_REQUEST, "method must be a string"); //$NON-NLS-1$
+            }
+            if (params != null && !(params instanceof Map))
+            {
+                throw new RequestException(INVALID_PARAMS, "params must be an object"); //$NON-NLS-1$
+            }
+
+            if (params == null)
+            {
+                params = new HashMap<String, Object>();
+            }
+
+            Object result = call((String) method, (Map< ? , ? >) params);
+            if (notification)
+            {
+                return null;
+            }
+
+            Map<String, Object> response = new LinkedHashMap<String, Object>();
+            response.put("jsonrpc", "2.0"); //$NON-NLS-1$ //$NON-NLS-2$
+            response.put("id", id); //$NON-NLS-1$
+            response.put("result", result); //$NON-NLS-1$
+            return Json.write(response);
+        }
+        catch (RequestException e)
+        {
+            return notification ? null : createError(id, e.code, e.getMessage());
+        }
+        catch (RuntimeException e)
+        {
+            return notification ? null : createError(id, INTERNAL_ERROR, e.toString());
+        }
+    }
+
+    /**
+     * Runs a method.
+     * @param method method name
+     * @param params parameters
+     * @return result
+     * @throws RequestException for unknown methods or invalid parameters
+     */
+    private Object call(String method, Map< ? , ? > params) throws RequestException
+    {
+        if ("generate".equals(method)) //$NON-NLS-1$
+        {
+            return generate(params);
+        }
+        if ("invalidate".equals(method)) //$NON-NLS-1$
+        {
+            invalidate((String) getParam(params, "path", String.class, false)); //$NON-NLS-1$
+            return Boolean.TRUE;
+        }
+        if ("shutdown".equals(method)) //$NON-NLS-1$
+        {
+            shutdown();
+            return Boolean.TRUE;
+        }
+        throw new RequestException(METHOD_NOT_FOUND, "unknown method " + method); //$NON-NLS-1$
+    }
+
+    /**
+     * Generates the methods of a file, or returns the previous result if neither the file nor its superclasses have
+     * changed.
+     * @param params request parameters
+     * @return result
+     * @throws RequestException for invalid parameters
+     */
+    private Map<String, Object> generate(Map< ? , ? > params) throws RequestException
+    {
+        String path = (String) getParam(params, "path", String.class, true); //$NON-NLS-1$
+        String source = (String) getParam(params, "source", String.class, false); //$NON-NLS-1$
+        List< ? > methods = (List< ? >) getParam(params, "methods", List.class, false); //$NON-NLS-1$
+        Boolean add = (Boolean) getParam(params, "add", Boolean.class, false); //$NON-NLS-1$
+
+        if (source == null)
+        {
+            try
+            {
+                source = SourceGenerator.readFile(path, this.encoding);
+            }
+            catch (IOException e)
+            {
+                throw new RequestException(INVALID_PARAMS, e.getMessage());
+            }
+        }
+
+        Generator[] generators = methods != null ? getGenerators(methods) : this.defaultGenerators;
+        boolean addMissing = add != null ? add.booleanValue() : this.defaultAddMissing;
+        SourceGenerator sourceGenerator = getSourceGenerator(generators, addMissing);
+        String key = getKey(generators, addMissing) + '\n' + new File(path).getAbsolutePath();
+
+        CachedResult cached;
+        synchronized (this.results)
+        {
+            cached = this.results.get(key);
+        }
+
+        boolean current = cached != null && source.equals(cached.result.getSource()) && cached.isCurrent();
+        if (!current)
+        {
+            FileResult result = sourceGenerator.process(path, source);
+            cached = new CachedResult(result, getDependencies(sourceGenerator, result));
+            synchronized (this.results)
+            {
+                this.results.put(key, cached);
+            }
+        }
+
+        FileResult result = cached.result;
+        Map<String, Object> response = new LinkedHashMap<String, Object>();
+        response.put("path", path); //$NON-NLS-1$
+        response.put("changed", Boolean.valueOf(result.hasChanges())); //$NON-NLS-1$
+        response.put("source", result.getNewSource()); //$NON-NLS-1$
+        response.put("diff", result.getDiff()); //$NON-NLS-1$
+        response.put("problems", result.getProblems()); //$NON-NLS-1$
+        response.put("cached", Boolean.valueOf(current)); //$NON-NLS-1$
+        return response;
+    }
+
+    /**
+     * Forgets cached results.
+     * @param path path of the file, <code>null</code> for all the files
+     */
+    private void invalidate(String path)
+    {
+        synchronized (this.results)
+        {
+            if (path == null)
+            {
+                this.results.clear();
+                return;
+            }
+
+            String suffix = '\n' + new File(path).getAbsolutePath();
+            Iterator<String> iterator = this.results.keySet().iterator();
+            while (iterator.hasNext())
+            {
+                if (iterator.next().endsWith(suffix))
+                {
+                    iterator.remove();
+                }
+            }
+        }
+    }
+
+    /**
+     * Stops serving after the current request.
+     */
+    private synchronized void shutdown()
+    {
+        this.stopped = true;
+        if (this.server != null)
+        {
+            try
+            {
+                this.server.close();
+            }
+            catch (IOException e)
+            {
+                // already closed
+            }
+        }
+    }
+
+    /**
+     * Resolves the generators listed in a request.
+     * @param methods method names
+     * @return generators
+     * @throws RequestException if a method is unknown
+     */
+    private static Generator[] getGenerators(List< ? > methods) throws RequestException
+    {
+        Generator[] available = CommandLineGenerator.getAvailableGenerators();
+        List<Generator> generators = new ArrayList<Generator>();
+        for (int j = 0; j < methods.size(); j++)
+        {
+            Generator generator = null;
+            for (int k = 0; k < available.length; k++)
+            {
+                if (available[k].getMethodName().equals(methods.get(j)))
+                {
+                    generator = available[k];
+                }
+            }
+            if (generator == null)
+            {
+                throw new RequestException(INVALID_PARAMS, "unknown method " + methods.get(j)); //$NON-NLS-1$
+            }
+            if (!generators.contains(generator))
+            {
+                generators.add(generator);
+            }
+        }
+        return generators.toArray(new Generator[generators.size()]);
+    }
+
+    /**
+     * Returns the source generator for a selection of methods, creating it on the first request.
+     * @param generators selected generators
+     * @param addMissing add missing methods?
+     * @return SourceGenerator
+     */
+    private SourceGenerator getSourceGenerator(Generator[] generators, boolean addMissing)
+    {
+        String key = getKey(generators, addMissing);
+        synchronized (this.sourceGenerators)
+        {
+            SourceGenerator sourceGenerator = this.sourceGenerators.get(key);
+            if (sourceGenerator == null)
+            {
+                sourceGenerator = new SourceGenerator(this.sourceRoots, this.classpath, this.encoding, this.options,
+                    generators, this.preferences, addMissing, this.formatters);
+                this.sourceGenerators.put(key, sourceGenerator);
+            }
+            return sourceGenerator;
+        }
+    }
+
+    /**
+     * Identifies a selection of methods.
+     * @param generators selected generators
+     * @param addMissing add missing methods?
+     * @return key
+     */
+    private static String getKey(Generator[] generators, boolean addMissing)
+    {
+        StringBuffer buffer = new StringBuffer();
+        for (int j = 0; j < generators.length; j++)
+        {
+            buffer.append(generators[j].getMethodName()).append(',');
+        }
+        return buffer.append(addMissing).toString();
+    }
+
+    /**
+     * Collects the source files declaring the superclasses of the classes in a file, with their modification time.
+     * @param sourceGenerator source generator knowing the source roots
+     * @param result result of the file
+     * @return modification times by file
+     */
+    private static Map<File, Long> getDependencies(SourceGenerator sourceGenerator, FileResult result)
+    {
+        Map<File, Long> dependencies = new HashMap<File, Long>();
+        Iterator<String> iterator = result.getSuperclasses().iterator();
+        while (iterator.hasNext())
+        {
+            File file = sourceGenerator.findSourceFile(iterator.next());
+            if (file != null)
+            {
+                dependencies.put(file, new Long(file.lastModified()));
+            }
+        }
+        return dependencies;
+    }
+
+    /**
+     * Reads a request parameter.
+     * @param params parameters
+     * @param name parameter name
+     * @param type expected type
+     * @param required is the parameter required?
+     * @return value, <code>null</code> if the parameter is not given
+     * @throws RequestException if the parameter is missing or of the wrong type
+     */
+    private static Object getParam(Map< ? , ? > params, String name, Class< ? > type, boolean required)
+        throws RequestException
+    {
+        Object value = params.get(name);
+        if (value == null && required || value != null && !type.isInstance(value))
+        {
+            throw new RequestException(INVALID_PARAMS, "invalid parameter " + name); //$NON-NLS-1$
+        }
+        return value;
+    }
+
+    /**
+     * Creates an error response.
+     * @param id request id
+     * @param code error code
+     * @param message error message
+     * @return JSON-RPC response
+     */
+    private static String createError(Object id, int code, String message)
+    {
+        Map<String, Object> error = new LinkedHashMap<String, Object>();
+        error.put("code", new Integer(code)); //$NON-NLS-1$
+        error.put("message", message); //$NON-NLS-1$
+
+        Map<String, Object> response = new LinkedHashMap<String, Object>();
+        response.put("jsonrpc", "2.0"); //$NON-NLS-1$ //$NON-NLS-2$
+        response.put("id", id); //$NON-NLS-1$
+        response.put("error", error); //$NON-NLS-1$
+        return Json.write(response);
+    }
+
+    /**
+     * The result of a file, valid while the files declaring its superclasses are unchanged.
+     */
+    private static class CachedResult
+    {
+
+        /**
+         * result of the file.
+         */
+        final FileResult result;
+
+        /**
+         * modification times of the files declaring the superclasses.
+         */
+        final Map<File, Long> dependencies;
+
+        /**
+         * Creates a new CachedResult.
+         * @param result result of the file
+         * @param dependencies modification times of the files declaring the superclasses
+         */
+        CachedResult(FileResult result, Map<File, Long> dependencies)
+        {
+            this.result = result;
+            this.dependencies = dependencies;
+        }
+
+        /**
+         * Are all the files declaring the superclasses unchanged?
+         * @return <code>true</code> if the result is still valid for the same source
+         */
+        boolean isCurrent()
+        {
+            if (this.result.getSource() == null)
+            {
+                return false;
+            }
+            Iterator<Map.Entry<File, Long>> iterator = this.dependencies.entrySet().iterator();
+            while (iterator.hasNext())
+            {
+                Map.Entry<File, Long> dependency = iterator.next();
+                if (dependency.getKey().lastModified() != dependency.getValue().longValue())
+                {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    /**
+     * Results by selected methods and path, in access order, holding at most a fixed number of entries.
+     */
+    private static class ResultCache extends LinkedHashMap<String, CachedResult>
+    {
+
+        /**
+         * serial version uid.
+         */
+        private static final long serialVersionUID = 1L;
+
+        /**
+         * maximum number of entries.
+         */
+        private final int maxSize;
+
+        /**
+         * Creates a new ResultCache.
+         * @param maxSize maximum number of entries
+         */
+        ResultCache(int maxSize)
+        {
+            super(16, 0.75f, true);
+            this.maxSize = maxSize;
+        }
+
+        /**
+         * @see java.util.LinkedHashMap#removeEldestEntry(java.util.Map.Entry)
+         */
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, CachedResult> eldest)
+        {
+            return size() > this.maxSize;
+        }
+    }
+
+    /**
+     * A request which can't be served, answered with a JSON-RPC error.
+     */
+    private static class RequestException extends Exception
+    {
+
+        /**
+         * serial version uid.
+         */
+        private static final long serialVersionUID = 1L;
+
+        /**
+         * JSON-RPC error code.
+         */
+        final int code;
+
+        /**
+         * Creates a new RequestException.
+         * @param code JSON-RPC error code
+         * @param message error message
+         */
+        RequestException(int code, String message)
+        {
+            super(message);
+            this.code = code;
+        }
+    }
+
+}
@@ -0,0 +1,421 @@
+/* ====================================================================
+ *   Copyright 2003-2005 Fabrizio Giustina.
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ * ====================================================================
+ */
+package net.sf.commonclipse.cli;
+
+import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+
+/**
+ * Minimal JSON reader and writer for the daemon protocol. Objects are read as Map, arrays as List, numbers as Long or
+ * Double; the same types, plus any other Collection and Number, are written back.
+ * @author fgiust
+ * @version $Revision$ ($Author$)
+ */
+public final class Json
+{
+
+    /**
+     * text being read.
+     */
+    private final String text;
+
+    /**
+     * current position.
+     */
+    private int position;
+
+    /**
+     * Creates a new reader.
+     * @param text JSON text
+     */
+    private Json(String text)
+    {
+        this.text = text;
+    }
+
+    /**
+     * Reads a JSON value.
+     * @param text JSON text
+     * @return Map, List, String, Long, Double, Boolean or <code>null</code>
+     * @throws ParseException if the text is not valid JSON
+     */
+    public static Object parse(String text) throws ParseException
+    {
+        Json reader = new Json(text);
+        Object value = reader.readValue();
+        reader.skipWhitespace();
+        if (reader.position < text.length())
+        {
+            throw reader.error();
+        }
+        return value;
+    }
+
+    /**
+     * Writes a value as JSON, on a single line.
+     * @param value Map, Collection, String, Number, Boolean or <code>null</code>
+     * @return JSON text
+     */
+    public static String write(Object value)
+    {
+        StringBuffer buffer = new StringBuffer();
+        writeValue(buffer, value);
+        return buffer.toString();
+    }
+
+    /**
+     * Reads any value.
+     * @return value
+     * @throws ParseException if the text is not valid JSON
+     */
+    private Object readValue() throws ParseException
+    {
+        skipWhitespace();
+        if (this.position == this.text.length())
+        {
+            throw error();
+        }
+
+        char ch = this.text.charAt(this.position);
+        switch (ch)
+        {
+            case '{' :
+                return readObject();
+            case '[' :
+                return readArray();
+            case '"' :
+                return readString();
+            case 't' :
+                return readLiteral("true", Boolean.TRUE); //$NON-NLS-1$
+            case 'f' :
+                return readLiteral("false", Boolean.FALSE); //$NON-NLS-1$
+            case 'n' :
+                return readLiteral("null", null); //$NON-NLS-1$
+            default :
+                return readNumber();
+        }
+    }
+
+    /**
+     * Reads an object.
+     * @return Map, in the order of the members
+     * @throws ParseException if the text is not valid JSON
+     */
+    private Map<String, Object> readObject() throws ParseException
+    {
+        Map<String, Object> members = new LinkedHashMap<String, Object>();
+        this.position++;
+        if (skipTo('}'))
+        {
+            return members;
+        }
+        do
+        {
+            skipWhitespace();
+            if (!lookingAt('"'))
+            {
+                throw error();
+            }
+            String name = readString();
+            skipWhitespace();
+            expect(':');
+            members.put(name, readValue());
+        }
+        while (readSeparator('}'));
+        return members;
+    }
+
+    /**
+     * Reads an array.
+     * @return List
+     * @throws ParseException if the text is not valid JSON
+     */
+    private List<Object> readArray() throws ParseException
+    {
+        List<Object> elements = new ArrayList<Object>();
+        this.position++;
+        if (skipTo(']'))
+        {
+            return elements;
+        }
+        do
+        {
+            elements.add(readValue());
+        }
+        while (readSeparator(']'));
+        return elements;
+    }
+
+    /**
+     * Reads a string, the current character being the opening quote.
+     * @return String
+     * @throws ParseException if the text is not valid JSON
+     */
+    private String readString() throws ParseException
+    {
+        StringBuffer buffer = new StringBuffer();
+        this.position++;
+        while (this.position < this.text.length())
+        {
+            char ch = this.text.charAt(this.position++);
+            if (ch == '"')
+            {
+                return buffer.toString();
+            }
+            if (ch != '\\')
+            {
+                buffer.append(ch);
+                continue;
+            }
+            if (this.position == this.text.length())
+            {
+                break;
+            }
+
+            char escaped = this.text.charAt(this.position++);
+            int index = "\"\\/bfnrt".indexOf(escaped); //$NON-NLS-1$
+            if (index != -1)
+            {
+                buffer.append("\"\\/\b\f\n\r\t".charAt(index)); //$NON-NLS-1$
+            }
+            else if (escaped == 'u' && this.position + 4 <= this.text.length())
+            {
+                try
+                {
+                    buffer.append((char) Integer.parseInt(this.text.substring(this.position, this.position + 4), 16));
+                }
+                catch (NumberFormatException e)
+                {
+                    throw error();
+                }
+                this.position += 4;
+            }
+            else
+            {
+                throw error();
+            }
+        }
+        throw error();
+    }
+
+    /**
+     * Reads a number.
+     * @return Long for integers, Double otherwise
+     * @throws ParseException if the text is not valid JSON
+     */
+    private Number readNumber() throws ParseException
+    {
+        int start = this.position;
+        while (this.position < this.text.length() && "+-0123456789.eE".indexOf(this.text.charAt(this.position)) != -1) //$NON-NLS-1$
+        {
+            this.position++;
+        }
+        String number = this.text.substring(start, this.position);
+        try
+        {
+            if (number.indexOf('.') == -1 && number.indexOf('e') == -1 && number.indexOf('E') == -1)
+            {
+                return Long.valueOf(number);
+            }
+            return Double.valueOf(number);
+        }
+        catch (NumberFormatException e)
+        {
+            this.position = start;
+            throw error();
+        }
+    }
+
+    /**
+     * Reads true, false or null.
+     * @param literal expected text
+     * @param value value of the literal
+     * @return value
+     * @throws ParseException if the text doesn't match
+     */
+    private Object readLiteral(String literal, Object value) throws ParseException
+    {
+        if (!this.text.startsWith(literal, this.position))
+        {
+            throw error();
+        }
+        this.position += literal.length();
+        return value;
+    }
+
+    /**
+     * Reads the separator after an element of an object or an array.
+     * @param end closing character
+     * @return <code>true</code> if another element follows, <code>false</code> at the end
+     * @throws ParseException if neither a comma nor the closing character follows
+     */
+    private boolean readSeparator(char end) throws ParseException
+    {
+        skipWhitespace();
+        if (lookingAt(','))
+        {
+            this.position++;
+            return true;
+        }
+        expect(end);
+        return false;
+    }
+
+    /**
+     * Skips whitespace and the closing character of an empty object or array.
+     * @param end closing character
+     * @return <code>true</code> if the closing character has been found
+     */
+    private boolean skipTo(char end)
+    {
+        skipWhitespace();
+        if (lookingAt(end))
+        {
+            this.position++;
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Skips a required character.
+     * @param ch character
+     * @throws ParseException if the current character is different
+     */
+    private void expect(char ch) throws ParseException
+    {
+        if (!lookingAt(ch))
+        {
+            throw error();
+        }
+        this.position++;
+    }
+
+    /**
+     * Is the current character the given one?
+     * @param ch character
+     * @return <code>true</code> if it matches
+     */
+    private boolean lookingAt(char ch)
+    {
+        return this.position < this.text.length() && this.text.charAt(this.position) == ch;
+    }
+
+    /**
+     * Skips whitespace.
+     */
+    private void skipWhitespace()
+    {
+        while (this.position < this.text.length() && Character.isWhitespace(this.text.charAt(this.position)))
+        {
+            this.position++;
+        }
+    }
+
+    /**
+     * Creates the exception for invalid text at the current position.
+     * @return ParseException
+     */
+    private ParseException error()
+    {
+        return new ParseException("Invalid JSON at offset " + this.position, this.position); //$NON-NLS-1$
+    }
+
+    /**
+     * Writes any value.
+     * @param buffer output
+     * @param value value
+     */
+    private static void writeValue(StringBuffer buffer, Object value)
+    {
+        if (value == null || value instanceof Boolean || value instanceof Number)
+        {
+            buffer.append(value);
+        }
+        else if (value instanceof Map)
+        {
+            buffer.append('{');
+            Iterator< ? > iterator = ((Map< ? , ? >) value).entrySet().iterator();
+            while (iterator.hasNext())
+            {
+                Map.Entry< ? , ? > entry = (Map.Entry< ? , ? >) iterator.next();
+                writeString(buffer, String.valueOf(entry.getKey()));
+                buffer.append(':');
+                writeValue(buffer, entry.getValue());
+                if (iterator.hasNext())
+                {
+                    buffer.append(',');
+                }
+            }
+            buffer.append('}');
+        }
+        else if (value instanceof Collection)
+        {
+            buffer.append('[');
+            Iterator< ? > iterator = ((Collection< ? >) value).iterator();
+            while (iterator.hasNext())
+            {
+                writeValue(buffer, iterator.next());
+                if (iterator.hasNext())
+                {
+                    buffer.append(',');
+                }
+            }
+            buffer.append(']');
+        }
+        else
+        {
+            writeString(buffer, value.toString());
+        }
+    }
+
+    /**
+     * Writes a string, escaping quotes, backslashes and control characters.
+     * @param buffer output
+     * @param string string
+     */
+    private static void writeString(StringBuffer buffer, String string)
+    {
+        buffer.append('"');
+        for (int j = 0; j < string.length(); j++)
+        {
+            char ch = string.charAt(j);
+            int index = "\"\\\b\f\n\r\t".indexOf(ch); //$NON-NLS-1$
+            if (index != -1)
+            {
+                buffer.append('\\').append("\"\\bfnrt".charAt(index)); //$NON-NLS-1$
+            }
+            else if (ch < ' ' || ch == '\u2028' || ch == '\u2029')
+            {
+                String hex = Integer.toHexString(ch);
+                buffer.append("\\u0000", 0, 6 - hex.length()).append(hex); //$NON-NLS-1$
+            }
+            else
+            {
+                buffer.append(ch);
+            }
+        }
+        buffer.append('"');
+    }
+
+}
@@ -0,0 +1,657 @@
+/* ====================================================================
+ *   Copyright 2003-2005 Fabrizio Giustina.
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ * ====================================================================
+ */
+package net.sf.commonclipse.cli;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.text.MessageFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+import net.sf.commonclipse.BindingTypeModel;
+import net.sf.commonclipse.CCMessages;
+import net.sf.commonclipse.CCPluginPreferences;
+import net.sf.commonclipse.Generator;
+import net.sf.commonclipse.TypeModel;
+import net.sf.commonclipse.UnitRewrite;
+
+import org.eclipse.jdt.core.JavaModelException;
+import org.eclipse.jdt.core.compiler.IProblem;
+import org.eclipse.jdt.core.dom.AST;
+import org.eclipse.jdt.core.dom.ASTParser;
+import org.eclipse.jdt.core.dom.AbstractTypeDeclaration;
+import org.eclipse.jdt.core.dom.CompilationUnit;
+import org.eclipse.jdt.core.dom.FileASTRequestor;
+import org.eclipse.jdt.core.dom.ITypeBinding;
+import org.eclipse.jdt.core.dom.TypeDeclaration;
+import org.eclipse.jdt.core.formatter.CodeFormatter;
+import org.eclipse.jface.text.BadLocationException;
+import org.eclipse.jface.text.Document;
+import org.eclipse.text.edits.MalformedTreeException;
+import org.eclipse.text.edits.TextEdit;
+
+
+/**
+ * Generates methods for source files on disk, without a workspace. Files are parsed in batches with a single
+ * <code>ASTParser.createASTs()</code> call, which shares the binding environment among all the files of a batch. The
+ * type models are resolved from the bindings while the parser runs, then formatting and rewriting happen on a thread
+ * pool while the parser moves on to the next files.
+ * @author fgiust
+ * @version $Revision$ ($Author$)
+ */
+public class SourceGenerator
+{
+
+    /**
+     * files parsed together. ASTs are kept until their changes have been computed, so this bounds memory usage.
+     */
+    private static final int BATCH_SIZE = 500;
+
+    /**
+     * source folders, for resolving types declared in other files.
+     */
+    private final String[] sourceRoots;
+
+    /**
+     * classpath entries, jars or class folders.
+     */
+    private final String[] classpath;
+
+    /**
+     * encoding of the source files.
+     */
+    private final String encoding;
+
+    /**
+     * compiler and formatter options.
+     */
+    private final Map<String, String> options;
+
+    /**
+     * generators to run on every class.
+     */
+    private final Generator[] generators;
+
+    /**
+     * configuration.
+     */
+    private final CCPluginPreferences preferences;
+
+    /**
+     * add the methods which don't exist yet?
+     */
+    private final boolean addMissing;
+
+    /**
+     * formatters, shared by the worker threads.
+     */
+    private final FormatterPool formatters;
+
+    /**
+     * Creates a new SourceGenerator.
+     * @param sourceRoots source folders
+     * @param classpath classpath entries, the running VM libraries are always included
+     * @param encoding encoding of the source files
+     * @param options compiler and formatter options, e.g. from <code>JavaCore.getOptions()</code>
+     * @param generators generators to run on every class
+     * @param preferences configuration
+     * @param addMissing if <code>false</code> only existing methods which look generated are regenerated, if
+     * <code>true</code> methods are added to every class which doesn't declare them
+     */
+    public SourceGenerator(String[] sourceRoots, String[] classpath, String encoding, Map<String, String> options,
+        Generator[] generators, CCPluginPreferences preferences, boolean addMissing)
+    {
+        this(sourceRoots, classpath, encoding, options, generators, preferences, addMissing,
+            new FormatterPool(options));
+    }
+
+    /**
+     * Creates a new SourceGenerator using formatters shared with other generators.
+     * @param sourceRoots source folders
+     * @param classpath classpath entries, the running VM libraries are always included
+     * @param encoding encoding of the source files
+     * @param options compiler and formatter options, e.g. from <code>JavaCore.getOptions()</code>
+     * @param generators generators to run on every class
+     * @param preferences configuration
+     * @param addMissing if <code>false</code> only existing methods which look generated are regenerated, if
+     * <code>true</code> methods are added to every class which doesn't declare them
+     * @param formatters formatters created with the same options
+     */
+    SourceGenerator(String[] sourceRoots, String[] classpath, String encoding, Map<String, String> options,
+        Generator[] generators, CCPluginPreferences preferences, boolean addMissing, FormatterPool formatters)
+    {
+        this.sourceRoots = sourceRoots;
+        this.classpath = classpath;
+        this.encoding = encoding;
+        this.options = options;
+        this.generators = generators;
+        this.preferences = preferences;
+        this.addMissing = addMissing;
+        this.formatters = formatters;
+    }
+
+    /**
+     * Collects the Java files of the source roots.
+     * @return paths of the files, sorted
+     */
+    public List<String> findSourceFiles()
+    {
+        List<String> paths = new ArrayList<String>();
+        for (int j = 0; j < this.sourceRoots.length; j++)
+        {
+            collectSourceFiles(new File(this.sourceRoots[j]), paths);
+        }
+        return paths;
+    }
+
+    /**
+     * Generates the methods for the given files. The files themselves are not changed.
+     * @param paths paths of the files, inside the source roots
+     * @param executor runs the generation of the parsed files
+     * @param listener notified of every file in the given order, from the calling thread
+     */
+    public void process(List<String> paths, ExecutorService executor, Listener listener)
+    {
+        for (int from = 0; from < paths.size(); from += BATCH_SIZE)
+        {
+            List<String> batch = paths.subList(from, Math.min(paths.size(), from + BATCH_SIZE));
+            Map<String, Future<FileResult>> results = parse(batch, executor);
+
+            Iterator<String> iterator = batch.iterator();
+            while (iterator.hasNext())
+            {
+                String path = iterator.next();
+                listener.fileProcessed(getResult(path, results.get(path)));
+            }
+        }
+    }
+
+    /**
+     * Parses a batch of files and submits the generation of each file as soon as its AST is available.
+     * @param batch paths of the files
+     * @param executor runs the generation
+     * @return results by path
+     */
+    private Map<String, Future<FileResult>> parse(List<String> batch, final ExecutorService executor)
+    {
+        final Map<String, Future<FileResult>> results = new HashMap<String, Future<FileResult>>();
+
+        String[] fileEncodings = new String[batch.size()];
+        Arrays.fill(fileEncodings, this.encoding);
+
+        ASTParser parser = createParser();
+        parser.createASTs(batch.toArray(new String[batch.size()]), fileEncodings, new String[0], new FileASTRequestor()
+        {
+
+            /**
+             * @see org.eclipse.jdt.core.dom.FileASTRequestor#acceptAST(java.lang.String,
+             * org.eclipse.jdt.core.dom.CompilationUnit)
+             */
+            @Override
+            public void acceptAST(String sourceFilePath, CompilationUnit ast)
+            {
+                results.put(sourceFilePath, executor.submit(createTask(sourceFilePath, ast)));
+            }
+        }, null);
+
+        return results;
+    }
+
+    /**
+     * Generates the methods for a single file from the given source, e.g. the unsaved content of an editor, in the
+     * calling thread. The file itself is not changed.
+     * @param path path of the file, inside the source roots
+     * @param source source of the file
+     * @return FileResult
+     */
+    public FileResult process(String path, String source)
+    {
+        ASTParser parser = createParser();
+        parser.setUnitName(path);
+        parser.setSource(source.toCharArray());
+        CompilationUnit ast = (CompilationUnit) parser.createAST(null);
+
+        try
+        {
+            return createTask(path, source, ast).call();
+        }
+        catch (RuntimeException e)
+        {
+            return createFailure(path, e.toString());
+        }
+    }
+
+    /**
+     * Finds the source file declaring a type in the source roots.
+     * @param qualifiedName qualified name of the type, also of a member type
+     * @return File, <code>null</code> if the type is not declared in the source roots
+     */
+    public File findSourceFile(String qualifiedName)
+    {
+        // a.b.C.D is declared in a/b/C/D.java, a/b/C.java, a/b.java or a.java
+        String path = qualifiedName.replace('.', '/');
+        while (true)
+        {
+            for (int j = 0; j < this.sourceRoots.length; j++)
+            {
+                File file = new File(this.sourceRoots[j], path + ".java"); //$NON-NLS-1$
+                if (file.isFile())
+                {
+                    return file;
+                }
+            }
+
+            int separator = path.lastIndexOf('/');
+            if (separator == -1)
+            {
+                return null;
+            }
+            path = path.substring(0, separator);
+        }
+    }
+
+    /**
+     * Creates a parser resolving bindings from the source roots and the classpath.
+     * @return ASTParser
+     */
+    private ASTParser createParser()
+    {
+        String[] rootEncodings = new String[this.sourceRoots.length];
+        Arrays.fill(rootEncodings, this.encoding);
+
+        ASTParser parser = ASTParser.newParser(AST.JLS3);
+        parser.setKind(ASTParser.K_COMPILATION_UNIT);
+        parser.setCompilerOptions(this.options);
+        parser.setEnvironment(this.classpath, this.sourceRoots, rootEncodings, true);
+        parser.setResolveBindings(true);
+        parser.setBindingsRecovery(true);
+
+        // only fields, method signatures and the ranges of existing methods are needed
+        parser.setIgnoreMethodBodies(true);
+        return parser;
+    }
+
+    /**
+     * Reads a file and resolves the models of its classes. Called by the parser, bindings are not available anymore
+     * once the task runs.
+     * @param path path of the file
+     * @param ast AST with bindings
+     * @return task computing the changes to the file
+     */
+    private UnitTask createTask(String path, CompilationUnit ast)
+    {
+        try
+        {
+            return createTask(path, readFile(path, this.encoding), ast);
+        }
+        catch (IOException e)
+        {
+            UnitTask task = new UnitTask(path, ast);
+            task.problems.add(MessageFormat.format(CCMessages.getString("SourceGenerator.unreadable"), //$NON-NLS-1$
+                new Object[]{e.getMessage()}));
+            return task;
+        }
+    }
+
+    /**
+     * Resolves the models of the classes in a file.
+     * @param path path of the file
+     * @param source source the AST has been parsed from
+     * @param ast AST with bindings
+     * @return task computing the changes to the file
+     */
+    private UnitTask createTask(String path, String source, CompilationUnit ast)
+    {
+        UnitTask task = new UnitTask(path, ast);
+        task.source = source;
+
+        IProblem[] compilerProblems = ast.getProblems();
+        for (int j = 0; j < compilerProblems.length; j++)
+        {
+            if (compilerProblems[j].isError() && (compilerProblems[j].getID() & IProblem.Syntax) != 0)
+            {
+                task.problems.add(CCMessages.getString("SourceGenerator.syntax")); //$NON-NLS-1$
+                return task;
+            }
+        }
+
+        collectTypeNames(ast.types(), task.declaredTypes);
+
+        Iterator<TypeDeclaration> iterator = BindingTypeModel.findClasses(ast).iterator();
+        while (iterator.hasNext())
+        {
+            TypeDeclaration declaration = iterator.next();
+            try
+            {
+                BindingTypeModel model = new BindingTypeModel(declaration, task.source);
+                task.superclasses.addAll(model.getSuperclassNames());
+
+                Generator[] selected = model.selectGenerators(this.generators, this.addMissing);
+                if (selected.length > 0)
+                {
+                    task.models.add(model);
+                    task.selected.add(selected);
+                }
+            }
+            catch (JavaModelException e)
+            {
+                task.problems.add(createMessage(declaration.getName().getIdentifier(), e));
+            }
+        }
+        return task;
+    }
+
+    /**
+     * Waits for the result of a file.
+     * @param path path of the file
+     * @param future result, <code>null</code> if the parser didn't return the file
+     * @return FileResult
+     */
+    private FileResult getResult(String path, Future<FileResult> future)
+    {
+        String problem;
+        if (future == null)
+        {
+            problem = CCMessages.getString("SourceGenerator.notparsed"); //$NON-NLS-1$
+        }
+        else
+        {
+            try
+            {
+                return future.get();
+            }
+            catch (InterruptedException e)
+            {
+                Thread.currentThread().interrupt();
+                problem = e.toString();
+            }
+            catch (ExecutionException e)
+            {
+                problem = e.getCause().toString();
+            }
+        }
+        return createFailure(path, problem);
+    }
+
+    /**
+     * Creates the result for a file which could not be processed at all.
+     * @param path path of the file
+     * @param problem message
+     * @return FileResult
+     */
+    private static FileResult createFailure(String path, String problem)
+    {
+        List<String> problems = new ArrayList<String>(1);
+        problems.add(problem);
+        List<String> none = Collections.emptyList();
+        return new FileResult(path, null, null, problems, none, none);
+    }
+
+    /**
+     * Creates the message for a type which failed.
+     * @param typeName name of the type
+     * @param exception exception
+     * @return message
+     */
+    private static String createMessage(String typeName, Exception exception)
+    {
+        return MessageFormat.format(CCMessages.getString("SourceGenerator.failed"), //$NON-NLS-1$
+            new Object[]{typeName, exception.getMessage()});
+    }
+
+    /**
+     * Collects the qualified names of the types declared in a file, including member types.
+     * @param types list of BodyDeclaration
+     * @param names found names
+     */
+    private static void collectTypeNames(List< ? > types, Collection<String> names)
+    {
+        Iterator< ? > iterator = types.iterator();
+        while (iterator.hasNext())
+        {
+            Object type = iterator.next();
+            if (type instanceof AbstractTypeDeclaration)
+            {
+                AbstractTypeDeclaration declaration = (AbstractTypeDeclaration) type;
+                ITypeBinding binding = declaration.resolveBinding();
+                if (binding != null)
+                {
+                    names.add(binding.getQualifiedName());
+                }
+                collectTypeNames(declaration.bodyDeclarations(), names);
+            }
+        }
+    }
+
+    /**
+     * Collects the Java files in a folder and its subfolders.
+     * @param folder folder
+     * @param paths found files
+     */
+    private static void collectSourceFiles(File folder, List<String> paths)
+    {
+        File[] files = folder.listFiles();
+        if (files == null)
+        {
+            return;
+        }
+
+        Arrays.sort(files);
+        for (int j = 0; j < files.length; j++)
+        {
+            if (files[j].isDirectory())
+            {
+                collectSourceFiles(files[j], paths);
+            }
+            else if (files[j].getName().endsWith(".java")) //$NON-NLS-1$
+            {
+                paths.add(files[j].getPath());
+            }
+        }
+    }
+
+    /**
+     * Reads a whole file.
+     * @param path path of the file
+     * @param charset encoding
+     * @return content
+     * @throws IOException exception in reading the file
+     */
+    static String readFile(String path, String charset) throws IOException
+    {
+        Reader reader = new InputStreamReader(new FileInputStream(path), charset);
+        try
+        {
+            StringBuffer buffer = new StringBuffer();
+            char[] chars = new char[8192];
+            int read;
+            while ((read = reader.read(chars)) != -1)
+            {
+                buffer.append(chars, 0, read);
+            }
+            return buffer.toString();
+        }
+        finally
+        {
+            reader.close();
+        }
+    }
+
+    /**
+     * Receives the results, in the order of the files.
+     */
+    public interface Listener
+    {
+
+        /**
+         * Called once for every file.
+         * @param result FileResult
+         */
+        void fileProcessed(FileResult result);
+    }
+
+    /**
+     * Computes the changes to a single file from the already resolved models.
+     */
+    private class UnitTask implements Callable<FileResult>
+    {
+
+        /**
+         * path of the file.
+         */
+        final String path;
+
+        /**
+         * AST, only read and rewritten by this task once the parser is done with it.
+         */
+        final CompilationUnit ast;
+
+        /**
+         * source of the file, <code>null</code> if it could not be read.
+         */
+        String source;
+
+        /**
+         * models of the classes to process.
+         */
+        final List<TypeModel> models = new ArrayList<TypeModel>();
+
+        /**
+         * generators to run on each model.
+         */
+        final List<Generator[]> selected = new ArrayList<Generator[]>();
+
+        /**
+         * problems found.
+         */
+        final List<String> problems = new ArrayList<String>();
+
+        /**
+         * types declared in the file.
+         */
+        final List<String> declaredTypes = new ArrayList<String>();
+
+        /**
+         * superclasses of the classes in the file, without duplicates.
+         */
+        final Set<String> superclasses = new LinkedHashSet<String>();
+
+        /**
+         * Creates a new UnitTask.
+         * @param path path of the file
+         * @param ast AST
+         */
+        UnitTask(String path, CompilationUnit ast)
+        {
+            this.path = path;
+            this.ast = ast;
+        }
+
+        /**
+         * @see java.util.concurrent.Callable#call()
+         */
+        @Override
+        public FileResult call()
+        {
+            if (this.models.isEmpty())
+            {
+                return createResult(null);
+            }
+
+            CodeFormatter formatter = SourceGenerator.this.formatters.acquire();
+            UnitRewrite rewrite = new UnitRewrite(
+                this.ast,
+                this.source,
+                formatter,
+                SourceGenerator.this.options,
+                SourceGenerator.this.preferences);
+            rewrite.setReplaceGeneratedOnly(true);
+
+            try
+            {
+                for (int j = 0; j < this.models.size(); j++)
+                {
+                    TypeModel model = this.models.get(j);
+                    try
+                    {
+                        rewrite.addMethods(model, this.selected.get(j), null);
+                    }
+                    catch (JavaModelException e)
+                    {
+                        this.problems.add(createMessage(model.getTypeName(), e));
+                    }
+                }
+            }
+            finally
+            {
+                SourceGenerator.this.formatters.release(formatter);
+            }
+
+            String newSource = null;
+            try
+            {
+                TextEdit edit = rewrite.createEdit();
+                if (edit.hasChildren())
+                {
+                    Document document = new Document(this.source);
+                    edit.apply(document);
+                    newSource = this.source.equals(document.get()) ? null : document.get();
+                }
+            }
+            catch (JavaModelException e)
+            {
+                this.problems.add(createMessage(this.path, e));
+            }
+            catch (MalformedTreeException e)
+            {
+                this.problems.add(createMessage(this.path, e));
+            }
+            catch (BadLocationException e)
+            {
+                this.problems.add(createMessage(this.path, e));
+            }
+            return createResult(newSource);
+        }
+
+        /**
+         * Creates the result for this file.
+         * @param newSource source after generation, <code>null</code> if the file doesn't need any change
+         * @return FileResult
+         */
+        private FileResult createResult(String newSource)
+        {
+            return new FileResult(this.path, this.source, newSource, this.problems, this.declaredTypes,
+                new ArrayList<String>(this.superclasses));
+        }
+    }
+
+}
@@ -0,0 +1,323 @@
+/* ====================================================================
+ *   Copyright 2003-2005 Fabrizio Giustina.
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ * ====================================================================
+ */
+package net.sf.commonclipse.cli;
+
+import java.util.ArrayList;
+import java.util.List;
+
+
+/**
+ * Line based unified diff between two versions of a file. Generated changes are small and local, so the common
+ * leading and trailing lines are stripped before comparing the remaining lines.
+ * @author fgiust
+ * @version $Revision$ ($Author$)
+ */
+public final class UnifiedDiff
+{
+
+    /**
+     * unchanged lines shown around every change.
+     */
+    private static final int CONTEXT = 3;
+
+    /**
+     * size limit of the comparison table, larger changes are shown as a single block of removed and added lines.
+     */
+    private static final long MAX_TABLE_SIZE = 4000000L;
+
+    /**
+     * marks the last line of a file without a line terminator.
+     */
+    private static final String NO_NEWLINE = "\\ No newline at end of file"; //$NON-NLS-1$
+
+    /**
+     * don't instantiate.
+     */
+    private UnifiedDiff()
+    {
+    }
+
+    /**
+     * Creates the unified diff between two texts.
+     * @param path file name used in the diff header
+     * @param oldText original text
+     * @param newText changed text
+     * @return diff, empty if the texts are equal
+     */
+    public static String diff(String path, String oldText, String newText)
+    {
+        String[] oldLines = splitLines(oldText);
+        String[] newLines = splitLines(newText);
+
+        // common prefix and suffix
+        int start = 0;
+        while (start < oldLines.length && start < newLines.length && oldLines[start].equals(newLines[start]))
+        {
+            start++;
+        }
+
+        int oldEnd = oldLines.length;
+        int newEnd = newLines.length;
+        while (oldEnd > start && newEnd > start && oldLines[oldEnd - 1].equals(newLines[newEnd - 1]))
+        {
+            oldEnd--;
+            newEnd--;
+        }
+
+        if (start == oldEnd && start == newEnd)
+        {
+            return ""; //$NON-NLS-1$
+        }
+
+        List<Line> lines = compare(oldLines, newLines, start, oldEnd, newEnd);
+
+        StringBuffer buffer = new StringBuffer();
+        buffer.append("--- a/").append(path).append('\n'); //$NON-NLS-1$
+        buffer.append("+++ b/").append(path).append('\n'); //$NON-NLS-1$
+        appendHunks(buffer, lines, oldLines, newLines);
+        return buffer.toString();
+    }
+
+    /**
+     * Splits a text in lines, keeping the line terminators so that a missing terminator on the last line shows up as a
+     * difference.
+     * @param text text
+     * @return lines
+     */
+    private static String[] splitLines(String text)
+    {
+        List<String> lines = new ArrayList<String>();
+        int lineStart = 0;
+        for (int j = 0; j < text.length(); j++)
+        {
+            char ch = text.charAt(j);
+            if (ch == '\n' || ch == '\r' && (j + 1 == text.length() || text.charAt(j + 1) != '\n'))
+            {
+                lines.add(text.substring(lineStart, j + 1));
+                lineStart = j + 1;
+            }
+        }
+        if (lineStart < text.length())
+        {
+            lines.add(text.substring(lineStart));
+        }
+        return lines.toArray(new String[lines.size()]);
+    }
+
+    /**
+     * Compares the lines between the common prefix and suffix with a longest common subsequence, and returns the
+     * script for the whole file.
+     * @param oldLines original lines
+     * @param newLines changed lines
+     * @param start length of the common prefix
+     * @param oldEnd end of the changed original lines
+     * @param newEnd end of the changed new lines
+     * @return every line of the file, as unchanged, removed or added
+     */
+    private static List<Line> compare(String[] oldLines, String[] newLines, int start, int oldEnd, int newEnd)
+    {
+        int oldCount = oldEnd - start;
+        int newCount = newEnd - start;
+
+        // lcs[j][k] = common subsequence length of old lines from j and new lines from k
+        boolean table = (long) oldCount * newCount <= MAX_TABLE_SIZE;
+        int[][] lcs = new int[table ? oldCount + 1 : 1][table ? newCount + 1 : 1];
+        for (int j = table ? oldCount - 1 : -1; j >= 0; j--)
+        {
+            for (int k = newCount - 1; k >= 0; k--)
+            {
+                lcs[j][k] = oldLines[start + j].equals(newLines[start + k])
+                    ? lcs[j + 1][k + 1] + 1
+                    : Math.max(lcs[j + 1][k], lcs[j][k + 1]);
+            }
+        }
+
+        List<Line> lines = new ArrayList<Line>(oldLines.length + newCount);
+        for (int j = 0; j < start; j++)
+        {
+            lines.add(new Line(' ', j, j));
+        }
+
+        int j = 0;
+        int k = 0;
+        while (j < oldCount || k < newCount)
+        {
+            if (!table)
+            {
+                // all the removed lines first
+                boolean removed = j < oldCount;
+                lines.add(new Line(removed ? '-' : '+', start + j, start + k));
+                j += removed ? 1 : 0;
+                k += removed ? 0 : 1;
+            }
+            else if (j < oldCount && k < newCount && oldLines[start + j].equals(newLines[start + k]))
+            {
+                lines.add(new Line(' ', start + j, start + k));
+                j++;
+                k++;
+            }
+            else if (j < oldCount && (k == newCount || lcs[j + 1][k] >= lcs[j][k + 1]))
+            {
+                // removed lines come before the added ones, like in diff -u
+                lines.add(new Line('-', start + j, start + k));
+                j++;
+            }
+            else
+            {
+                lines.add(new Line('+', start + j, start + k));
+                k++;
+            }
+        }
+
+        for (int x = 0; x < oldLines.length - oldEnd; x++)
+        {
+            lines.add(new Line(' ', oldEnd + x, newEnd + x));
+        }
+        return lines;
+    }
+
+    /**
+     * Appends the hunks: changed lines with their context, near changes are merged in a single hunk.
+     * @param buffer output
+     * @param lines every line of the file
+     * @param oldLines original lines
+     * @param newLines changed lines
+     */
+    private static void appendHunks(StringBuffer buffer, List<Line> lines, String[] oldLines, String[] newLines)
+    {
+        int index = 0;
+        while (index < lines.size())
+        {
+            // next change
+            while (index < lines.size() && lines.get(index).kind == ' ')
+            {
+                index++;
+            }
+            if (index == lines.size())
+            {
+                return;
+            }
+
+            int hunkStart = Math.max(0, index - CONTEXT);
+
+            // extend the hunk while the next change is near enough to share the context
+            int hunkEnd = index;
+            int unchanged = 0;
+            while (hunkEnd < lines.size() && unchanged <= 2 * CONTEXT)
+            {
+                unchanged = lines.get(hunkEnd).kind == ' ' ? unchanged + 1 : 0;
+                hunkEnd++;
+            }
+            hunkEnd -= Math.max(0, unchanged - CONTEXT);
+
+            appendHunk(buffer, lines.subList(hunkStart, hunkEnd), oldLines, newLines);
+            index = hunkEnd;
+        }
+    }
+
+    /**
+     * Appends a single hunk.
+     * @param buffer output
+     * @param hunk lines of the hunk
+     * @param oldLines original lines
+     * @param newLines changed lines
+     */
+    private static void appendHunk(StringBuffer buffer, List<Line> hunk, String[] oldLines, String[] newLines)
+    {
+        int oldCount = 0;
+        int newCount = 0;
+        for (int j = 0; j < hunk.size(); j++)
+        {
+            char kind = hunk.get(j).kind;
+            oldCount += kind != '+' ? 1 : 0;
+            newCount += kind != '-' ? 1 : 0;
+        }
+
+        Line first = hunk.get(0);
+        buffer.append("@@ -"); //$NON-NLS-1$
+        appendRange(buffer, first.oldIndex, oldCount);
+        buffer.append(" +"); //$NON-NLS-1$
+        appendRange(buffer, first.newIndex, newCount);
+        buffer.append(" @@\n"); //$NON-NLS-1$
+
+        for (int j = 0; j < hunk.size(); j++)
+        {
+            Line line = hunk.get(j);
+            String text = line.kind == '+' ? newLines[line.newIndex] : oldLines[line.oldIndex];
+            buffer.append(line.kind);
+            buffer.append(text);
+            if (!text.endsWith("\n") && !text.endsWith("\r")) //$NON-NLS-1$ //$NON-NLS-2$
+            {
+                buffer.append('\n');
+                buffer.append(NO_NEWLINE);
+                buffer.append('\n');
+            }
+        }
+    }
+
+    /**
+     * Appends the range of a hunk, with 1-based line numbers.
+     * @param buffer output
+     * @param index 0-based index of the first line
+     * @param count number of lines
+     */
+    private static void appendRange(StringBuffer buffer, int index, int count)
+    {
+        // an empty range refers to the line before it
+        buffer.append(count > 0 ? index + 1 : index);
+        if (count != 1)
+        {
+            buffer.append(',').append(count);
+        }
+    }
+
+    /**
+     * A line of the edit script.
+     */
+    private static class Line
+    {
+
+        /**
+         * ' ' unchanged, '-' removed, '+' added.
+         */
+        final char kind;
+
+        /**
+         * index in the original lines, or the position where the line is added.
+         */
+        final int oldIndex;
+
+        /**
+         * index in the changed lines, or the position where the line is removed.
+         */
+        final int newIndex;
+
+        /**
+         * Creates a new Line.
+         * @param kind ' ', '-' or '+'
+         * @param oldIndex index in the original lines
+         * @param newIndex index in the changed lines
+         */
+        Line(char kind, int oldIndex, int newIndex)
+        {
+            this.kind = kind;
+            this.oldIndex = oldIndex;
+            this.newIndex = newIndex;
+        }
+    }
+
+}
@@ -17,13 +17,30 @@
 package net.sf.commonclipse.popup.actions;
 
 import java.text.MessageFormat;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
 
+import net.sf.commonclipse.BatchGenerationJob;
+import net.sf.commonclipse.CCPlugin;
+import net.sf.commonclipse.CCPluginPreferences;
 import net.sf.commonclipse.CompareToGenerator;
 import net.sf.commonclipse.EqualsGenerator;
+import net.sf.commonclipse.Generator;
 import net.sf.commonclipse.HashcodeGenerator;
 import net.sf.commonclipse.CCMessages;
 import net.sf.commonclipse.ToStringGenerator;
 
+import org.eclipse.core.resources.IFile;
+import org.eclipse.core.resources.IResource;
+import org.eclipse.core.resources.ResourcesPlugin;
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.Status;
+import org.eclipse.jdt.core.IMethod;
 import org.eclipse.jdt.core.IType;
 import org.eclipse.jdt.core.JavaModelException;
 import org.eclipse.jface.action.IAction;
@@ -32,7 +49,8 @@ import org.eclipse.swt.widgets.Shell;
 
 
 /**
- * base action delegate for action that need an IType to work.
+ * base action delegate for action that need an IType to work. Actions only deal with the user: confirmations, read
+ * only files and the summary of errors. Methods are generated by the headless UnitGenerator, in a background job.
  * @author fgiust
  * @version $Revision$ ($Author$)
  */
@@ -59,6 +77,11 @@ public abstract class JavaTypeAction
      */
     public static final String ACTION_COMPARETO = "cb.CompareTo"; //$NON-NLS-1$
 
+    /**
+     * id for generating all the methods at once.
+     */
+    public static final String ACTION_ALL = "cb.All"; //$NON-NLS-1$
+
     /**
      * run the action on the given IType.
      * @param action activated IAction
@@ -84,31 +107,202 @@ public abstract class JavaTypeAction
             return;
         }
 
+        Generator[] generators = getGenerators(action, shell);
+
+        if (generators != null)
+        {
+            generateAll(type, generators, shell);
+        }
+
+    }
+
+    /**
+     * run the action on many types in a background job.
+     * @param action activated IAction
+     * @param types selected types
+     * @param shell Shell for messages
+     */
+    protected void runBatchAction(IAction action, List<IType> types, Shell shell)
+    {
+        Generator[] generators = getGenerators(action, shell);
+
+        if (generators == null)
+        {
+            return;
+        }
+
+        // a single question for the whole batch, the job can't prompt for every type
+        boolean overwrite = CCPluginPreferences.getPreferences().dontAskOnOverwrite()
+            || MessageDialog.openQuestion(shell, CCPlugin.PLUGIN_NAME, CCMessages
+                .getString("Generator.replaceexisting")); //$NON-NLS-1$
+
+        // read only files are checked out at once, files which are still read only are only listed in the summary
+        List<IStatus> skipped = new ArrayList<IStatus>();
+        List<IType> writable = validateEdit(types, shell, skipped);
+
+        new BatchGenerationJob(writable, generators, overwrite, skipped).schedule();
+    }
+
+    /**
+     * Generates the methods of all the given generators in <code>type</code>. Hierarchy and fields are resolved only
+     * once, all the methods are formatted together and added to the compilation unit with a single edit. Confirmations
+     * are asked immediately, methods are generated by a background job.
+     * @param type IType
+     * @param generators generators to run on type
+     * @param shell Shell
+     */
+    protected void generateAll(IType type, Generator[] generators, Shell shell)
+    {
+        List<IType> types = new ArrayList<IType>(1);
+        types.add(type);
+
+        // first check if file is writable
+        List<IStatus> skipped = new ArrayList<IStatus>();
+        if (validateEdit(types, shell, skipped).isEmpty())
+        {
+            MessageDialog.openError(shell, CCMessages.getString("Generator.errortitle"), //$NON-NLS-1$
+                skipped.get(0).getMessage());
+            return;
+        }
+
+        List<Generator> selected = new ArrayList<Generator>(generators.length);
+        for (int j = 0; j < generators.length; j++)
+        {
+            if (validate(generators[j], type, shell))
+            {
+                selected.add(generators[j]);
+            }
+        }
+
+        if (selected.isEmpty())
+        {
+            return;
+        }
+
+        // existing methods have already been confirmed, generation continues in background on a working copy
+        new BatchGenerationJob(types, selected.toArray(new Generator[selected.size()]), true).schedule();
+    }
+
+    /**
+     * Makes the files containing the given types writable. Read only files are collected first and validated with a
+     * single call, so the team provider can check them out at once and ask the user only one time.
+     * @param types types to process
+     * @param shell Shell used by the team provider for any UI, <code>null</code> if it must not prompt the user
+     * @param skipped a status is added here for every file which is still read only
+     * @return types which can be modified, in the original order
+     */
+    protected static List<IType> validateEdit(List<IType> types, Shell shell, List<IStatus> skipped)
+    {
+        Map<IFile, List<IType>> readOnly = new LinkedHashMap<IFile, List<IType>>();
+
+        Iterator<IType> iterator = types.iterator();
+        while (iterator.hasNext())
+        {
+            IType type = iterator.next();
+            IResource resource = type.getResource();
+            if (resource instanceof IFile && resource.getResourceAttributes() != null
+                && resource.getResourceAttributes().isReadOnly())
+            {
+                List<IType> fileTypes = readOnly.get(resource);
+                if (fileTypes == null)
+                {
+                    fileTypes = new ArrayList<IType>();
+                    readOnly.put((IFile) resource, fileTypes);
+                }
+                fileTypes.add(type);
+            }
+        }
+
+        if (readOnly.isEmpty())
+        {
+            return types;
+        }
+
+        Set<IFile> files = readOnly.keySet();
+        ResourcesPlugin.getWorkspace().validateEdit(files.toArray(new IFile[files.size()]), shell);
+
+        // the returned status doesn't tell which files failed, check them again
+        List<IType> writable = new ArrayList<IType>(types);
+        Iterator<Entry<IFile, List<IType>>> fileIterator = readOnly.entrySet().iterator();
+        while (fileIterator.hasNext())
+        {
+            Entry<IFile, List<IType>> entry = fileIterator.next();
+            IFile file = entry.getKey();
+            if (file.getResourceAttributes() != null && file.getResourceAttributes().isReadOnly())
+            {
+                writable.removeAll(entry.getValue());
+                skipped.add(new Status(IStatus.ERROR, CCPlugin.PLUGIN_ID, MessageFormat.format(CCMessages
+                    .getString("BatchGenerationJob.failed"), //$NON-NLS-1$
+                    new Object[]{file.getName(), CCMessages.getString("Generator.readonly")}), null)); //$NON-NLS-1$
+            }
+        }
+        return writable;
+    }
+
+    /**
+     * Checks if a corresponding method already exists and prompt the user for replacing it.
+     * @param generator Generator
+     * @param type IType
+     * @param shell Shell
+     * @return <code>true</code> if the method doesn't exists or the user has choosen to overwrite it
+     */
+    private boolean validate(Generator generator, IType type, Shell shell)
+    {
+
+        IMethod method = generator.getExistingMethod(type);
+
+        if (method != null && method.exists())
+        {
+            boolean dontAsk = CCPluginPreferences.getPreferences().dontAskOnOverwrite();
+
+            return dontAsk
+                || MessageDialog.openConfirm(shell, CCPlugin.PLUGIN_NAME, MessageFormat.format(CCMessages
+                    .getString("Generator.methodexists"), //$NON-NLS-1$
+                    new Object[]{generator.getMethodName(), type.getElementName()}));
+        }
+
+        return true;
+    }
+
+    /**
+     * Returns the generators to run for the given action.
+     * @param action activated IAction
+     * @param shell Shell for messages
+     * @return generators or <code>null</code> if the action is unknown
+     */
+    private Generator[] getGenerators(IAction action, Shell shell)
+    {
         String id = action.getId();
 
         if (ACTION_TOSTRING.equals(id))
         {
-            ToStringGenerator.getInstance().generate(type, shell);
+            return new Generator[]{ToStringGenerator.getInstance()};
         }
         else if (ACTION_HASHCODE.equals(id))
         {
-            HashcodeGenerator.getInstance().generate(type, shell);
+            return new Generator[]{HashcodeGenerator.getInstance()};
         }
         else if (ACTION_EQUALS.equals(id))
         {
-            EqualsGenerator.getInstance().generate(type, shell);
+            return new Generator[]{EqualsGenerator.getInstance()};
         }
         else if (ACTION_COMPARETO.equals(id))
         {
-            CompareToGenerator.getInstance().generate(type, shell);
+            return new Generator[]{CompareToGenerator.getInstance()};
         }
-        else
+        else if (ACTION_ALL.equals(id))
         {
-            MessageDialog.openError(new Shell(), CCMessages.getString("Generator.errortitle"), //$NON-NLS-1$
-                MessageFormat.format(CCMessages.getString("Generator.unknownaction"), //$NON-NLS-1$
-                    new Object[]{id}));
+            return new Generator[]{
+                ToStringGenerator.getInstance(),
+                HashcodeGenerator.getInstance(),
+                EqualsGenerator.getInstance(),
+                CompareToGenerator.getInstance()};
         }
 
+        MessageDialog.openError(shell, CCMessages.getString("Generator.errortitle"), //$NON-NLS-1$
+            MessageFormat.format(CCMessages.getString("Generator.unknownaction"), //$NON-NLS-1$
+                new Object[]{id}));
+        return null;
     }
 
 }
\ No newline at end of file
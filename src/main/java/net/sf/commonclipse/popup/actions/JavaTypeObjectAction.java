@@ -17,6 +17,7 @@
 package net.sf.commonclipse.popup.actions;
 
 import java.text.MessageFormat;
+import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.List;
 
@@ -69,8 +70,6 @@ public class JavaTypeObjectAction extends JavaTypeAction implements IObjectActio
     public void run(IAction action)
     {
 
-        IType type = null;
-
         if (this.selected != null)
         {
 
@@ -80,14 +79,15 @@ public class JavaTypeObjectAction extends JavaTypeAction implements IObjectActio
             // prepare shell
             Shell shell = new Shell();
 
+            List<IType> types = new ArrayList<IType>(this.selected.size());
+
             while (selectionIterator.hasNext())
             {
 
                 // iterates and check object
                 Object iteratorObject = selectionIterator.next();
 
-                // reset type
-                type = null;
+                IType type = null;
 
                 if (iteratorObject instanceof IType)
                 {
@@ -107,11 +107,21 @@ public class JavaTypeObjectAction extends JavaTypeAction implements IObjectActio
 
                 if (type != null)
                 {
-                    runAction(action, type, shell);
+                    types.add(type);
                 }
 
             }
 
+            if (types.size() == 1)
+            {
+                runAction(action, types.get(0), shell);
+            }
+            else if (types.size() > 1)
+            {
+                // multiple selection: generate in background
+                runBatchAction(action, types, shell);
+            }
+
         }
 
     }
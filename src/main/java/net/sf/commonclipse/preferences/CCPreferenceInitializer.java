@@ -1,6 +1,10 @@
 package net.sf.commonclipse.preferences;
 
+import java.util.Iterator;
+import java.util.Properties;
+
 import net.sf.commonclipse.CCPlugin;
+import net.sf.commonclipse.CCPluginPreferences;
 
 import org.eclipse.core.runtime.preferences.AbstractPreferenceInitializer;
 import org.eclipse.jface.preference.IPreferenceStore;
@@ -20,13 +24,15 @@ public class CCPreferenceInitializer extends AbstractPreferenceInitializer
     public void initializeDefaultPreferences()
     {
         IPreferenceStore preferences = CCPlugin.getDefault().getPreferenceStore();
-        preferences.setDefault(CCPlugin.P_TOSTRING_BEAN, "bean"); //$NON-NLS-1$
-        preferences.setDefault(CCPlugin.P_TOSTRING_SUPER, false);
-        preferences.setDefault(CCPlugin.P_HASHCODE_SUPER, true);
-        preferences.setDefault(CCPlugin.P_EQUALS_SUPER, true);
-        preferences.setDefault(CCPlugin.P_COMPARETO_SUPER, true);
-        preferences.setDefault(CCPlugin.P_EXCLUDE, "class;log"); //$NON-NLS-1$
-        preferences.setDefault(CCPlugin.P_OVERRIDE_ANNOTATION, true);
+
+        // defaults are shared with headless runs
+        Properties defaults = CCPluginPreferences.getDefaultValues();
+        Iterator<Object> iterator = defaults.keySet().iterator();
+        while (iterator.hasNext())
+        {
+            String key = (String) iterator.next();
+            preferences.setDefault(key, defaults.getProperty(key));
+        }
     }
 
 }
@@ -110,6 +110,10 @@ public class CCPreferencePage extends TabbedFieldEditorPreferencePage implements
             .getString("preference.equals.equalitycheck"), //$NON-NLS-1$
             getFieldEditorParent()));
 
+        addField(new BooleanFieldEditor(CCPlugin.P_HASHCODE_REUSE, CCMessages
+            .getString("preference.hashcode.reuse"), //$NON-NLS-1$
+            getFieldEditorParent()));
+
         addField(new BooleanFieldEditor(CCPlugin.P_OVERRIDE_ANNOTATION, CCMessages
                 .getString("preference.overrideannotation"), //$NON-NLS-1$
                 getFieldEditorParent()));
@@ -119,6 +123,10 @@ public class CCPreferencePage extends TabbedFieldEditorPreferencePage implements
         addField(new BooleanFieldEditor(CCPlugin.P_DONTASKONOVERWRITE, CCMessages
             .getString("preference.overwriteconfirmation"), //$NON-NLS-1$
             getFieldEditorParent()));
+
+        addField(new BooleanFieldEditor(CCPlugin.P_AUTOREGENERATE, CCMessages
+            .getString("preference.autoregenerate"), //$NON-NLS-1$
+            getFieldEditorParent()));
         
         addField(new SpacerFieldEditor(getFieldEditorParent()));
 
@@ -0,0 +1,36 @@
+package net.sf.commonclipse;
+
+import static org.hamcrest.Matchers.equalTo;
+import static org.junit.Assert.assertThat;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+/**
+ * Tests for the fields compared by CompareToGenerator.
+ * @author fgiust
+ * @version $Revision$ ($Author$)
+ */
+public class CompareToGeneratorTest
+{
+
+    /**
+     * collections and maps are left out, other fields are kept in declaration order.
+     */
+    @Test
+    public void testRemoveCollections()
+    {
+        List<FieldDescriptor> fields = Arrays.asList(new FieldDescriptor[]{
+            EqualsGeneratorTest.field("name", "Ljava.lang.String;", false),
+            EqualsGeneratorTest.field("items", "Ljava.util.List;", false),
+            EqualsGeneratorTest.field("values", "[I", false),
+            EqualsGeneratorTest.field("index", "Ljava.util.Map;", false),
+            EqualsGeneratorTest.field("count", "I", false)});
+
+        assertThat(EqualsGeneratorTest.getNames(CompareToGenerator.removeCollections(fields)),
+            equalTo(Arrays.asList(new String[]{"name", "values", "count"})));
+    }
+
+}
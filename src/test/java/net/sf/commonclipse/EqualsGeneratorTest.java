@@ -0,0 +1,81 @@
+package net.sf.commonclipse;
+
+import static org.hamcrest.Matchers.equalTo;
+import static org.junit.Assert.assertThat;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+/**
+ * Tests for the order of the fields compared by EqualsGenerator.
+ * @author fgiust
+ * @version $Revision$ ($Author$)
+ */
+public class EqualsGeneratorTest
+{
+
+    /**
+     * primitives and enums first, then boxed types and strings, other objects, arrays and collections last.
+     */
+    @Test
+    public void testSortByCost()
+    {
+        List<FieldDescriptor> fields = Arrays.asList(new FieldDescriptor[]{
+            field("values", "[D", false),
+            field("names", "Ljava.util.List;", false),
+            field("owner", "Lp.Person;", false),
+            field("name", "Ljava.lang.String;", false),
+            field("count", "I", false),
+            field("total", "Ljava.lang.Long;", false),
+            field("state", "Lp.State;", true),
+            field("flag", "Z", false)});
+
+        assertThat(getNames(EqualsGenerator.sortByCost(fields)), equalTo(Arrays.asList(new String[]{
+            "count", "state", "flag", "name", "total", "owner", "values", "names"})));
+    }
+
+    /**
+     * fields with the same cost keep the declaration order.
+     */
+    @Test
+    public void testSortKeepsDeclarationOrder()
+    {
+        List<FieldDescriptor> fields = Arrays.asList(new FieldDescriptor[]{
+            field("c", "J", false),
+            field("a", "I", false),
+            field("b", "C", false)});
+
+        assertThat(getNames(EqualsGenerator.sortByCost(fields)), equalTo(Arrays.asList(new String[]{"c", "a", "b"})));
+    }
+
+    /**
+     * Creates a field declared in p.A.
+     * @param name field name
+     * @param signature resolved type signature
+     * @param enumType is the field type an enum?
+     * @return FieldDescriptor
+     */
+    static FieldDescriptor field(String name, String signature, boolean enumType)
+    {
+        return new FieldDescriptor(name, "p.A", signature, 0, enumType);
+    }
+
+    /**
+     * Returns the names of the given fields.
+     * @param fields List of FieldDescriptor
+     * @return field names
+     */
+    static List<String> getNames(List<FieldDescriptor> fields)
+    {
+        List<String> names = new ArrayList<String>();
+        for (int j = 0; j < fields.size(); j++)
+        {
+            names.add(fields.get(j).getName());
+        }
+        return names;
+    }
+
+}
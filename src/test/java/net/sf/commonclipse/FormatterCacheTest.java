@@ -0,0 +1,142 @@
+package net.sf.commonclipse;
+
+import static org.hamcrest.Matchers.not;
+import static org.hamcrest.Matchers.sameInstance;
+import static org.junit.Assert.assertThat;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.eclipse.core.resources.IProject;
+import org.eclipse.jdt.core.IJavaProject;
+import org.eclipse.jdt.core.JavaCore;
+import org.eclipse.jdt.core.formatter.CodeFormatter;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests for the reuse of formatters by FormatterCache, with a Java project simulated by a proxy.
+ * @author fgiust
+ * @version $Revision$ ($Author$)
+ */
+public class FormatterCacheTest
+{
+
+    /**
+     * Java project the formatters are created for.
+     */
+    private IJavaProject project;
+
+    /**
+     * creates the Java project and empties the cache.
+     */
+    @Before
+    public void setUp()
+    {
+        Map<String, Object> resourceAnswers = new HashMap<String, Object>();
+        resourceAnswers.put("isAccessible", Boolean.FALSE);
+
+        Map<String, Object> projectAnswers = new HashMap<String, Object>();
+        projectAnswers.put("getProject", HierarchyCacheTest.mock(IProject.class, resourceAnswers));
+        projectAnswers.put("getOptions", JavaCore.getOptions());
+        this.project = HierarchyCacheTest.mock(IJavaProject.class, projectAnswers);
+
+        FormatterCache.getDefault().clear();
+    }
+
+    /**
+     * two consecutive generation jobs, each with its own worker thread, use the same formatter.
+     * @throws InterruptedException if interrupted while waiting for a job
+     */
+    @Test
+    public void testConsecutiveJobs() throws InterruptedException
+    {
+        CodeFormatter first = runJob();
+        CodeFormatter second = runJob();
+        assertThat(second, sameInstance(first));
+    }
+
+    /**
+     * a formatter is never given to two users at the same time.
+     */
+    @Test
+    public void testConcurrentUse()
+    {
+        FormatterCache cache = FormatterCache.getDefault();
+        CodeFormatter first = cache.acquire(this.project);
+        CodeFormatter second = cache.acquire(this.project);
+        assertThat(second, not(sameInstance(first)));
+
+        cache.release(this.project, first);
+        cache.release(this.project, second);
+    }
+
+    /**
+     * formatters created before a change in the Java options are not reused.
+     */
+    @Test
+    public void testOptionsChanged()
+    {
+        FormatterCache cache = FormatterCache.getDefault();
+        CodeFormatter first = cache.acquire(this.project);
+        cache.release(this.project, first);
+
+        cache.preferenceChange(null);
+
+        CodeFormatter second = cache.acquire(this.project);
+        cache.release(this.project, second);
+        assertThat(second, not(sameInstance(first)));
+    }
+
+    /**
+     * formatters in use when the Java options change are dropped when released.
+     */
+    @Test
+    public void testOptionsChangedWhileInUse()
+    {
+        FormatterCache cache = FormatterCache.getDefault();
+        CodeFormatter first = cache.acquire(this.project);
+        cache.preferenceChange(null);
+        cache.release(this.project, first);
+
+        CodeFormatter second = cache.acquire(this.project);
+        cache.release(this.project, second);
+        assertThat(second, not(sameInstance(first)));
+    }
+
+    /**
+     * Formats on a new thread, like a worker of BatchGenerationJob, and waits for it.
+     * @return formatter used by the thread
+     * @throws InterruptedException if interrupted while waiting for the thread
+     */
+    private CodeFormatter runJob() throws InterruptedException
+    {
+        final CodeFormatter[] used = new CodeFormatter[1];
+        Thread worker = new Thread()
+        {
+
+            /**
+             * @see java.lang.Thread#run()
+             */
+            @Override
+            public void run()
+            {
+                FormatterCache cache = FormatterCache.getDefault();
+                CodeFormatter formatter = cache.acquire(FormatterCacheTest.this.project);
+                try
+                {
+                    formatter.format(CodeFormatter.K_CLASS_BODY_DECLARATIONS, "int a;", 0, 6, 0, "\n");
+                    used[0] = formatter;
+                }
+                finally
+                {
+                    cache.release(FormatterCacheTest.this.project, formatter);
+                }
+            }
+        };
+        worker.start();
+        worker.join();
+        return used[0];
+    }
+
+}
@@ -0,0 +1,115 @@
+package net.sf.commonclipse;
+
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.not;
+import static org.hamcrest.Matchers.nullValue;
+import static org.junit.Assert.assertThat;
+
+import org.junit.Test;
+
+/**
+ * Tests for the HashCodeBuilder constants used by HashcodeGenerator.
+ * @author fgiust
+ * @version $Revision$ ($Author$)
+ */
+public class HashcodeGeneratorTest
+{
+
+    /**
+     * the same class always gets the same constants.
+     */
+    @Test
+    public void testSameNameSameConstants()
+    {
+        int[] constants = HashcodeGenerator.getConstants("net.sf.commonclipse.test.Person");
+        assertThat(HashcodeGenerator.getConstants("net.sf.commonclipse.test.Person"), equalTo(constants));
+    }
+
+    /**
+     * HashCodeBuilder only accepts odd numbers, and the initial value must differ from the multiplier.
+     */
+    @Test
+    public void testConstantsOddAndDistinct()
+    {
+        for (int j = 0; j < 1000; j++)
+        {
+            int[] constants = HashcodeGenerator.getConstants("net.sf.commonclipse.test.Type" + j);
+            assertThat(constants.length, equalTo(2));
+            assertThat(constants[0] & 1, equalTo(1));
+            assertThat(constants[1] & 1, equalTo(1));
+            assertThat(constants[0], not(equalTo(constants[1])));
+        }
+    }
+
+    /**
+     * different classes don't all share the same constants.
+     */
+    @Test
+    public void testConstantsDependOnName()
+    {
+        assertThat(HashcodeGenerator.getConstants("a.A"), not(equalTo(HashcodeGenerator.getConstants("b.B"))));
+    }
+
+    /**
+     * reuse the constants of a method generated by an older version.
+     */
+    @Test
+    public void testParseDecimal()
+    {
+        assertThat(HashcodeGenerator.parseConstants("return new HashCodeBuilder(17, 37).append(this.a)"),
+            equalTo(new int[]{17, 37}));
+    }
+
+    /**
+     * negative constants.
+     */
+    @Test
+    public void testParseNegative()
+    {
+        assertThat(HashcodeGenerator.parseConstants("return new HashCodeBuilder(-2057643115, -1011153171)"),
+            equalTo(new int[]{-2057643115, -1011153171}));
+        assertThat(HashcodeGenerator.parseConstants("return new HashCodeBuilder( -0x11 ,-3 )"),
+            equalTo(new int[]{-0x11, -3}));
+    }
+
+    /**
+     * hex constants, including the ones which set the sign bit.
+     */
+    @Test
+    public void testParseHex()
+    {
+        assertThat(HashcodeGenerator.parseConstants("return new HashCodeBuilder(0x1B873593, 0x85EBCA6B)"),
+            equalTo(new int[]{0x1B873593, 0x85EBCA6B}));
+        assertThat(HashcodeGenerator.parseConstants("return new HashCodeBuilder(0XFFFFFFFF, 0x1)"),
+            equalTo(new int[]{-1, 1}));
+    }
+
+    /**
+     * fully qualified builder class.
+     */
+    @Test
+    public void testParseQualifiedBuilder()
+    {
+        assertThat(HashcodeGenerator.parseConstants(
+            "return new org.apache.commons.lang.builder.HashCodeBuilder(\n    -1, 3)\n.toHashCode();"),
+            equalTo(new int[]{-1, 3}));
+    }
+
+    /**
+     * constants which can't be reused.
+     */
+    @Test
+    public void testParseInvalid()
+    {
+        // even
+        assertThat(HashcodeGenerator.parseConstants("new HashCodeBuilder(16, 37)"), nullValue());
+        // out of the int range
+        assertThat(HashcodeGenerator.parseConstants("new HashCodeBuilder(3000000001, 37)"), nullValue());
+        assertThat(HashcodeGenerator.parseConstants("new HashCodeBuilder(0x100000001, 37)"), nullValue());
+        // default constructor
+        assertThat(HashcodeGenerator.parseConstants("new HashCodeBuilder()"), nullValue());
+        // other builders
+        assertThat(HashcodeGenerator.parseConstants("new MyHashCodeBuilder(17, 37)"), nullValue());
+    }
+
+}
@@ -0,0 +1,210 @@
+package net.sf.commonclipse;
+
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.sameInstance;
+import static org.junit.Assert.assertThat;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.eclipse.jdt.core.ElementChangedEvent;
+import org.eclipse.jdt.core.ICompilationUnit;
+import org.eclipse.jdt.core.IJavaElement;
+import org.eclipse.jdt.core.IJavaElementDelta;
+import org.eclipse.jdt.core.IJavaModel;
+import org.eclipse.jdt.core.IType;
+import org.eclipse.jdt.core.ITypeHierarchy;
+import org.eclipse.jdt.core.JavaModelException;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests for the invalidation of cached hierarchies by java element deltas, with java elements simulated by proxies.
+ * @author fgiust
+ * @version $Revision$ ($Author$)
+ */
+public class HierarchyCacheTest
+{
+
+    /**
+     * primary compilation unit declaring the type.
+     */
+    private ICompilationUnit primaryUnit;
+
+    /**
+     * private working copy of the unit, like the ones opened by BatchGenerationJob.
+     */
+    private ICompilationUnit workingCopy;
+
+    /**
+     * type whose hierarchy is cached.
+     */
+    private IType type;
+
+    /**
+     * hierarchy returned for type.
+     */
+    private ITypeHierarchy hierarchy;
+
+    /**
+     * creates the java elements and empties the cache.
+     */
+    @Before
+    public void setUp()
+    {
+        Map<String, Object> primaryAnswers = new HashMap<String, Object>();
+        primaryAnswers.put("getElementType", new Integer(IJavaElement.COMPILATION_UNIT));
+        primaryAnswers.put("isPrimary", Boolean.TRUE);
+        this.primaryUnit = mock(ICompilationUnit.class, primaryAnswers);
+        primaryAnswers.put("getPrimaryElement", this.primaryUnit);
+
+        Map<String, Object> workingCopyAnswers = new HashMap<String, Object>();
+        workingCopyAnswers.put("getElementType", new Integer(IJavaElement.COMPILATION_UNIT));
+        workingCopyAnswers.put("isPrimary", Boolean.FALSE);
+        workingCopyAnswers.put("getPrimaryElement", this.primaryUnit);
+        this.workingCopy = mock(ICompilationUnit.class, workingCopyAnswers);
+
+        Map<String, Object> hierarchyAnswers = new HashMap<String, Object>();
+        hierarchyAnswers.put("exists", Boolean.TRUE);
+        hierarchyAnswers.put("contains", Boolean.TRUE);
+        this.hierarchy = mock(ITypeHierarchy.class, hierarchyAnswers);
+
+        Map<String, Object> typeAnswers = new HashMap<String, Object>();
+        typeAnswers.put("getElementType", new Integer(IJavaElement.TYPE));
+        typeAnswers.put("getCompilationUnit", this.primaryUnit);
+        typeAnswers.put("newSupertypeHierarchy", this.hierarchy);
+        this.type = mock(IType.class, typeAnswers);
+        typeAnswers.put("getPrimaryElement", this.type);
+        hierarchyAnswers.put("getAllTypes", new IType[]{this.type});
+
+        HierarchyCache.getDefault().clear();
+    }
+
+    /**
+     * a second run hits the cache after the first run opened and discarded a private working copy of the unit.
+     * @throws JavaModelException exception in building the hierarchy
+     */
+    @Test
+    public void testPrivateWorkingCopy() throws JavaModelException
+    {
+        HierarchyCache cache = HierarchyCache.getDefault();
+        long misses = cache.getMisses();
+        long hits = cache.getHits();
+
+        // first run
+        assertThat(cache.getSupertypeHierarchy(this.type, null), sameInstance(this.hierarchy));
+        fireDelta(this.workingCopy, IJavaElementDelta.ADDED);
+        fireDelta(this.workingCopy, IJavaElementDelta.REMOVED);
+
+        // second run
+        assertThat(cache.getSupertypeHierarchy(this.type, null), sameInstance(this.hierarchy));
+        assertThat(cache.getMisses() - misses, equalTo(1L));
+        assertThat(cache.getHits() - hits, equalTo(1L));
+    }
+
+    /**
+     * a removed primary unit still invalidates the hierarchies containing its types.
+     * @throws JavaModelException exception in building the hierarchy
+     */
+    @Test
+    public void testPrimaryUnitRemoved() throws JavaModelException
+    {
+        HierarchyCache cache = HierarchyCache.getDefault();
+        cache.getSupertypeHierarchy(this.type, null);
+        fireDelta(this.primaryUnit, IJavaElementDelta.REMOVED);
+        assertThat(cache.size(), equalTo(0));
+    }
+
+    /**
+     * an added primary unit may contain a supertype which could not be resolved before.
+     * @throws JavaModelException exception in building the hierarchy
+     */
+    @Test
+    public void testPrimaryUnitAdded() throws JavaModelException
+    {
+        HierarchyCache cache = HierarchyCache.getDefault();
+        cache.getSupertypeHierarchy(this.type, null);
+        fireDelta(this.primaryUnit, IJavaElementDelta.ADDED);
+        assertThat(cache.size(), equalTo(0));
+    }
+
+    /**
+     * Sends the delta of a compilation unit to the cache, below the java model delta.
+     * @param unit added or removed compilation unit
+     * @param kind delta kind
+     */
+    private static void fireDelta(ICompilationUnit unit, int kind)
+    {
+        Map<String, Object> unitDeltaAnswers = new HashMap<String, Object>();
+        unitDeltaAnswers.put("getElement", unit);
+        unitDeltaAnswers.put("getKind", new Integer(kind));
+        unitDeltaAnswers.put("getAffectedChildren", new IJavaElementDelta[0]);
+        IJavaElementDelta unitDelta = mock(IJavaElementDelta.class, unitDeltaAnswers);
+
+        Map<String, Object> modelAnswers = new HashMap<String, Object>();
+        modelAnswers.put("getElementType", new Integer(IJavaElement.JAVA_MODEL));
+
+        Map<String, Object> modelDeltaAnswers = new HashMap<String, Object>();
+        modelDeltaAnswers.put("getElement", mock(IJavaModel.class, modelAnswers));
+        modelDeltaAnswers.put("getKind", new Integer(IJavaElementDelta.CHANGED));
+        modelDeltaAnswers.put("getAffectedChildren", new IJavaElementDelta[]{unitDelta});
+        IJavaElementDelta modelDelta = mock(IJavaElementDelta.class, modelDeltaAnswers);
+
+        HierarchyCache.getDefault().elementChanged(
+            new ElementChangedEvent(modelDelta, ElementChangedEvent.POST_CHANGE));
+    }
+
+    /**
+     * Creates an object answering methods by name. Methods without an answer return <code>null</code>, false or 0.
+     * @param type interface to implement
+     * @param answers return values by method name, can be changed after the object has been created
+     * @param <T> interface type
+     * @return proxy implementing type
+     */
+    static <T> T mock(final Class<T> type, final Map<String, Object> answers)
+    {
+        return type.cast(Proxy.newProxyInstance(type.getClassLoader(), new Class< ? >[]{type}, new InvocationHandler()
+        {
+
+            /**
+             * @see java.lang.reflect.InvocationHandler#invoke(java.lang.Object, java.lang.reflect.Method,
+             * java.lang.Object[])
+             */
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args)
+            {
+                String name = method.getName();
+                if ("equals".equals(name))
+                {
+                    return Boolean.valueOf(proxy == args[0]);
+                }
+                if ("hashCode".equals(name))
+                {
+                    return new Integer(System.identityHashCode(proxy));
+                }
+                if ("toString".equals(name))
+                {
+                    return type.getName();
+                }
+                if (answers.containsKey(name))
+                {
+                    return answers.get(name);
+                }
+                Class< ? > returnType = method.getReturnType();
+                if (returnType == Boolean.TYPE)
+                {
+                    return Boolean.FALSE;
+                }
+                if (returnType == Integer.TYPE)
+                {
+                    return new Integer(0);
+                }
+                return null;
+            }
+        }));
+    }
+
+}
@@ -0,0 +1,143 @@
+package net.sf.commonclipse;
+
+import static org.hamcrest.Matchers.equalTo;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+
+import org.junit.Test;
+
+/**
+ * Tests for SourceTokens.
+ * @author fgiust
+ * @version $Revision$ ($Author$)
+ */
+public class SourceTokensTest
+{
+
+    /**
+     * a generated method, as formatted by the default formatter.
+     */
+    private static final String HASHCODE = "/**\n * @see java.lang.Object#hashCode()\n */\n"
+        + "public int hashCode() {\n"
+        + "    return new HashCodeBuilder(-1, 3).append(this.a).append(this.b).toHashCode();\n"
+        + "}";
+
+    /**
+     * the same method, with different line wrapping and indentation.
+     */
+    private static final String HASHCODE_WRAPPED = "/**\r\n\t * @see java.lang.Object#hashCode()\r\n\t */\r\n"
+        + "\tpublic int hashCode()\r\n\t{\r\n"
+        + "\t\treturn new HashCodeBuilder(-1, 3)\r\n"
+        + "\t\t\t.append(this.a)\r\n"
+        + "\t\t\t.append(this.b)\r\n"
+        + "\t\t\t.toHashCode();\r\n"
+        + "\t}";
+
+    /**
+     * test splitting an expression.
+     */
+    @Test
+    public void testTokenize()
+    {
+        assertThat(SourceTokens.tokenize("a+b"), equalTo(Arrays.asList(new String[]{"a", "+", "b"})));
+    }
+
+    /**
+     * whitespace between tokens doesn't matter.
+     */
+    @Test
+    public void testWhitespaceBetweenTokens()
+    {
+        assertTrue(SourceTokens.sameCode("a+b", "a + b"));
+        assertTrue(SourceTokens.sameCode("foo(a,b);", "foo( a, b );"));
+    }
+
+    /**
+     * a method regenerated with a different layout is a no-op.
+     */
+    @Test
+    public void testSameMethodDifferentLayout()
+    {
+        assertTrue(SourceTokens.sameCode(HASHCODE, HASHCODE_WRAPPED));
+    }
+
+    /**
+     * an added appender is a real change.
+     */
+    @Test
+    public void testChangedMethod()
+    {
+        assertFalse(SourceTokens.sameCode(HASHCODE, HASHCODE.replace(".append(this.b)", "")));
+    }
+
+    /**
+     * whitespace inside string literals matters.
+     */
+    @Test
+    public void testStringLiteral()
+    {
+        assertFalse(SourceTokens.sameCode("\"a b\"", "\"a  b\""));
+    }
+
+    /**
+     * whitespace is required between some tokens.
+     */
+    @Test
+    public void testJoinedTokens()
+    {
+        assertFalse(SourceTokens.sameCode("return a;", "returna;"));
+    }
+
+    /**
+     * changes in comments are not ignored.
+     */
+    @Test
+    public void testChangedComment()
+    {
+        assertFalse(SourceTokens.sameCode("/** @see A */ int a;", "/** @see B */ int a;"));
+        assertTrue(SourceTokens.sameCode("// note\nint a;", "// note\n    int a;"));
+    }
+
+    /**
+     * a generated method has the same shape after adding a field, changing the constants or the preferences for
+     * annotations and final parameters.
+     */
+    @Test
+    public void testSameShape()
+    {
+        String regenerated = "@Override\npublic final int hashCode() {\n"
+            + "    return new HashCodeBuilder(17, 37).appendSuper(super.hashCode()).append(this.a).append(this.b)"
+            + ".append(this.c).toHashCode();\n}";
+        assertTrue(SourceTokens.sameShape(HASHCODE_WRAPPED, regenerated));
+        assertTrue(SourceTokens.sameShape(HASHCODE_WRAPPED.replace("hashCode()\r\n", "hashCode() // edited\r\n"),
+            HASHCODE));
+    }
+
+    /**
+     * appenders with nested calls are skipped as a whole.
+     */
+    @Test
+    public void testSameShapeNestedAppenders()
+    {
+        assertTrue(SourceTokens.sameShape(
+            "return new ToStringBuilder(this).append(\"a\", getA(x(1), \")\")).toString();",
+            "return new ToStringBuilder(this).toString();"));
+    }
+
+    /**
+     * methods changed by hand don't have the generated shape.
+     */
+    @Test
+    public void testDifferentShape()
+    {
+        assertFalse(SourceTokens.sameShape(
+            "public String toString() {\n    return ReflectionToStringBuilder.toString(this);\n}",
+            "public String toString() {\n    return new ToStringBuilder(this).append(\"a\", this.a).toString();\n}"));
+        assertFalse(SourceTokens.sameShape(HASHCODE.replace("return", "int h = 1;\n    return"), HASHCODE));
+        assertFalse(SourceTokens.sameShape(HASHCODE.replace("toHashCode()", "toHashCode() * 31"), HASHCODE));
+    }
+
+}
@@ -0,0 +1,43 @@
+package net.sf.commonclipse;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+/**
+ * Tests for the detection of generated toString() methods.
+ * @author fgiust
+ * @version $Revision$ ($Author$)
+ */
+public class ToStringGeneratorTest
+{
+
+    /**
+     * methods creating a ToStringBuilder, also fully qualified.
+     */
+    @Test
+    public void testGenerated()
+    {
+        Generator generator = ToStringGenerator.getInstance();
+        assertTrue(generator.isGenerated("public String toString() {\n"
+            + "    return new ToStringBuilder(this).append(\"a\", this.a).toString();\n}"));
+        assertTrue(generator.isGenerated("public String toString() {\n"
+            + "    return new org.apache.commons.lang.builder.ToStringBuilder (this).toString();\n}"));
+    }
+
+    /**
+     * methods which only mention the builder name aren't generated.
+     */
+    @Test
+    public void testNotGenerated()
+    {
+        Generator generator = ToStringGenerator.getInstance();
+        assertFalse(generator.isGenerated("public String toString() {\n"
+            + "    return ReflectionToStringBuilder.toString(this);\n}"));
+        assertFalse(generator.isGenerated("public String toString() {\n"
+            + "    return new ReflectionToStringBuilder(this).toString();\n}"));
+        assertFalse(generator.isGenerated("public String toString() {\n    return \"A\";\n}"));
+    }
+
+}
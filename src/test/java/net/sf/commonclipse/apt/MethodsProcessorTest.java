@@ -0,0 +1,522 @@
+package net.sf.commonclipse.apt;
+
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.not;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+
+import javax.tools.Diagnostic;
+import javax.tools.DiagnosticCollector;
+import javax.tools.JavaCompiler;
+import javax.tools.JavaFileObject;
+import javax.tools.SimpleJavaFileObject;
+import javax.tools.StandardJavaFileManager;
+import javax.tools.ToolProvider;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests for MethodsProcessor: small classes are compiled with the processor, then the generated helpers are loaded and
+ * called.
+ * @author fgiust
+ * @version $Revision$ ($Author$)
+ */
+public class MethodsProcessorTest
+{
+
+    /**
+     * a class with primitive, array and object fields.
+     */
+    private static final String VALUES = "package p;\n"
+        + "@net.sf.commonclipse.apt.GenerateMethods\n"
+        + "public class Values implements Comparable<Values> {\n"
+        + "    int i; long l; float f; double d; boolean b; String s; int[] ints; String[][] names;\n"
+        + "    public int compareTo(Values other) { return ValuesMethods.compareTo(this, other); }\n"
+        + "}\n";
+
+    /**
+     * a class with getters, for toString().
+     */
+    private static final String POINT = "package p;\n"
+        + "@net.sf.commonclipse.apt.GenerateMethods\n"
+        + "public class Point {\n"
+        + "    int x; int y;\n"
+        + "    public int getX() { return x; }\n"
+        + "    public int getY() { return y; }\n"
+        + "}\n";
+
+    /**
+     * an annotated superclass, its field is only visible through a getter.
+     */
+    private static final String BASE = "package p;\n"
+        + "@net.sf.commonclipse.apt.GenerateMethods\n"
+        + "public class Base {\n"
+        + "    private int id;\n"
+        + "    public int getId() { return id; }\n"
+        + "}\n";
+
+    /**
+     * a subclass of BASE.
+     */
+    private static final String CHILD = "package p;\n"
+        + "@net.sf.commonclipse.apt.GenerateMethods\n"
+        + "public class Child extends Base {\n"
+        + "    String name;\n"
+        + "}\n";
+
+    /**
+     * generic class with an inner and a nested class.
+     */
+    private static final String BOX = "package p;\n"
+        + "import java.util.List;\n"
+        + "@net.sf.commonclipse.apt.GenerateMethods\n"
+        + "public class Box<T extends Comparable<T>> implements Comparable<Box<T>> {\n"
+        + "    T value;\n"
+        + "    public int compareTo(Box<T> other) { return BoxMethods.compareTo(this, other); }\n"
+        + "    @net.sf.commonclipse.apt.GenerateMethods\n"
+        + "    public class Inner { int n; T item; }\n"
+        + "    @net.sf.commonclipse.apt.GenerateMethods\n"
+        + "    public static class Entry<K, V extends List<K>> { K key; V values; }\n"
+        + "}\n";
+
+    /**
+     * temporary directory for generated sources and classes.
+     */
+    private File directory;
+
+    /**
+     * creates the temporary directory.
+     * @throws IOException exception in creating the directory
+     */
+    @Before
+    public void setUp() throws IOException
+    {
+        this.directory = File.createTempFile("commonclipse", "");
+        this.directory.delete();
+        this.directory.mkdir();
+    }
+
+    /**
+     * deletes the temporary directory.
+     */
+    @After
+    public void tearDown()
+    {
+        delete(this.directory);
+    }
+
+    /**
+     * equals() compares primitives like EqualsBuilder, arrays by content and handles nulls.
+     * @throws Exception any exception in compiling or calling the helper
+     */
+    @Test
+    public void testEquals() throws Exception
+    {
+        ClassLoader loader = compile(new String[0], "p.Values", VALUES);
+        Class< ? > type = loader.loadClass("p.Values");
+        Method equals = loader.loadClass("p.ValuesMethods").getMethod("equals", type, Object.class);
+
+        Object lhs = type.newInstance();
+        Object rhs = type.newInstance();
+        assertTrue(equal(equals, lhs, rhs));
+        assertFalse(equal(equals, lhs, null));
+        assertFalse(equal(equals, lhs, "x"));
+
+        set(lhs, "ints", new int[]{1, 2});
+        set(rhs, "ints", new int[]{1, 2});
+        set(lhs, "names", new String[][]{{"a"}, {null}});
+        set(rhs, "names", new String[][]{{"a"}, {null}});
+        set(lhs, "d", Double.valueOf(Double.NaN));
+        set(rhs, "d", Double.valueOf(Double.NaN));
+        assertTrue(equal(equals, lhs, rhs));
+
+        set(rhs, "ints", new int[]{1, 3});
+        assertFalse(equal(equals, lhs, rhs));
+        set(rhs, "ints", new int[]{1, 2});
+
+        set(rhs, "s", "x");
+        assertFalse(equal(equals, lhs, rhs));
+        assertFalse(equal(equals, rhs, lhs));
+        set(rhs, "s", null);
+
+        // as EqualsBuilder, which compares the bits
+        set(lhs, "f", Float.valueOf(0.0f));
+        set(rhs, "f", Float.valueOf(-0.0f));
+        assertFalse(equal(equals, lhs, rhs));
+    }
+
+    /**
+     * hashCode() uses the HashCodeBuilder defaults and hashes arrays by content.
+     * @throws Exception any exception in compiling or calling the helper
+     */
+    @Test
+    public void testHashCode() throws Exception
+    {
+        ClassLoader loader = compile(new String[0], "p.Point", POINT, "p.Values", VALUES);
+
+        Class< ? > pointType = loader.loadClass("p.Point");
+        Method pointHash = loader.loadClass("p.PointMethods").getMethod("hashCode", pointType);
+        Object point = pointType.newInstance();
+        set(point, "x", Integer.valueOf(3));
+        set(point, "y", Integer.valueOf(-5));
+        assertThat(pointHash.invoke(null, point), equalTo((Object) Integer.valueOf((17 * 37 + 3) * 37 - 5)));
+
+        Class< ? > type = loader.loadClass("p.Values");
+        Method hash = loader.loadClass("p.ValuesMethods").getMethod("hashCode", type);
+        Object lhs = type.newInstance();
+        Object rhs = type.newInstance();
+        set(lhs, "names", new String[][]{{"a", null}});
+        set(rhs, "names", new String[][]{{"a", null}});
+        set(lhs, "l", Long.valueOf(1L << 40));
+        set(rhs, "l", Long.valueOf(1L << 40));
+        assertThat(hash.invoke(null, lhs), equalTo(hash.invoke(null, rhs)));
+
+        set(rhs, "b", Boolean.TRUE);
+        assertThat(hash.invoke(null, lhs), not(equalTo(hash.invoke(null, rhs))));
+    }
+
+    /**
+     * compareTo() orders nulls first, compares primitives numerically and arrays by length, then by element.
+     * @throws Exception any exception in compiling or calling the helper
+     */
+    @Test
+    public void testCompareTo() throws Exception
+    {
+        ClassLoader loader = compile(new String[0], "p.Values", VALUES);
+        Class< ? > type = loader.loadClass("p.Values");
+        Method compare = loader.loadClass("p.ValuesMethods").getMethod("compareTo", type, type);
+
+        Object lhs = type.newInstance();
+        Object rhs = type.newInstance();
+        assertThat(compare.invoke(null, lhs, rhs), equalTo((Object) Integer.valueOf(0)));
+
+        set(rhs, "l", Long.valueOf(Long.MIN_VALUE));
+        assertThat(sign(compare.invoke(null, lhs, rhs)), equalTo(1));
+        set(rhs, "l", Long.valueOf(0));
+
+        set(lhs, "s", "a");
+        assertThat(sign(compare.invoke(null, lhs, rhs)), equalTo(1));
+        assertThat(sign(compare.invoke(null, rhs, lhs)), equalTo(-1));
+        set(rhs, "s", "b");
+        assertThat(sign(compare.invoke(null, lhs, rhs)), equalTo(-1));
+        set(rhs, "s", "a");
+
+        set(lhs, "ints", new int[]{9});
+        set(rhs, "ints", new int[]{1, 1});
+        assertThat(sign(compare.invoke(null, lhs, rhs)), equalTo(-1));
+        set(lhs, "ints", new int[]{1, 2});
+        assertThat(sign(compare.invoke(null, lhs, rhs)), equalTo(1));
+    }
+
+    /**
+     * toString() prints the javabean properties like the default ToStringStyle.
+     * @throws Exception any exception in compiling or calling the helper
+     */
+    @Test
+    public void testToString() throws Exception
+    {
+        ClassLoader loader = compile(new String[0], "p.Point", POINT);
+        Class< ? > type = loader.loadClass("p.Point");
+        Object point = type.newInstance();
+        set(point, "x", Integer.valueOf(1));
+        set(point, "y", Integer.valueOf(2));
+
+        Object string = loader.loadClass("p.PointMethods").getMethod("toString", type).invoke(null, point);
+        assertThat(string, equalTo((Object) ("p.Point@" + Integer.toHexString(System.identityHashCode(point))
+            + "[x=1,y=2]")));
+    }
+
+    /**
+     * the helper of an annotated superclass is called first, unless disabled by an option.
+     * @throws Exception any exception in compiling or calling the helper
+     */
+    @Test
+    public void testSuperHelper() throws Exception
+    {
+        ClassLoader loader = compile(new String[0], "p.Base", BASE, "p.Child", CHILD);
+        Class< ? > baseType = loader.loadClass("p.Base");
+        Class< ? > type = loader.loadClass("p.Child");
+        Class< ? > helper = loader.loadClass("p.ChildMethods");
+
+        Object lhs = type.newInstance();
+        Object rhs = type.newInstance();
+        set(lhs, "name", "a");
+        set(rhs, "name", "a");
+        assertTrue(equal(helper.getMethod("equals", type, Object.class), lhs, rhs));
+
+        // only compared through the helper of Base
+        setDeclared(baseType, rhs, "id", Integer.valueOf(4));
+        assertFalse(equal(helper.getMethod("equals", type, Object.class), lhs, rhs));
+
+        Object baseHash = loader.loadClass("p.BaseMethods").getMethod("hashCode", baseType).invoke(null, rhs);
+        assertThat(helper.getMethod("hashCode", type).invoke(null, rhs), equalTo((Object) Integer.valueOf(
+            (17 * 37 + ((Integer) baseHash).intValue()) * 37 + "a".hashCode())));
+
+        ClassLoader unchained = compile(
+            new String[]{"-Acommonclipse.equals_super=false"},
+            "p.Base", BASE, "p.Child", CHILD);
+        type = unchained.loadClass("p.Child");
+        lhs = type.newInstance();
+        rhs = type.newInstance();
+        setDeclared(unchained.loadClass("p.Base"), rhs, "id", Integer.valueOf(4));
+        assertTrue(equal(unchained.loadClass("p.ChildMethods").getMethod("equals", type, Object.class), lhs, rhs));
+    }
+
+    /**
+     * a private field without a getter can't be read by the helper.
+     * @throws Exception any exception in compiling
+     */
+    @Test
+    public void testPrivateFieldWithoutGetter() throws Exception
+    {
+        List<Diagnostic< ? extends JavaFileObject>> errors = compileWithErrors(new String[0], "p.Secret", "package p;\n"
+            + "@net.sf.commonclipse.apt.GenerateMethods\n"
+            + "public class Secret { private int hidden; int visible; }\n");
+
+        assertThat(errors.size(), equalTo(1));
+        String message = errors.get(0).getMessage(Locale.ENGLISH);
+        assertThat(message, containsString("hidden"));
+        assertThat(message, containsString("p.SecretMethods"));
+        assertThat(errors.get(0).getSource().getName(), containsString("Secret.java"));
+    }
+
+    /**
+     * generic classes and inner classes are referenced with wildcards, and the helpers compile.
+     * @throws Exception any exception in compiling or calling the helper
+     */
+    @Test
+    public void testGenericAndInnerClasses() throws Exception
+    {
+        ClassLoader loader = compile(new String[0], "p.Box", BOX);
+        Class< ? > type = loader.loadClass("p.Box");
+        Class< ? > helper = loader.loadClass("p.BoxMethods");
+        loader.loadClass("p.Box_InnerMethods").getMethod("equals", loader.loadClass("p.Box$Inner"), Object.class);
+        loader.loadClass("p.Box_EntryMethods").getMethod("equals", loader.loadClass("p.Box$Entry"), Object.class);
+
+        Object lhs = type.newInstance();
+        Object rhs = type.newInstance();
+        set(lhs, "value", "a");
+        set(rhs, "value", "b");
+        assertFalse(equal(helper.getMethod("equals", type, Object.class), lhs, rhs));
+        assertThat(sign(helper.getMethod("compareTo", type, type).invoke(null, lhs, rhs)), equalTo(-1));
+    }
+
+    /**
+     * Compiles some classes with the processor, failing if there are errors.
+     * @param options compiler options
+     * @param classes qualified class name - source pairs
+     * @return class loader for the compiled classes
+     * @throws IOException exception in writing the classes
+     */
+    private ClassLoader compile(String[] options, String... classes) throws IOException
+    {
+        DiagnosticCollector<JavaFileObject> diagnostics = new DiagnosticCollector<JavaFileObject>();
+        File output = new File(this.directory, "out" + this.directory.list().length);
+        output.mkdir();
+
+        if (!run(options, output, diagnostics, classes))
+        {
+            throw new AssertionError("compilation failed: " + diagnostics.getDiagnostics());
+        }
+        return new URLClassLoader(new URL[]{output.toURI().toURL()}, getClass().getClassLoader());
+    }
+
+    /**
+     * Compiles some classes with the processor, which must fail.
+     * @param options compiler options
+     * @param classes qualified class name - source pairs
+     * @return errors
+     * @throws IOException exception in writing the classes
+     */
+    private List<Diagnostic< ? extends JavaFileObject>> compileWithErrors(String[] options, String... classes)
+        throws IOException
+    {
+        DiagnosticCollector<JavaFileObject> diagnostics = new DiagnosticCollector<JavaFileObject>();
+        File output = new File(this.directory, "out" + this.directory.list().length);
+        output.mkdir();
+
+        assertFalse(run(options, output, diagnostics, classes));
+
+        List<Diagnostic< ? extends JavaFileObject>> errors = new ArrayList<Diagnostic< ? extends JavaFileObject>>();
+        Iterator<Diagnostic< ? extends JavaFileObject>> iterator = diagnostics.getDiagnostics().iterator();
+        while (iterator.hasNext())
+        {
+            Diagnostic< ? extends JavaFileObject> diagnostic = iterator.next();
+            if (diagnostic.getKind() == Diagnostic.Kind.ERROR)
+            {
+                errors.add(diagnostic);
+            }
+        }
+        return errors;
+    }
+
+    /**
+     * Runs the compiler with the processor.
+     * @param options compiler options
+     * @param output directory for generated sources and classes
+     * @param diagnostics collects the compiler messages
+     * @param classes qualified class name - source pairs
+     * @return <code>true</code> if the compilation succeeded
+     * @throws IOException exception in closing the file manager
+     */
+    private boolean run(String[] options, File output, DiagnosticCollector<JavaFileObject> diagnostics,
+        String... classes) throws IOException
+    {
+        JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+        StandardJavaFileManager fileManager = compiler.getStandardFileManager(diagnostics, Locale.ENGLISH, null);
+
+        List<JavaFileObject> sources = new ArrayList<JavaFileObject>();
+        for (int j = 0; j < classes.length; j += 2)
+        {
+            sources.add(new Source(classes[j], classes[j + 1]));
+        }
+
+        // the fixtures only need the annotation
+        String annotationPath;
+        try
+        {
+            annotationPath = new File(GenerateMethods.class.getProtectionDomain().getCodeSource().getLocation()
+                .toURI()).getPath();
+        }
+        catch (URISyntaxException e)
+        {
+            throw new IOException(e.getMessage());
+        }
+
+        List<String> arguments = new ArrayList<String>(Arrays.asList(options));
+        arguments.addAll(Arrays.asList(new String[]{
+            "-d", output.getPath(),
+            "-s", output.getPath(),
+            "-classpath", annotationPath}));
+
+        try
+        {
+            JavaCompiler.CompilationTask task = compiler.getTask(null, fileManager, diagnostics, arguments, null,
+                sources);
+            task.setProcessors(Arrays.asList(new MethodsProcessor()));
+            return task.call().booleanValue();
+        }
+        finally
+        {
+            fileManager.close();
+        }
+    }
+
+    /**
+     * Calls a generated equals method.
+     * @param equals equals(Type, Object)
+     * @param lhs first object
+     * @param rhs second object
+     * @return result of equals
+     * @throws IllegalAccessException exception in calling the method
+     * @throws InvocationTargetException exception thrown by the method
+     */
+    private static boolean equal(Method equals, Object lhs, Object rhs) throws IllegalAccessException,
+        InvocationTargetException
+    {
+        return ((Boolean) equals.invoke(null, lhs, rhs)).booleanValue();
+    }
+
+    /**
+     * Returns the sign of a comparison result.
+     * @param result Integer returned by compareTo
+     * @return -1, 0 or 1
+     */
+    private static int sign(Object result)
+    {
+        return Integer.signum(((Integer) result).intValue());
+    }
+
+    /**
+     * Sets a field declared in the class of an object.
+     * @param object object
+     * @param name field name
+     * @param value new value
+     * @throws Exception exception in setting the field
+     */
+    private static void set(Object object, String name, Object value) throws Exception
+    {
+        setDeclared(object.getClass(), object, name, value);
+    }
+
+    /**
+     * Sets a field.
+     * @param declaring class declaring the field
+     * @param object object
+     * @param name field name
+     * @param value new value
+     * @throws Exception exception in setting the field
+     */
+    private static void setDeclared(Class< ? > declaring, Object object, String name, Object value) throws Exception
+    {
+        Field field = declaring.getDeclaredField(name);
+        field.setAccessible(true);
+        field.set(object, value);
+    }
+
+    /**
+     * Deletes a file or a directory with its content.
+     * @param file file or directory
+     */
+    private static void delete(File file)
+    {
+        File[] children = file.listFiles();
+        for (int j = 0; children != null && j < children.length; j++)
+        {
+            delete(children[j]);
+        }
+        file.delete();
+    }
+
+    /**
+     * Source of a class, kept in memory.
+     */
+    private static class Source extends SimpleJavaFileObject
+    {
+
+        /**
+         * source code.
+         */
+        private final String code;
+
+        /**
+         * Creates a new Source.
+         * @param className qualified class name
+         * @param code source code
+         */
+        Source(String className, String code)
+        {
+            super(URI.create("string:///" + className.replace('.', '/') + Kind.SOURCE.extension), Kind.SOURCE);
+            this.code = code;
+        }
+
+        /**
+         * @see javax.tools.SimpleJavaFileObject#getCharContent(boolean)
+         */
+        @Override
+        public CharSequence getCharContent(boolean ignoreEncodingErrors)
+        {
+            return this.code;
+        }
+    }
+
+}
@@ -0,0 +1,97 @@
+package net.sf.commonclipse.cli;
+
+import static org.hamcrest.Matchers.not;
+import static org.hamcrest.Matchers.sameInstance;
+import static org.junit.Assert.assertThat;
+
+import java.util.HashMap;
+
+import org.eclipse.jdt.core.JavaCore;
+import org.eclipse.jdt.core.formatter.CodeFormatter;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests for FormatterPool.
+ * @author fgiust
+ * @version $Revision$ ($Author$)
+ */
+public class FormatterPoolTest
+{
+
+    /**
+     * pool being tested.
+     */
+    private FormatterPool pool;
+
+    /**
+     * creates the pool.
+     */
+    @SuppressWarnings("unchecked")
+    @Before
+    public void setUp()
+    {
+        this.pool = new FormatterPool(new HashMap<String, String>(JavaCore.getOptions()));
+    }
+
+    /**
+     * requests on two connections, served one after the other by different threads, use the same formatter.
+     * @throws InterruptedException if interrupted while waiting for a connection thread
+     */
+    @Test
+    public void testConsecutiveConnections() throws InterruptedException
+    {
+        CodeFormatter first = runConnection();
+        CodeFormatter second = runConnection();
+        assertThat(second, sameInstance(first));
+    }
+
+    /**
+     * a formatter is never given to two users at the same time.
+     */
+    @Test
+    public void testConcurrentUse()
+    {
+        CodeFormatter first = this.pool.acquire();
+        CodeFormatter second = this.pool.acquire();
+        assertThat(second, not(sameInstance(first)));
+
+        this.pool.release(first);
+        this.pool.release(second);
+    }
+
+    /**
+     * Formats on a new thread, like a daemon connection, and waits for it.
+     * @return formatter used by the thread
+     * @throws InterruptedException if interrupted while waiting for the thread
+     */
+    private CodeFormatter runConnection() throws InterruptedException
+    {
+        final CodeFormatter[] used = new CodeFormatter[1];
+        Thread connection = new Thread()
+        {
+
+            /**
+             * @see java.lang.Thread#run()
+             */
+            @Override
+            public void run()
+            {
+                CodeFormatter formatter = FormatterPoolTest.this.pool.acquire();
+                try
+                {
+                    formatter.format(CodeFormatter.K_CLASS_BODY_DECLARATIONS, "int a;", 0, 6, 0, "\n");
+                    used[0] = formatter;
+                }
+                finally
+                {
+                    FormatterPoolTest.this.pool.release(formatter);
+                }
+            }
+        };
+        connection.start();
+        connection.join();
+        return used[0];
+    }
+
+}
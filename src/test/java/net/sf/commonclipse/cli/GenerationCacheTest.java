@@ -0,0 +1,301 @@
+package net.sf.commonclipse.cli;
+
+import static org.hamcrest.Matchers.equalTo;
+import static org.junit.Assert.assertThat;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests for GenerationCache, using files in a temporary directory.
+ * @author fgiust
+ * @version $Revision$ ($Author$)
+ */
+public class GenerationCacheTest
+{
+
+    /**
+     * configuration used by most of the tests.
+     */
+    private static final String CONFIGURATION = "toString,hashCode;appendSuper=true";
+
+    /**
+     * temporary directory.
+     */
+    private File directory;
+
+    /**
+     * cache file, in directory.
+     */
+    private File cacheFile;
+
+    /**
+     * creates the temporary directory.
+     * @throws IOException exception in creating the directory
+     */
+    @Before
+    public void setUp() throws IOException
+    {
+        this.directory = File.createTempFile("commonclipse", "");
+        this.directory.delete();
+        this.directory.mkdir();
+        this.cacheFile = new File(this.directory, "cache/generation.cache");
+    }
+
+    /**
+     * deletes the temporary directory.
+     */
+    @After
+    public void tearDown()
+    {
+        delete(this.directory);
+    }
+
+    /**
+     * the first run processes all the files.
+     * @throws IOException exception in reading or writing files
+     */
+    @Test
+    public void testEmptyCache() throws IOException
+    {
+        String a = write("A.java", "class A {}");
+        GenerationCache cache = load(CONFIGURATION);
+        assertThat(cache.findStale(paths(a)), equalTo(paths(a)));
+    }
+
+    /**
+     * clean and unchanged files are skipped in the next run, changed files are processed again.
+     * @throws IOException exception in reading or writing files
+     */
+    @Test
+    public void testChangedFile() throws IOException
+    {
+        String a = write("A.java", "class A {}");
+        String b = write("B.java", "class B {}");
+        run(CONFIGURATION, result(a, "A"), result(b, "B"));
+
+        assertThat(load(CONFIGURATION).findStale(paths(a, b)), equalTo(paths()));
+
+        write("B.java", "class B { int b; }");
+        assertThat(load(CONFIGURATION).findStale(paths(a, b)), equalTo(paths(b)));
+    }
+
+    /**
+     * the whole cache is discarded when the configuration changes.
+     * @throws IOException exception in reading or writing files
+     */
+    @Test
+    public void testFingerprint() throws IOException
+    {
+        String a = write("A.java", "class A {}");
+        run(CONFIGURATION, result(a, "A"));
+
+        assertThat(load(CONFIGURATION + ";excluded=log").findStale(paths(a)), equalTo(paths(a)));
+        assertThat(load(CONFIGURATION).findStale(paths(a)), equalTo(paths()));
+    }
+
+    /**
+     * a changed file declaring a superclass invalidates its subclasses.
+     * @throws IOException exception in reading or writing files
+     */
+    @Test
+    public void testChangedSuperclass() throws IOException
+    {
+        String base = write("Base.java", "package p; class Base {}");
+        String a = write("A.java", "package p; class A extends Base {}");
+        String other = write("Other.java", "package p; class Other extends java.util.Date {}");
+        run(CONFIGURATION, result(base, "p.Base"), result(a, "p.A", "p.Base"), result(other, "p.Other",
+            "java.util.Date"));
+
+        write("Base.java", "package p; class Base { int id; }");
+        assertThat(load(CONFIGURATION).findStale(paths(base, a, other)), equalTo(paths(base, a)));
+    }
+
+    /**
+     * files with problems or with pending changes are always processed again.
+     * @throws IOException exception in reading or writing files
+     */
+    @Test
+    public void testUncleanEntries() throws IOException
+    {
+        String a = write("A.java", "class A {}");
+        String b = write("B.java", "class B {}");
+        String c = write("C.java", "class C {}");
+
+        GenerationCache cache = load(CONFIGURATION);
+        cache.findStale(paths(a, b, c));
+        cache.update(new FileResult(a, "class A {}", null, Arrays.asList(new String[]{"A: no getter"}), types("A"),
+            types()), false);
+        cache.update(new FileResult(b, "class B {}", "class B { toString }", new ArrayList<String>(), types("B"),
+            types()), false);
+        cache.update(result(c, "C"), false);
+        cache.save();
+
+        assertThat(load(CONFIGURATION).findStale(paths(a, b, c)), equalTo(paths(a, b)));
+    }
+
+    /**
+     * a file written in the same run is cached with its new content.
+     * @throws IOException exception in reading or writing files
+     */
+    @Test
+    public void testWrittenInSameRun() throws IOException
+    {
+        String a = write("A.java", "class A {}");
+
+        GenerationCache cache = load(CONFIGURATION);
+        cache.findStale(paths(a));
+        write("A.java", "class A { toString }");
+        cache.update(new FileResult(a, "class A {}", "class A { toString }", new ArrayList<String>(), types("A"),
+            types()), true);
+        cache.save();
+
+        assertThat(load(CONFIGURATION).findStale(paths(a)), equalTo(paths()));
+    }
+
+    /**
+     * a superclass written in the same run doesn't invalidate its subclasses in the next run.
+     * @throws IOException exception in reading or writing files
+     */
+    @Test
+    public void testSuperclassWrittenInSameRun() throws IOException
+    {
+        String base = write("Base.java", "package p; class Base {}");
+        String a = write("A.java", "package p; class A extends Base {}");
+
+        GenerationCache cache = load(CONFIGURATION);
+        cache.findStale(paths(base, a));
+        write("Base.java", "package p; class Base { toString }");
+        cache.update(new FileResult(base, "package p; class Base {}", "package p; class Base { toString }",
+            new ArrayList<String>(), types("p.Base"), types()), true);
+        cache.update(result(a, "p.A", "p.Base"), false);
+        cache.save();
+
+        assertThat(load(CONFIGURATION).findStale(paths(base, a)), equalTo(paths()));
+    }
+
+    /**
+     * files which can't be read are not cached.
+     * @throws IOException exception in reading or writing files
+     */
+    @Test
+    public void testMissingFile() throws IOException
+    {
+        String a = new File(this.directory, "Missing.java").getPath();
+        run(CONFIGURATION, result(a, "Missing"));
+        assertThat(load(CONFIGURATION).findStale(paths(a)), equalTo(paths(a)));
+    }
+
+    /**
+     * Writes a file in the temporary directory.
+     * @param name file name
+     * @param content file content
+     * @return path of the file
+     * @throws IOException exception in writing the file
+     */
+    private String write(String name, String content) throws IOException
+    {
+        File file = new File(this.directory, name);
+        OutputStream stream = new FileOutputStream(file);
+        try
+        {
+            stream.write(content.getBytes("UTF-8"));
+        }
+        finally
+        {
+            stream.close();
+        }
+        return file.getPath();
+    }
+
+    /**
+     * Creates a cache and loads the previous run.
+     * @param configuration configuration
+     * @return GenerationCache
+     * @throws IOException exception in reading the cache
+     */
+    private GenerationCache load(String configuration) throws IOException
+    {
+        GenerationCache cache = new GenerationCache(this.cacheFile, configuration);
+        cache.load();
+        return cache;
+    }
+
+    /**
+     * Simulates a run where no file needs changes.
+     * @param configuration configuration
+     * @param results results of the processed files
+     * @throws IOException exception in reading or writing the cache
+     */
+    private void run(String configuration, FileResult... results) throws IOException
+    {
+        GenerationCache cache = load(configuration);
+        List<String> all = new ArrayList<String>();
+        for (int j = 0; j < results.length; j++)
+        {
+            all.add(results[j].getPath());
+        }
+        cache.findStale(all);
+        for (int j = 0; j < results.length; j++)
+        {
+            cache.update(results[j], false);
+        }
+        cache.save();
+    }
+
+    /**
+     * Creates the result of a file which doesn't need any change.
+     * @param path path of the file
+     * @param type qualified name of the declared type
+     * @param superclasses qualified names of the superclasses
+     * @return FileResult
+     */
+    private static FileResult result(String path, String type, String... superclasses)
+    {
+        return new FileResult(path, "", null, new ArrayList<String>(), types(type), types(superclasses));
+    }
+
+    /**
+     * Returns a list of type names.
+     * @param names names
+     * @return List
+     */
+    private static List<String> types(String... names)
+    {
+        return Arrays.asList(names);
+    }
+
+    /**
+     * Returns a list of paths.
+     * @param paths paths
+     * @return List
+     */
+    private static List<String> paths(String... paths)
+    {
+        return Arrays.asList(paths);
+    }
+
+    /**
+     * Deletes a file or a directory with its content.
+     * @param file file or directory
+     */
+    private static void delete(File file)
+    {
+        File[] children = file.listFiles();
+        for (int j = 0; children != null && j < children.length; j++)
+        {
+            delete(children[j]);
+        }
+        file.delete();
+    }
+
+}
@@ -0,0 +1,300 @@
+package net.sf.commonclipse.cli;
+
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.nullValue;
+import static org.junit.Assert.assertThat;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.text.ParseException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+
+import net.sf.commonclipse.CCPluginPreferences;
+
+import org.eclipse.jdt.core.JavaCore;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests for GenerationDaemon, sending JSON-RPC requests through handle() and serve().
+ * @author fgiust
+ * @version $Revision$ ($Author$)
+ */
+public class GenerationDaemonTest
+{
+
+    /**
+     * a class without a toString() method.
+     */
+    private static final String SOURCE = "package p;\n\npublic class A\n{\n\n    private int a;\n\n}\n";
+
+    /**
+     * temporary directory, used as source root.
+     */
+    private File directory;
+
+    /**
+     * daemon being tested.
+     */
+    private GenerationDaemon daemon;
+
+    /**
+     * creates the source root and the daemon.
+     * @throws IOException exception in creating the directory
+     */
+    @SuppressWarnings("unchecked")
+    @Before
+    public void setUp() throws IOException
+    {
+        this.directory = File.createTempFile("commonclipse", "");
+        this.directory.delete();
+        this.directory.mkdir();
+
+        Map<String, String> options = new HashMap<String, String>(JavaCore.getOptions());
+        JavaCore.setComplianceOptions(JavaCore.VERSION_1_6, options);
+        this.daemon = new GenerationDaemon(
+            new String[]{this.directory.getPath()},
+            new String[0],
+            "UTF-8",
+            options,
+            new CCPluginPreferences(new Properties()),
+            CommandLineGenerator.getAvailableGenerators(),
+            false);
+    }
+
+    /**
+     * deletes the temporary directory.
+     */
+    @After
+    public void tearDown()
+    {
+        delete(this.directory);
+    }
+
+    /**
+     * text which is not JSON.
+     * @throws ParseException exception in parsing the response
+     */
+    @Test
+    public void testParseError() throws ParseException
+    {
+        Map< ? , ? > response = handle("{\"id\":1,");
+        assertThat(response.get("id"), nullValue());
+        assertThat(getErrorCode(response), equalTo(GenerationDaemon.PARSE_ERROR));
+    }
+
+    /**
+     * JSON which is not a request.
+     * @throws ParseException exception in parsing the response
+     */
+    @Test
+    public void testInvalidRequest() throws ParseException
+    {
+        assertThat(getErrorCode(handle("[1,2]")), equalTo(GenerationDaemon.INVALID_REQUEST));
+        assertThat(getErrorCode(handle("{\"id\":1,\"method\":3}")), equalTo(GenerationDaemon.INVALID_REQUEST));
+    }
+
+    /**
+     * an unknown method, the error keeps the request id.
+     * @throws ParseException exception in parsing the response
+     */
+    @Test
+    public void testMethodNotFound() throws ParseException
+    {
+        Map< ? , ? > response = handle("{\"jsonrpc\":\"2.0\",\"id\":\"x\",\"method\":\"format\"}");
+        assertThat(response.get("jsonrpc"), equalTo((Object) "2.0"));
+        assertThat(response.get("id"), equalTo((Object) "x"));
+        assertThat(getErrorCode(response), equalTo(GenerationDaemon.METHOD_NOT_FOUND));
+    }
+
+    /**
+     * missing or mistyped parameters.
+     * @throws ParseException exception in parsing the response
+     */
+    @Test
+    public void testInvalidParams() throws ParseException
+    {
+        assertThat(getErrorCode(handle("{\"id\":1,\"method\":\"generate\",\"params\":[]}")),
+            equalTo(GenerationDaemon.INVALID_PARAMS));
+        assertThat(getErrorCode(handle("{\"id\":1,\"method\":\"generate\",\"params\":{}}")),
+            equalTo(GenerationDaemon.INVALID_PARAMS));
+        assertThat(getErrorCode(handle("{\"id\":1,\"method\":\"generate\",\"params\":{\"path\":1}}")),
+            equalTo(GenerationDaemon.INVALID_PARAMS));
+        assertThat(getErrorCode(handle("{\"id\":1,\"method\":\"invalidate\",\"params\":{\"path\":true}}")),
+            equalTo(GenerationDaemon.INVALID_PARAMS));
+    }
+
+    /**
+     * unknown generated methods and unreadable files.
+     * @throws ParseException exception in parsing the response
+     */
+    @Test
+    public void testInvalidGenerateParams() throws ParseException
+    {
+        String path = Json.write(new File(this.directory, "p/A.java").getPath());
+        assertThat(getErrorCode(handle("{\"id\":1,\"method\":\"generate\",\"params\":{\"path\":" + path
+            + ",\"methods\":[\"finalize\"],\"source\":\"class A {}\"}}")), equalTo(GenerationDaemon.INVALID_PARAMS));
+        assertThat(getErrorCode(handle("{\"id\":1,\"method\":\"generate\",\"params\":{\"path\":" + path + "}}")),
+            equalTo(GenerationDaemon.INVALID_PARAMS));
+    }
+
+    /**
+     * notifications get no response, not even for errors.
+     */
+    @Test
+    public void testNotification()
+    {
+        assertThat(this.daemon.handle("{\"method\":\"invalidate\"}"), nullValue());
+        assertThat(this.daemon.handle("{\"method\":\"format\"}"), nullValue());
+    }
+
+    /**
+     * invalidate returns true, with or without a path.
+     * @throws ParseException exception in parsing the response
+     */
+    @Test
+    public void testInvalidate() throws ParseException
+    {
+        assertThat(handle("{\"id\":1,\"method\":\"invalidate\"}").get("result"), equalTo((Object) Boolean.TRUE));
+        assertThat(handle("{\"id\":2,\"method\":\"invalidate\",\"params\":{\"path\":\"A.java\"}}").get("result"),
+            equalTo((Object) Boolean.TRUE));
+    }
+
+    /**
+     * generate a method in unsaved source, then get the same result from the cache until the file is invalidated.
+     * @throws ParseException exception in parsing the response
+     * @throws IOException exception in writing the source file
+     */
+    @Test
+    public void testGenerate() throws ParseException, IOException
+    {
+        String path = write("p/A.java", SOURCE);
+        String request = "{\"id\":1,\"method\":\"generate\",\"params\":{\"path\":" + Json.write(path)
+            + ",\"methods\":[\"toString\"],\"add\":true}}";
+
+        Map< ? , ? > result = (Map< ? , ? >) handle(request).get("result");
+        assertThat(result.get("path"), equalTo((Object) path));
+        assertThat(result.get("changed"), equalTo((Object) Boolean.TRUE));
+        assertThat((String) result.get("source"), containsString("public String toString()"));
+        assertThat((String) result.get("diff"), containsString("toString()"));
+        assertThat(result.get("cached"), equalTo((Object) Boolean.FALSE));
+
+        Map< ? , ? > cached = (Map< ? , ? >) handle(request).get("result");
+        assertThat(cached.get("source"), equalTo(result.get("source")));
+        assertThat(cached.get("cached"), equalTo((Object) Boolean.TRUE));
+
+        handle("{\"id\":2,\"method\":\"invalidate\",\"params\":{\"path\":" + Json.write(path) + "}}");
+        assertThat(((Map< ? , ? >) handle(request).get("result")).get("cached"), equalTo((Object) Boolean.FALSE));
+    }
+
+    /**
+     * unsaved source given in the request is used instead of the file, and only that source is cached.
+     * @throws ParseException exception in parsing the response
+     * @throws IOException exception in writing the source file
+     */
+    @Test
+    public void testGenerateUnsavedSource() throws ParseException, IOException
+    {
+        String path = write("p/A.java", SOURCE);
+        String generated = (String) ((Map< ? , ? >) handle("{\"id\":1,\"method\":\"generate\",\"params\":{\"path\":"
+            + Json.write(path) + ",\"methods\":[\"toString\"],\"add\":true}}").get("result")).get("source");
+
+        // the generated source needs no more changes
+        Map< ? , ? > result = (Map< ? , ? >) handle("{\"id\":2,\"method\":\"generate\",\"params\":{\"path\":"
+            + Json.write(path) + ",\"source\":" + Json.write(generated) + ",\"methods\":[\"toString\"]}}")
+            .get("result");
+        assertThat(result.get("changed"), equalTo((Object) Boolean.FALSE));
+        assertThat(result.get("source"), nullValue());
+        assertThat(result.get("cached"), equalTo((Object) Boolean.FALSE));
+    }
+
+    /**
+     * serve() answers each request on its own line and stops after shutdown.
+     * @throws ParseException exception in parsing the response
+     * @throws IOException exception in reading or writing the streams
+     */
+    @Test
+    public void testServeUntilShutdown() throws ParseException, IOException
+    {
+        String requests = "{\"id\":1,\"method\":\"invalidate\"}\n"
+            + "\n"
+            + "{\"method\":\"invalidate\"}\n"
+            + "{\"id\":2,\"method\":\"shutdown\"}\n"
+            + "{\"id\":3,\"method\":\"invalidate\"}\n";
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        this.daemon.serve(new ByteArrayInputStream(requests.getBytes("UTF-8")), out);
+
+        String[] responses = out.toString("UTF-8").split("\n");
+        assertThat(responses.length, equalTo(2));
+        assertThat(((Map< ? , ? >) Json.parse(responses[0])).get("id"), equalTo((Object) new Long(1)));
+        assertThat(((Map< ? , ? >) Json.parse(responses[1])).get("id"), equalTo((Object) new Long(2)));
+        assertThat(((Map< ? , ? >) Json.parse(responses[1])).get("result"), equalTo((Object) Boolean.TRUE));
+    }
+
+    /**
+     * Sends a request which is not a notification.
+     * @param request JSON-RPC request
+     * @return parsed response
+     * @throws ParseException if the response is not valid JSON
+     */
+    private Map< ? , ? > handle(String request) throws ParseException
+    {
+        return (Map< ? , ? >) Json.parse(this.daemon.handle(request));
+    }
+
+    /**
+     * Returns the code of an error response.
+     * @param response parsed response
+     * @return error code
+     */
+    private static int getErrorCode(Map< ? , ? > response)
+    {
+        return ((Number) ((Map< ? , ? >) response.get("error")).get("code")).intValue();
+    }
+
+    /**
+     * Writes a file in the temporary directory.
+     * @param name file name, relative to the directory
+     * @param content file content
+     * @return path of the file
+     * @throws IOException exception in writing the file
+     */
+    private String write(String name, String content) throws IOException
+    {
+        File file = new File(this.directory, name);
+        file.getParentFile().mkdirs();
+        OutputStream stream = new FileOutputStream(file);
+        try
+        {
+            stream.write(content.getBytes("UTF-8"));
+        }
+        finally
+        {
+            stream.close();
+        }
+        return file.getPath();
+    }
+
+    /**
+     * Deletes a file or a directory with its content.
+     * @param file file or directory
+     */
+    private static void delete(File file)
+    {
+        File[] children = file.listFiles();
+        for (int j = 0; children != null && j < children.length; j++)
+        {
+            delete(children[j]);
+        }
+        file.delete();
+    }
+
+}
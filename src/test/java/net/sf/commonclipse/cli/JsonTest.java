@@ -0,0 +1,191 @@
+package net.sf.commonclipse.cli;
+
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.nullValue;
+import static org.junit.Assert.assertThat;
+
+import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+
+/**
+ * Tests for Json.
+ * @author fgiust
+ * @version $Revision$ ($Author$)
+ */
+public class JsonTest
+{
+
+    /**
+     * literals and numbers.
+     * @throws ParseException exception in parsing
+     */
+    @Test
+    public void testScalars() throws ParseException
+    {
+        assertThat(Json.parse("true"), equalTo((Object) Boolean.TRUE));
+        assertThat(Json.parse(" false "), equalTo((Object) Boolean.FALSE));
+        assertThat(Json.parse("null"), nullValue());
+        assertThat(Json.parse("-42"), equalTo((Object) new Long(-42)));
+        assertThat(Json.parse("1.5e2"), equalTo((Object) new Double(150)));
+        assertThat(Json.parse("\"a\""), equalTo((Object) "a"));
+    }
+
+    /**
+     * objects keep the order of their members.
+     * @throws ParseException exception in parsing
+     */
+    @Test
+    public void testObjectOrder() throws ParseException
+    {
+        String text = "{\"b\":1,\"a\":[true,null,\"x\"],\"c\":{}}";
+        Map< ? , ? > object = (Map< ? , ? >) Json.parse(text);
+        assertThat(new ArrayList<Object>(object.keySet()), equalTo(Arrays.asList(new Object[]{"b", "a", "c"})));
+        assertThat(Json.write(object), equalTo(text));
+    }
+
+    /**
+     * whitespace between tokens is ignored and not written back.
+     * @throws ParseException exception in parsing
+     */
+    @Test
+    public void testWhitespace() throws ParseException
+    {
+        Object value = Json.parse(" { \"a\" : [ 1 , 2 ] ,\n\t\"b\" : [ ] } ");
+        assertThat(Json.write(value), equalTo("{\"a\":[1,2],\"b\":[]}"));
+    }
+
+    /**
+     * nested values written and read back.
+     * @throws ParseException exception in parsing
+     */
+    @Test
+    public void testRoundTrip() throws ParseException
+    {
+        Map<String, Object> params = new LinkedHashMap<String, Object>();
+        params.put("path", "src/A.java");
+        params.put("methods", Arrays.asList(new String[]{"toString", "equals"}));
+        params.put("add", Boolean.TRUE);
+        params.put("line", new Long(3));
+        params.put("ratio", new Double(0.25));
+        params.put("source", null);
+
+        Map<String, Object> request = new LinkedHashMap<String, Object>();
+        request.put("id", new Long(7));
+        request.put("params", params);
+
+        assertThat(Json.parse(Json.write(request)), equalTo((Object) request));
+    }
+
+    /**
+     * quotes, backslashes and control characters are escaped, and read back unchanged.
+     * @throws ParseException exception in parsing
+     */
+    @Test
+    public void testEscapes() throws ParseException
+    {
+        String source = "class A {\n\tString s = \"a\\\\b\";\r\n}\u0001\u2028";
+        String text = Json.write(source);
+        assertThat(text, equalTo("\"class A {\\n\\tString s = \\\"a\\\\\\\\b\\\";\\r\\n}\\u0001\\u2028\""));
+        assertThat(Json.parse(text), equalTo((Object) source));
+    }
+
+    /**
+     * unicode escapes and the optional escaped slash.
+     * @throws ParseException exception in parsing
+     */
+    @Test
+    public void testUnicodeEscapes() throws ParseException
+    {
+        assertThat(Json.parse("\"caf\\u00e9 \\u00C8 a\\/b\""), equalTo((Object) "caf\u00e9 \u00c8 a/b"));
+        assertThat(Json.write("caf\u00e9"), equalTo("\"caf\u00e9\""));
+    }
+
+    /**
+     * lists and other collections are written as arrays.
+     */
+    @Test
+    public void testWriteCollection()
+    {
+        List<Object> list = new ArrayList<Object>();
+        list.add(new Integer(1));
+        list.add(Arrays.asList(new String[0]));
+        assertThat(Json.write(list), equalTo("[1,[]]"));
+    }
+
+    /**
+     * an unterminated object.
+     * @throws ParseException expected
+     */
+    @Test(expected = ParseException.class)
+    public void testUnterminatedObject() throws ParseException
+    {
+        Json.parse("{\"a\":1");
+    }
+
+    /**
+     * an unterminated string.
+     * @throws ParseException expected
+     */
+    @Test(expected = ParseException.class)
+    public void testUnterminatedString() throws ParseException
+    {
+        Json.parse("\"abc");
+    }
+
+    /**
+     * text after the value.
+     * @throws ParseException expected
+     */
+    @Test(expected = ParseException.class)
+    public void testTrailingText() throws ParseException
+    {
+        Json.parse("{} {}");
+    }
+
+    /**
+     * a missing comma between members.
+     * @throws ParseException expected
+     */
+    @Test(expected = ParseException.class)
+    public void testMissingComma() throws ParseException
+    {
+        Json.parse("[1 2]");
+    }
+
+    /**
+     * an invalid unicode escape.
+     * @throws ParseException expected
+     */
+    @Test(expected = ParseException.class)
+    public void testInvalidEscape() throws ParseException
+    {
+        Json.parse("\"\\u00zz\"");
+    }
+
+    /**
+     * an invalid number.
+     * @throws ParseException expected
+     */
+    @Test(expected = ParseException.class)
+    public void testInvalidNumber() throws ParseException
+    {
+        Json.parse("[1.2.3]");
+    }
+
+    /**
+     * empty text.
+     * @throws ParseException expected
+     */
+    @Test(expected = ParseException.class)
+    public void testEmpty() throws ParseException
+    {
+        Json.parse("  ");
+    }
+
+}
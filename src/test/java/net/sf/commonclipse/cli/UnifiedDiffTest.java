@@ -0,0 +1,143 @@
+package net.sf.commonclipse.cli;
+
+import static org.hamcrest.Matchers.equalTo;
+import static org.junit.Assert.assertThat;
+
+import org.junit.Test;
+
+/**
+ * Tests for UnifiedDiff.
+ * @author fgiust
+ * @version $Revision$ ($Author$)
+ */
+public class UnifiedDiffTest
+{
+
+    /**
+     * diff header.
+     */
+    private static final String HEADER = "--- a/A.java\n+++ b/A.java\n";
+
+    /**
+     * Returns the lines from 1 to count, each one containing its number.
+     * @param count number of lines
+     * @return text
+     */
+    private static String numbers(int count)
+    {
+        StringBuffer buffer = new StringBuffer();
+        for (int j = 1; j <= count; j++)
+        {
+            buffer.append(j).append('\n');
+        }
+        return buffer.toString();
+    }
+
+    /**
+     * identical texts give an empty diff.
+     */
+    @Test
+    public void testNoChanges()
+    {
+        assertThat(UnifiedDiff.diff("A.java", numbers(5), numbers(5)), equalTo(""));
+    }
+
+    /**
+     * a changed line in the middle, with three lines of context and 1-based line numbers.
+     */
+    @Test
+    public void testHunkHeader()
+    {
+        String diff = UnifiedDiff.diff("A.java", numbers(10), numbers(10).replace("5\n", "five\n"));
+        assertThat(diff, equalTo(HEADER + "@@ -2,7 +2,7 @@\n 2\n 3\n 4\n-5\n+five\n 6\n 7\n 8\n"));
+    }
+
+    /**
+     * added and removed lines are counted only on their side.
+     */
+    @Test
+    public void testHunkHeaderCounts()
+    {
+        String diff = UnifiedDiff.diff("A.java", numbers(10), numbers(10).replace("5\n", "5\n5a\n5b\n")
+            .replace("7\n", ""));
+        assertThat(diff, equalTo(HEADER + "@@ -3,8 +3,9 @@\n 3\n 4\n 5\n+5a\n+5b\n 6\n-7\n 8\n 9\n 10\n"));
+    }
+
+    /**
+     * changes separated by no more than twice the context share a single hunk.
+     */
+    @Test
+    public void testContextMerged()
+    {
+        String diff = UnifiedDiff.diff("A.java", numbers(12), numbers(12).replace("\n2\n", "\ntwo\n").replace(
+            "\n8\n",
+            "\neight\n"));
+        assertThat(diff, equalTo(HEADER
+            + "@@ -1,11 +1,11 @@\n 1\n-2\n+two\n 3\n 4\n 5\n 6\n 7\n-8\n+eight\n 9\n 10\n 11\n"));
+    }
+
+    /**
+     * changes further apart get separate hunks.
+     */
+    @Test
+    public void testContextNotMerged()
+    {
+        String diff = UnifiedDiff.diff("A.java", numbers(14), numbers(14).replace("\n2\n", "\ntwo\n").replace(
+            "\n10\n",
+            "\nten\n"));
+        assertThat(diff, equalTo(HEADER
+            + "@@ -1,5 +1,5 @@\n 1\n-2\n+two\n 3\n 4\n 5\n"
+            + "@@ -7,7 +7,7 @@\n 7\n 8\n 9\n-10\n+ten\n 11\n 12\n 13\n"));
+    }
+
+    /**
+     * lines added at the start of the file.
+     */
+    @Test
+    public void testInsertAtStart()
+    {
+        String diff = UnifiedDiff.diff("A.java", numbers(5), "0\n" + numbers(5));
+        assertThat(diff, equalTo(HEADER + "@@ -1,3 +1,4 @@\n+0\n 1\n 2\n 3\n"));
+    }
+
+    /**
+     * lines added at the end of the file.
+     */
+    @Test
+    public void testInsertAtEnd()
+    {
+        String diff = UnifiedDiff.diff("A.java", numbers(5), numbers(6));
+        assertThat(diff, equalTo(HEADER + "@@ -3,3 +3,4 @@\n 3\n 4\n 5\n+6\n"));
+    }
+
+    /**
+     * lines added to an empty file, the empty range refers to line 0.
+     */
+    @Test
+    public void testEmptyFile()
+    {
+        assertThat(UnifiedDiff.diff("A.java", "", "1\n"), equalTo(HEADER + "@@ -0,0 +1 @@\n+1\n"));
+    }
+
+    /**
+     * a missing newline at the end of the file is marked, and adding it is a change.
+     */
+    @Test
+    public void testNoTrailingNewline()
+    {
+        String diff = UnifiedDiff.diff("A.java", "1\n2", "1\n2\n3");
+        assertThat(diff, equalTo(HEADER
+            + "@@ -1,2 +1,3 @@\n 1\n-2\n\\ No newline at end of file\n+2\n+3\n\\ No newline at end of file\n"));
+    }
+
+    /**
+     * unchanged last line without newline, shown as context.
+     */
+    @Test
+    public void testNoTrailingNewlineContext()
+    {
+        String diff = UnifiedDiff.diff("A.java", "1\n2", "0\n1\n2");
+        assertThat(diff, equalTo(HEADER + "@@ -1,2 +1,3 @@\n+0\n 1\n 2\n\\ No newline at end of file\n"));
+    }
+
+}